@@ -31,6 +31,7 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.EnumeratedAttribute;
 import org.apache.tools.ant.types.PropertySet;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.URL;
@@ -79,6 +80,21 @@ public class IzPackTask extends Task implements PackagerListener
      */
     private int compressionLevel;
 
+    /**
+     * Holds value of property packThreads.
+     */
+    private int packThreads;
+
+    /**
+     * Holds value of property buildCache.
+     */
+    private String buildCache;
+
+    /**
+     * Holds value of property patchBase.
+     */
+    private String patchBase;
+
     /**
      * Holds value of property installerType.
      */
@@ -112,6 +128,7 @@ public class IzPackTask extends Task implements PackagerListener
         izPackDir = null;
         compression = "default";
         compressionLevel = -1;
+        packThreads = 1;
     }
 
 
@@ -209,7 +226,7 @@ public class IzPackTask extends Task implements PackagerListener
             ClassLoader loader = new URLClassLoader(getUrlsForClassloader());
             Class runableClass = loader.loadClass("com.izforge.izpack.ant.IzpackAntRunnable");
             Constructor constructor = runableClass.getConstructors()[0];
-            Object instance = constructor.newInstance(compression, kind, input, configText, basedir, output, mkdirs, compressionLevel, properties, inheritAll, getProject().getProperties(), izPackDir);
+            Object instance = constructor.newInstance(compression, kind, input, configText, basedir, output, mkdirs, compressionLevel, packThreads, buildCache, patchBase, properties, inheritAll, getProject().getProperties(), izPackDir);
             final Thread thread = new Thread((Runnable) instance);
             thread.setContextClassLoader(loader);
             thread.start();
@@ -356,6 +373,30 @@ public class IzPackTask extends Task implements PackagerListener
         this.compressionLevel = compressionLevel;
     }
 
+    /**
+     * @param packThreads The no. of threads used to compress packs. Use 0 for one thread per processor.
+     */
+    public void setPackThreads(int packThreads)
+    {
+        this.packThreads = packThreads;
+    }
+
+    /**
+     * @param buildCache The directory in which to cache compressed packs between builds.
+     */
+    public void setBuildCache(File buildCache)
+    {
+        this.buildCache = buildCache.getAbsolutePath();
+    }
+
+    /**
+     * @param patchBase The previous installer to create a patch installer for.
+     */
+    public void setPatchBase(File patchBase)
+    {
+        this.patchBase = patchBase.getAbsolutePath();
+    }
+
     /**
      * Ant will call this for each &lt;property&gt; tag to the IzPack task.
      */
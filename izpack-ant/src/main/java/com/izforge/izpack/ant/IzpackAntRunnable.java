@@ -23,11 +23,15 @@ public class IzpackAntRunnable implements Runnable
     private Hashtable projectProps;
 
     public IzpackAntRunnable(String compression, String kind, String input, String configText, String basedir,
-                             String output, boolean mkdirs, int compressionLevel, Properties properties,
-                             Boolean inheritAll, Hashtable antProjectProperties, String izPackDir)
+                             String output, boolean mkdirs, int compressionLevel, int packThreads,
+                             String buildCache, String patchBase, Properties properties, Boolean inheritAll,
+                             Hashtable antProjectProperties, String izPackDir)
     {
         this.compilerData = new CompilerData(compression, kind, input, configText, basedir, output, mkdirs,
                                              compressionLevel);
+        this.compilerData.setPackThreads(packThreads);
+        this.compilerData.setBuildCache(buildCache);
+        this.compilerData.setPatchBase(patchBase);
         this.input = input;
         this.properties = properties;
         this.inheritAll = inheritAll;
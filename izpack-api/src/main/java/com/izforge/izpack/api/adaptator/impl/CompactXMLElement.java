@@ -0,0 +1,525 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.adaptator.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.izforge.izpack.api.adaptator.IXMLElement;
+import com.izforge.izpack.api.adaptator.XMLException;
+
+
+/**
+ * An {@link IXMLElement} that holds its name, attributes, content and children directly, rather than wrapping a DOM
+ * node.
+ * <p/>
+ * This uses a fraction of the memory of {@link XMLElementImpl} for large documents, and returns the children with a
+ * name without scanning them or allocating wrappers. Elements are created by {@link CompactXMLParser}.
+ *
+ * @see CompactXMLParser
+ */
+public class CompactXMLElement implements IXMLElement
+{
+
+    private static final long serialVersionUID = 3964418373187207163L;
+
+    /**
+     * The no. of children above which children are indexed by name.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    /**
+     * The element name, including any namespace prefix.
+     */
+    private final String name;
+
+    /**
+     * The namespace URI. May be {@code null}.
+     */
+    private final String namespaceURI;
+
+    /**
+     * The attribute names and values, interleaved.
+     */
+    private String[] attributes = EMPTY;
+
+    /**
+     * The content. May be {@code null}.
+     */
+    private String content;
+
+    /**
+     * The child elements. This is replaced rather than modified when children are added or removed, so that lists
+     * returned by {@link #getChildren()} may be iterated while the element is changed.
+     */
+    private List<IXMLElement> children = Collections.emptyList();
+
+    /**
+     * The children, keyed on name. Only populated for elements with many children.
+     */
+    private transient Map<String, List<IXMLElement>> index;
+
+    /**
+     * The line number, or {@link #NO_LINE} if it is unknown.
+     */
+    private final int lineNr;
+
+    /**
+     * Empty attributes.
+     */
+    private static final String[] EMPTY = new String[0];
+
+
+    /**
+     * Constructs a {@code CompactXMLElement}.
+     *
+     * @param name the element name
+     */
+    public CompactXMLElement(String name)
+    {
+        this(name, null, NO_LINE);
+    }
+
+    /**
+     * Constructs a {@code CompactXMLElement}.
+     *
+     * @param name         the element name, including any namespace prefix
+     * @param namespaceURI the namespace URI. May be {@code null}
+     * @param lineNr       the line number, or {@link #NO_LINE} if it is unknown
+     */
+    public CompactXMLElement(String name, String namespaceURI, int lineNr)
+    {
+        this.name = name;
+        this.namespaceURI = namespaceURI;
+        this.lineNr = lineNr;
+    }
+
+    /**
+     * Constructs a {@code CompactXMLElement} that is a deep copy of another element.
+     *
+     * @param element the element to copy
+     */
+    public CompactXMLElement(IXMLElement element)
+    {
+        this(element.getName(), element instanceof CompactXMLElement
+                ? ((CompactXMLElement) element).namespaceURI : null, element.getLineNr());
+        Properties properties = element.getAttributes();
+        for (String key : properties.stringPropertyNames())
+        {
+            setAttribute(key, properties.getProperty(key));
+        }
+        if (element.hasChildren())
+        {
+            List<IXMLElement> copies = new ArrayList<IXMLElement>();
+            for (IXMLElement child : element.getChildren())
+            {
+                copies.add(new CompactXMLElement(child));
+            }
+            setChildren(copies);
+        }
+        else
+        {
+            content = element.getContent();
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public void addChild(IXMLElement child)
+    {
+        List<IXMLElement> list = new ArrayList<IXMLElement>(children.size() + 1);
+        list.addAll(children);
+        list.add((child instanceof CompactXMLElement) ? child : new CompactXMLElement(child));
+        setChildren(list);
+    }
+
+    @Override
+    public void removeChild(IXMLElement child)
+    {
+        List<IXMLElement> list = new ArrayList<IXMLElement>(children);
+        for (int i = 0; i < list.size(); ++i)
+        {
+            if (list.get(i) == child)
+            {
+                list.remove(i);
+                setChildren(list);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasChildren()
+    {
+        return !children.isEmpty();
+    }
+
+    @Override
+    public int getChildrenCount()
+    {
+        return children.size();
+    }
+
+    @Override
+    public List<IXMLElement> getChildren()
+    {
+        return children;
+    }
+
+    @Override
+    public IXMLElement getChildAtIndex(int index)
+    {
+        return children.get(index);
+    }
+
+    /**
+     * Returns the first descendant element with the specified name, in document order.
+     * <p/>
+     * As with {@link XMLElementImpl#getFirstChildNamed(String)}, all descendants are searched, not just the direct
+     * children.
+     *
+     * @param name the name of the element to search for
+     * @return the element, or {@code null} if no such element was found
+     */
+    @Override
+    public IXMLElement getFirstChildNamed(String name)
+    {
+        for (IXMLElement child : children)
+        {
+            if (child.getName().equals(name))
+            {
+                return child;
+            }
+            IXMLElement result = child.getFirstChildNamed(name);
+            if (result != null)
+            {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<IXMLElement> getChildrenNamed(String name)
+    {
+        Map<String, List<IXMLElement>> map = getIndex();
+        if (map != null)
+        {
+            List<IXMLElement> list = map.get(name);
+            return (list != null) ? new ArrayList<IXMLElement>(list) : new ArrayList<IXMLElement>();
+        }
+        List<IXMLElement> result = new ArrayList<IXMLElement>();
+        for (IXMLElement child : children)
+        {
+            if (child.getName().equals(name))
+            {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getAttribute(String name)
+    {
+        return getAttribute(name, null);
+    }
+
+    @Override
+    public String getAttribute(String name, String defaultValue)
+    {
+        int index = indexOfAttribute(name);
+        return (index != -1) ? attributes[index + 1] : defaultValue;
+    }
+
+    @Override
+    public void setAttribute(String name, String value)
+    {
+        int index = indexOfAttribute(name);
+        if (index != -1)
+        {
+            attributes[index + 1] = value;
+        }
+        else
+        {
+            String[] list = new String[attributes.length + 2];
+            System.arraycopy(attributes, 0, list, 0, attributes.length);
+            list[attributes.length] = name;
+            list[attributes.length + 1] = value;
+            attributes = list;
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name)
+    {
+        int index = indexOfAttribute(name);
+        if (index != -1)
+        {
+            String[] list = new String[attributes.length - 2];
+            System.arraycopy(attributes, 0, list, 0, index);
+            System.arraycopy(attributes, index + 2, list, index, attributes.length - index - 2);
+            attributes = list;
+        }
+    }
+
+    @Override
+    public Enumeration enumerateAttributeNames()
+    {
+        return getAttributes().keys();
+    }
+
+    @Override
+    public boolean hasAttribute(String name)
+    {
+        return indexOfAttribute(name) != -1;
+    }
+
+    @Override
+    public Properties getAttributes()
+    {
+        Properties properties = new Properties();
+        for (int i = 0; i < attributes.length; i += 2)
+        {
+            properties.put(attributes[i], attributes[i + 1]);
+        }
+        return properties;
+    }
+
+    @Override
+    public int getLineNr()
+    {
+        return lineNr;
+    }
+
+    /**
+     * Returns the content of the element.
+     *
+     * @return the content, or {@code null} if the element has children or no content
+     */
+    @Override
+    public String getContent()
+    {
+        return children.isEmpty() ? content : null;
+    }
+
+    /**
+     * Sets the content of the element, removing any children.
+     *
+     * @param content the content
+     */
+    @Override
+    public void setContent(String content)
+    {
+        this.content = content;
+        setChildren(Collections.<IXMLElement>emptyList());
+    }
+
+    /**
+     * Returns a DOM copy of this element and its descendants.
+     * <p/>
+     * The copy is created on each call, so changes made to it are not reflected in this element. Creating it is
+     * expensive for large elements.
+     *
+     * @return a copy of this element, in a new document
+     */
+    @Override
+    public Node getElement()
+    {
+        try
+        {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            Document document = factory.newDocumentBuilder().newDocument();
+            Element element = toElement(document);
+            document.appendChild(element);
+            return element;
+        }
+        catch (ParserConfigurationException exception)
+        {
+            throw new XMLException(exception);
+        }
+    }
+
+    /**
+     * Returns the local name of the element, i.e. its name without any namespace prefix.
+     *
+     * @return the local name
+     */
+    public String getLocalName()
+    {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    /**
+     * Adds a child. Used by {@link CompactXMLParser} when building the tree.
+     *
+     * @param child the child to add
+     */
+    void appendChild(CompactXMLElement child)
+    {
+        if (children.isEmpty())
+        {
+            children = new ArrayList<IXMLElement>(4);
+        }
+        children.add(child);
+    }
+
+    /**
+     * Sets the attributes, replacing any existing. Used by {@link CompactXMLParser} when building the tree.
+     *
+     * @param attributes the attribute names and values, interleaved
+     */
+    void setAttributes(String[] attributes)
+    {
+        this.attributes = attributes;
+    }
+
+    /**
+     * Sets the content, without removing children. Used by {@link CompactXMLParser} when building the tree.
+     *
+     * @param content the content. May be {@code null}
+     */
+    void initContent(String content)
+    {
+        this.content = content;
+    }
+
+    /**
+     * Trims the capacity of the children list to its size. Used by {@link CompactXMLParser} when building the tree.
+     */
+    void trim()
+    {
+        if (children instanceof ArrayList)
+        {
+            ((ArrayList<IXMLElement>) children).trimToSize();
+        }
+    }
+
+    /**
+     * Replaces the children.
+     *
+     * @param children the children
+     */
+    private void setChildren(List<IXMLElement> children)
+    {
+        this.children = children;
+        index = null;
+    }
+
+    /**
+     * Returns the children keyed on name, building the index if required.
+     *
+     * @return the children keyed on name, or {@code null} if there are too few children to warrant an index
+     */
+    private Map<String, List<IXMLElement>> getIndex()
+    {
+        Map<String, List<IXMLElement>> result = index;
+        if (result == null && children.size() > INDEX_THRESHOLD)
+        {
+            result = new HashMap<String, List<IXMLElement>>();
+            for (IXMLElement child : children)
+            {
+                List<IXMLElement> list = result.get(child.getName());
+                if (list == null)
+                {
+                    list = new ArrayList<IXMLElement>(1);
+                    result.put(child.getName(), list);
+                }
+                list.add(child);
+            }
+            index = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of an attribute's name in the attributes array.
+     *
+     * @param name the attribute name
+     * @return the index of the attribute's name, or {@code -1} if there is no such attribute
+     */
+    private int indexOfAttribute(String name)
+    {
+        for (int i = 0; i < attributes.length; i += 2)
+        {
+            if (attributes[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a DOM copy of this element.
+     *
+     * @param document the document to create the element in
+     * @return the DOM element
+     */
+    private Element toElement(Document document)
+    {
+        Element element = (namespaceURI != null) ? document.createElementNS(namespaceURI, name)
+                : document.createElement(name);
+        if (lineNr != NO_LINE)
+        {
+            element.setUserData("ln", lineNr, null);
+        }
+        for (int i = 0; i < attributes.length; i += 2)
+        {
+            element.setAttribute(attributes[i], attributes[i + 1]);
+        }
+        if (!children.isEmpty())
+        {
+            for (IXMLElement child : children)
+            {
+                element.appendChild(((CompactXMLElement) child).toElement(document));
+            }
+        }
+        else if (content != null)
+        {
+            element.appendChild(document.createTextNode(content));
+        }
+        return element;
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.adaptator.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.izforge.izpack.api.adaptator.IXMLElement;
+import com.izforge.izpack.api.adaptator.IXMLParser;
+import com.izforge.izpack.api.adaptator.XMLException;
+
+
+/**
+ * An {@link IXMLParser} that builds a tree of {@link CompactXMLElement}s directly from SAX events.
+ * <p/>
+ * This produces the same tree as {@link XMLParser}, including XInclude processing, the removal of nested
+ * {@code xfragment} elements, and line numbers, but without building a DOM. It is intended for large documents, such
+ * as generated installation descriptors with many thousands of files.
+ */
+public class CompactXMLParser implements IXMLParser
+{
+
+    /**
+     * The name of the element used to wrap included fragments.
+     */
+    private static final String FRAGMENT = "xfragment";
+
+    /**
+     * The SAX property for the lexical handler.
+     */
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    /**
+     * The item being parsed, for error reporting. May be {@code null}.
+     */
+    private String parsedItem;
+
+
+    @Override
+    public IXMLElement parse(InputStream inputStream)
+    {
+        checkNotNullStream(inputStream);
+        parsedItem = null;
+        return parse(new InputSource(inputStream));
+    }
+
+    @Override
+    public IXMLElement parse(InputStream inputStream, String systemId)
+    {
+        checkNotNullStream(inputStream);
+        parsedItem = systemId;
+        InputSource inputSource = new InputSource(inputStream);
+        inputSource.setSystemId(systemId);
+        return parse(inputSource);
+    }
+
+    @Override
+    public IXMLElement parse(String inputString)
+    {
+        parsedItem = null;
+        InputSource inputSource = new InputSource(new StringReader(inputString));
+        return parse(inputSource);
+    }
+
+    @Override
+    public IXMLElement parse(URL inputURL)
+    {
+        parsedItem = inputURL.toString();
+        return parse(new InputSource(inputURL.toExternalForm()));
+    }
+
+    /**
+     * Parses a document.
+     *
+     * @param inputSource the document source
+     * @return the root element
+     * @throws XMLException if the document cannot be parsed
+     */
+    private IXMLElement parse(InputSource inputSource)
+    {
+        XMLReader reader = XMLParser.acquireReader();
+        TreeBuilder builder = new TreeBuilder();
+        boolean parsed = false;
+        try
+        {
+            // pooled readers may still refer to the handlers of a previous parse
+            reader.setContentHandler(builder);
+            reader.setErrorHandler(builder);
+            reader.setDTDHandler(builder);
+            reader.setEntityResolver(builder);
+            reader.setProperty(LEXICAL_HANDLER, null);
+            reader.parse(inputSource);
+            parsed = true;
+        }
+        catch (SAXParseException e)
+        {
+            StringBuilder message = new StringBuilder("Error");
+            if (parsedItem != null)
+            {
+                message.append(" in ").append(parsedItem);
+            }
+            message.append(" at line ").append(e.getLineNumber()).append(", column ").append(e.getColumnNumber());
+            message.append(" : ").append(e.getMessage());
+            throw new XMLException(message.toString(), e);
+        }
+        catch (SAXException e)
+        {
+            throw new XMLException(e);
+        }
+        catch (IOException e)
+        {
+            throw new XMLException(e);
+        }
+        finally
+        {
+            parsedItem = null;
+            if (parsed)
+            {
+                XMLParser.releaseReader(reader);
+            }
+        }
+        return builder.getRoot();
+    }
+
+    private void checkNotNullStream(InputStream inputStream)
+    {
+        if (inputStream == null)
+        {
+            throw new NullPointerException("The input stream must be not null.");
+        }
+    }
+
+    /**
+     * Builds the element tree from SAX events.
+     * <p/>
+     * Element content follows {@link XMLElementImpl#getContent()}: text consisting only of whitespace between markup
+     * is ignored, and an element without any text has {@code null} content.
+     */
+    private static class TreeBuilder extends DefaultHandler
+    {
+
+        /**
+         * The whitespace characters, as per the regular expression {@code \s}.
+         */
+        private static final String WHITESPACE = " \t\n\u000B\f\r";
+
+        /**
+         * The document locator.
+         */
+        private Locator locator;
+
+        /**
+         * The root element.
+         */
+        private CompactXMLElement root;
+
+        /**
+         * The open elements. Removed {@code xfragment} elements are represented by their parent.
+         */
+        private final List<CompactXMLElement> stack = new ArrayList<CompactXMLElement>();
+
+        /**
+         * The content of the innermost open element.
+         */
+        private final StringBuilder content = new StringBuilder();
+
+        /**
+         * The text since the last markup.
+         */
+        private final StringBuilder segment = new StringBuilder();
+
+        /**
+         * Determines if the innermost open element has any text.
+         */
+        private boolean hasText;
+
+        /**
+         * The namespaces in scope in the document.
+         */
+        private final NamespaceSupport source = new NamespaceSupport();
+
+        /**
+         * The namespaces declared on the elements of the tree. As with the DOM produced by {@link XMLParser}, each
+         * element has a namespace declaration attribute for each namespace in scope in the document that isn't
+         * already declared by an ancestor in the tree.
+         */
+        private final NamespaceSupport result = new NamespaceSupport();
+
+        /**
+         * Determines if the namespace context for the next element has been started.
+         */
+        private boolean contextStarted;
+
+        /**
+         * Returns the root element.
+         *
+         * @return the root element
+         */
+        public CompactXMLElement getRoot()
+        {
+            return root;
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator)
+        {
+            this.locator = locator;
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri)
+        {
+            if (!contextStarted)
+            {
+                source.pushContext();
+                contextStarted = true;
+            }
+            source.declarePrefix(prefix, uri);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+        {
+            endSegment();
+            if (!contextStarted)
+            {
+                source.pushContext();
+            }
+            contextStarted = false;
+            CompactXMLElement parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            if (parent != null && FRAGMENT.equals(qName) && uri.length() == 0)
+            {
+                // included fragment. Its children belong to the parent
+                stack.add(parent);
+                return;
+            }
+            int lineNr = (locator != null) ? locator.getLineNumber() : IXMLElement.NO_LINE;
+            CompactXMLElement element = new CompactXMLElement(qName, uri.length() != 0 ? uri : null, lineNr);
+            List<String> namespaces = getNamespaceDeclarations();
+            int count = atts.getLength();
+            if (count != 0 || !namespaces.isEmpty())
+            {
+                String[] attributes = new String[count * 2 + namespaces.size()];
+                for (int i = 0; i < count; ++i)
+                {
+                    attributes[i * 2] = atts.getQName(i);
+                    attributes[i * 2 + 1] = atts.getValue(i);
+                }
+                for (int i = 0; i < namespaces.size(); ++i)
+                {
+                    attributes[count * 2 + i] = namespaces.get(i);
+                }
+                element.setAttributes(attributes);
+            }
+            if (parent != null)
+            {
+                parent.appendChild(element);
+            }
+            else
+            {
+                root = element;
+            }
+            stack.add(element);
+            content.setLength(0);
+            hasText = false;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        {
+            endSegment();
+            source.popContext();
+            CompactXMLElement element = stack.remove(stack.size() - 1);
+            if (!stack.isEmpty() && stack.get(stack.size() - 1) == element)
+            {
+                // end of an included fragment
+                return;
+            }
+            result.popContext();
+            if (!element.hasChildren() && hasText)
+            {
+                element.initContent(content.toString().trim());
+            }
+            element.trim();
+            content.setLength(0);
+            hasText = false;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            segment.append(ch, start, length);
+            hasText = true;
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length)
+        {
+            characters(ch, start, length);
+        }
+
+        /**
+         * Returns the namespace declarations for a new element in the tree, and starts its namespace context.
+         *
+         * @return the namespace declaration attribute names and values, interleaved
+         */
+        private List<String> getNamespaceDeclarations()
+        {
+            List<String> declarations = new ArrayList<String>();
+            List<String> prefixes = Collections.list((Enumeration<String>) source.getPrefixes());
+            prefixes.add("");
+            result.pushContext();
+            for (String prefix : prefixes)
+            {
+                String uri = source.getURI(prefix);
+                if (uri != null && uri.length() != 0 && !"xml".equals(prefix) && !uri.equals(result.getURI(prefix)))
+                {
+                    result.declarePrefix(prefix, uri);
+                    declarations.add(prefix.length() != 0 ? "xmlns:" + prefix : "xmlns");
+                    declarations.add(uri);
+                }
+            }
+            return declarations;
+        }
+
+        /**
+         * Adds the text since the last markup to the content, unless it is only whitespace.
+         */
+        private void endSegment()
+        {
+            for (int i = 0; i < segment.length(); ++i)
+            {
+                if (WHITESPACE.indexOf(segment.charAt(i)) == -1)
+                {
+                    content.append(segment);
+                    break;
+                }
+            }
+            segment.setLength(0);
+        }
+    }
+}
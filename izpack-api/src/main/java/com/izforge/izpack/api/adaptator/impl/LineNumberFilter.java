@@ -57,6 +57,11 @@ public class LineNumberFilter extends XMLFilterImpl
      */
     private Locator locator;
 
+    /**
+     * The depth of the current element.
+     */
+    private int depth;
+
     public LineNumberFilter(XMLReader xmlReader)
     {
         super(xmlReader);
@@ -67,13 +72,26 @@ public class LineNumberFilter extends XMLFilterImpl
     {
         super.startDocument();
         lnQueue = new LinkedList<Integer>();
+        depth = 0;
     }
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException
     {
         super.startElement(uri, localName, qName, atts);
-        lnQueue.add(locator.getLineNumber());
+        // nested xfragment elements are removed by the style sheet, so don't have line numbers
+        if (depth == 0 || !"xfragment".equals(qName) || uri.length() != 0)
+        {
+            lnQueue.add(locator.getLineNumber());
+        }
+        ++depth;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException
+    {
+        super.endElement(uri, localName, qName);
+        --depth;
     }
 
     @Override
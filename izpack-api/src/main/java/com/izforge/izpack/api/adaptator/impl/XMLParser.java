@@ -31,10 +31,11 @@ import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -46,8 +47,14 @@ import java.io.InputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.LinkedList;
 
 /**
+ * XML parser that records the line number of each element.
+ * <p/>
+ * The internal style sheet is compiled once, and SAX readers are pooled between parses, so creating parsers is
+ * cheap. Instances are not thread safe, but any number may be used concurrently.
+ *
  * @author Anthonin Bonnefoy
  * @author David Duponchel
  */
@@ -92,28 +99,152 @@ public class XMLParser implements IXMLParser
         }
     }
 
-    private LineNumberFilter filter;
+    /**
+     * The maximum no. of idle readers to pool.
+     */
+    private static final int MAX_POOLED_READERS = 8;
+
+    /**
+     * The idle readers.
+     */
+    private static final LinkedList<XMLReader> readers = new LinkedList<XMLReader>();
+
+    /**
+     * The SAX property for the lexical handler.
+     */
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    /**
+     * Handler used to reset pooled readers.
+     */
+    private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+    /**
+     * The factory for readers.
+     */
+    private static SAXParserFactory factory;
+
+    /**
+     * The compiled internal style sheet.
+     */
+    private static Templates templates;
+
     private String parsedItem = null;
 
-    public XMLParser()
+    /**
+     * Returns an idle reader from the pool, creating one if none is available.
+     *
+     * @return a reader
+     * @throws XMLException if the reader cannot be created
+     */
+    static XMLReader acquireReader()
     {
-        try
+        synchronized (readers)
         {
-            SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-            saxParserFactory.setNamespaceAware(true);
-            saxParserFactory.setXIncludeAware(true);
-            XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
-            filter = new LineNumberFilter(xmlReader);
+            if (!readers.isEmpty())
+            {
+                return readers.removeFirst();
+            }
+            try
+            {
+                if (factory == null)
+                {
+                    factory = SAXParserFactory.newInstance();
+                    factory.setNamespaceAware(true);
+                    factory.setXIncludeAware(true);
+                }
+                return factory.newSAXParser().getXMLReader();
+            }
+            catch (ParserConfigurationException e)
+            {
+                throw new XMLException(e);
+            }
+            catch (SAXException e)
+            {
+                throw new XMLException(e);
+            }
+        }
+    }
 
+    /**
+     * Returns a reader to the pool, once it has completed parsing successfully.
+     * <p/>
+     * The reader's handlers are reset, so that it doesn't retain the parsed document, or pass events to a stale
+     * handler when next used.
+     *
+     * @param reader the reader
+     */
+    static void releaseReader(XMLReader reader)
+    {
+        reader.setContentHandler(NO_HANDLER);
+        reader.setErrorHandler(NO_HANDLER);
+        reader.setDTDHandler(NO_HANDLER);
+        reader.setEntityResolver(NO_HANDLER);
+        try
+        {
+            reader.setProperty(LEXICAL_HANDLER, null);
         }
-        catch (ParserConfigurationException e)
+        catch (SAXException ignore)
         {
-            throw new XMLException(e);
+            // the reader doesn't support lexical handlers, so can't have retained one
+            return;
         }
-        catch (SAXException e)
+        synchronized (readers)
         {
-            throw new XMLException(e);
+            if (readers.size() < MAX_POOLED_READERS)
+            {
+                readers.addFirst(reader);
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled internal style sheet, compiling it on first use.
+     * <p/>
+     * Unlike {@link Transformer}, {@link Templates} is thread safe.
+     *
+     * @return the compiled style sheet
+     * @throws XMLException if the style sheet cannot be found or compiled
+     */
+    private static synchronized Templates getTemplates()
+    {
+        if (templates == null)
+        {
+            URL xslResourceUrl = IXMLParser.class.getResource(XSL_FILE_NAME);
+            if (xslResourceUrl == null)
+            {
+                throw new XMLException("Can't find IzPack internal file \"" + XSL_FILE_NAME + "\"");
+            }
+            InputStream stream = null;
+            try
+            {
+                stream = xslResourceUrl.openStream();
+                templates = TransformerFactory.newInstance().newTemplates(new StreamSource(stream));
+            }
+            catch (IOException e)
+            {
+                throw new XMLException(e);
+            }
+            catch (TransformerException e)
+            {
+                throw new XMLException(e);
+            }
+            finally
+            {
+                if (stream != null)
+                {
+                    try
+                    {
+                        stream.close();
+                    }
+                    catch (IOException ignore)
+                    {
+                        // no-op
+                    }
+                }
+            }
         }
+        return templates;
     }
 
     private IXMLElement searchFirstElement(DOMResult domResult)
@@ -131,20 +262,18 @@ public class XMLParser implements IXMLParser
     private DOMResult parseLineNrFromInputSource(InputSource inputSource)
     {
         DOMResult result = null;
+        XMLReader reader = acquireReader();
+        LineNumberFilter filter = new LineNumberFilter(reader);
+        boolean parsed = false;
         try
         {
             result = new DOMResult();
             SAXSource source = new SAXSource(inputSource);
             source.setXMLReader(filter);
-            URL xslResourceUrl = IXMLParser.class.getResource(XSL_FILE_NAME);
-            if (xslResourceUrl == null)
-            {
-                throw new XMLException("Can't find IzPack internal file \"" + XSL_FILE_NAME + "\"");
-            }
-            Source xsltSource = new StreamSource(xslResourceUrl.openStream());
-            Transformer xformer = TransformerFactory.newInstance().newTransformer(xsltSource);
+            Transformer xformer = getTemplates().newTransformer();
             xformer.transform(source, result);
             filter.applyLN(result);
+            parsed = true;
         }
         catch (TransformerException e)
         {
@@ -166,13 +295,14 @@ public class XMLParser implements IXMLParser
             }
             throw new XMLException(e);
         }
-        catch (IOException e)
-        {
-            throw new XMLException(e);
-        }
         finally
         {
             this.parsedItem = null;
+            if (parsed)
+            {
+                // readers that failed may be left in an inconsistent state, so are discarded
+                releaseReader(reader);
+            }
         }
         return result;
     }
@@ -72,6 +72,21 @@ public interface DynamicVariable extends Serializable
 
     void setIgnoreFailure(boolean ignore);
 
+    /**
+     * Returns the time that an evaluated value remains valid, if the value depends on more than
+     * just other variables (e.g. a command's output or the content of a file).
+     *
+     * @return the time to live, in seconds. If {@code 0}, the value is re-evaluated on each refresh
+     */
+    long getTimeToLive();
+
+    /**
+     * Sets the time that an evaluated value remains valid.
+     *
+     * @param timeToLive the time to live, in seconds. If {@code 0}, the value is re-evaluated on each refresh
+     */
+    void setTimeToLive(long timeToLive);
+
     void addFilter(ValueFilter filter);
 
     List<ValueFilter> getFilters();
@@ -140,6 +140,16 @@ public class Info implements Serializable
      */
     private Set<TempDir> tempdirs;
 
+    /**
+     * The names of the packs updated by a patch installer. May be {@code null}
+     */
+    private Set<String> patchedPacks;
+
+    /**
+     * The name of the jar holding the whole content of the files a patch installer delta encodes. May be {@code null}
+     */
+    private String patchFallback;
+
     public boolean isPrivilegedExecutionRequired()
     {
         return requirePrivilegedExecution;
@@ -601,6 +611,53 @@ public class Info implements Serializable
         this.writeInstallationInformation = writeInstallationInformation;
     }
 
+    /**
+     * Returns the names of the packs that a patch installer updates.
+     * <p/>
+     * These packs only contain the files that changed since the installer being patched, so they can only be
+     * installed over an installation that already has them.
+     *
+     * @return the names of the patched packs. Empty if the installer isn't a patch installer
+     */
+    public Set<String> getPatchedPacks()
+    {
+        return (patchedPacks != null) ? patchedPacks : new HashSet<String>();
+    }
+
+    /**
+     * Sets the names of the packs that a patch installer updates.
+     *
+     * @param patchedPacks the names of the patched packs. May be {@code null}
+     */
+    public void setPatchedPacks(Set<String> patchedPacks)
+    {
+        this.patchedPacks = patchedPacks;
+    }
+
+    /**
+     * Returns the name of the patch fallback jar.
+     * <p/>
+     * A patch installer stores deltas of large changed files, which can only be applied to an unmodified installed
+     * copy of the previous version. The fallback jar, distributed in the same directory as the installer, holds the
+     * whole content of these files, for installations where the installed copy is missing or modified.
+     *
+     * @return the name of the fallback jar, or {@code null} if there is none
+     */
+    public String getPatchFallback()
+    {
+        return patchFallback;
+    }
+
+    /**
+     * Sets the name of the patch fallback jar.
+     *
+     * @param patchFallback the name of the fallback jar. May be {@code null}
+     */
+    public void setPatchFallback(String patchFallback)
+    {
+        this.patchFallback = patchFallback;
+    }
+
 
     public String getUninstallerCondition()
     {
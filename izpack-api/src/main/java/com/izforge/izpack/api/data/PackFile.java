@@ -24,6 +24,7 @@ package com.izforge.izpack.api.data;
 
 import com.izforge.izpack.api.data.binding.OsModel;
 import com.izforge.izpack.util.FileUtil;
+import com.izforge.izpack.util.OsVersion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -119,6 +120,27 @@ public class PackFile implements Serializable
      */
     private String condition = null;
 
+    /**
+     * True if the source file was executable when the installer was compiled.
+     */
+    private boolean executable = false;
+
+    /**
+     * The SHA-1 digest of the file content, computed when the installer was compiled. May be {@code null}.
+     */
+    private byte[] digest;
+
+    /**
+     * True if the file is unchanged since the installer that a patch installer updates. Its content isn't stored.
+     */
+    private boolean retained = false;
+
+    /**
+     * True if the content is stored as a delta against the file installed by the installer that a patch installer
+     * updates.
+     */
+    private boolean delta = false;
+
     /**
      * Constructs and initializes from a source file.
      *
@@ -177,6 +199,8 @@ public class PackFile implements Serializable
         this.mtime = src.lastModified();
         this.isDirectory = src.isDirectory();
         this.additionals = additionals;
+        // Windows doesn't record an executable permission
+        this.executable = !isDirectory && OsVersion.IS_UNIX && src.canExecute();
 
         // File.length is undefined for directories - we don't add any data, so don't skip
         // any please!
@@ -203,6 +227,66 @@ public class PackFile implements Serializable
         this(src, FileUtil.getRelativeFileName(src, baseDir), target, osList, override, overrideRenameTo, blockable, additionals);
     }
 
+    /**
+     * Constructs a pack file read from a pack stream.
+     *
+     * @param relativeSourcePath the path relative to the compile time base directory. May be {@code null}
+     * @param target             the path to install the file to
+     * @param osList             OS constraints. May be {@code null}
+     * @param length             the length of the file in bytes
+     * @param mtime              the last-modification time of the file
+     * @param isDirectory        determines if the file is a directory
+     * @param override           what to do when the file already exists
+     * @param overrideRenameTo   the globmapper expression to rename the file if it already exists. May be {@code null}
+     * @param blockable          whether or not the file might be blocked by the operating system
+     * @param additionals        additional attributes. May be {@code null}
+     */
+    PackFile(String relativeSourcePath, String target, List<OsModel> osList, long length, long mtime,
+             boolean isDirectory, OverrideType override, String overrideRenameTo, Blockable blockable,
+             Map additionals)
+    {
+        this.relativePath = relativeSourcePath;
+        this.targetPath = target;
+        this.osConstraints = osList;
+        this.length = length;
+        this.size = length;
+        this.mtime = mtime;
+        this.isDirectory = isDirectory;
+        this.override = override;
+        this.overrideRenameTo = overrideRenameTo;
+        this.blockable = blockable;
+        this.additionals = additionals;
+    }
+
+    /**
+     * Constructs a copy of another pack file.
+     *
+     * @param file the pack file to copy
+     */
+    protected PackFile(PackFile file)
+    {
+        this.sourcePath = file.sourcePath;
+        this.relativePath = file.relativePath;
+        this.targetPath = file.targetPath;
+        this.osConstraints = file.osConstraints;
+        this.length = file.length;
+        this.size = file.size;
+        this.mtime = file.mtime;
+        this.isDirectory = file.isDirectory;
+        this.override = file.override;
+        this.overrideRenameTo = file.overrideRenameTo;
+        this.blockable = file.blockable;
+        this.additionals = file.additionals;
+        this.previousPackId = file.previousPackId;
+        this.offsetInPreviousPack = file.offsetInPreviousPack;
+        this.pack200Jar = file.pack200Jar;
+        this.condition = file.condition;
+        this.executable = file.executable;
+        this.digest = file.digest;
+        this.retained = file.retained;
+        this.delta = file.delta;
+    }
+
     public void setPreviousPackFileRef(String previousPackId, Long offsetInPreviousPack)
     {
         this.previousPackId = previousPackId;
@@ -339,6 +423,89 @@ public class PackFile implements Serializable
         this.pack200Jar = pack200Jar;
     }
 
+    /**
+     * Determines if the file should be made executable when it is installed.
+     *
+     * @return {@code true} if the source file was executable when the installer was compiled
+     */
+    public boolean isExecutable()
+    {
+        return executable;
+    }
+
+    /**
+     * Determines if the file should be made executable when it is installed.
+     *
+     * @param executable if {@code true}, make the file executable
+     */
+    public void setExecutable(boolean executable)
+    {
+        this.executable = executable;
+    }
+
+    /**
+     * Returns the digest of the file content.
+     *
+     * @return the SHA-1 digest of the content when the installer was compiled, or {@code null} if it wasn't computed
+     */
+    public byte[] getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Sets the digest of the file content.
+     *
+     * @param digest the SHA-1 digest of the content. May be {@code null}
+     */
+    public void setDigest(byte[] digest)
+    {
+        this.digest = digest;
+    }
+
+    /**
+     * Determines if the file is retained from the installation that a patch installer updates.
+     *
+     * @return {@code true} if the file is unchanged since the patched installer, so its content isn't stored
+     */
+    public boolean isRetained()
+    {
+        return retained;
+    }
+
+    /**
+     * Determines if the file is retained from the installation that a patch installer updates.
+     *
+     * @param retained if {@code true}, the file is unchanged since the patched installer, so its content isn't
+     *                 stored
+     */
+    public void setRetained(boolean retained)
+    {
+        this.retained = retained;
+    }
+
+    /**
+     * Determines if the content is stored as a delta against the installed file.
+     *
+     * @return {@code true} if the content is stored as a delta against the file installed by the installer that a
+     *         patch installer updates
+     */
+    public boolean isDelta()
+    {
+        return delta;
+    }
+
+    /**
+     * Determines if the content is stored as a delta against the installed file.
+     *
+     * @param delta if {@code true}, the content is stored as a delta against the file installed by the installer
+     *              that a patch installer updates
+     */
+    public void setDelta(boolean delta)
+    {
+        this.delta = delta;
+    }
+
     public void setLoosePackInfo(boolean loose)
     {
         if (loose)
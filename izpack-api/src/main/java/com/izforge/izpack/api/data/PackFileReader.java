@@ -0,0 +1,383 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.data;
+
+import static com.izforge.izpack.api.data.PackFileWriter.ARCHIVE_POSITION;
+import static com.izforge.izpack.api.data.PackFileWriter.BACK_REFERENCE;
+import static com.izforge.izpack.api.data.PackFileWriter.DELTA;
+import static com.izforge.izpack.api.data.PackFileWriter.DIGEST;
+import static com.izforge.izpack.api.data.PackFileWriter.DIRECTORY;
+import static com.izforge.izpack.api.data.PackFileWriter.EXECUTABLE;
+import static com.izforge.izpack.api.data.PackFileWriter.FIRST;
+import static com.izforge.izpack.api.data.PackFileWriter.NEW;
+import static com.izforge.izpack.api.data.PackFileWriter.NULL;
+import static com.izforge.izpack.api.data.PackFileWriter.PACK200_JAR;
+import static com.izforge.izpack.api.data.PackFileWriter.RETAINED;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.binding.OsModel;
+
+
+/**
+ * Reads {@link PackFile} metadata from a pack stream.
+ * <p/>
+ * Streams written by {@link PackFileWriter} are read in the compact format; streams written by earlier versions,
+ * where each pack file is serialized, are read as before.
+ * A reader must only be used for a single pack stream.
+ */
+public class PackFileReader
+{
+
+    /**
+     * The pack stream.
+     */
+    private final ObjectInputStream in;
+
+    /**
+     * Determines if the stream is in the compact format.
+     */
+    private boolean compact;
+
+    /**
+     * The strings read so far.
+     */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * The OS constraints and additional attributes read so far.
+     */
+    private final List<Object> objects = new ArrayList<Object>();
+
+    /**
+     * The previous target path.
+     */
+    private String target = "";
+
+    /**
+     * The previous source path.
+     */
+    private String source = "";
+
+
+    /**
+     * Constructs a {@code PackFileReader}.
+     *
+     * @param in the pack stream
+     */
+    public PackFileReader(ObjectInputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Reads the pack stream header.
+     *
+     * @return the no. of pack files that follow
+     * @throws IOException if the header is invalid, or for any I/O error
+     */
+    public int readHeader() throws IOException
+    {
+        int result = in.readInt();
+        if (result == PackFileWriter.MAGIC)
+        {
+            int version = in.readUnsignedByte();
+            if (version > PackFileWriter.VERSION)
+            {
+                throw new StreamCorruptedException("Unsupported pack format version: " + version);
+            }
+            compact = true;
+            result = in.readInt();
+        }
+        else if (result < 0)
+        {
+            throw new StreamCorruptedException("Invalid pack file count: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Determines if the stream is in the compact format.
+     *
+     * @return {@code true} if the stream is in the compact format, {@code false} if pack files are serialized
+     */
+    public boolean isCompact()
+    {
+        return compact;
+    }
+
+    /**
+     * Reads the next pack file.
+     *
+     * @return the pack file
+     * @throws IOException            for any I/O error
+     * @throws ClassNotFoundException if a class of a serialized pack file or attribute cannot be found
+     */
+    public PackFile read() throws IOException, ClassNotFoundException
+    {
+        if (!compact)
+        {
+            return (PackFile) in.readObject();
+        }
+        byte[] bytes = (byte[]) in.readUnshared();
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        int flags = (int) readVarLong(data);
+        String targetPath = readPath(data, target);
+        if (targetPath != null)
+        {
+            target = targetPath;
+        }
+        String sourcePath = readPath(data, source);
+        if (sourcePath != null)
+        {
+            source = sourcePath;
+        }
+        List<OsModel> osList = readOsConstraints(data);
+        long length = readVarLong(data);
+        long encoded = readVarLong(data);
+        long mtime = (encoded >>> 1) ^ -(encoded & 1);
+        String override = readString(data);
+        String overrideRenameTo = readString(data);
+        String blockable = readString(data);
+        Map additionals = readAdditionals(data);
+        String condition = readString(data);
+
+        PackFile result = new PackFile(sourcePath, targetPath, osList, length, mtime, (flags & DIRECTORY) != 0,
+                                       (override != null) ? OverrideType.valueOf(override) : null,
+                                       overrideRenameTo,
+                                       (blockable != null) ? Blockable.valueOf(blockable) : null,
+                                       additionals);
+        result.setCondition(condition);
+        result.setPack200Jar((flags & PACK200_JAR) != 0);
+        result.setExecutable((flags & EXECUTABLE) != 0);
+        result.setRetained((flags & RETAINED) != 0);
+        result.setDelta((flags & DELTA) != 0);
+        if ((flags & BACK_REFERENCE) != 0)
+        {
+            String previousPackId = readString(data);
+            result.setPreviousPackFileRef(previousPackId, readVarLong(data));
+        }
+        if ((flags & ARCHIVE_POSITION) != 0)
+        {
+            XPackFile file = new XPackFile(result);
+            file.setArchiveFilePosition(readVarLong(data));
+            result = file;
+        }
+        if ((flags & DIGEST) != 0)
+        {
+            byte[] digest = new byte[(int) readVarLong(data)];
+            data.readFully(digest);
+            result.setDigest(digest);
+        }
+        return result;
+    }
+
+    /**
+     * Reads an unsigned variable-length integer.
+     *
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException for any I/O error
+     */
+    static long readVarLong(DataInput in) throws IOException
+    {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            if (shift > 63)
+            {
+                throw new StreamCorruptedException("Invalid variable-length integer");
+            }
+            b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Reads a path written relative to the previous path.
+     *
+     * @param in       the stream to read from
+     * @param previous the previous path
+     * @return the path. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private String readPath(DataInput in, String previous) throws IOException
+    {
+        int shared = (int) readVarLong(in);
+        if (shared == NULL)
+        {
+            return null;
+        }
+        --shared;
+        if (shared > previous.length())
+        {
+            throw new StreamCorruptedException("Invalid path prefix length: " + shared);
+        }
+        return previous.substring(0, shared) + readUTF(in);
+    }
+
+    /**
+     * Reads a string, or a reference to a string already read.
+     *
+     * @param in the stream to read from
+     * @return the string. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private String readString(DataInput in) throws IOException
+    {
+        int reference = (int) readVarLong(in);
+        String result;
+        if (reference == NULL)
+        {
+            result = null;
+        }
+        else if (reference == NEW)
+        {
+            result = readUTF(in);
+            strings.add(result);
+        }
+        else
+        {
+            result = get(strings, reference);
+        }
+        return result;
+    }
+
+    /**
+     * Reads OS constraints, or a reference to constraints already read.
+     *
+     * @param in the stream to read from
+     * @return the OS constraints. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    @SuppressWarnings("unchecked")
+    private List<OsModel> readOsConstraints(DataInput in) throws IOException
+    {
+        int reference = (int) readVarLong(in);
+        List<OsModel> result;
+        if (reference == NULL)
+        {
+            result = null;
+        }
+        else if (reference == NEW)
+        {
+            int size = (int) readVarLong(in);
+            result = new ArrayList<OsModel>(size);
+            objects.add(result);
+            for (int i = 0; i < size; ++i)
+            {
+                String arch = readString(in);
+                String family = readString(in);
+                String jre = readString(in);
+                String name = readString(in);
+                String version = readString(in);
+                result.add(new OsModel(arch, family, jre, name, version));
+            }
+        }
+        else
+        {
+            result = (List<OsModel>) get(objects, reference);
+        }
+        return result;
+    }
+
+    /**
+     * Reads additional attributes, or a reference to attributes already read.
+     *
+     * @param in the stream to read from
+     * @return the additional attributes. May be {@code null}
+     * @throws IOException            for any I/O error
+     * @throws ClassNotFoundException if an attribute class cannot be found
+     */
+    private Map readAdditionals(DataInput in) throws IOException, ClassNotFoundException
+    {
+        int reference = (int) readVarLong(in);
+        Map result;
+        if (reference == NULL)
+        {
+            result = null;
+        }
+        else if (reference == NEW)
+        {
+            byte[] bytes = new byte[(int) readVarLong(in)];
+            in.readFully(bytes);
+            ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try
+            {
+                result = (Map) stream.readObject();
+            }
+            finally
+            {
+                stream.close();
+            }
+            objects.add(result);
+        }
+        else
+        {
+            result = (Map) get(objects, reference);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a previously read string or object.
+     *
+     * @param list      the strings or objects read so far
+     * @param reference the reference
+     * @return the corresponding string or object
+     * @throws StreamCorruptedException if the reference is invalid
+     */
+    private <T> T get(List<T> list, int reference) throws StreamCorruptedException
+    {
+        int index = reference - FIRST;
+        if (index < 0 || index >= list.size())
+        {
+            throw new StreamCorruptedException("Invalid reference: " + reference);
+        }
+        return list.get(index);
+    }
+
+    /**
+     * Reads a string written as its UTF-8 encoded length, followed by its UTF-8 bytes.
+     *
+     * @param in the stream to read from
+     * @return the string
+     * @throws IOException for any I/O error
+     */
+    private String readUTF(DataInput in) throws IOException
+    {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.binding.OsModel;
+
+
+/**
+ * Writes {@link PackFile} metadata to a pack stream in a compact binary format.
+ * <p/>
+ * Each pack file is written as a single byte array, so file content can be written to the stream between pack
+ * files as before. Within a pack stream:
+ * <ul>
+ * <li>target and source paths are written as the length of the prefix they share with the previous path, followed
+ * by the remaining characters</li>
+ * <li>other strings, such as conditions, are written once and subsequently referred to by index</li>
+ * <li>OS constraints and additional attributes shared by several files are written once</li>
+ * <li>lengths, times and offsets are written as variable-length integers</li>
+ * </ul>
+ * A writer must only be used for a single pack stream. The stream is read using {@link PackFileReader}.
+ */
+public class PackFileWriter
+{
+
+    /**
+     * Identifies a pack stream in the compact format. Streams in the original format start with the non-negative
+     * no. of pack files.
+     */
+    public static final int MAGIC = 0x9ACF11E5;
+
+    /**
+     * The format version.
+     */
+    public static final int VERSION = 3;
+
+    /**
+     * Flag indicating the pack file is a directory.
+     */
+    static final int DIRECTORY = 1;
+
+    /**
+     * Flag indicating the pack file is a Pack200 compressed jar.
+     */
+    static final int PACK200_JAR = 2;
+
+    /**
+     * Flag indicating the pack file refers to content in a previous pack.
+     */
+    static final int BACK_REFERENCE = 4;
+
+    /**
+     * Flag indicating the pack file is an {@link XPackFile}.
+     */
+    static final int ARCHIVE_POSITION = 8;
+
+    /**
+     * Flag indicating the pack file should be made executable.
+     */
+    static final int EXECUTABLE = 16;
+
+    /**
+     * Flag indicating the pack file has a content digest. Added in version 2.
+     */
+    static final int DIGEST = 32;
+
+    /**
+     * Flag indicating the pack file is retained from the installation that a patch installer updates. Added in
+     * version 2.
+     */
+    static final int RETAINED = 64;
+
+    /**
+     * Flag indicating the pack file content is stored as a delta against the installed file. Added in version 3.
+     */
+    static final int DELTA = 128;
+
+    /**
+     * Reference to a {@code null} string or object.
+     */
+    static final int NULL = 0;
+
+    /**
+     * Reference to a string or object that follows. Subsequent references are to its index plus {@link #FIRST}.
+     */
+    static final int NEW = 1;
+
+    /**
+     * The reference to the first string or object written.
+     */
+    static final int FIRST = 2;
+
+    /**
+     * The pack stream.
+     */
+    private final ObjectOutputStream out;
+
+    /**
+     * The buffer that pack files are encoded to.
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    /**
+     * The encoder.
+     */
+    private final DataOutputStream data = new DataOutputStream(buffer);
+
+    /**
+     * The strings written so far, and their indexes.
+     */
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * The OS constraints and additional attributes written so far, and their indexes.
+     */
+    private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * The previous target path.
+     */
+    private String target = "";
+
+    /**
+     * The previous source path.
+     */
+    private String source = "";
+
+
+    /**
+     * Constructs a {@code PackFileWriter}.
+     *
+     * @param out the pack stream
+     */
+    public PackFileWriter(ObjectOutputStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Writes the pack stream header.
+     *
+     * @param count the no. of pack files that follow
+     * @throws IOException for any I/O error
+     */
+    public void writeHeader(int count) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(count);
+    }
+
+    /**
+     * Writes a pack file.
+     *
+     * @param file the pack file
+     * @throws IOException for any I/O error
+     */
+    public void write(PackFile file) throws IOException
+    {
+        buffer.reset();
+        int flags = 0;
+        if (file.isDirectory())
+        {
+            flags |= DIRECTORY;
+        }
+        if (file.isPack200Jar())
+        {
+            flags |= PACK200_JAR;
+        }
+        if (file.isBackReference())
+        {
+            flags |= BACK_REFERENCE;
+        }
+        if (file instanceof XPackFile)
+        {
+            flags |= ARCHIVE_POSITION;
+        }
+        if (file.isExecutable())
+        {
+            flags |= EXECUTABLE;
+        }
+        if (file.getDigest() != null)
+        {
+            flags |= DIGEST;
+        }
+        if (file.isRetained())
+        {
+            flags |= RETAINED;
+        }
+        if (file.isDelta())
+        {
+            flags |= DELTA;
+        }
+        writeVarLong(data, flags);
+        target = writePath(file.getTargetPath(), target);
+        source = writePath(file.getRelativeSourcePath(), source);
+        writeOsConstraints(file.osConstraints());
+        writeVarLong(data, file.length());
+        writeVarLong(data, (file.lastModified() << 1) ^ (file.lastModified() >> 63));
+        writeString(file.override() != null ? file.override().name() : null);
+        writeString(file.overrideRenameTo());
+        writeString(file.blockable() != null ? file.blockable().name() : null);
+        writeAdditionals(file.getAdditionals());
+        writeString(file.getCondition());
+        if (file.isBackReference())
+        {
+            writeString(file.previousPackId);
+            writeVarLong(data, file.offsetInPreviousPack);
+        }
+        if (file instanceof XPackFile)
+        {
+            writeVarLong(data, ((XPackFile) file).getArchiveFilePosition());
+        }
+        if (file.getDigest() != null)
+        {
+            writeVarLong(data, file.getDigest().length);
+            data.write(file.getDigest());
+        }
+        data.flush();
+        out.writeUnshared(buffer.toByteArray());
+    }
+
+    /**
+     * Writes an unsigned variable-length integer.
+     *
+     * @param out   the stream to write to
+     * @param value the value to write
+     * @throws IOException for any I/O error
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Writes a path as the length of the prefix it shares with the previous path, followed by the remainder.
+     *
+     * @param path     the path. May be {@code null}
+     * @param previous the previous path
+     * @return the path to compare the next path with
+     * @throws IOException for any I/O error
+     */
+    private String writePath(String path, String previous) throws IOException
+    {
+        if (path == null)
+        {
+            writeVarLong(data, NULL);
+            return previous;
+        }
+        int max = Math.min(path.length(), previous.length());
+        int shared = 0;
+        while (shared < max && path.charAt(shared) == previous.charAt(shared))
+        {
+            ++shared;
+        }
+        writeVarLong(data, shared + 1);
+        writeUTF(path.substring(shared));
+        return path;
+    }
+
+    /**
+     * Writes a string, or a reference to a string already written.
+     *
+     * @param value the string. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeVarLong(data, NULL);
+        }
+        else
+        {
+            Integer index = strings.get(value);
+            if (index != null)
+            {
+                writeVarLong(data, index + FIRST);
+            }
+            else
+            {
+                strings.put(value, strings.size());
+                writeVarLong(data, NEW);
+                writeUTF(value);
+            }
+        }
+    }
+
+    /**
+     * Writes OS constraints, or a reference to constraints already written.
+     *
+     * @param osList the OS constraints. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeOsConstraints(List<OsModel> osList) throws IOException
+    {
+        if (writeReference(osList))
+        {
+            writeVarLong(data, osList.size());
+            for (OsModel model : osList)
+            {
+                writeString(model.getArch());
+                writeString(model.getFamily());
+                writeString(model.getJre());
+                writeString(model.getName());
+                writeString(model.getVersion());
+            }
+        }
+    }
+
+    /**
+     * Writes additional attributes, or a reference to attributes already written.
+     * <p/>
+     * As attribute values may be of any type, they are written using Java serialization.
+     *
+     * @param additionals the additional attributes. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeAdditionals(Map additionals) throws IOException
+    {
+        if (writeReference(additionals))
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream stream = new ObjectOutputStream(bytes);
+            stream.writeObject(additionals);
+            stream.close();
+            writeVarLong(data, bytes.size());
+            bytes.writeTo(data);
+        }
+    }
+
+    /**
+     * Writes a reference to an object.
+     *
+     * @param object the object. May be {@code null}
+     * @return {@code true} if the object hasn't been written before, and must be written following the reference
+     * @throws IOException for any I/O error
+     */
+    private boolean writeReference(Object object) throws IOException
+    {
+        boolean result = false;
+        if (object == null)
+        {
+            writeVarLong(data, NULL);
+        }
+        else
+        {
+            Integer index = objects.get(object);
+            if (index != null)
+            {
+                writeVarLong(data, index + FIRST);
+            }
+            else
+            {
+                objects.put(object, objects.size());
+                writeVarLong(data, NEW);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a string as its UTF-8 encoded length, followed by its UTF-8 bytes.
+     *
+     * @param value the string
+     * @throws IOException for any I/O error
+     */
+    private void writeUTF(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes("UTF-8");
+        writeVarLong(data, bytes.length);
+        data.write(bytes);
+    }
+}
@@ -63,16 +63,15 @@ public class XPackFile extends PackFile implements Comparable<XPackFile>
 
     /**
      * Constructs an <tt>XPackFile</tt> from an {@link PackFile}.
+     * <p/>
+     * The pack file details are copied; the source file is not consulted, as it may be an archive entry.
      *
      * @param file the pack file
-     * @throws FileNotFoundException
      */
-    public XPackFile(PackFile file) throws FileNotFoundException
+    public XPackFile(PackFile file)
     {
-        super(new File(file.sourcePath), file.relativePath, file.getTargetPath(), file.osConstraints(),
-              file.override(), file.overrideRenameTo(), file.blockable(), file.getAdditionals());
+        super(file);
         this.position = 0;
-        this.setCondition(file.getCondition());
     }
 
     /**
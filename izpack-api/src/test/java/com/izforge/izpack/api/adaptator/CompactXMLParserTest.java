@@ -0,0 +1,228 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.adaptator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.izforge.izpack.api.adaptator.impl.CompactXMLElement;
+import com.izforge.izpack.api.adaptator.impl.CompactXMLParser;
+import com.izforge.izpack.api.adaptator.impl.XMLParser;
+
+
+/**
+ * Tests the {@link CompactXMLParser} and {@link CompactXMLElement}.
+ */
+public class CompactXMLParserTest
+{
+
+    /**
+     * Documents to compare the parsers with.
+     */
+    private static final String[] DOCUMENTS = {"short.xml", "shortcutSpec.xml", "partial.xml", "output.xml",
+            "linenumber/linenumber.xml", "linenumber/xinclude-linenumber.xml",
+            "xinclude/include-fragment-in-element-input.xml", "xinclude/include-fragment-only-input.xml",
+            "xinclude/include-in-element-input.xml", "xinclude/fallback-input.xml",
+            "xinclude/include-xml-as-text-input.xml", "xinclude/multiple-include-input.xml"};
+
+
+    /**
+     * Verifies that the parser produces the same tree as {@link XMLParser}.
+     */
+    @Test
+    public void testSameAsXMLParser()
+    {
+        for (String document : DOCUMENTS)
+        {
+            URL url = getClass().getResource(document);
+            IXMLElement expected = new XMLParser().parse(url);
+            IXMLElement actual = new CompactXMLParser().parse(url);
+            checkEqual(document, expected, actual);
+            checkFirstChildNamed(document, expected, actual);
+        }
+    }
+
+    /**
+     * Verifies that line numbers are recorded, including for included documents.
+     */
+    @Test
+    public void testLineNumber()
+    {
+        checkLineNumbers(new CompactXMLParser().parse(getClass().getResource("linenumber/linenumber.xml")));
+        checkLineNumbers(new CompactXMLParser().parse(
+                getClass().getResource("linenumber/xinclude-linenumber.xml")));
+
+        // included elements have the line number of the include
+        IXMLElement element = new CompactXMLParser().parse(
+                getClass().getResource("xinclude/multiple-include-input.xml"));
+        List<IXMLElement> children = element.getChildrenNamed("ffff");
+        assertEquals(2, children.size());
+        assertEquals(3, children.get(0).getLineNr());
+        assertEquals(4, children.get(1).getLineNr());
+    }
+
+    /**
+     * Verifies that children are looked up by name, for both small and large no.s of children.
+     */
+    @Test
+    public void testChildrenNamed()
+    {
+        StringBuilder xml = new StringBuilder("<packs>");
+        for (int i = 0; i < 100; ++i)
+        {
+            xml.append("<pack name=\"").append(i).append("\"><file src=\"").append(i).append("\"/></pack>");
+        }
+        xml.append("<description>packs</description></packs>");
+        IXMLElement packs = new CompactXMLParser().parse(xml.toString());
+
+        assertEquals(101, packs.getChildrenCount());
+        assertEquals(100, packs.getChildrenNamed("pack").size());
+        assertEquals("0", packs.getFirstChildNamed("pack").getAttribute("name"));
+        assertEquals("packs", packs.getFirstChildNamed("description").getContent());
+        assertEquals("0", packs.getFirstChildNamed("file").getAttribute("src"));  // all descendants are searched
+        assertNull(packs.getFirstChildNamed("unknown"));
+        assertEquals(0, packs.getChildrenNamed("file").size());  // only direct children are returned
+
+        IXMLElement pack = packs.getChildAtIndex(5);
+        assertEquals("5", pack.getFirstChildNamed("file").getAttribute("src"));
+
+        // verify the index is updated
+        packs.removeChild(packs.getFirstChildNamed("pack"));
+        assertEquals("1", packs.getFirstChildNamed("pack").getAttribute("name"));
+        IXMLElement added = new CompactXMLElement("info");
+        packs.addChild(added);
+        assertSame(added, packs.getFirstChildNamed("info"));
+        assertEquals(101, packs.getChildrenCount());
+    }
+
+    /**
+     * Verifies that attributes and content may be changed.
+     */
+    @Test
+    public void testChangeElement()
+    {
+        IXMLElement element = new CompactXMLParser().parse("<a x=\"1\" y=\"2\"><b/></a>");
+        element.setAttribute("x", "3");
+        element.setAttribute("z", "4");
+        element.removeAttribute("y");
+        assertEquals("3", element.getAttribute("x"));
+        assertEquals("4", element.getAttribute("z"));
+        assertNull(element.getAttribute("y"));
+        assertEquals(2, element.getAttributes().size());
+
+        assertNull(element.getContent());
+        element.setContent("text");
+        assertEquals("text", element.getContent());
+        assertEquals(0, element.getChildrenCount());
+
+        // verify the DOM copy
+        assertEquals("a", element.getElement().getNodeName());
+        assertEquals("3", element.getElement().getAttributes().getNamedItem("x").getNodeValue());
+        assertEquals("text", element.getElement().getTextContent());
+    }
+
+    /**
+     * Verifies that an {@link XMLException} is thrown for invalid documents.
+     */
+    @Test(expected = XMLException.class)
+    public void testXMLExceptionThrown()
+    {
+        InputStream input = getClass().getResourceAsStream("notvalid.xml");
+        new CompactXMLParser().parse(input, "notvalid.xml");
+    }
+
+    /**
+     * Verifies that an {@link XMLException} is thrown for invalid included documents.
+     */
+    @Test(expected = XMLException.class)
+    public void testXMLExceptionThrownXInclude()
+    {
+        new CompactXMLParser().parse(getClass().getResource("xinclude-notvalid.xml"));
+    }
+
+    private void checkEqual(String document, IXMLElement expected, IXMLElement actual)
+    {
+        String path = document + ":" + expected.getName();
+        assertEquals(path, expected.getName(), actual.getName());
+        assertEquals(path, expected.getAttributes(), actual.getAttributes());
+        assertEquals(path, expected.getContent(), actual.getContent());
+        assertEquals(path, expected.getLineNr(), actual.getLineNr());
+        List<IXMLElement> expectedChildren = expected.getChildren();
+        List<IXMLElement> actualChildren = actual.getChildren();
+        assertEquals(path, expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); ++i)
+        {
+            checkEqual(document, expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    /**
+     * Verifies that {@link IXMLElement#getFirstChildNamed(String)} finds the same element for the name of each
+     * descendant, for each element.
+     *
+     * @param document the document name
+     * @param expected the expected element
+     * @param actual   the actual element
+     */
+    private void checkFirstChildNamed(String document, IXMLElement expected, IXMLElement actual)
+    {
+        Set<String> names = new LinkedHashSet<String>();
+        addDescendantNames(expected, names);
+        for (String name : names)
+        {
+            String path = document + ":" + expected.getName() + "/" + name;
+            IXMLElement expectedChild = expected.getFirstChildNamed(name);
+            IXMLElement actualChild = actual.getFirstChildNamed(name);
+            assertEquals(path, expectedChild.getAttributes(), actualChild.getAttributes());
+            assertEquals(path, expectedChild.getLineNr(), actualChild.getLineNr());
+        }
+        for (int i = 0; i < expected.getChildrenCount(); ++i)
+        {
+            checkFirstChildNamed(document, expected.getChildAtIndex(i), actual.getChildAtIndex(i));
+        }
+    }
+
+    private void addDescendantNames(IXMLElement element, Set<String> names)
+    {
+        for (IXMLElement child : element.getChildren())
+        {
+            names.add(child.getName());
+            addDescendantNames(child, names);
+        }
+    }
+
+    private void checkLineNumbers(IXMLElement element)
+    {
+        assertEquals(Integer.parseInt(element.getAttribute("ln")), element.getLineNr());
+        for (IXMLElement child : element.getChildren())
+        {
+            checkLineNumbers(child);
+        }
+    }
+}
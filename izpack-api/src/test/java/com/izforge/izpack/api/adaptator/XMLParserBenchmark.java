@@ -0,0 +1,140 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.adaptator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+import com.izforge.izpack.api.adaptator.impl.XMLParser;
+
+
+/**
+ * Measures the parse throughput of {@link XMLParser}.
+ * <p/>
+ * This is not run as part of the build. To run it:
+ * <pre>
+ * mvn test -pl izpack-api -Dtest=XMLParserBenchmark
+ * </pre>
+ */
+public class XMLParserBenchmark
+{
+
+    /**
+     * The no. of untimed parses, to allow the JIT to warm up.
+     */
+    private static final int WARMUP = 20;
+
+    /**
+     * The no. of timed parses.
+     */
+    private static final int ITERATIONS = 50;
+
+    /**
+     * Measures the throughput of parsing a large installation descriptor.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testInstallation() throws Exception
+    {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<izpack:installation version=\"5.0\" xmlns:izpack=\"http://izpack.org/schema/installation\">\n");
+        xml.append("  <info><appname>Benchmark</appname><appversion>1.0</appversion></info>\n");
+        xml.append("  <packs>\n");
+        for (int i = 0; i < 200; ++i)
+        {
+            xml.append("    <pack name=\"pack").append(i).append("\" required=\"no\" condition=\"cond").append(i)
+                    .append("\">\n");
+            xml.append("      <description>Pack ").append(i).append("</description>\n");
+            for (int j = 0; j < 25; ++j)
+            {
+                xml.append("      <file src=\"lib/file").append(j).append(".jar\" targetdir=\"$INSTALL_PATH/lib")
+                        .append(i).append("\" override=\"update\"/>\n");
+            }
+            xml.append("      <parsable targetfile=\"$INSTALL_PATH/conf").append(i).append(".properties\"/>\n");
+            xml.append("    </pack>\n");
+        }
+        xml.append("  </packs>\n");
+        xml.append("</izpack:installation>\n");
+        run("installation", xml.toString(), 200);
+    }
+
+    /**
+     * Measures the throughput of parsing a language pack.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testLangpack() throws Exception
+    {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\" ?>\n");
+        xml.append("<izpack:langpack version=\"5.0\" xmlns:izpack=\"http://izpack.org/schema/langpack\">\n");
+        for (int i = 0; i < 2000; ++i)
+        {
+            xml.append("  <str id=\"Panel.message").append(i).append("\" txt=\"The text for message ").append(i)
+                    .append(", which is about as long as a typical message\"/>\n");
+        }
+        xml.append("</izpack:langpack>\n");
+        run("langpack", xml.toString(), 2000);
+    }
+
+    /**
+     * Parses a document repeatedly, printing the throughput.
+     *
+     * @param name     the document name
+     * @param xml      the document
+     * @param children the expected no. of child elements of the root element
+     * @throws UnsupportedEncodingException if UTF-8 is not supported
+     */
+    private void run(String name, String xml, int children) throws UnsupportedEncodingException
+    {
+        byte[] bytes = xml.getBytes("UTF-8");
+        for (int i = 0; i < WARMUP; ++i)
+        {
+            parse(bytes, children);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i)
+        {
+            parse(bytes, children);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %d bytes, %.1f parses/s, %.2f MB/s", name, bytes.length,
+                                         ITERATIONS / seconds, ITERATIONS * bytes.length / seconds / (1024 * 1024)));
+    }
+
+    /**
+     * Parses a document, using a new parser as the installer and compiler do.
+     *
+     * @param bytes    the document
+     * @param children the expected no. of child elements of the root element
+     */
+    private void parse(byte[] bytes, int children)
+    {
+        IXMLElement root = new XMLParser().parse(new ByteArrayInputStream(bytes));
+        IXMLElement parent = (root.getFirstChildNamed("packs") != null) ? root.getFirstChildNamed("packs") : root;
+        assertEquals(children, parent.getChildrenCount());
+    }
+}
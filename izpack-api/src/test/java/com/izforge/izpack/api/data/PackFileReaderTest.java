@@ -0,0 +1,230 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.izforge.izpack.api.data.binding.OsModel;
+
+
+/**
+ * Tests the {@link PackFileReader} and {@link PackFileWriter}.
+ */
+public class PackFileReaderTest
+{
+
+    /**
+     * Verifies that pack files and the content between them are read back as written.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testReadWrite() throws Exception
+    {
+        List<OsModel> unix = Arrays.asList(new OsModel(null, "unix", null, null, null));
+        Map<String, String> additionals = new HashMap<String, String>();
+        additionals.put("key", "value");
+
+        PackFile dir = createFile("lib", "$INSTALL_PATH/lib", null, 0, null);
+        PackFile file1 = createFile("lib/a.jar", "$INSTALL_PATH/lib/a.jar", unix, 3, additionals);
+        file1.setCondition("haveA");
+        file1.setPack200Jar(true);
+        file1.setExecutable(true);
+        file1.setDigest(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+        PackFile file2 = createFile("lib/b.jar", "$INSTALL_PATH/lib/b.jar", unix, 5, additionals);
+        file2.setCondition("haveA");
+        file2.setPreviousPackFileRef("Base", 1234L);
+        file2.setRetained(true);
+        file2.setDelta(true);
+        XPackFile file3 = new XPackFile(createFile(null, "$INSTALL_PATH/doc/readme", null, 4, null));
+        file3.setArchiveFilePosition(99);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        PackFileWriter writer = new PackFileWriter(out);
+        writer.writeHeader(4);
+        writer.write(dir);
+        writer.write(file1);
+        out.write(new byte[]{1, 2, 3});
+        writer.write(file2);
+        writer.write(file3);
+        out.write(new byte[]{4, 5, 6, 7});
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        PackFileReader reader = new PackFileReader(in);
+        assertEquals(4, reader.readHeader());
+        assertTrue(reader.isCompact());
+
+        checkFile(dir, reader.read());
+        PackFile read1 = reader.read();
+        checkFile(file1, read1);
+        byte[] content = new byte[3];
+        in.readFully(content);
+        assertArrayEquals(new byte[]{1, 2, 3}, content);
+        PackFile read2 = reader.read();
+        checkFile(file2, read2);
+        assertSame(read1.osConstraints(), read2.osConstraints());
+        assertSame(read1.getAdditionals(), read2.getAdditionals());
+        PackFile read3 = reader.read();
+        checkFile(file3, read3);
+        assertEquals(99, ((XPackFile) read3).getArchiveFilePosition());
+        content = new byte[4];
+        in.readFully(content);
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, content);
+        in.close();
+    }
+
+    /**
+     * Verifies that pack streams with serialized pack files can still be read.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testReadSerialized() throws Exception
+    {
+        PackFile file = createFile("a.txt", "$INSTALL_PATH/a.txt", null, 2, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(1);
+        out.writeObject(file);
+        out.write(new byte[]{1, 2});
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        PackFileReader reader = new PackFileReader(in);
+        assertEquals(1, reader.readHeader());
+        assertFalse(reader.isCompact());
+        checkFile(file, reader.read());
+        assertEquals(1, in.read());
+        in.close();
+    }
+
+    /**
+     * Verifies that the compact format is smaller than serializing each pack file.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSize() throws Exception
+    {
+        List<OsModel> unix = Arrays.asList(new OsModel(null, "unix", null, null, null));
+        List<PackFile> files = new ArrayList<PackFile>();
+        for (int i = 0; i < 1000; ++i)
+        {
+            String path = "lib/module" + (i / 100) + "/file" + i + ".txt";
+            files.add(createFile(path, "$INSTALL_PATH/" + path, unix, i, null));
+        }
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(compact);
+        PackFileWriter writer = new PackFileWriter(out);
+        writer.writeHeader(files.size());
+        for (PackFile file : files)
+        {
+            writer.write(file);
+        }
+        out.close();
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        out = new ObjectOutputStream(serialized);
+        out.writeInt(files.size());
+        for (PackFile file : files)
+        {
+            out.writeObject(file);
+        }
+        out.close();
+
+        assertTrue(compact.size() * 2 < serialized.size());
+    }
+
+    /**
+     * Verifies a pack file matches that expected.
+     *
+     * @param expected the expected pack file
+     * @param actual   the actual pack file
+     */
+    private void checkFile(PackFile expected, PackFile actual)
+    {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getRelativeSourcePath(), actual.getRelativeSourcePath());
+        assertEquals(expected.getTargetPath(), actual.getTargetPath());
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.lastModified(), actual.lastModified());
+        assertEquals(expected.isDirectory(), actual.isDirectory());
+        assertEquals(expected.override(), actual.override());
+        assertEquals(expected.overrideRenameTo(), actual.overrideRenameTo());
+        assertEquals(expected.blockable(), actual.blockable());
+        assertEquals(expected.getAdditionals(), actual.getAdditionals());
+        assertEquals(expected.getCondition(), actual.getCondition());
+        assertEquals(expected.isPack200Jar(), actual.isPack200Jar());
+        assertEquals(expected.isExecutable(), actual.isExecutable());
+        assertArrayEquals(expected.getDigest(), actual.getDigest());
+        assertEquals(expected.isRetained(), actual.isRetained());
+        assertEquals(expected.isDelta(), actual.isDelta());
+        assertEquals(expected.previousPackId, actual.previousPackId);
+        assertEquals(expected.offsetInPreviousPack, actual.offsetInPreviousPack);
+        if (expected.osConstraints() == null)
+        {
+            assertNull(actual.osConstraints());
+        }
+        else
+        {
+            assertEquals(expected.osConstraints().size(), actual.osConstraints().size());
+            for (int i = 0; i < expected.osConstraints().size(); ++i)
+            {
+                assertEquals(expected.osConstraints().get(i).toString(), actual.osConstraints().get(i).toString());
+            }
+        }
+    }
+
+    /**
+     * Creates a pack file.
+     *
+     * @param source      the relative source path. May be {@code null}
+     * @param target      the target path
+     * @param osList      the OS constraints. May be {@code null}
+     * @param length      the file length
+     * @param additionals the additional attributes. May be {@code null}
+     * @return a new pack file
+     */
+    private PackFile createFile(String source, String target, List<OsModel> osList, long length, Map additionals)
+    {
+        return new PackFile(source, target, osList, length, 1262304000000L + length, length == 0,
+                            OverrideType.OVERRIDE_UPDATE, null, Blockable.BLOCKABLE_NONE, additionals);
+    }
+}
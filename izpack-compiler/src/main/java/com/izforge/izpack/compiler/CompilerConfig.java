@@ -57,7 +57,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -111,6 +110,7 @@ import com.izforge.izpack.core.variable.RegistryValue;
 import com.izforge.izpack.core.variable.ZipEntryConfigFileValue;
 import com.izforge.izpack.core.variable.filters.LocationFilter;
 import com.izforge.izpack.core.variable.filters.RegularExpressionFilter;
+import com.izforge.izpack.data.ArchiveEntryFile;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.data.PackInfo;
@@ -125,7 +125,6 @@ import com.izforge.izpack.panels.install.InstallPanel;
 import com.izforge.izpack.panels.treepacks.PackValidator;
 import com.izforge.izpack.panels.userinput.UserInputPanel;
 import com.izforge.izpack.util.FileUtil;
-import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.OsConstraintHelper;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.file.DirectoryScanner;
@@ -944,9 +943,10 @@ public class CompilerConfig extends Thread
         {
             try
             {
+                DirectoryScanner scanner = fs.getDirectoryScanner();
                 String[][] includedFilesAndDirs = new String[][] {
-                        fs.getDirectoryScanner().getIncludedDirectories(),
-                        fs.getDirectoryScanner().getIncludedFiles()};
+                        scanner.getIncludedDirectories(),
+                        scanner.getIncludedFiles()};
                 for (String[] filesOrDirs : includedFilesAndDirs)
                 {
                     if (filesOrDirs != null)
@@ -1071,8 +1071,9 @@ public class CompilerConfig extends Thread
                 }
 
                 LinkedList<String> srcfiles = new LinkedList<String>();
-                Collections.addAll(srcfiles, fs.getDirectoryScanner().getIncludedDirectories());
-                Collections.addAll(srcfiles, fs.getDirectoryScanner().getIncludedFiles());
+                DirectoryScanner scanner = fs.getDirectoryScanner();
+                Collections.addAll(srcfiles, scanner.getIncludedDirectories());
+                Collections.addAll(srcfiles, scanner.getIncludedFiles());
                 for (String filePath : srcfiles)
                 {
                     if (!filePath.isEmpty())
@@ -1433,58 +1434,29 @@ public class CompilerConfig extends Thread
             throws IOException
     {
 
-        FileInputStream fin = new FileInputStream(archive);
-        ZipInputStream zin = new ZipInputStream(fin);
-        List<String> allDirList = new ArrayList<String>();
-        while (true)
+        // entries are streamed from the archive when the pack is written, so there is no need to extract them.
+        // Directories are added after files, so that empty directories are created
+        List<ArchiveEntryFile> directories = new ArrayList<ArchiveEntryFile>();
+        for (ArchiveEntryFile entry : ArchiveEntryFile.list(archive))
         {
-            ZipEntry zentry = zin.getNextEntry();
-            if (zentry == null)
+            if (entry.isDirectory())
             {
-                break;
-            }
-            if (zentry.isDirectory())
-            {
-                // add to all dir listing/empty dir needs to be handle
-                String dName = zentry.getName().substring(0, zentry.getName().length() - 1);
-                allDirList.add(dName);
+                directories.add(entry);
                 continue;
             }
-
-            try
-            {
-                File temp = FileUtils.createTempFile("izpack", null);
-                temp.deleteOnExit();
-
-                FileOutputStream out = new FileOutputStream(temp);
-                IoHelper.copyStream(zin, out);
-                out.close();
-
-                String target = targetdir + "/" + zentry.getName();
-                logger.info("Adding file " + zentry.getName() + " from archive as target file="
-                        + target);
-                pack.addFile(baseDir, temp, target, osList, override, overrideRenameTo, blockable,
-                        additionals, condition);
-            }
-            catch (IOException e)
-            {
-                throw new IOException("Couldn't create temporary file for " + zentry.getName()
-                        + " in archive " + archive + " (" + e.getMessage() + ")");
-            }
-
+            String target = targetdir + "/" + entry.getEntryName();
+            logger.info("Adding file " + entry.getEntryName() + " from archive as target file=" + target);
+            pack.addFile(baseDir, entry, target, osList, override, overrideRenameTo, blockable, additionals,
+                         condition);
         }
 
-        for (String dirName : allDirList)
+        for (ArchiveEntryFile entry : directories)
         {
-            File tmp = new File(dirName);
-            if (!tmp.mkdirs()) { throw new CompilerException("Failed to create directory: " + tmp); }
-            tmp.deleteOnExit();
-            String target = targetdir + "/" + dirName;
-            logger.info("Adding file: " + tmp + ", as target file=" + target);
-            pack.addFile(baseDir, tmp, target, osList, override, overrideRenameTo, blockable,
-                    additionals, condition);
+            String target = targetdir + "/" + entry.getEntryName();
+            logger.info("Adding directory " + entry.getEntryName() + " from archive as target file=" + target);
+            pack.addFile(baseDir, entry, target, osList, override, overrideRenameTo, blockable, additionals,
+                         condition);
         }
-        fin.close();
     }
 
     /**
@@ -2361,6 +2333,20 @@ public class CompilerConfig extends Thread
                 dynamicVariable.setCheckonce(Boolean.valueOf(value));
             }
 
+            // Check whether the evaluated value of the dynamic variable may be reused for a time
+            value = var.getAttribute("ttl");
+            if (value != null)
+            {
+                try
+                {
+                    dynamicVariable.setTimeToLive(Long.parseLong(value));
+                }
+                catch (NumberFormatException exception)
+                {
+                    assertionHelper.parseError(var, "Invalid ttl for dynamic variable " + name + ": " + value);
+                }
+            }
+
             // Check whether evaluation failures of the dynamic variable should be ignored
             value = var.getAttribute("ignorefailure");
             if (value != null)
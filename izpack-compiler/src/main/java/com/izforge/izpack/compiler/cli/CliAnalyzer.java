@@ -45,6 +45,9 @@ public class CliAnalyzer {
     private static final String ARG_OUTPUT = "o";
     private static final String ARG_COMPRESSION_FORMAT = "c";
     private static final String ARG_COMPRESSION_LEVEL = "l";
+    private static final String ARG_PACK_THREADS = "t";
+    private static final String ARG_BUILD_CACHE = "d";
+    private static final String ARG_PATCH_BASE = "p";
 
 
     /**
@@ -63,9 +66,15 @@ public class CliAnalyzer {
         options.addOption(ARG_KIND, true, "kind : indicates the kind of installer to generate, default is standard");
         options.addOption(ARG_OUTPUT, true, "out  : indicates the output file name default is the xml file name\n");
         options.addOption(ARG_COMPRESSION_FORMAT, true, "compression : indicates the compression format to be used for packs " +
-                "default is the internal deflate compression\n");
+                "(default, bzip2, lz4 or raw). default is the internal deflate compression\n");
         options.addOption(ARG_COMPRESSION_LEVEL, true, "compression-level : indicates the level for the used compression format"
                 + " if supported. Only integer are valid\n");
+        options.addOption(ARG_PACK_THREADS, true, "threads : indicates the number of threads used to compress packs."
+                + " Default is 1. Use 0 to use one thread per processor\n");
+        options.addOption(ARG_BUILD_CACHE, true, "cache : indicates a directory in which to cache compressed packs."
+                + " Packs that are unchanged since the previous build are not compressed again\n");
+        options.addOption(ARG_PATCH_BASE, true, "patch : indicates a previous installer jar to create a patch installer"
+                + " for. Only files added or changed since that installer are stored\n");
         return options;
     }
 
@@ -109,6 +118,13 @@ public class CliAnalyzer {
         System.out.println("-> Kind        : " + result.getKind());
         System.out.println("-> Compression : " + result.getComprFormat());
         System.out.println("-> Compr. level: " + result.getComprLevel());
+        System.out.println("-> Threads     : " + result.getPackThreads());
+        if (result.getBuildCache() != null) {
+            System.out.println("-> Build cache : " + result.getBuildCache());
+        }
+        if (result.getPatchBase() != null) {
+            System.out.println("-> Patch for   : " + result.getPatchBase());
+        }
         System.out.println("-> IzPack home : " + CompilerData.IZPACK_HOME);
         System.out.println("");
     }
@@ -164,6 +180,15 @@ public class CliAnalyzer {
         if (commandLine.hasOption(ARG_COMPRESSION_LEVEL)) {
             compilerData.setComprLevel(Integer.parseInt(commandLine.getOptionValue(ARG_COMPRESSION_LEVEL).trim()));
         }
+        if (commandLine.hasOption(ARG_PACK_THREADS)) {
+            compilerData.setPackThreads(Integer.parseInt(commandLine.getOptionValue(ARG_PACK_THREADS).trim()));
+        }
+        if (commandLine.hasOption(ARG_BUILD_CACHE)) {
+            compilerData.setBuildCache(commandLine.getOptionValue(ARG_BUILD_CACHE).trim());
+        }
+        if (commandLine.hasOption(ARG_PATCH_BASE)) {
+            compilerData.setPatchBase(commandLine.getOptionValue(ARG_PATCH_BASE).trim());
+        }
         if (commandLine.hasOption(ARG_IZPACK_HOME)) {
             CompilerData.setIzpackHome(commandLine.getOptionValue(ARG_IZPACK_HOME).trim());
         }
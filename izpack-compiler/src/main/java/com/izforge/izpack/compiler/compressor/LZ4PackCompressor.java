@@ -0,0 +1,48 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.compressor;
+
+
+/**
+ * IzPack will be able to support different compression methods for the
+ * packs included in the installation jar file.
+ * This class implements the PackCompressor for the compression format "lz4".
+ * <p/>
+ * LZ4 compresses less than deflate, but decompresses several times faster. The encoder and decoder are part of
+ * IzPack core, which is always included in the installer.
+ */
+public class LZ4PackCompressor extends PackCompressorBase
+{
+
+    private static final String[] THIS_FORMAT_NAMES = {"lz4"};
+    private static final String THIS_DECODER_MAPPER = "com.izforge.izpack.core.io.LZ4InputStream";
+    private static final String THIS_ENCODER_CLASS_NAME = "com.izforge.izpack.core.io.LZ4OutputStream";
+
+    /**
+     *
+     */
+    public LZ4PackCompressor()
+    {
+        formatNames = THIS_FORMAT_NAMES;
+        decoderMapper = THIS_DECODER_MAPPER;
+        encoderClassName = THIS_ENCODER_CLASS_NAME;
+    }
+
+}
@@ -23,6 +23,7 @@ import org.picocontainer.injectors.Provider;
 
 import com.izforge.izpack.compiler.compressor.BZip2PackCompressor;
 import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
+import com.izforge.izpack.compiler.compressor.LZ4PackCompressor;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.compressor.RawPackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
@@ -42,6 +43,10 @@ public class PackCompressorProvider implements Provider
         {
             return new BZip2PackCompressor(mergeManager);
         }
+        else if (format.equals("lz4"))
+        {
+            return new LZ4PackCompressor();
+        }
         else if (format.equals("raw"))
         {
             return new RawPackCompressor();
@@ -52,6 +52,11 @@ public class CompilerData
      */
     public final static String WEB = "web";
 
+    /**
+     * The default length from which files are delta encoded by patch installers.
+     */
+    public final static long DEFAULT_DELTA_THRESHOLD = 1024 * 1024;
+
 
     private String comprFormat = "default";
 
@@ -90,6 +95,26 @@ public class CompilerData
      */
     private int comprLevel = -1;
 
+    /**
+     * The no. of threads used to compress packs. Values less than {@code 1} select one thread per processor.
+     */
+    private int packThreads = 1;
+
+    /**
+     * The directory used to cache compressed packs between builds. May be {@code null}.
+     */
+    private String buildCache;
+
+    /**
+     * The previous installer that a patch installer is created for.
+     */
+    private String patchBase;
+
+    /**
+     * The length from which files are delta encoded by patch installers.
+     */
+    private long deltaThreshold = DEFAULT_DELTA_THRESHOLD;
+
     /**
      * External Information
      */
@@ -228,6 +253,99 @@ public class CompilerData
         this.comprLevel = comprLevel;
     }
 
+    /**
+     * Returns the no. of threads used to compress packs.
+     *
+     * @return the no. of pack compression threads. Always at least {@code 1}
+     */
+    public int getPackThreads()
+    {
+        return (packThreads < 1) ? Runtime.getRuntime().availableProcessors() : packThreads;
+    }
+
+    /**
+     * Sets the no. of threads used to compress packs.
+     * <p/>
+     * If more than one thread is used, each pack is compressed separately and stored in the installer.
+     *
+     * @param packThreads the no. of threads. Values less than {@code 1} select one thread per processor
+     */
+    public void setPackThreads(int packThreads)
+    {
+        this.packThreads = packThreads;
+    }
+
+    /**
+     * Returns the directory used to cache compressed packs between builds.
+     *
+     * @return the build cache directory, or {@code null} if packs aren't cached
+     */
+    public String getBuildCache()
+    {
+        return buildCache;
+    }
+
+    /**
+     * Sets the directory used to cache compressed packs between builds.
+     * <p/>
+     * Packs whose inputs are unchanged since they were cached are stored in the installer without being compressed
+     * again. As with multiple pack threads, each pack is compressed separately.
+     *
+     * @param buildCache the build cache directory. May be {@code null} to disable caching
+     */
+    public void setBuildCache(String buildCache)
+    {
+        this.buildCache = buildCache;
+    }
+
+    /**
+     * Returns the previous installer that a patch installer is created for.
+     *
+     * @return the path of the previous installer jar, or {@code null} if a full installer is created
+     */
+    public String getPatchBase()
+    {
+        return patchBase;
+    }
+
+    /**
+     * Sets the previous installer that a patch installer is created for.
+     * <p/>
+     * The patch installer only stores the files that were added or changed since the previous installer, and
+     * deletes files that were removed. It can only update installations made by the previous installer, or a later
+     * one with the same files.
+     *
+     * @param patchBase the path of the previous installer jar. May be {@code null} to create a full installer
+     */
+    public void setPatchBase(String patchBase)
+    {
+        this.patchBase = patchBase;
+    }
+
+    /**
+     * Returns the length from which files are delta encoded by patch installers.
+     *
+     * @return the length, or {@code -1} if files are never delta encoded
+     */
+    public long getDeltaThreshold()
+    {
+        return deltaThreshold;
+    }
+
+    /**
+     * Sets the length from which files are delta encoded by patch installers.
+     * <p/>
+     * The pack manifest of an installer records the block signatures of files at least this long. A patch installer
+     * stores a delta for a changed file if the previous installer recorded the signatures of the file, and the delta
+     * is smaller than the file.
+     *
+     * @param deltaThreshold the length, or {@code -1} to never delta encode files
+     */
+    public void setDeltaThreshold(long deltaThreshold)
+    {
+        this.deltaThreshold = deltaThreshold;
+    }
+
     public Info getExternalInfo()
     {
         return this.externalInfo;
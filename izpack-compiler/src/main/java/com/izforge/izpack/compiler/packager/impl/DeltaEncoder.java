@@ -0,0 +1,293 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.data.BlockSignatures;
+import com.izforge.izpack.data.Delta;
+
+
+/**
+ * Encodes a file as a {@link Delta} against an earlier version of it, given only the earlier version's
+ * {@link BlockSignatures}.
+ * <p/>
+ * A window the size of a block is rolled over the file a byte at a time. Where the window's weak and strong
+ * checksums match a block of the base, the block is copied from the base, otherwise the bytes are inserted.
+ */
+class DeltaEncoder
+{
+
+    /**
+     * The minimum size of the buffer the file is read into.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The signatures of the base.
+     */
+    private final BlockSignatures base;
+
+    /**
+     * The SHA-1 digest of the base.
+     */
+    private final byte[] baseDigest;
+
+    /**
+     * The indexes of the full size blocks of the base, keyed on weak checksum.
+     */
+    private final Map<Integer, List<Integer>> blocks = new HashMap<Integer, List<Integer>>();
+
+    /**
+     * The digest used to compute strong checksums.
+     */
+    private final MessageDigest digest = BlockSignatures.getDigest();
+
+    /**
+     * The delta stream.
+     */
+    private DataOutputStream out;
+
+    /**
+     * The first block of the pending copy.
+     */
+    private int copyStart;
+
+    /**
+     * The no. of blocks of the pending copy.
+     */
+    private int copyCount;
+
+
+    /**
+     * Constructs a {@code DeltaEncoder}.
+     *
+     * @param base       the signatures of the base
+     * @param baseDigest the SHA-1 digest of the base
+     */
+    public DeltaEncoder(BlockSignatures base, byte[] baseDigest)
+    {
+        this.base = base;
+        this.baseDigest = baseDigest;
+        for (int i = 0; i < base.getBlocks(); ++i)
+        {
+            if (base.getBlockLength(i) == base.getBlockSize())
+            {
+                List<Integer> list = blocks.get(base.getWeak(i));
+                if (list == null)
+                {
+                    list = new ArrayList<Integer>(1);
+                    blocks.put(base.getWeak(i), list);
+                }
+                list.add(i);
+            }
+        }
+    }
+
+    /**
+     * Encodes a file.
+     *
+     * @param in     the file content. This isn't closed
+     * @param stream the stream to write the delta to. This is flushed but not closed
+     * @throws IOException for any I/O error
+     */
+    public void encode(InputStream in, OutputStream stream) throws IOException
+    {
+        out = new DataOutputStream(stream);
+        copyCount = 0;
+        out.writeInt(Delta.VERSION);
+        out.writeLong(base.getLength());
+        out.writeByte(baseDigest.length);
+        out.write(baseDigest);
+        out.writeInt(base.getBlockSize());
+
+        int size = base.getBlockSize();
+        byte[] buffer = new byte[Math.max(4 * size, BUFFER_SIZE)];
+        int end = 0;
+        int pos = 0;
+        int literal = 0;
+        boolean eof = false;
+        boolean rolling = false;
+        int checksum = 0;
+        while (true)
+        {
+            if (end - pos <= size && !eof)
+            {
+                // move the window to the start of the buffer and fill the rest
+                insert(buffer, literal, pos);
+                System.arraycopy(buffer, pos, buffer, 0, end - pos);
+                end -= pos;
+                pos = 0;
+                literal = 0;
+                while (end < buffer.length)
+                {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read == -1)
+                    {
+                        eof = true;
+                        break;
+                    }
+                    end += read;
+                }
+                continue;
+            }
+            if (end - pos < size)
+            {
+                break;
+            }
+            if (!rolling)
+            {
+                checksum = BlockSignatures.weak(buffer, pos, size);
+                rolling = true;
+            }
+            int block = find(checksum, buffer, pos, size);
+            if (block != -1)
+            {
+                insert(buffer, literal, pos);
+                copy(block);
+                pos += size;
+                literal = pos;
+                rolling = false;
+            }
+            else if (end - pos > size)
+            {
+                checksum = BlockSignatures.roll(checksum, buffer[pos], buffer[pos + size], size);
+                ++pos;
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        // the last block of the base may be shorter than the others
+        int last = base.getBlocks() - 1;
+        int remaining = end - pos;
+        if (last >= 0 && remaining > 0 && remaining == base.getBlockLength(last) && remaining < size
+                && BlockSignatures.weak(buffer, pos, remaining) == base.getWeak(last)
+                && Arrays.equals(BlockSignatures.strong(digest, buffer, pos, remaining), base.getStrong(last)))
+        {
+            insert(buffer, literal, pos);
+            copy(last);
+            literal = end;
+        }
+        insert(buffer, literal, end);
+        flushCopy();
+        out.writeByte(Delta.END);
+        out.flush();
+    }
+
+    /**
+     * Finds the block of the base matching a window.
+     *
+     * @param checksum the weak checksum of the window
+     * @param buffer   the buffer containing the window
+     * @param pos      the offset of the window in the buffer
+     * @param size     the window size
+     * @return the matching block, or {@code -1} if none matches
+     */
+    private int find(int checksum, byte[] buffer, int pos, int size)
+    {
+        List<Integer> candidates = blocks.get(checksum);
+        if (candidates == null)
+        {
+            return -1;
+        }
+        byte[] strong = BlockSignatures.strong(digest, buffer, pos, size);
+        int result = -1;
+        for (int candidate : candidates)
+        {
+            if (Arrays.equals(strong, base.getStrong(candidate)))
+            {
+                result = candidate;
+                if (copyCount > 0 && candidate == copyStart + copyCount)
+                {
+                    // prefer the block that extends the pending copy
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies a block of the base, extending the pending copy if the block follows it.
+     *
+     * @param block the block
+     * @throws IOException for any I/O error
+     */
+    private void copy(int block) throws IOException
+    {
+        if (copyCount > 0 && block == copyStart + copyCount)
+        {
+            ++copyCount;
+        }
+        else
+        {
+            flushCopy();
+            copyStart = block;
+            copyCount = 1;
+        }
+    }
+
+    /**
+     * Writes the pending copy, if any.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void flushCopy() throws IOException
+    {
+        if (copyCount > 0)
+        {
+            out.writeByte(Delta.COPY);
+            out.writeInt(copyStart);
+            out.writeInt(copyCount);
+            copyCount = 0;
+        }
+    }
+
+    /**
+     * Inserts bytes, if any.
+     *
+     * @param buffer the buffer containing the bytes
+     * @param start  the offset of the first byte
+     * @param end    the offset after the last byte
+     * @throws IOException for any I/O error
+     */
+    private void insert(byte[] buffer, int start, int end) throws IOException
+    {
+        if (end > start)
+        {
+            flushCopy();
+            out.writeByte(Delta.INSERT);
+            out.writeInt(end - start);
+            out.write(buffer, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import com.izforge.izpack.data.ArchiveEntryFile;
+
+
+/**
+ * A persistent cache of source file digests, stored in the build cache directory, used to avoid digesting files that
+ * haven't changed since a previous build.
+ * <p/>
+ * A cached digest is used if the file's path, length and modification time are unchanged. As a file can be modified
+ * again within the resolution of its modification time, digests of files modified shortly before they were digested
+ * aren't cached. Files within archives are always digested.
+ */
+class DigestCache
+{
+
+    /**
+     * The cache format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The name of the file containing the digests.
+     */
+    private static final String DIGESTS = "digests";
+
+    /**
+     * The time within which a file modified before being digested may have been modified again without its
+     * modification time changing, in milliseconds.
+     */
+    private static final long RESOLUTION = 2000;
+
+    /**
+     * The cache file.
+     */
+    private final File file;
+
+    /**
+     * The cached digests, keyed on absolute path.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * The no. of digests read from the cache.
+     */
+    private int hits;
+
+
+    /**
+     * Constructs a {@code DigestCache}, reading any digests cached by a previous build.
+     * <p/>
+     * A missing or unreadable cache is treated as empty.
+     *
+     * @param directory the cache directory. This is created if it doesn't exist
+     * @throws IOException if the directory cannot be created
+     */
+    public DigestCache(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Failed to create build cache directory: " + directory);
+        }
+        file = new File(directory, DIGESTS);
+        if (file.exists())
+        {
+            DataInputStream in = null;
+            try
+            {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (in.readInt() == VERSION)
+                {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; ++i)
+                    {
+                        String path = in.readUTF();
+                        long length = in.readLong();
+                        long lastModified = in.readLong();
+                        byte[] digest = new byte[in.readUnsignedByte()];
+                        in.readFully(digest);
+                        entries.put(path, new Entry(length, lastModified, digest));
+                    }
+                }
+            }
+            catch (IOException ignore)
+            {
+                // treat as not cached
+                entries.clear();
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of a file, digesting it if it has changed since it was cached.
+     *
+     * @param source the file
+     * @param digest the digest to use
+     * @return the file digest
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] digest(File source, MessageDigest digest) throws IOException
+    {
+        if (source instanceof ArchiveEntryFile)
+        {
+            return PackFileReferences.digest(source, digest);
+        }
+        String path = source.getAbsolutePath();
+        long length = source.length();
+        long lastModified = source.lastModified();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified)
+        {
+            ++hits;
+            return entry.digest;
+        }
+        long now = System.currentTimeMillis();
+        byte[] result = PackFileReferences.digest(source, digest);
+        if (lastModified < now - RESOLUTION && source.length() == length && source.lastModified() == lastModified)
+        {
+            entries.put(path, new Entry(length, lastModified, result));
+        }
+        else
+        {
+            entries.remove(path);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the no. of digests read from the cache.
+     *
+     * @return the no. of cache hits
+     */
+    public int getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Writes the cache, excluding files that no longer exist.
+     * <p/>
+     * The cache is written to a temporary file which is then renamed, so that concurrent builds never see a
+     * partially written cache.
+     *
+     * @throws IOException if the cache cannot be written
+     */
+    public void save() throws IOException
+    {
+        File temp = File.createTempFile(DIGESTS, ".tmp", file.getParentFile());
+        boolean success = false;
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try
+            {
+                Map<String, Entry> existing = new HashMap<String, Entry>();
+                for (Map.Entry<String, Entry> entry : entries.entrySet())
+                {
+                    if (new File(entry.getKey()).isFile())
+                    {
+                        existing.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                out.writeInt(VERSION);
+                out.writeInt(existing.size());
+                for (Map.Entry<String, Entry> entry : existing.entrySet())
+                {
+                    Entry value = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(value.length);
+                    out.writeLong(value.lastModified);
+                    out.writeByte(value.digest.length);
+                    out.write(value.digest);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            file.delete();
+            success = temp.renameTo(file);
+            if (!success)
+            {
+                throw new IOException("Failed to write digest cache: " + file);
+            }
+        }
+        finally
+        {
+            if (!success)
+            {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * A cached digest.
+     */
+    private static class Entry
+    {
+
+        /**
+         * The file length.
+         */
+        private final long length;
+
+        /**
+         * The file modification time.
+         */
+        private final long lastModified;
+
+        /**
+         * The file digest.
+         */
+        private final byte[] digest;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param length       the file length
+         * @param lastModified the file modification time
+         * @param digest       the file digest
+         */
+        public Entry(long length, long lastModified, byte[] digest)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
@@ -21,21 +21,38 @@
  */
 package com.izforge.izpack.compiler.packager.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.tools.zip.ZipEntry;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
+import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileWriter;
 import com.izforge.izpack.api.data.XPackFile;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
@@ -43,6 +60,7 @@ import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
 import com.izforge.izpack.core.io.FileSpanningOutputStream;
+import com.izforge.izpack.data.ArchiveEntryFile;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.data.ParsableFile;
@@ -73,6 +91,9 @@ import com.izforge.izpack.util.IoHelper;
  * </packaging>
  * }
  * </pre>
+ * Each pack is stored whole in the fewest volumes possible, so installing a pack only requires the volumes holding
+ * it. Packs larger than a volume still span volumes. As a result, volumes other than the last may not be filled to
+ * capacity.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  * @author Tim Anderson
@@ -126,6 +147,34 @@ public class MultiVolumePackager extends PackagerBase
               compilerData);
     }
 
+    /**
+     * Sets the basic installer info.
+     * <p/>
+     * Pack meta-data is written to the installer jar without using the pack compressor, so the installer must not
+     * decode it.
+     *
+     * @param info the installer info
+     */
+    @Override
+    public void setInfo(Info info)
+    {
+        super.setInfo(info);
+        info.setPackDecoderClassName(null);
+    }
+
+    /**
+     * Returns the length from which files changed since the patch base are delta encoded.
+     * <p/>
+     * Multi-volume installers don't support delta encoding, as file content is read from the volumes.
+     *
+     * @return {@code -1}
+     */
+    @Override
+    protected long getDeltaThreshold()
+    {
+        return -1;
+    }
+
     /**
      * Sets the maximum size of the first volume.
      * <p/>
@@ -174,6 +223,11 @@ public class MultiVolumePackager extends PackagerBase
     /**
      * Writes packs to one or more <em>.pak</em> volumes.
      * <p/>
+     * Each pack's files are compressed to a separate segment, in parallel if the compiler has more than one pack
+     * thread. Segments are then placed in volumes by a {@link VolumePlanner} so that each pack touches as few
+     * volumes as possible, and the volumes are written in parallel. The location of each segment is written to
+     * <em>volumes.info</em>, so that the installer only reads the volumes holding the selected packs.
+     * <p/>
      * Pack meta-data is written to the installer jar.
      *
      * @throws IOException for any I/O error
@@ -195,68 +249,369 @@ public class MultiVolumePackager extends PackagerBase
         logger.fine("Subsequent volume size: " + maxVolumeSize);
 
         File volume = new File(getInfo().getInstallerBase() + ".pak").getAbsoluteFile();
-        int volumes = writePacks(packs, volume);
+        File targetDir = volume.getParentFile();
+        if (targetDir == null)
+        {
+            throw new IOException("Cannot determine parent directory of " + volume);
+        }
+
+        int threads = Math.min(getCompilerData().getPackThreads(), Math.max(count, 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Segment> segments = new ArrayList<Segment>();
+        try
+        {
+            segments = compressPacks(packs, executor);
+            int volumes = writeVolumes(segments, volume, executor);
+
+            // write metadata for reading in volumes
+            logger.fine("Written " + volumes + " volumes");
+
+            JarOutputStream installerJar = getInstallerJar();
+            installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + "volumes.info"));
+            ObjectOutputStream out = new ObjectOutputStream(installerJar);
+            out.writeInt(volumes);
+            out.writeUTF(volume.getName());
+            out.writeInt(segments.size());
+            for (Segment segment : segments)
+            {
+                out.writeUTF(segment.name);
+                out.writeInt(segment.volume);
+                out.writeLong(segment.offset);
+                out.writeLong(segment.length);
+            }
+            out.flush();
+            installerJar.closeEntry();
 
-        // write metadata for reading in volumes
-        logger.fine("Written " + volumes + " volumes");
+            for (int i = 0; i < count; ++i)
+            {
+                writePack(packs.get(i), segments.get(i), targetDir);
+            }
 
-        JarOutputStream installerJar = getInstallerJar();
-        installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + "volumes.info"));
-        ObjectOutputStream out = new ObjectOutputStream(installerJar);
-        out.writeInt(volumes);
-        out.writeUTF(volume.getName());
-        out.flush();
-        installerJar.closeEntry();
-
-        // Now that we know sizes, write pack metadata to primary jar.
-        installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + "packs.info"));
-        out = new ObjectOutputStream(installerJar);
-        out.writeInt(count);
-
-        for (PackInfo pack : packs)
+            // Now that we know sizes, write pack metadata to primary jar.
+            installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + "packs.info"));
+            out = new ObjectOutputStream(installerJar);
+            out.writeInt(count);
+
+            for (PackInfo pack : packs)
+            {
+                out.writeObject(pack.getPack());
+            }
+            out.flush();
+            installerJar.closeEntry();
+        }
+        finally
         {
-            out.writeObject(pack.getPack());
+            executor.shutdownNow();
+            for (Segment segment : segments)
+            {
+                if (segment.file != null)
+                {
+                    segment.file.delete();
+                }
+            }
         }
-        out.flush();
-        installerJar.closeEntry();
     }
 
     /**
-     * Writes packs to one or more <em>.pak</em> volumes.
+     * Compresses the packs to temporary segment files, in parallel.
+     *
+     * @param packs    the packs to compress
+     * @param executor the executor to compress the packs with
+     * @return the segments, in pack order
+     * @throws IOException for any I/O error
+     */
+    private List<Segment> compressPacks(List<PackInfo> packs, ExecutorService executor) throws IOException
+    {
+        List<Future<Segment>> futures = new ArrayList<Future<Segment>>();
+        for (final PackInfo packInfo : packs)
+        {
+            futures.add(executor.submit(new Callable<Segment>()
+            {
+                public Segment call() throws Exception
+                {
+                    return compress(packInfo);
+                }
+            }));
+        }
+        List<Segment> result = new ArrayList<Segment>();
+        IOException failure = null;
+        for (Future<Segment> future : futures)
+        {
+            try
+            {
+                result.add(get(future));
+            }
+            catch (IOException exception)
+            {
+                if (failure == null)
+                {
+                    failure = exception;
+                }
+            }
+        }
+        if (failure != null)
+        {
+            for (Segment segment : result)
+            {
+                if (segment.file != null)
+                {
+                    segment.file.delete();
+                }
+            }
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Compresses the files of a pack to a temporary segment file.
+     * <p/>
+     * The position of each file in the uncompressed segment is recorded in its {@link XPackFile}.
+     *
+     * @param packInfo the pack
+     * @return the segment. Loose packs, and packs with no file content, have no segment file
+     * @throws IOException for any I/O error
+     */
+    private Segment compress(PackInfo packInfo) throws IOException
+    {
+        Pack pack = packInfo.getPack();
+        Segment segment = new Segment(pack.getName());
+        GZIPOutputStream out = null;
+        MessageDigest digest = getDigest();
+        boolean success = false;
+        try
+        {
+            long position = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                XPackFile pf = new XPackFile(packFile);
+                segment.sources.add(packFile);
+                segment.files.add(pf);
+                if (!pf.isDirectory() && !pack.isLoose() && !pf.isRetained())
+                {
+                    if (out == null)
+                    {
+                        segment.file = File.createTempFile("izpack", ".segment");
+                        out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(segment.file)));
+                    }
+                    File file = packInfo.getFile(packFile);
+                    logger.fine("Next file: " + file.getAbsolutePath());
+                    pf.setArchiveFilePosition(position);
+                    digest.reset();
+                    InputStream in = new DigestInputStream(ArchiveEntryFile.open(file), digest);
+                    long bytesWritten;
+                    try
+                    {
+                        bytesWritten = IoHelper.copyStream(in, out);
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                    if (bytesWritten != pf.length())
+                    {
+                        throw new IOException("File size mismatch when reading " + file);
+                    }
+                    pf.setDigest(digest.digest());
+                    // recorded in the pack manifest
+                    packFile.setDigest(pf.getDigest());
+                    position += bytesWritten;
+                }
+            }
+            if (out != null)
+            {
+                out.close();
+                out = null;
+                segment.length = segment.file.length();
+            }
+            success = true;
+        }
+        finally
+        {
+            if (out != null)
+            {
+                out.close();
+            }
+            if (!success && segment.file != null)
+            {
+                segment.file.delete();
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Returns a SHA-1 message digest, used to digest the content of each file.
+     *
+     * @return a new digest
+     */
+    private static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 digest is not supported", exception);
+        }
+    }
+
+    /**
+     * Plans the placement of segments in volumes, and writes the volumes in parallel.
      *
-     * @param packs  the packs to write
-     * @param volume the first volume
+     * @param segments the segments to write
+     * @param volume   the first volume
+     * @param executor the executor to write the volumes with
      * @return the no. of volumes written
+     * @throws IOException for any I/O error
      */
-    private int writePacks(List<PackInfo> packs, File volume) throws IOException
+    private int writeVolumes(List<Segment> segments, final File volume, ExecutorService executor)
+            throws IOException
     {
-        FileSpanningOutputStream volumes = new FileSpanningOutputStream(volume, maxFirstVolumeSize, maxVolumeSize);
-        File targetDir = volume.getParentFile();
-        if (targetDir == null)
+        VolumePlanner planner = new VolumePlanner(maxFirstVolumeSize - FileSpanningOutputStream.MAGIC_NUMBER_LENGTH,
+                                                  maxVolumeSize - FileSpanningOutputStream.MAGIC_NUMBER_LENGTH);
+        List<Long> sizes = new ArrayList<Long>();
+        for (Segment segment : segments)
         {
-            throw new IOException("Cannot determine parent directory of " + volume);
+            sizes.add(segment.length);
+        }
+        List<long[]> placements = planner.plan(sizes);
+        int volumes = planner.getVolumes();
+
+        // determine the parts of each segment to write to each volume
+        final List<List<Object[]>> parts = new ArrayList<List<Object[]>>();
+        for (int i = 0; i < volumes; ++i)
+        {
+            parts.add(new ArrayList<Object[]>());
         }
-        for (PackInfo packInfo : packs)
+        for (int i = 0; i < segments.size(); ++i)
         {
-            writePack(packInfo, volumes, targetDir);
+            Segment segment = segments.get(i);
+            if (segment.file == null)
+            {
+                continue;
+            }
+            segment.volume = (int) placements.get(i)[0];
+            segment.offset = placements.get(i)[1];
+            logger.fine("Pack " + segment.name + ": volume=" + segment.volume + ", offset=" + segment.offset
+                                + ", length=" + segment.length);
+            int index = segment.volume;
+            long position = 0;
+            long available = planner.getCapacity(index) - segment.offset;
+            while (position < segment.length)
+            {
+                long length = Math.min(available, segment.length - position);
+                parts.get(index).add(new Object[]{segment.file, position, length});
+                position += length;
+                available = planner.getCapacity(++index);
+            }
         }
 
-        volumes.flush();
-        volumes.close();
-        return volumes.getVolumes();
+        // each volume starts with the same random magic number, to detect an incorrect volume being used
+        final byte[] magic = new byte[FileSpanningOutputStream.MAGIC_NUMBER_LENGTH];
+        new Random().nextBytes(magic);
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < volumes; ++i)
+        {
+            final int index = i;
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    File file = (index == 0) ? volume : new File(volume.getPath() + "." + index);
+                    writeVolume(file, magic, parts.get(index));
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+        {
+            get(future);
+        }
+        return volumes;
     }
 
     /**
-     * Writes a pack.
+     * Writes a volume.
+     *
+     * @param file  the volume file
+     * @param magic the magic number to write at the start of the volume
+     * @param parts the segment parts to write, as the segment file, offset and length
+     * @throws IOException for any I/O error
+     */
+    private void writeVolume(File file, byte[] magic, List<Object[]> parts) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(magic);
+            FileChannel channel = out.getChannel();
+            for (Object[] part : parts)
+            {
+                FileInputStream in = new FileInputStream((File) part[0]);
+                try
+                {
+                    FileChannel source = in.getChannel();
+                    long position = (Long) part[1];
+                    long end = position + (Long) part[2];
+                    while (position < end)
+                    {
+                        position += source.transferTo(position, end - position, channel);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Waits for a task to complete.
+     *
+     * @param future the task
+     * @return the result of the task
+     * @throws IOException if the task failed
+     */
+    private <T> T get(Future<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("Interrupted writing volumes");
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to write volumes", cause);
+        }
+    }
+
+    /**
+     * Writes a pack's meta-data to the installer jar.
      * <p/>
-     * Pack information is written to the installer jar, while the actual files are written to the volumes.
+     * The files of loose packs are copied to the target directory.
      *
      * @param packInfo  the pack information
-     * @param volumes   the volumes
-     * @param targetDir the target directory for loosefiles
+     * @param segment   the pack segment
+     * @param targetDir the target directory for loose files
      * @throws IOException for any I/O error
      */
-    private void writePack(PackInfo packInfo, FileSpanningOutputStream volumes, File targetDir) throws IOException
+    private void writePack(PackInfo packInfo, Segment segment, File targetDir) throws IOException
     {
         Pack pack = packInfo.getPack();
         pack.setFileSize(0);
@@ -270,7 +625,7 @@ public class MultiVolumePackager extends PackagerBase
         installerJar.putNextEntry(entry);
         ObjectOutputStream packStream = new ObjectOutputStream(installerJar);
 
-        writePackFiles(packInfo, volumes, pack, packStream, targetDir);
+        writePackFiles(packInfo, segment, pack, packStream, targetDir);
 
         // Write out information about parsable files
         packStream.writeInt(packInfo.getParsables().size());
@@ -298,48 +653,44 @@ public class MultiVolumePackager extends PackagerBase
     }
 
     /**
-     * Writes the pack files.
-     * <p/>
-     * The file data is written to <tt>volumes</tt>, whilst the meta-data is written to <tt>packStream</tt>.
+     * Writes the pack file meta-data.
      *
      * @param packInfo   the pack information
-     * @param volumes    the volumes to write to
+     * @param segment    the pack segment
      * @param pack       the pack
      * @param packStream the stream to write the pack meta-data to
      * @param targetDir  the target directory for loose files
      * @throws IOException for any I/O error
      */
-    private void writePackFiles(PackInfo packInfo, FileSpanningOutputStream volumes, Pack pack,
-                                ObjectOutputStream packStream, File targetDir) throws IOException
+    private void writePackFiles(PackInfo packInfo, Segment segment, Pack pack, ObjectOutputStream packStream,
+                                File targetDir) throws IOException
     {
-        // write the file meta-data
-        Set<PackFile> files = packInfo.getPackFiles();
-        packStream.writeInt(files.size());
+        PackFileWriter writer = new PackFileWriter(packStream);
+        writer.writeHeader(segment.files.size());
 
-        for (PackFile packfile : files)
+        for (int i = 0; i < segment.files.size(); ++i)
         {
-            XPackFile pf = new XPackFile(packfile);
-            File file = packInfo.getFile(packfile);
-            logger.fine("Next file: " + file.getAbsolutePath());
-
-            if (!pf.isDirectory())
+            XPackFile pf = segment.files.get(i);
+            if (!pf.isDirectory() && pack.isLoose())
             {
-                if (!pack.isLoose())
+                // just copy the file to the target directory
+                File file = packInfo.getFile(segment.sources.get(i));
+                File target = new File(targetDir, pf.getRelativeSourcePath());
+                if (file instanceof ArchiveEntryFile)
                 {
-                    writePackFile(file, volumes, pf);
+                    FileUtils.copyInputStreamToFile(((ArchiveEntryFile) file).openStream(), target);
+                    target.setLastModified(file.lastModified());
                 }
                 else
                 {
-                    // just copy the file to the target directory
-                    FileUtils.copyFile(file, new File(targetDir, pf.getRelativeSourcePath()));
+                    FileUtils.copyFile(file, target);
                 }
             }
 
             // write pack file meta-data
-            packStream.writeObject(pf);
-            packStream.flush(); // make sure it is written
+            writer.write(pf);
             // even if not written, it counts towards pack size
-            pack.addFileSize(pf.length());
+            pack.addFileSize(pf.size());
         }
 
         if (pack.getFileSize() > pack.getSize())
@@ -349,41 +700,53 @@ public class MultiVolumePackager extends PackagerBase
     }
 
     /**
-     * Writes a pack file to the volumes.
-     *
-     * @param file     the file to write
-     * @param volumes  the volumes
-     * @param packFile the pack file
-     * @throws IOException for any I/O error
+     * The compressed files of a pack, and their location in the volumes.
      */
-    private void writePackFile(File file, FileSpanningOutputStream volumes, XPackFile packFile) throws IOException
+    private static class Segment
     {
-        long beforePosition = volumes.getFilePointer();
-        packFile.setArchiveFilePosition(beforePosition);
-
-        // write the file to the volumes
-        int volumeCount = volumes.getVolumes();
-
-        FileInputStream in = new FileInputStream(file);
-        long bytesWritten = IoHelper.copyStream(in, volumes);
-        long afterPosition = volumes.getFilePointer();
-        logger.fine("File (" + packFile.sourcePath + ") " + beforePosition + " <-> " + afterPosition);
-
-        if (volumes.getFilePointer() != (beforePosition + bytesWritten))
+        /**
+         * The pack name.
+         */
+        final String name;
+
+        /**
+         * The source pack files.
+         */
+        final List<PackFile> sources = new ArrayList<PackFile>();
+
+        /**
+         * The pack files, with their positions in the segment.
+         */
+        final List<XPackFile> files = new ArrayList<XPackFile>();
+
+        /**
+         * The compressed segment file. May be {@code null}.
+         */
+        File file;
+
+        /**
+         * The compressed length.
+         */
+        long length;
+
+        /**
+         * The index of the volume that the segment starts in, or {@code -1} if the pack has no segment.
+         */
+        int volume = -1;
+
+        /**
+         * The offset of the segment in the volume, excluding the magic number.
+         */
+        long offset;
+
+        /**
+         * Constructs a {@code Segment}.
+         *
+         * @param name the pack name
+         */
+        Segment(String name)
         {
-            logger.fine("file: " + file.getName());
-            logger.fine("(Filepos/BytesWritten/ExpectedNewFilePos/NewFilePointer) ("
-                                + beforePosition + "/" + bytesWritten + "/" + (beforePosition + bytesWritten)
-                                + "/" + volumes.getFilePointer() + ")");
-            logger.fine("Volumes (before/after) (" + volumeCount + "/" + volumes.getVolumes() + ")");
-            throw new IOException("Error new file pointer is illegal");
+            this.name = name;
         }
-
-        if (bytesWritten != packFile.length())
-        {
-            throw new IOException("File size mismatch when reading " + file);
-        }
-        in.close();
     }
-
-}
\ No newline at end of file
+}
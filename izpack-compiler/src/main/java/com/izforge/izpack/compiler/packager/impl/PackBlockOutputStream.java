@@ -0,0 +1,212 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import com.izforge.izpack.core.io.ByteCountingOutputStream;
+
+
+/**
+ * Splits a pack stream into blocks that are each compressed independently.
+ * <p/>
+ * The length of each block before and after compression is recorded in an index, so that the installer can
+ * skip whole blocks without decompressing them, and only decompress the block containing a given offset.
+ */
+abstract class PackBlockOutputStream extends OutputStream
+{
+
+    /**
+     * The default no. of uncompressed bytes in each block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * The index format version.
+     */
+    public static final int INDEX_VERSION = 1;
+
+    /**
+     * The stream to write compressed blocks to.
+     */
+    private final OutputStream out;
+
+    /**
+     * The no. of uncompressed bytes in each block.
+     */
+    private final int blockSize;
+
+    /**
+     * The uncompressed and compressed lengths of each completed block.
+     */
+    private final List<long[]> blocks = new ArrayList<long[]>();
+
+    /**
+     * Counts the compressed bytes of the current block.
+     */
+    private ByteCountingOutputStream encoded;
+
+    /**
+     * The encoder for the current block, or {@code null} if no block has been started.
+     */
+    private OutputStream encoder;
+
+    /**
+     * The no. of uncompressed bytes written to the current block.
+     */
+    private int decoded;
+
+
+    /**
+     * Constructs a {@code PackBlockOutputStream}.
+     *
+     * @param out       the stream to write compressed blocks to
+     * @param blockSize the no. of uncompressed bytes in each block
+     */
+    public PackBlockOutputStream(OutputStream out, int blockSize)
+    {
+        this.out = out;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            if (encoder == null)
+            {
+                startBlock();
+            }
+            int count = Math.min(len, blockSize - decoded);
+            encoder.write(b, off, count);
+            decoded += count;
+            off += count;
+            len -= count;
+            if (decoded == blockSize)
+            {
+                endBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (encoder != null)
+        {
+            encoder.flush();
+        }
+        out.flush();
+    }
+
+    /**
+     * Completes the current block and closes the underlying stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void close() throws IOException
+    {
+        endBlock();
+        out.close();
+    }
+
+    /**
+     * Returns the uncompressed and compressed lengths of each block.
+     *
+     * @return the block lengths
+     */
+    public List<long[]> getBlocks()
+    {
+        return blocks;
+    }
+
+    /**
+     * Writes the block index.
+     *
+     * @param blocks the uncompressed and compressed lengths of each block
+     * @param stream the stream to write to. This is flushed but not closed
+     * @throws IOException for any I/O error
+     */
+    public static void writeIndex(List<long[]> blocks, OutputStream stream) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(stream);
+        data.writeInt(INDEX_VERSION);
+        data.writeInt(blocks.size());
+        for (long[] block : blocks)
+        {
+            data.writeLong(block[0]);
+            data.writeLong(block[1]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Creates an encoder for a block.
+     * <p/>
+     * The encoder will be closed at the end of the block; closing it doesn't close the underlying stream.
+     *
+     * @param out the stream to write the compressed block to
+     * @return the encoder
+     * @throws IOException if the encoder cannot be created
+     */
+    protected abstract OutputStream createEncoder(OutputStream out) throws IOException;
+
+    /**
+     * Starts a new block.
+     *
+     * @throws IOException if the encoder cannot be created
+     */
+    private void startBlock() throws IOException
+    {
+        encoded = new ByteCountingOutputStream(new CloseShieldOutputStream(out));
+        encoder = createEncoder(encoded);
+        decoded = 0;
+    }
+
+    /**
+     * Completes the current block, if any.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void endBlock() throws IOException
+    {
+        if (encoder != null)
+        {
+            encoder.close();
+            blocks.add(new long[]{decoded, encoded.getByteCount()});
+            encoder = null;
+            encoded = null;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+
+
+/**
+ * A persistent cache of compressed packs, used to avoid compressing packs that haven't changed since a previous
+ * build.
+ * <p/>
+ * Each pack is identified by a fingerprint of everything written to the pack stream other than file content:
+ * the pack files (including their source paths, lengths and modification times), parsable and executable files,
+ * update checks, the compression settings, and the fingerprints of any packs that the pack's back references refer
+ * to. A cached pack is stored in two files named after its fingerprint: the compressed pack, and an index
+ * containing its CRC-32, the offsets of the content it stores and of its parsable files, and its block index.
+ * <p/>
+ * Fingerprints must be created in pack order, as a pack's fingerprint depends on those of the packs it refers to.
+ */
+class PackCache
+{
+
+    /**
+     * The cache format version.
+     */
+    private static final int VERSION = 4;
+
+    /**
+     * The compressed pack file suffix.
+     */
+    private static final String PACK = ".pack";
+
+    /**
+     * The pack index file suffix.
+     */
+    private static final String INDEX = ".index";
+
+    /**
+     * The time after which unused packs are removed from the cache, in milliseconds.
+     */
+    private static final long MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The cache directory.
+     */
+    private final File directory;
+
+    /**
+     * The compression settings.
+     */
+    private final String settings;
+
+    /**
+     * The fingerprints of the packs, keyed on pack name.
+     */
+    private final Map<String, String> fingerprints = new HashMap<String, String>();
+
+    /**
+     * The no. of packs read from the cache.
+     */
+    private int hits;
+
+    /**
+     * The no. of packs not found in the cache.
+     */
+    private int misses;
+
+
+    /**
+     * Constructs a {@code PackCache}.
+     *
+     * @param directory the cache directory. This is created if it doesn't exist
+     * @param settings  the compression settings. Packs cached with different settings aren't used
+     * @throws IOException if the directory cannot be created
+     */
+    public PackCache(File directory, String settings) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Failed to create build cache directory: " + directory);
+        }
+        this.directory = directory;
+        this.settings = settings;
+    }
+
+    /**
+     * Returns the fingerprint of a pack.
+     * <p/>
+     * This must be invoked for each pack in turn, in pack order, prior to the pack being written.
+     *
+     * @param packInfo   the pack
+     * @param references the planned back references
+     * @return the pack fingerprint
+     * @throws IOException if the pack cannot be serialized
+     */
+    public String getFingerprint(PackInfo packInfo, PackFileReferences references) throws IOException
+    {
+        String name = packInfo.getPack().getName();
+        MessageDigest digest = getDigest();
+        ObjectOutputStream out = new ObjectOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+        out.writeInt(VERSION);
+        out.writeUTF(settings);
+        out.writeUTF(name);
+        out.writeBoolean(packInfo.getPack().isLoose());
+
+        out.writeInt(packInfo.getPackFiles().size());
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            out.writeObject(packFile);
+            out.writeUTF(packInfo.getFile(packFile).getAbsolutePath());
+            out.writeInt(references.getDeltaId(packFile));
+            String referenced = references.getReferencedPack(packFile);
+            out.writeObject(referenced);
+            if (referenced != null && !referenced.equals(name))
+            {
+                out.writeObject(fingerprints.get(referenced));
+            }
+        }
+        out.writeInt(packInfo.getParsables().size());
+        for (ParsableFile parsableFile : packInfo.getParsables())
+        {
+            out.writeObject(parsableFile);
+        }
+        out.writeInt(packInfo.getExecutables().size());
+        for (ExecutableFile executableFile : packInfo.getExecutables())
+        {
+            out.writeObject(executableFile);
+        }
+        out.writeInt(packInfo.getUpdateChecks().size());
+        for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+        {
+            out.writeObject(updateCheck);
+        }
+        out.close();
+
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        String fingerprint = result.toString();
+        fingerprints.put(name, fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Returns a cached pack.
+     * <p/>
+     * If the pack is found, the offsets of the content it stores and of its parsable files are registered with the
+     * back references.
+     *
+     * @param fingerprint the pack fingerprint
+     * @param packInfo    the pack
+     * @param references  the back references
+     * @return the cached pack, or {@code null} if it isn't cached
+     */
+    public SpooledPack get(String fingerprint, PackInfo packInfo, PackFileReferences references)
+    {
+        File pack = new File(directory, fingerprint + PACK);
+        File index = new File(directory, fingerprint + INDEX);
+        SpooledPack result = null;
+        if (pack.exists() && index.exists())
+        {
+            DataInputStream in = null;
+            try
+            {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+                if (in.readInt() == VERSION)
+                {
+                    long crc = in.readLong();
+                    long[] offsets = new long[in.readInt()];
+                    for (int i = 0; i < offsets.length; ++i)
+                    {
+                        offsets[i] = in.readLong();
+                    }
+                    long parsablesOffset = in.readLong();
+                    List<long[]> blocks = readBlocks(in);
+                    long length = 0;
+                    for (long[] block : blocks)
+                    {
+                        length += block[1];
+                    }
+                    if (offsets.length == packInfo.getPackFiles().size() && length == pack.length())
+                    {
+                        String name = packInfo.getPack().getName();
+                        int i = 0;
+                        for (PackFile packFile : packInfo.getPackFiles())
+                        {
+                            if (offsets[i] != -1)
+                            {
+                                references.addStoredFile(packInfo.getFile(packFile), name, offsets[i]);
+                            }
+                            ++i;
+                        }
+                        references.setParsablesOffset(name, parsablesOffset);
+                        result = new SpooledPack(name, pack, crc, blocks, true);
+                    }
+                }
+            }
+            catch (IOException ignore)
+            {
+                // treat as not cached
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        synchronized (this)
+        {
+            if (result != null)
+            {
+                ++hits;
+                index.setLastModified(System.currentTimeMillis());
+            }
+            else
+            {
+                ++misses;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a pack to the cache.
+     * <p/>
+     * The pack is written to temporary files which are then renamed, so that concurrent builds never see a
+     * partially written pack.
+     *
+     * @param fingerprint the pack fingerprint
+     * @param pack        the compressed pack
+     * @param packInfo    the pack
+     * @param references  the back references, used to determine the offsets of the content stored by the pack
+     *                    and of its parsable files
+     * @throws IOException if the pack cannot be cached
+     */
+    public void put(String fingerprint, SpooledPack pack, PackInfo packInfo, PackFileReferences references)
+            throws IOException
+    {
+        File packFile = new File(directory, fingerprint + PACK);
+        File index = new File(directory, fingerprint + INDEX);
+        File packTemp = File.createTempFile(fingerprint, PACK + ".tmp", directory);
+        File indexTemp = File.createTempFile(fingerprint, INDEX + ".tmp", directory);
+        boolean success = false;
+        try
+        {
+            FileUtils.copyFile(pack.getFile(), packTemp);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexTemp)));
+            try
+            {
+                out.writeInt(VERSION);
+                out.writeLong(pack.getCrc());
+                String name = packInfo.getPack().getName();
+                out.writeInt(packInfo.getPackFiles().size());
+                for (PackFile file : packInfo.getPackFiles())
+                {
+                    out.writeLong(references.getOffset(packInfo.getFile(file), file, name));
+                }
+                out.writeLong(references.getParsablesOffset(name));
+                PackBlockOutputStream.writeIndex(pack.getBlocks(), out);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            // the index is renamed last, as a pack is only used if its index exists
+            index.delete();
+            packFile.delete();
+            success = packTemp.renameTo(packFile) && indexTemp.renameTo(index);
+            if (!success)
+            {
+                throw new IOException("Failed to add pack to build cache: " + packFile);
+            }
+        }
+        finally
+        {
+            if (!success)
+            {
+                packTemp.delete();
+                indexTemp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes packs that haven't been used recently, along with any temporary files left by failed builds.
+     */
+    public void prune()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            long expired = System.currentTimeMillis() - MAX_AGE;
+            for (File file : files)
+            {
+                String name = file.getName();
+                if (name.endsWith(INDEX) && file.lastModified() < expired)
+                {
+                    String fingerprint = name.substring(0, name.length() - INDEX.length());
+                    file.delete();
+                    new File(directory, fingerprint + PACK).delete();
+                }
+                else if (name.endsWith(".tmp") && file.lastModified() < expired)
+                {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the no. of packs read from the cache.
+     *
+     * @return the no. of cache hits
+     */
+    public synchronized int getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the no. of packs not found in the cache.
+     *
+     * @return the no. of cache misses
+     */
+    public synchronized int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Reads a block index written by {@link PackBlockOutputStream#writeIndex}.
+     *
+     * @param in the stream to read from
+     * @return the uncompressed and compressed lengths of each block
+     * @throws IOException if the index is invalid or cannot be read
+     */
+    private List<long[]> readBlocks(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != PackBlockOutputStream.INDEX_VERSION)
+        {
+            throw new IOException("Unsupported block index version");
+        }
+        int count = in.readInt();
+        List<long[]> blocks = new ArrayList<long[]>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            blocks.add(new long[]{in.readLong(), in.readLong()});
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns a SHA-1 message digest.
+     *
+     * @return a new digest
+     */
+    private static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 digest is not supported", exception);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.ArchiveEntryFile;
+import com.izforge.izpack.data.PackInfo;
+
+
+/**
+ * Tracks the pack and offset at which the content of each file is stored in the installer, so that
+ * subsequent occurrences of the same content can be written as back references.
+ * <p/>
+ * Content is identified by length and SHA-1 digest, so identical files at different source paths are only stored
+ * once.
+ * <p/>
+ * The references must be {@link #plan planned} in pack order before writing.
+ * When packs are written concurrently, a pack that refers to content stored by an earlier pack waits until the
+ * earlier pack has written it. As the earliest pack being written never waits, this cannot deadlock provided
+ * packs are started in order.
+ */
+class PackFileReferences
+{
+
+    /**
+     * The pack name and offset of stored content, keyed on content key.
+     */
+    private final Map<Object, Object[]> storedFiles = new HashMap<Object, Object[]>();
+
+    /**
+     * The offsets of the parsable files of each pack, keyed on pack name.
+     */
+    private final Map<String, Long> parsablesOffsets = new HashMap<String, Long>();
+
+    /**
+     * The content keys of source files.
+     */
+    private final Map<File, ContentKey> keys = new HashMap<File, ContentKey>();
+
+    /**
+     * The Pack200 files, keyed on identifier.
+     */
+    private final Map<Integer, File> pack200Files = new TreeMap<Integer, File>();
+
+    /**
+     * The pack files that refer to content stored elsewhere, and the names of the packs storing the content.
+     */
+    private Map<PackFile, String> references;
+
+    /**
+     * The Pack200 identifiers reserved for stored pack files.
+     */
+    private Map<PackFile, Integer> pack200Ids;
+
+    /**
+     * The next Pack200 identifier.
+     */
+    private int pack200Counter;
+
+    /**
+     * The identifiers of the deltas of delta encoded pack files.
+     */
+    private Map<PackFile, Integer> deltaIds;
+
+    /**
+     * The no. of pack files whose content duplicates that of a different source file.
+     */
+    private int duplicates;
+
+    /**
+     * The no. of bytes not stored due to duplicate content.
+     */
+    private long duplicateBytes;
+
+    /**
+     * Determines if writing has been aborted.
+     */
+    private boolean aborted;
+
+
+    /**
+     * Determines in advance which pack files will be written as back references.
+     * <p/>
+     * This must be invoked prior to writing packs.
+     *
+     * @param packs   the packs, in the order they are written
+     * @param pack200 if {@code true}, reserve Pack200 identifiers for stored jars
+     * @param digests the digests cached by previous builds. May be {@code null}
+     * @throws IOException if a file cannot be read
+     */
+    public synchronized void plan(List<PackInfo> packs, boolean pack200, DigestCache digests) throws IOException
+    {
+        references = new IdentityHashMap<PackFile, String>();
+        pack200Ids = new IdentityHashMap<PackFile, Integer>();
+        deltaIds = new IdentityHashMap<PackFile, Integer>();
+        duplicates = 0;
+        duplicateBytes = 0;
+        createKeys(packs, pack200, digests);
+
+        Map<Object, File> stored = new HashMap<Object, File>();
+        Map<Object, String> storedPacks = new HashMap<Object, String>();
+        for (PackInfo packInfo : packs)
+        {
+            String packName = packInfo.getPack().getName();
+            boolean loose = packInfo.getPack().isLoose();
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                if (packFile.isDelta())
+                {
+                    deltaIds.put(packFile, deltaIds.size());
+                }
+                if (packFile.isRetained() || packFile.isDelta())
+                {
+                    // patch installers don't store unchanged files, and store deltas of changed files separately
+                    continue;
+                }
+                File file = packInfo.getFile(packFile);
+                Object key = keys.get(file);
+                File storedFile = (key != null) ? stored.get(key) : null;
+                if (storedFile != null)
+                {
+                    references.put(packFile, storedPacks.get(key));
+                    if (!storedFile.equals(file))
+                    {
+                        ++duplicates;
+                        duplicateBytes += packFile.length();
+                    }
+                }
+                else if (!loose && !packFile.isDirectory())
+                {
+                    stored.put(key, file);
+                    storedPacks.put(key, packName);
+                    if (pack200 && isJar(file))
+                    {
+                        pack200Ids.put(packFile, pack200Counter++);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the no. of pack files whose content duplicates that of a different source file.
+     *
+     * @return the no. of duplicate files
+     */
+    public synchronized int getDuplicates()
+    {
+        return duplicates;
+    }
+
+    /**
+     * Returns the no. of bytes not stored due to duplicate content.
+     *
+     * @return the no. of duplicate bytes
+     */
+    public synchronized long getDuplicateBytes()
+    {
+        return duplicateBytes;
+    }
+
+    /**
+     * Returns the location of the stored content of a file, if the pack file should be written as a back reference.
+     * <p/>
+     * This blocks until the content has been written.
+     *
+     * @param file     the source file
+     * @param packFile the pack file
+     * @return the pack name and offset of the content, or {@code null} if the content should be written
+     * @throws IOException if writing was aborted or the thread was interrupted
+     */
+    public synchronized Object[] getReference(File file, PackFile packFile) throws IOException
+    {
+        if (references == null)
+        {
+            throw new IllegalStateException("References have not been planned");
+        }
+        if (!references.containsKey(packFile))
+        {
+            return null;
+        }
+        Object[] result;
+        while ((result = storedFiles.get(keys.get(file))) == null)
+        {
+            if (aborted)
+            {
+                throw new IOException("Pack writing aborted while waiting for " + file);
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the pack that stores the content of a pack file written as a back reference.
+     *
+     * @param packFile the pack file
+     * @return the name of the pack storing the content, or {@code null} if the pack file isn't a back reference
+     */
+    public synchronized String getReferencedPack(PackFile packFile)
+    {
+        if (references == null)
+        {
+            throw new IllegalStateException("References have not been planned");
+        }
+        return references.get(packFile);
+    }
+
+    /**
+     * Returns the offset at which a pack file's content was stored by a pack.
+     *
+     * @param file     the source file
+     * @param packFile the pack file
+     * @param packName the pack name
+     * @return the offset of the content in the uncompressed pack stream, or {@code -1} if the pack file's content
+     *         wasn't stored by the pack, or the pack file is retained or delta encoded
+     */
+    public synchronized long getOffset(File file, PackFile packFile, String packName)
+    {
+        if (packFile.isRetained() || packFile.isDelta() || (references != null && references.containsKey(packFile)))
+        {
+            return -1;
+        }
+        Object[] stored = storedFiles.get(keys.get(file));
+        return (stored != null && packName.equals(stored[0])) ? (Long) stored[1] : -1;
+    }
+
+    /**
+     * Registers the location of the stored content of a file.
+     *
+     * @param file     the source file
+     * @param packName the name of the pack containing the file
+     * @param offset   the offset of the content in the uncompressed pack stream
+     */
+    public synchronized void addStoredFile(File file, String packName, long offset)
+    {
+        storedFiles.put(keys.get(file), new Object[]{packName, offset});
+        notifyAll();
+    }
+
+    /**
+     * Registers the location of the parsable files of a pack.
+     *
+     * @param packName the pack name
+     * @param offset   the offset of the parsable files in the uncompressed pack stream
+     */
+    public synchronized void setParsablesOffset(String packName, long offset)
+    {
+        parsablesOffsets.put(packName, offset);
+    }
+
+    /**
+     * Returns the location of the parsable files of a pack.
+     *
+     * @param packName the pack name
+     * @return the offset of the parsable files in the uncompressed pack stream, or {@code -1} if the pack hasn't
+     *         been written
+     */
+    public synchronized long getParsablesOffset(String packName)
+    {
+        Long offset = parsablesOffsets.get(packName);
+        return (offset != null) ? offset : -1;
+    }
+
+    /**
+     * Registers a jar to be stored as a separate Pack200 entry.
+     *
+     * @param file     the jar
+     * @param packFile the corresponding pack file
+     * @return the Pack200 identifier of the jar
+     */
+    public synchronized int addPack200File(File file, PackFile packFile)
+    {
+        Integer id = pack200Ids.get(packFile);
+        if (id == null)
+        {
+            id = pack200Counter++;
+        }
+        pack200Files.put(id, file);
+        return id;
+    }
+
+    /**
+     * Returns the jars to be stored as separate Pack200 entries.
+     *
+     * @return the jars, keyed on Pack200 identifier
+     */
+    public synchronized Map<Integer, File> getPack200Files()
+    {
+        return pack200Files;
+    }
+
+    /**
+     * Returns the identifier of the delta of a delta encoded pack file.
+     * <p/>
+     * Identifiers are assigned in pack order, starting at zero.
+     *
+     * @param packFile the pack file
+     * @return the delta identifier, or {@code -1} if the pack file isn't delta encoded
+     */
+    public synchronized int getDeltaId(PackFile packFile)
+    {
+        if (deltaIds == null)
+        {
+            throw new IllegalStateException("References have not been planned");
+        }
+        Integer id = deltaIds.get(packFile);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Aborts writing, waking any thread waiting on a reference.
+     */
+    public synchronized void abort()
+    {
+        aborted = true;
+        notifyAll();
+    }
+
+    /**
+     * Creates the content keys of the source files.
+     * <p/>
+     * Every file is digested, and the digest of each file stored in a pack recorded in its pack file, so that the
+     * installer can skip files that are unchanged when upgrading. Files retained or delta encoded by a patch installer
+     * already have their digest. If a build cache is configured, files unchanged since a previous build aren't read
+     * again.
+     *
+     * @param packs   the packs
+     * @param pack200 if {@code true}, jars are stored separately so must not share keys with other files
+     * @param digests the digests cached by previous builds. May be {@code null}
+     * @throws IOException if a file cannot be read
+     */
+    private void createKeys(List<PackInfo> packs, boolean pack200, DigestCache digests) throws IOException
+    {
+        keys.clear();
+        MessageDigest digest = getDigest();
+        for (PackInfo packInfo : packs)
+        {
+            boolean loose = packInfo.getPack().isLoose();
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                File file = packInfo.getFile(packFile);
+                if (!packFile.isDirectory() && !packFile.isRetained() && !packFile.isDelta())
+                {
+                    ContentKey key = keys.get(file);
+                    if (key == null)
+                    {
+                        byte[] bytes = (digests != null) ? digests.digest(file, digest) : digest(file, digest);
+                        key = new ContentKey(file.length(), bytes, pack200 && isJar(file));
+                        keys.put(file, key);
+                    }
+                    // loose files are read from the install source, so may differ from those digested
+                    packFile.setDigest(loose ? null : key.digest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a file is a jar, and therefore a candidate for Pack200 compression.
+     * <p/>
+     * Jars within archives are excluded, as Pack200 compression requires a file.
+     *
+     * @param file the file
+     * @return {@code true} if the file is a jar
+     */
+    private boolean isJar(File file)
+    {
+        return file.getName().toLowerCase().endsWith(".jar") && !(file instanceof ArchiveEntryFile);
+    }
+
+    /**
+     * Returns a SHA-1 message digest.
+     *
+     * @return a new digest
+     */
+    static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 digest is not supported", exception);
+        }
+    }
+
+    /**
+     * Digests the content of a file.
+     *
+     * @param file   the file
+     * @param digest the digest to use
+     * @return the file digest
+     * @throws IOException if the file cannot be read
+     */
+    static byte[] digest(File file, MessageDigest digest) throws IOException
+    {
+        digest.reset();
+        InputStream in = ArchiveEntryFile.open(file);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Identifies file content by its length and digest.
+     */
+    private static class ContentKey
+    {
+
+        /**
+         * The content length.
+         */
+        private final long length;
+
+        /**
+         * The content digest.
+         */
+        private final byte[] digest;
+
+        /**
+         * Determines if the content is stored as a Pack200 jar.
+         */
+        private final boolean jar;
+
+        /**
+         * Constructs a {@code ContentKey}.
+         *
+         * @param length the content length
+         * @param digest the content digest
+         * @param jar    determines if the content is stored as a Pack200 jar
+         */
+        public ContentKey(long length, byte[] digest, boolean jar)
+        {
+            this.length = length;
+            this.digest = digest;
+            this.jar = jar;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (other == this)
+            {
+                return true;
+            }
+            if (!(other instanceof ContentKey))
+            {
+                return false;
+            }
+            ContentKey key = (ContentKey) other;
+            return length == key.length && jar == key.jar && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(digest);
+        }
+    }
+}
@@ -20,30 +20,54 @@
 
 package com.izforge.izpack.compiler.packager.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Pack200;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
+import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileWriter;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
 import com.izforge.izpack.core.io.ByteCountingOutputStream;
+import com.izforge.izpack.data.ArchiveEntryFile;
+import com.izforge.izpack.data.Delta;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.data.ParsableFile;
@@ -51,6 +75,7 @@ import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.file.FileUtils;
 
 /**
  * The packager class. The packager is used by the compiler to put files into an installer, and
@@ -68,6 +93,11 @@ public class Packager extends PackagerBase
      */
     private final OutputStream outputStream;
 
+    /**
+     * The offsets of the content of each pack's files, followed by the offset of its parsable files, keyed on pack
+     * name.
+     */
+    private final Map<String, long[]> packOffsets = new HashMap<String, long[]>();
 
     /**
      * Constructs a <tt>Packager</tt>.
@@ -92,6 +122,24 @@ public class Packager extends PackagerBase
         this.outputStream = outputStream;
     }
 
+    /**
+     * Sets the basic installer info.
+     * <p/>
+     * If packs are compressed concurrently or cached with the standard compression, each pack is deflated
+     * separately, and must be inflated by the installer.
+     *
+     * @param info the installer info
+     */
+    @Override
+    public void setInfo(Info info)
+    {
+        super.setInfo(info);
+        if (isSpooled() && getCompressor().useStandardCompression())
+        {
+            info.setPackDecoderClassName(InflaterInputStream.class.getName());
+        }
+    }
+
     /**
      * Write packs to the installer jar, or each to a separate jar.
      *
@@ -104,12 +152,31 @@ public class Packager extends PackagerBase
         final int num = packs.size();
         sendMsg("Writing " + num + " Pack" + (num > 1 ? "s" : "") + " into installer");
 
-        // Map to remember pack number and bytes offsets of back references
-        Map<File, Object[]> storedFiles = new HashMap<File, Object[]>();
+        // Tracks pack names and bytes offsets of back references
+        PackFileReferences references = new PackFileReferences();
 
-        // Pack200 files map
-        Map<Integer, File> pack200Map = new HashMap<Integer, File>();
-        int pack200Counter = 0;
+        // Determine the back references up front, so that identical content is only stored once
+        DigestCache digests = isCached() ? new DigestCache(new File(getCompilerData().getBuildCache())) : null;
+        references.plan(packs, getInfo().isPack200Compression(), digests);
+        if (digests != null)
+        {
+            sendMsg("Build cache: " + digests.getHits() + " file digest" + (digests.getHits() != 1 ? "s" : "")
+                            + " reused", PackagerListener.MSG_VERBOSE);
+            try
+            {
+                digests.save();
+            }
+            catch (IOException exception)
+            {
+                sendMsg("Failed to cache file digests: " + exception.getMessage(), PackagerListener.MSG_WARN);
+            }
+        }
+        int duplicates = references.getDuplicates();
+        if (duplicates > 0)
+        {
+            sendMsg("Storing " + duplicates + " duplicate file" + (duplicates > 1 ? "s" : "")
+                            + " as back references, saving " + references.getDuplicateBytes() + " bytes");
+        }
 
         // Force UTF-8 encoding in order to have proper ZipEntry names.
         JarOutputStream installerJar = getInstallerJar();
@@ -117,14 +184,195 @@ public class Packager extends PackagerBase
 
         // First write the serialized files and file metadata data for each pack
         // while counting bytes.
+        if (getCompilerData().getBuildCache() != null && !isCached())
+        {
+            sendMsg("Build cache is not used for Pack200 compression or separate pack jars",
+                    PackagerListener.MSG_WARN);
+        }
+        if (isSpooled())
+        {
+            writePacksSpooled(packs, references);
+        }
+        else
+        {
+            writePacksSequential(packs, references);
+        }
+        for (PackInfo packInfo : packs)
+        {
+            String name = packInfo.getPack().getName();
+            long[] offsets = new long[packInfo.getPackFiles().size() + 1];
+            int i = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                offsets[i++] = references.getOffset(packInfo.getFile(packFile), packFile, name);
+            }
+            offsets[i] = references.getParsablesOffset(name);
+            packOffsets.put(name, offsets);
+        }
 
+        // Now that we know sizes, write pack metadata to primary jar.
+        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
+        ObjectOutputStream out = new ObjectOutputStream(installerJar);
+        out.writeInt(packs.size());
+
+        for (PackInfo packInfo : packs)
+        {
+            out.writeObject(packInfo.getPack());
+        }
+        out.flush();
+        installerJar.closeEntry();
+
+        // Pack200 files
+        Pack200.Packer packer = createAgressivePack200Packer();
+        Map<Integer, File> pack200Map = references.getPack200Files();
+        for (Integer key : pack200Map.keySet())
+        {
+            File file = pack200Map.get(key);
+            installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + key));
+            JarFile jar = new JarFile(file);
+            packer.pack(jar, installerJar);
+            jar.close();
+            installerJar.closeEntry();
+        }
+
+        writeDeltas(packs, references);
+    }
+
+    /**
+     * Writes the deltas of the files delta encoded by a patch installer, each to a separate entry, and the whole
+     * content of the files to the patch fallback jar, if any.
+     *
+     * @param packs      the packs
+     * @param references the references, which identify the deltas
+     * @throws IOException for any I/O error
+     */
+    private void writeDeltas(List<PackInfo> packs, PackFileReferences references) throws IOException
+    {
+        Map<PackFile, File> deltas = getDeltas();
+        if (deltas.isEmpty())
+        {
+            return;
+        }
+        JarOutputStream installerJar = getInstallerJar();
+        File fallback = getPatchFallback();
+        ZipOutputStream fallbackJar = null;
+        try
+        {
+            if (fallback != null)
+            {
+                sendMsg("Writing patch fallback jar " + fallback, PackagerListener.MSG_VERBOSE);
+                fallbackJar = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(fallback)));
+            }
+            for (PackInfo packInfo : packs)
+            {
+                for (PackFile packFile : packInfo.getPackFiles())
+                {
+                    int id = references.getDeltaId(packFile);
+                    if (id != -1)
+                    {
+                        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(
+                                RESOURCES_PATH + Delta.RESOURCE + id));
+                        copy(new FileInputStream(deltas.get(packFile)), installerJar);
+                        installerJar.closeEntry();
+                        if (fallbackJar != null)
+                        {
+                            fallbackJar.putNextEntry(new ZipEntry(Delta.FALLBACK_ENTRY + id));
+                            copy(ArchiveEntryFile.open(packInfo.getFile(packFile)), fallbackJar);
+                            fallbackJar.closeEntry();
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(fallbackJar);
+        }
+    }
+
+    /**
+     * Copies a stream, closing it afterwards.
+     *
+     * @param in  the stream to copy
+     * @param out the stream to copy to. This isn't closed
+     * @throws IOException for any I/O error
+     */
+    private void copy(InputStream in, OutputStream out) throws IOException
+    {
+        try
+        {
+            IOUtils.copy(in, out);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the offsets of the content of each pack's files, followed by the offset of its parsable files.
+     *
+     * @return the offsets, keyed on pack name
+     */
+    @Override
+    protected Map<String, long[]> getPackOffsets()
+    {
+        return packOffsets;
+    }
+
+    /**
+     * Determines if packs are compressed concurrently.
+     * <p/>
+     * This is only supported if the packs are written to the installer jar.
+     *
+     * @return {@code true} if more than one pack thread is configured and packs aren't written to separate jars
+     */
+    protected boolean isParallel()
+    {
+        return getCompilerData().getPackThreads() > 1 && getInfo() != null && !packSeparateJars();
+    }
+
+    /**
+     * Determines if packs are cached between builds.
+     * <p/>
+     * This is only supported if the packs are written to the installer jar, and Pack200 compression isn't used.
+     *
+     * @return {@code true} if a build cache is configured, packs aren't written to separate jars, and Pack200
+     *         compression isn't used
+     */
+    protected boolean isCached()
+    {
+        return getCompilerData().getBuildCache() != null && getInfo() != null && !packSeparateJars()
+                && !getInfo().isPack200Compression();
+    }
+
+    /**
+     * Determines if packs are compressed separately, each to its own temporary file, before being stored in the
+     * installer jar.
+     *
+     * @return {@code true} if packs are compressed concurrently or cached
+     */
+    protected boolean isSpooled()
+    {
+        return isParallel() || isCached();
+    }
+
+    /**
+     * Writes each pack to the installer jar in turn, compressing it with the installer jar stream.
+     *
+     * @param packs      the packs to write
+     * @param references the back references
+     * @throws IOException for any I/O error
+     */
+    private void writePacksSequential(List<PackInfo> packs, PackFileReferences references) throws IOException
+    {
+        JarOutputStream installerJar = getInstallerJar();
         int packNumber = 0;
         IXMLElement root = new XMLElementImpl("packs");
 
         for (PackInfo packInfo : packs)
         {
             Pack pack = packInfo.getPack();
-            pack.setFileSize(0);
 
             // create a pack specific jar if required
             // REFACTOR : Repare web installer
@@ -141,152 +389,474 @@ public class Packager extends PackagerBase
             // Retrieve the correct output stream
             org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(
                     RESOURCES_PATH + "packs/pack-" + pack.getName());
+            boolean encode = isEncodedPerPack();
+            if (encode)
+            {
+                // the pack is already compressed, so don't deflate it again
+                installerJar.setLevel(Deflater.NO_COMPRESSION);
+            }
             installerJar.putNextEntry(entry);
             installerJar.flush(); // flush before we start counting
 
-            ByteCountingOutputStream dos = new ByteCountingOutputStream(outputStream);
-            ObjectOutputStream objOut = new ObjectOutputStream(dos);
+            OutputStream packStream = encode ? createEncoder(installerJar) : outputStream;
+            writePack(packInfo, packStream, references);
 
-            // We write the actual pack files
-            objOut.writeInt(packInfo.getPackFiles().size());
+            // Cleanup
+            if (!getCompressor().useStandardCompression())
+            {
+                packStream.close();
+            }
 
-            for (PackFile packFile : packInfo.getPackFiles())
+            installerJar.closeEntry();
+            if (encode)
             {
-                boolean addFile = !pack.isLoose();
-                boolean pack200 = false;
-                File file = packInfo.getFile(packFile);
+                installerJar.setLevel(getCompressionLevel());
+            }
 
-                if (file.getName().toLowerCase().endsWith(".jar") && getInfo().isPack200Compression()
-                        && isNotSignedJar(file))
-                {
-                    packFile.setPack200Jar(true);
-                    pack200 = true;
-                }
+            // close pack specific jar if required
+            if (packSeparateJars())
+            {
+                installerJar.closeAlways();
+            }
 
-                // use a back reference if file was in previous pack, and in
-                // same jar
-                Object[] info = storedFiles.get(file);
-                if (info != null && !packSeparateJars())
-                {
-                    packFile.setPreviousPackFileRef((String) info[0], (Long) info[1]);
-                    addFile = false;
-                }
+            IXMLElement child = new XMLElementImpl("pack", root);
+            child.setAttribute("name", pack.getName());
+            child.setAttribute("size", Long.toString(pack.getSize()));
+            child.setAttribute("fileSize", Long.toString(pack.getFileSize()));
+            if (pack.getLangPackId() != null)
+            {
+                child.setAttribute("id", pack.getLangPackId());
+            }
+            root.addChild(child);
 
-                objOut.writeObject(packFile); // base info
+            packNumber++;
+        }
+    }
 
-                if (addFile && !packFile.isDirectory())
-                {
-                    long pos = dos.getByteCount(); // get the position
+    /**
+     * Determines if each pack written sequentially must be compressed with its own encoder.
+     * <p/>
+     * This is the case when the compressor has an encoder that hasn't already been applied to the installer jar
+     * stream by the output stream provider.
+     *
+     * @return {@code true} if each pack must be compressed with its own encoder
+     */
+    private boolean isEncodedPerPack()
+    {
+        return !getCompressor().useStandardCompression() && getCompressor().getEncoderClassName() != null
+                && outputStream == getInstallerJar();
+    }
 
-                    if (pack200)
-                    {
-                        /*
-                         * Warning!
-                         *
-                         * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
-                         * reads the entire stream...
-                         *
-                         * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
-                         */
-                        pack200Map.put(pack200Counter, file);
-                        objOut.writeInt(pack200Counter);
-                        pack200Counter = pack200Counter + 1;
-                    }
-                    else
+    /**
+     * Compresses the packs concurrently, each to its own temporary file, and then stores them in the installer jar
+     * in pack order.
+     * <p/>
+     * As back references are planned in advance, the pack files written are the same as if the packs were
+     * written sequentially.
+     * <p/>
+     * If a build cache is configured, packs whose fingerprints match a cached pack are stored from the cache
+     * rather than compressed again.
+     *
+     * @param packs      the packs to write
+     * @param references the back references
+     * @throws IOException for any I/O error
+     */
+    private void writePacksSpooled(List<PackInfo> packs, final PackFileReferences references) throws IOException
+    {
+        int threads = Math.min(getCompilerData().getPackThreads(), Math.max(packs.size(), 1));
+        sendMsg("Compressing packs using " + threads + " threads", PackagerListener.MSG_VERBOSE);
+        final PackCache cache = isCached()
+                ? new PackCache(new File(getCompilerData().getBuildCache()), getCacheSettings()) : null;
+
+        // packs are submitted in order, so that an earlier pack is always started before a later one refers to it
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<SpooledPack>> spooled = new ArrayList<Future<SpooledPack>>();
+        try
+        {
+            for (final PackInfo packInfo : packs)
+            {
+                final String fingerprint = (cache != null) ? cache.getFingerprint(packInfo, references) : null;
+                spooled.add(executor.submit(new Callable<SpooledPack>()
+                {
+                    @Override
+                    public SpooledPack call() throws Exception
                     {
-                        FileInputStream inStream = new FileInputStream(file);
-                        long bytesWritten = IoHelper.copyStream(inStream, objOut);
-                        inStream.close();
-                        if (bytesWritten != packFile.length())
+                        if (cache != null)
                         {
-                            throw new IOException("File size mismatch when reading " + file);
+                            return getCachedPack(packInfo, fingerprint, cache, references);
                         }
+                        return spoolPack(packInfo, references);
                     }
+                }));
+            }
+            executor.shutdown();
 
-                    storedFiles.put(file, new Object[]{pack.getName(), pos}); // TODO - see IZPACK-799
+            int packNumber = 0;
+            for (Future<SpooledPack> future : spooled)
+            {
+                SpooledPack pack = getSpooledPack(future);
+                sendMsg("Writing Pack " + packNumber + ": " + pack.getName() + (pack.isCached() ? " (cached)" : ""),
+                        PackagerListener.MSG_VERBOSE);
+                pack.write(getInstallerJar(), RESOURCES_PATH + "packs/pack-" + pack.getName(),
+                           RESOURCES_PATH + "packs/index-" + pack.getName());
+                packNumber++;
+            }
+            if (cache != null)
+            {
+                sendMsg("Build cache: " + cache.getHits() + " hit" + (cache.getHits() != 1 ? "s" : "") + ", "
+                                + cache.getMisses() + " miss" + (cache.getMisses() != 1 ? "es" : ""));
+                cache.prune();
+            }
+        }
+        catch (IOException exception)
+        {
+            references.abort();
+            executor.shutdownNow();
+            throw exception;
+        }
+        finally
+        {
+            // remove any temporary files not yet written
+            for (Future<SpooledPack> future : spooled)
+            {
+                if (future.isDone() && !future.isCancelled())
+                {
+                    try
+                    {
+                        future.get().delete();
+                    }
+                    catch (Exception ignore)
+                    {
+                        // failure already reported
+                    }
                 }
+            }
+        }
+    }
 
-                // even if not written, it counts towards pack size
-                pack.addFileSize(packFile.size());
+    /**
+     * Waits for a pack to be compressed.
+     *
+     * @param future the pack compression task
+     * @return the compressed pack
+     * @throws IOException if the pack could not be compressed
+     */
+    private SpooledPack getSpooledPack(Future<SpooledPack> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing packs");
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
             }
+            throw new IOException("Failed to write pack", cause);
+        }
+    }
 
-            if (pack.getFileSize() > pack.getSize())
+    /**
+     * Returns a pack from the build cache, compressing and caching it if it isn't present.
+     *
+     * @param packInfo    the pack
+     * @param fingerprint the pack fingerprint
+     * @param cache       the build cache
+     * @param references  the back references
+     * @return the compressed pack
+     * @throws IOException for any I/O error
+     */
+    private SpooledPack getCachedPack(PackInfo packInfo, String fingerprint, PackCache cache,
+                                      PackFileReferences references) throws IOException
+    {
+        SpooledPack result = cache.get(fingerprint, packInfo, references);
+        if (result != null)
+        {
+            // the pack files are written to the pack manifest, so must refer to the same content as the cached pack
+            for (PackFile packFile : packInfo.getPackFiles())
             {
-                pack.setSize(pack.getFileSize());
+                Object[] info = references.getReference(packInfo.getFile(packFile), packFile);
+                if (info != null)
+                {
+                    packFile.setPreviousPackFileRef((String) info[0], (Long) info[1]);
+                }
             }
+            updatePackSize(packInfo);
+        }
+        else
+        {
+            result = spoolPack(packInfo, references);
+            try
+            {
+                cache.put(fingerprint, result, packInfo, references);
+            }
+            catch (IOException exception)
+            {
+                sendMsg("Failed to cache pack " + packInfo.getPack().getName() + ": " + exception.getMessage(),
+                        PackagerListener.MSG_WARN);
+            }
+        }
+        return result;
+    }
 
-            // Write out information about parsable files
-            objOut.writeInt(packInfo.getParsables().size());
+    /**
+     * Returns the compression settings that affect the content of compressed packs.
+     *
+     * @return the compression settings
+     */
+    private String getCacheSettings()
+    {
+        PackCompressor compressor = getCompressor();
+        return getCompilerData().getComprFormat() + ":" + getCompressionLevel() + ":"
+                + compressor.useStandardCompression() + ":" + compressor.getEncoderClassName() + ":"
+                + compressor.getCompressionLevel() + ":" + PackBlockOutputStream.DEFAULT_BLOCK_SIZE;
+    }
 
-            for (ParsableFile parsableFile : packInfo.getParsables())
+    /**
+     * Compresses a pack to a temporary file.
+     * <p/>
+     * The pack is split into independently compressed blocks, so that the installer can locate back referenced
+     * files without decompressing the preceding blocks.
+     *
+     * @param packInfo   the pack
+     * @param references the back references
+     * @return the compressed pack
+     * @throws IOException for any I/O error
+     */
+    private SpooledPack spoolPack(PackInfo packInfo, PackFileReferences references) throws IOException
+    {
+        File file = FileUtils.createTempFile("izpack-pack", ".tmp");
+        CRC32 crc = new CRC32();
+        final Deflater deflater = getCompressor().useStandardCompression() ? new Deflater(getCompressionLevel()) : null;
+        PackBlockOutputStream out = null;
+        boolean success = false;
+        try
+        {
+            OutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file)), crc);
+            out = new PackBlockOutputStream(checked, PackBlockOutputStream.DEFAULT_BLOCK_SIZE)
+            {
+                @Override
+                protected OutputStream createEncoder(OutputStream out) throws IOException
+                {
+                    if (deflater != null)
+                    {
+                        deflater.reset();
+                        return new DeflaterOutputStream(out, deflater);
+                    }
+                    else if (getCompressor().getEncoderClassName() != null)
+                    {
+                        return Packager.this.createEncoder(out);
+                    }
+                    return out;
+                }
+            };
+            writePack(packInfo, out, references);
+            out.close();
+            success = true;
+        }
+        finally
+        {
+            if (!success)
             {
-                objOut.writeObject(parsableFile);
+                IOUtils.closeQuietly(out);
             }
-
-            // Write out information about executable files
-            objOut.writeInt(packInfo.getExecutables().size());
-            for (ExecutableFile executableFile : packInfo.getExecutables())
+            if (deflater != null)
             {
-                objOut.writeObject(executableFile);
+                deflater.end();
             }
-
-            // Write out information about updatecheck files
-            objOut.writeInt(packInfo.getUpdateChecks().size());
-            for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+            if (!success)
             {
-                objOut.writeObject(updateCheck);
+                file.delete();
             }
+        }
+        return new SpooledPack(packInfo.getPack().getName(), file, crc.getValue(), out.getBlocks());
+    }
 
-            // Cleanup
-            objOut.flush();
-            if (!getCompressor().useStandardCompression())
+    /**
+     * Creates an encoding stream for the pack compressor.
+     * <p/>
+     * The encoder is created via reflection as it may not be present on the compiler class path until it has
+     * been merged.
+     *
+     * @param out the stream to write encoded data to
+     * @return the encoding stream
+     * @throws IOException if the encoder cannot be created
+     */
+    private OutputStream createEncoder(OutputStream out) throws IOException
+    {
+        String className = getCompressor().getEncoderClassName();
+        int level = getCompressor().getCompressionLevel();
+        try
+        {
+            Class<?> encoder = Class.forName(className);
+            if (level > 0 && level <= 9)
             {
-                outputStream.close();
+                Constructor<?> constructor = encoder.getConstructor(OutputStream.class, int.class);
+                return (OutputStream) constructor.newInstance(out, level);
             }
+            Constructor<?> constructor = encoder.getConstructor(OutputStream.class);
+            return (OutputStream) constructor.newInstance(out);
+        }
+        catch (Exception exception)
+        {
+            throw new IOException("Failed to create pack encoder: " + className, exception);
+        }
+    }
 
-            installerJar.closeEntry();
+    /**
+     * Returns the deflate compression level for packs.
+     *
+     * @return the compression level
+     */
+    private int getCompressionLevel()
+    {
+        int level = getCompilerData().getComprLevel();
+        return (level >= 0 && level < 10) ? level : Deflater.BEST_COMPRESSION;
+    }
 
-            // close pack specific jar if required
-            if (packSeparateJars())
+    /**
+     * Writes the serialized files and file metadata of a pack.
+     *
+     * @param packInfo   the pack
+     * @param out        the stream to write to. This is flushed but not closed
+     * @param references the back references
+     * @throws IOException for any I/O error
+     */
+    private void writePack(PackInfo packInfo, OutputStream out, PackFileReferences references) throws IOException
+    {
+        Pack pack = packInfo.getPack();
+
+        ByteCountingOutputStream dos = new ByteCountingOutputStream(out);
+        ObjectOutputStream objOut = new ObjectOutputStream(dos);
+
+        // We write the actual pack files
+        PackFileWriter writer = new PackFileWriter(objOut);
+        writer.writeHeader(packInfo.getPackFiles().size());
+
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            boolean addFile = !pack.isLoose() && !packFile.isRetained();
+            boolean pack200 = false;
+            File file = packInfo.getFile(packFile);
+
+            if (addFile && !packFile.isDelta() && file.getName().toLowerCase().endsWith(".jar")
+                    && getInfo().isPack200Compression()
+                    && !(file instanceof ArchiveEntryFile) && isNotSignedJar(file))
             {
-                installerJar.closeAlways();
+                packFile.setPack200Jar(true);
+                // the installed jar won't match the source jar, so its digest can't be used to detect changes
+                packFile.setDigest(null);
+                pack200 = true;
             }
 
-            IXMLElement child = new XMLElementImpl("pack", root);
-            child.setAttribute("name", pack.getName());
-            child.setAttribute("size", Long.toString(pack.getSize()));
-            child.setAttribute("fileSize", Long.toString(pack.getFileSize()));
-            if (pack.getLangPackId() != null)
+            // use a back reference if the content was in a previous pack, and in
+            // same jar
+            Object[] info = references.getReference(file, packFile);
+            if (info != null && !packSeparateJars())
             {
-                child.setAttribute("id", pack.getLangPackId());
+                packFile.setPreviousPackFileRef((String) info[0], (Long) info[1]);
+                addFile = false;
+            }
+
+            writer.write(packFile); // base info
+
+            if (addFile && !packFile.isDirectory())
+            {
+                long pos = dos.getByteCount(); // get the position
+
+                if (packFile.isDelta())
+                {
+                    // the delta is stored as a separate entry, along with those of the other packs
+                    objOut.writeInt(references.getDeltaId(packFile));
+                }
+                else if (pack200)
+                {
+                    /*
+                     * Warning!
+                     *
+                     * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
+                     * reads the entire stream...
+                     *
+                     * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
+                     */
+                    objOut.writeInt(references.addPack200File(file, packFile));
+                }
+                else
+                {
+                    InputStream inStream = ArchiveEntryFile.open(file);
+                    long bytesWritten = IoHelper.copyStream(inStream, objOut);
+                    inStream.close();
+                    if (bytesWritten != packFile.length())
+                    {
+                        throw new IOException("File size mismatch when reading " + file);
+                    }
+                }
+
+                if (!packFile.isDelta())
+                {
+                    references.addStoredFile(file, pack.getName(), pos); // TODO - see IZPACK-799
+                }
             }
-            root.addChild(child);
 
-            packNumber++;
         }
 
-        // Now that we know sizes, write pack metadata to primary jar.
-        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
-        ObjectOutputStream out = new ObjectOutputStream(installerJar);
-        out.writeInt(packs.size());
+        updatePackSize(packInfo);
 
-        for (PackInfo packInfo : packs)
+        // record where the pack metadata starts, so that it can be read without reading the pack files. The
+        // stream is reset so that the metadata doesn't refer to objects written with the pack files
+        objOut.reset();
+        references.setParsablesOffset(pack.getName(), dos.getByteCount());
+
+        // Write out information about parsable files
+        objOut.writeInt(packInfo.getParsables().size());
+
+        for (ParsableFile parsableFile : packInfo.getParsables())
         {
-            out.writeObject(packInfo.getPack());
+            objOut.writeObject(parsableFile);
         }
-        out.flush();
-        installerJar.closeEntry();
 
-        // Pack200 files
-        Pack200.Packer packer = createAgressivePack200Packer();
-        for (Integer key : pack200Map.keySet())
+        // Write out information about executable files
+        objOut.writeInt(packInfo.getExecutables().size());
+        for (ExecutableFile executableFile : packInfo.getExecutables())
         {
-            File file = pack200Map.get(key);
-            installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + key));
-            JarFile jar = new JarFile(file);
-            packer.pack(jar, installerJar);
-            jar.close();
-            installerJar.closeEntry();
+            objOut.writeObject(executableFile);
+        }
+
+        // Write out information about updatecheck files
+        objOut.writeInt(packInfo.getUpdateChecks().size());
+        for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+        {
+            objOut.writeObject(updateCheck);
+        }
+
+        objOut.flush();
+    }
+
+    /**
+     * Updates the size of a pack from the sizes of its files.
+     * <p/>
+     * Files written as back references count towards the pack size, even though their content isn't written.
+     *
+     * @param packInfo the pack
+     */
+    private void updatePackSize(PackInfo packInfo)
+    {
+        Pack pack = packInfo.getPack();
+        pack.setFileSize(0);
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            pack.addFileSize(packFile.size());
+        }
+        if (pack.getFileSize() > pack.getSize())
+        {
+            pack.setSize(pack.getFileSize());
         }
     }
 
@@ -22,20 +22,29 @@
 
 package com.izforge.izpack.compiler.packager.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -45,6 +54,7 @@ import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.GUIPrefs;
 import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.InstallerRequirement;
+import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.data.Panel;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
@@ -54,8 +64,11 @@ import com.izforge.izpack.compiler.merge.PanelMerge;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.packager.IPackager;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.data.ArchiveEntryFile;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackManifest;
+import com.izforge.izpack.installer.data.UninstallerSkeleton;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.FileUtil;
@@ -189,6 +202,11 @@ public abstract class PackagerBase implements IPackager
      */
     private Map<FilterOutputStream, Set<String>> alreadyWrittenFiles = new HashMap<FilterOutputStream, Set<String>>();
 
+    /**
+     * The temporary files containing the deltas of the files delta encoded by a patch installer, keyed on pack file.
+     */
+    private Map<PackFile, File> deltas = Collections.emptyMap();
+
 
     /**
      * Constructs a <tt>PackagerBase</tt>.
@@ -402,7 +420,15 @@ public abstract class PackagerBase implements IPackager
 
         sendStart();
 
-        writeInstaller();
+        try
+        {
+            writeInstaller();
+        }
+        finally
+        {
+            closeArchives();
+            deleteDeltas();
+        }
 
         // Finish up. closeAlways is a hack for pack compressions other than
         // default. Some of it (e.g. BZip2) closes the slave of it also.
@@ -414,6 +440,39 @@ public abstract class PackagerBase implements IPackager
         sendStop();
     }
 
+    /**
+     * Closes any archives that pack files were streamed from.
+     */
+    protected void closeArchives()
+    {
+        for (PackInfo pack : packsList)
+        {
+            for (PackFile packFile : pack.getPackFiles())
+            {
+                File file = pack.getFile(packFile);
+                if (file instanceof ArchiveEntryFile)
+                {
+                    IOUtils.closeQuietly(((ArchiveEntryFile) file).getArchive());
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files containing deltas.
+     */
+    protected void deleteDeltas()
+    {
+        for (File delta : deltas.values())
+        {
+            if (!delta.delete())
+            {
+                delta.deleteOnExit();
+            }
+        }
+        deltas = Collections.emptyMap();
+    }
+
     /**
      * Determines if each pack is to be included in a separate jar.
      *
@@ -434,7 +493,9 @@ public abstract class PackagerBase implements IPackager
         // write the installer jar. MUST be first so manifest is not overwritten by an included jar
         writeManifest();
         writeSkeletonInstaller();
+        writeUninstallerSkeleton();
 
+        preparePatch();
         writeInstallerObject("info", info);
         writeInstallerObject("vars", properties);
         writeInstallerObject("GUIPrefs", guiPrefs);
@@ -451,6 +512,152 @@ public abstract class PackagerBase implements IPackager
 
         // Pack File Data may be written to separate jars
         writePacks();
+        writePackManifest();
+    }
+
+    /**
+     * Prepares a patch installer, if a {@link CompilerData#getPatchBase() patch base} is specified.
+     * <p/>
+     * Files unchanged since the patch base are retained rather than stored, large changed files are delta encoded,
+     * and files no longer present are removed at installation. If files are delta encoded, their whole content is
+     * also written to the {@link #getPatchFallback() patch fallback jar}.
+     *
+     * @throws IOException if the patch base has no pack manifest, or for any I/O error
+     */
+    protected void preparePatch() throws IOException
+    {
+        String patchBase = compilerData.getPatchBase();
+        if (patchBase != null)
+        {
+            sendMsg("Creating patch for " + patchBase);
+            PatchPlanner planner = new PatchPlanner(readPackManifest(new File(patchBase)), getDeltaThreshold());
+            try
+            {
+                info.setPatchedPacks(planner.plan(packsList));
+            }
+            finally
+            {
+                deltas = planner.getDeltas();
+            }
+            sendMsg("Patch retains " + planner.getRetained() + " unchanged files, delta encodes " + deltas.size()
+                            + " files and removes " + planner.getRemoved() + " files", PackagerListener.MSG_VERBOSE);
+            if (!deltas.isEmpty())
+            {
+                File fallback = getPatchFallback();
+                if (fallback != null)
+                {
+                    info.setPatchFallback(fallback.getName());
+                }
+                else
+                {
+                    sendMsg("No patch fallback jar is written as the installer has no output file. Delta encoded "
+                                    + "files can only be installed over unmodified copies", PackagerListener.MSG_WARN);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length from which files changed since the patch base are delta encoded.
+     *
+     * @return the delta threshold, or {@code -1} if files are never delta encoded
+     */
+    protected long getDeltaThreshold()
+    {
+        return compilerData.getDeltaThreshold();
+    }
+
+    /**
+     * Returns the deltas of the files delta encoded by a patch installer.
+     *
+     * @return the temporary files containing the deltas, keyed on pack file, in pack order
+     */
+    protected Map<PackFile, File> getDeltas()
+    {
+        return deltas;
+    }
+
+    /**
+     * Returns the patch fallback jar, which holds the whole content of the files delta encoded by a patch installer.
+     * <p/>
+     * This is written alongside the installer, named after it with a {@code -full} suffix.
+     *
+     * @return the fallback jar, or {@code null} if the installer has no output file
+     */
+    protected File getPatchFallback()
+    {
+        String output = compilerData.getOutput();
+        if (output == null || output.length() == 0)
+        {
+            return null;
+        }
+        File file = new File(output);
+        String name = file.getName();
+        if (name.toLowerCase().endsWith(".jar"))
+        {
+            name = name.substring(0, name.length() - 4);
+        }
+        return new File(file.getAbsoluteFile().getParentFile(), name + "-full.jar");
+    }
+
+    /**
+     * Reads the manifest of the files in each pack of an installer.
+     *
+     * @param installer the installer jar
+     * @return the manifest
+     * @throws IOException if the installer has no manifest, or for any I/O error
+     */
+    protected PackManifest readPackManifest(File installer) throws IOException
+    {
+        JarFile jar = new JarFile(installer);
+        try
+        {
+            ZipEntry entry = jar.getEntry(RESOURCES_PATH + PackManifest.NAME);
+            if (entry == null)
+            {
+                throw new IOException("Installer " + installer + " has no pack manifest. It must be rebuilt with "
+                                              + "this version of IzPack before patches can be created for it");
+            }
+            return PackManifest.read(new BufferedInputStream(jar.getInputStream(entry)));
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Writes the manifest of the files in each pack, so that patches can be created against the installer.
+     * <p/>
+     * The block signatures of files at least as long as the {@link #getDeltaThreshold() delta threshold} are
+     * included, so that patches can delta encode them.
+     *
+     * @throws IOException for any I/O error
+     */
+    protected void writePackManifest() throws IOException
+    {
+        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + PackManifest.NAME));
+        try
+        {
+            PackManifest.write(packsList, getPackOffsets(), getDeltaThreshold(), installerJar);
+        }
+        finally
+        {
+            installerJar.closeEntry();
+        }
+    }
+
+    /**
+     * Returns the offsets in each pack stream of the content of each pack file, followed by the offset of the pack's
+     * parsable files, so that damaged files can be repaired without reading the whole pack.
+     * <p/>
+     * This implementation returns no offsets.
+     *
+     * @return the offsets, keyed on pack name
+     */
+    protected Map<String, long[]> getPackOffsets()
+    {
+        return Collections.emptyMap();
     }
 
     /**
@@ -500,6 +707,56 @@ public abstract class PackagerBase implements IPackager
         mergeManager.merge(installerJar);
     }
 
+    /**
+     * Writes the parts of the uninstaller skeleton to the installer jar, if an uninstaller is required.
+     * <p/>
+     * This saves the installer from having to merge them from its class path when it writes the uninstaller.
+     *
+     * @throws IOException for any I/O error
+     */
+    protected void writeUninstallerSkeleton() throws IOException
+    {
+        if (info == null || info.getUninstallerPath() == null)
+        {
+            return;
+        }
+        sendMsg("Building the uninstaller skeleton", PackagerListener.MSG_VERBOSE);
+        for (UninstallerSkeleton part : UninstallerSkeleton.values())
+        {
+            File file = com.izforge.izpack.util.file.FileUtils.createTempFile("uninstaller", ".jar");
+            try
+            {
+                ZipOutputStream jar = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                part.merge(pathResolver, jar);
+                try
+                {
+                    jar.close();
+                }
+                catch (ZipException exception)
+                {
+                    // nothing was merged
+                    continue;
+                }
+
+                installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + part.getResource()));
+                InputStream in = new FileInputStream(file);
+                try
+                {
+                    IoHelper.copyStream(in, installerJar);
+                }
+                finally
+                {
+                    in.close();
+                }
+                installerJar.closeEntry();
+            }
+            finally
+            {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
     /**
      * Write an arbitrary object to installer jar.
      *
@@ -598,6 +855,16 @@ public abstract class PackagerBase implements IPackager
         return compressor;
     }
 
+    /**
+     * Returns the compiler data.
+     *
+     * @return the compiler data
+     */
+    protected CompilerData getCompilerData()
+    {
+        return compilerData;
+    }
+
     /**
      * Dispatches a message to the listeners.
      *
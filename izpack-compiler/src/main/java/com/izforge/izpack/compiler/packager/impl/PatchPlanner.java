@@ -0,0 +1,387 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.ArchiveEntryFile;
+import com.izforge.izpack.data.BlockSignatures;
+import com.izforge.izpack.data.Delta;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackManifest;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Plans a patch installer, which updates an installation made by a previous installer.
+ * <p/>
+ * Files whose content is unchanged since the previous installer are retained: they are listed in their packs, but
+ * their content isn't stored, and the installed copy is verified instead. Files that are parsed or executed after
+ * unpacking are never retained, as their installed copy no longer has their pack content. Files installed by the
+ * previous installer but no longer present are removed by an {@link UpdateCheck} added to their pack.
+ * <p/>
+ * Large files that have changed are delta encoded if the previous installer recorded the {@link BlockSignatures} of
+ * their content: the patch stores a {@link Delta} that recreates the new content from blocks of the installed copy
+ * plus the bytes that differ, rather than the whole file. The installer verifies the installed copy against the
+ * previous digest before applying the delta and the result against the new digest afterwards, and installs the whole
+ * file from the patch fallback jar if either doesn't match. A delta is only used if it is smaller than the file.
+ */
+class PatchPlanner
+{
+
+    /**
+     * The prefix of target paths that can be removed by update checks.
+     */
+    private static final String INSTALL_PATH = "$INSTALL_PATH/";
+
+    /**
+     * The manifest of the previous installer.
+     */
+    private final PackManifest previous;
+
+    /**
+     * The length from which changed files are delta encoded, or {@code -1} if they are never delta encoded.
+     */
+    private final long deltaThreshold;
+
+    /**
+     * The temporary files containing the deltas of delta encoded pack files.
+     */
+    private final Map<PackFile, File> deltas = new LinkedHashMap<PackFile, File>();
+
+    /**
+     * The no. of retained files.
+     */
+    private int retained;
+
+    /**
+     * The no. of files to remove.
+     */
+    private int removed;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(PatchPlanner.class.getName());
+
+
+    /**
+     * Constructs a {@code PatchPlanner}.
+     *
+     * @param previous       the manifest of the previous installer
+     * @param deltaThreshold the length from which changed files are delta encoded, or {@code -1} if they are never
+     *                       delta encoded
+     */
+    public PatchPlanner(PackManifest previous, long deltaThreshold)
+    {
+        this.previous = previous;
+        this.deltaThreshold = deltaThreshold;
+    }
+
+    /**
+     * Plans the patch, marking unchanged files as retained, delta encoding large changed files, and adding update
+     * checks to remove deleted files.
+     * <p/>
+     * The deltas are written to temporary files, which the caller must {@link #getDeltas() store} and delete.
+     *
+     * @param packs the packs of the new installer
+     * @return the names of the packs that retain or delta encode files, and so can only update a previous
+     *         installation
+     * @throws IOException if a source file cannot be read, or a delta cannot be written
+     */
+    public Set<String> plan(List<PackInfo> packs) throws IOException
+    {
+        Set<String> result = new LinkedHashSet<String>();
+        Set<String> targets = new HashSet<String>();
+        Set<String> modified = getModified(packs);
+        MessageDigest digest = PackFileReferences.getDigest();
+        for (PackInfo packInfo : packs)
+        {
+            String name = packInfo.getPack().getName();
+            boolean loose = packInfo.getPack().isLoose();
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                targets.add(packFile.getTargetPath());
+                if (!loose && !packFile.isDirectory() && isCandidate(packFile, name, modified))
+                {
+                    PackFile file = previous.getFile(packFile.getTargetPath());
+                    BlockSignatures signatures = getSignatures(packFile);
+                    if (file.length() == packFile.length() || signatures != null)
+                    {
+                        File source = packInfo.getFile(packFile);
+                        byte[] bytes = PackFileReferences.digest(source, digest);
+                        if (file.length() == packFile.length() && Arrays.equals(bytes, file.getDigest()))
+                        {
+                            packFile.setRetained(true);
+                            packFile.setDigest(bytes);
+                            result.add(name);
+                            ++retained;
+                        }
+                        else if (signatures != null && encode(packFile, source, signatures, file.getDigest()))
+                        {
+                            packFile.setDelta(true);
+                            packFile.setDigest(bytes);
+                            result.add(name);
+                        }
+                    }
+                }
+            }
+        }
+        addUpdateChecks(packs, targets);
+        return result;
+    }
+
+    /**
+     * Returns the no. of files retained from the previous installer.
+     *
+     * @return the no. of retained files
+     */
+    public int getRetained()
+    {
+        return retained;
+    }
+
+    /**
+     * Returns the deltas of the delta encoded files.
+     *
+     * @return the temporary files containing the deltas, keyed on pack file, in pack order
+     */
+    public Map<PackFile, File> getDeltas()
+    {
+        return deltas;
+    }
+
+    /**
+     * Returns the no. of files installed by the previous installer that the patch removes.
+     *
+     * @return the no. of removed files
+     */
+    public int getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * Determines if a pack file may be retained or delta encoded, i.e. both installers always install and overwrite
+     * it, neither modifies it after unpacking, and the previous installer installed a file with a known digest to the
+     * same target, from a pack of the same name.
+     *
+     * @param packFile the pack file
+     * @param pack     the name of the pack that the file belongs to
+     * @param modified the target paths of files that are modified after unpacking
+     * @return {@code true} if the file may be retained, subject to its content being unchanged, or delta encoded,
+     *         subject to its length
+     */
+    private boolean isCandidate(PackFile packFile, String pack, Set<String> modified)
+    {
+        String target = packFile.getTargetPath();
+        PackFile file = previous.getFile(target);
+        return file != null && !file.isDirectory() && file.getDigest() != null
+                && pack.equals(previous.getPack(target)) && !modified.contains(target) && !previous.isModified(target)
+                && isUnconditional(packFile) && isUnconditional(file);
+    }
+
+    /**
+     * Returns the block signatures of the previous content of a pack file, if the file is large enough to be delta
+     * encoded.
+     *
+     * @param packFile the pack file
+     * @return the signatures, or {@code null} if the file isn't delta encoded
+     */
+    private BlockSignatures getSignatures(PackFile packFile)
+    {
+        if (deltaThreshold < 0 || packFile.length() < deltaThreshold)
+        {
+            return null;
+        }
+        return previous.getSignatures(packFile.getTargetPath());
+    }
+
+    /**
+     * Delta encodes a pack file against its previous content.
+     * <p/>
+     * The delta is discarded if it isn't smaller than the file.
+     *
+     * @param packFile   the pack file
+     * @param source     the source file
+     * @param signatures the block signatures of the previous content
+     * @param digest     the digest of the previous content
+     * @return {@code true} if the file was delta encoded, otherwise {@code false}
+     * @throws IOException if the source file cannot be read, or the delta cannot be written
+     */
+    private boolean encode(PackFile packFile, File source, BlockSignatures signatures, byte[] digest)
+            throws IOException
+    {
+        File delta = FileUtils.createTempFile("delta", ".tmp");
+        boolean result = false;
+        try
+        {
+            InputStream in = new BufferedInputStream(ArchiveEntryFile.open(source));
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(delta));
+            try
+            {
+                new DeltaEncoder(signatures, digest).encode(in, out);
+            }
+            finally
+            {
+                in.close();
+                out.close();
+            }
+            result = delta.length() < packFile.length();
+            if (result)
+            {
+                deltas.put(packFile, delta);
+            }
+        }
+        finally
+        {
+            if (!result && !delta.delete())
+            {
+                delta.deleteOnExit();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a pack file is always installed, and always overwrites the installed copy.
+     * <p/>
+     * A conditional or platform specific file may not have been installed by the previous installation, and a file
+     * that isn't overwritten may have been modified by the user, so neither can be expected to be installed with the
+     * content of its pack file.
+     *
+     * @param packFile the pack file
+     * @return {@code true} if the file has no condition or OS constraints, and overrides existing files
+     */
+    private boolean isUnconditional(PackFile packFile)
+    {
+        return packFile.override() == OverrideType.OVERRIDE_TRUE && !packFile.hasCondition()
+                && (packFile.osConstraints() == null || packFile.osConstraints().isEmpty());
+    }
+
+    /**
+     * Returns the target paths of files that are modified after unpacking, i.e. parsed or executed files.
+     *
+     * @param packs the packs of the new installer
+     * @return the target paths of the parsable and executable files of the packs
+     */
+    private Set<String> getModified(List<PackInfo> packs)
+    {
+        Set<String> result = new HashSet<String>();
+        for (PackInfo packInfo : packs)
+        {
+            for (ParsableFile parsable : packInfo.getParsables())
+            {
+                result.add(parsable.getPath());
+            }
+            for (ExecutableFile executable : packInfo.getExecutables())
+            {
+                result.add(executable.path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds update checks to remove files installed by the previous installer that are no longer present.
+     * <p/>
+     * The check is added to the pack with the same name as the pack that installed the file, or the first pack if
+     * there is none.
+     *
+     * @param packs   the packs of the new installer
+     * @param targets the target paths of the new installer
+     */
+    private void addUpdateChecks(List<PackInfo> packs, Set<String> targets)
+    {
+        if (packs.isEmpty())
+        {
+            return;
+        }
+        Map<PackInfo, ArrayList<String>> includes = new LinkedHashMap<PackInfo, ArrayList<String>>();
+        for (String name : previous.getPackNames())
+        {
+            PackInfo packInfo = getPack(packs, name);
+            for (PackFile file : previous.getPackFiles(name))
+            {
+                String target = file.getTargetPath();
+                if (!file.isDirectory() && !targets.contains(target))
+                {
+                    if (!target.startsWith(INSTALL_PATH))
+                    {
+                        logger.warning("Cannot remove " + target + ": it is not installed under $INSTALL_PATH");
+                        continue;
+                    }
+                    ArrayList<String> list = includes.get(packInfo);
+                    if (list == null)
+                    {
+                        list = new ArrayList<String>();
+                        includes.put(packInfo, list);
+                    }
+                    list.add(target.substring(INSTALL_PATH.length()));
+                    ++removed;
+                }
+            }
+        }
+        for (Map.Entry<PackInfo, ArrayList<String>> entry : includes.entrySet())
+        {
+            entry.getKey().addUpdateCheck(new UpdateCheck(entry.getValue(), null));
+        }
+    }
+
+    /**
+     * Returns the pack with the specified name.
+     *
+     * @param packs the packs
+     * @param name  the pack name
+     * @return the pack with the name, or the first pack if there is none
+     */
+    private PackInfo getPack(List<PackInfo> packs, String name)
+    {
+        for (PackInfo packInfo : packs)
+        {
+            if (packInfo.getPack().getName().equals(name))
+            {
+                return packInfo;
+            }
+        }
+        return packs.get(0);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tools.zip.ZipEntry;
+
+import com.izforge.izpack.compiler.stream.JarOutputStream;
+
+
+/**
+ * A pack that has been compressed to a temporary file, prior to being stored in the installer jar.
+ * <p/>
+ * The pack is made up of independently compressed blocks, described by an index.
+ */
+class SpooledPack
+{
+
+    /**
+     * The pack name.
+     */
+    private final String name;
+
+    /**
+     * The temporary file containing the compressed pack.
+     */
+    private final File file;
+
+    /**
+     * The CRC-32 of the compressed pack.
+     */
+    private final long crc;
+
+    /**
+     * The uncompressed and compressed lengths of each block.
+     */
+    private final List<long[]> blocks;
+
+    /**
+     * Determines if the file belongs to the build cache, and so must not be deleted.
+     */
+    private final boolean cached;
+
+
+    /**
+     * Constructs a {@code SpooledPack}.
+     *
+     * @param name   the pack name
+     * @param file   the temporary file containing the compressed pack
+     * @param crc    the CRC-32 of the compressed pack
+     * @param blocks the uncompressed and compressed lengths of each block
+     */
+    public SpooledPack(String name, File file, long crc, List<long[]> blocks)
+    {
+        this(name, file, crc, blocks, false);
+    }
+
+    /**
+     * Constructs a {@code SpooledPack}.
+     *
+     * @param name   the pack name
+     * @param file   the file containing the compressed pack
+     * @param crc    the CRC-32 of the compressed pack
+     * @param blocks the uncompressed and compressed lengths of each block
+     * @param cached if {@code true}, the file belongs to the build cache and is not deleted
+     */
+    public SpooledPack(String name, File file, long crc, List<long[]> blocks, boolean cached)
+    {
+        this.name = name;
+        this.file = file;
+        this.crc = crc;
+        this.blocks = blocks;
+        this.cached = cached;
+    }
+
+    /**
+     * Returns the pack name.
+     *
+     * @return the pack name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the file containing the compressed pack.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the CRC-32 of the compressed pack.
+     *
+     * @return the CRC-32
+     */
+    public long getCrc()
+    {
+        return crc;
+    }
+
+    /**
+     * Returns the uncompressed and compressed lengths of each block.
+     *
+     * @return the block lengths
+     */
+    public List<long[]> getBlocks()
+    {
+        return blocks;
+    }
+
+    /**
+     * Determines if the pack was read from the build cache.
+     *
+     * @return {@code true} if the pack was read from the build cache
+     */
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    /**
+     * Writes the compressed pack as an uncompressed entry of the installer jar, followed by its index, and deletes
+     * the temporary file, if any.
+     * <p/>
+     * The pack is already compressed, so compressing it again would only waste time. Storing it uncompressed
+     * also allows the installer to skip blocks without reading them.
+     *
+     * @param jar       the installer jar
+     * @param entryName the pack entry name
+     * @param indexName the index entry name
+     * @throws IOException for any I/O error
+     */
+    public void write(JarOutputStream jar, String entryName, String indexName) throws IOException
+    {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(file.length());
+        entry.setCompressedSize(file.length());
+        entry.setCrc(crc);
+        jar.putNextEntry(entry);
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            IOUtils.copyLarge(in, jar);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        jar.closeEntry();
+
+        jar.putNextEntry(new ZipEntry(indexName));
+        PackBlockOutputStream.writeIndex(blocks, jar);
+        jar.closeEntry();
+        delete();
+    }
+
+    /**
+     * Deletes the temporary file.
+     * <p/>
+     * This is a no-op if the pack was read from the build cache.
+     */
+    public void delete()
+    {
+        if (!cached && file.exists())
+        {
+            file.delete();
+        }
+    }
+}
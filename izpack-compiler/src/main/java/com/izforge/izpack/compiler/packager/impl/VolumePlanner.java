@@ -0,0 +1,151 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Plans the placement of compressed pack segments in volumes.
+ * <p/>
+ * Segments are placed in pack order, so that the installer reads through the volumes sequentially, visiting each
+ * at most once. A segment that doesn't fit in the space remaining in the current volume starts a new volume if that
+ * means it touches fewer volumes, i.e. segments only span volumes if they are larger than a volume. This trades
+ * unused space at the end of some volumes for fewer media changes at installation.
+ */
+class VolumePlanner
+{
+
+    /**
+     * The space available for segments in the first volume.
+     */
+    private final long firstCapacity;
+
+    /**
+     * The space available for segments in subsequent volumes.
+     */
+    private final long capacity;
+
+    /**
+     * The index of the current volume.
+     */
+    private int volume;
+
+    /**
+     * The space used in the current volume.
+     */
+    private long used;
+
+
+    /**
+     * Constructs a {@code VolumePlanner}.
+     *
+     * @param firstCapacity the space available for segments in the first volume
+     * @param capacity      the space available for segments in subsequent volumes
+     */
+    public VolumePlanner(long firstCapacity, long capacity)
+    {
+        if (firstCapacity < 1 || capacity < 1)
+        {
+            throw new IllegalArgumentException("Volume capacity must be at least 1 byte");
+        }
+        this.firstCapacity = firstCapacity;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Plans the placement of segments.
+     *
+     * @param sizes the segment sizes, in pack order
+     * @return the placement of each segment, as a volume index and the offset of the segment in that volume
+     */
+    public List<long[]> plan(List<Long> sizes)
+    {
+        List<long[]> result = new ArrayList<long[]>(sizes.size());
+        for (long size : sizes)
+        {
+            long available = getCapacity(volume) - used;
+            if (size > available)
+            {
+                // the segment spans volumes if started here. Only do so if starting in the next volume wouldn't
+                // touch fewer volumes
+                if (available == 0 || getVolumes(size) < 1 + getVolumes(size - available))
+                {
+                    ++volume;
+                    used = 0;
+                }
+            }
+            result.add(new long[]{volume, used});
+            add(size);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the no. of volumes required.
+     *
+     * @return the no. of volumes
+     */
+    public int getVolumes()
+    {
+        return volume + 1;
+    }
+
+    /**
+     * Returns the space available for segments in a volume.
+     *
+     * @param index the volume index
+     * @return the volume capacity
+     */
+    public long getCapacity(int index)
+    {
+        return (index == 0) ? firstCapacity : capacity;
+    }
+
+    /**
+     * Adds a segment at the current position, spanning subsequent volumes as required.
+     *
+     * @param size the segment size
+     */
+    private void add(long size)
+    {
+        long available = getCapacity(volume) - used;
+        while (size > available)
+        {
+            size -= available;
+            ++volume;
+            used = 0;
+            available = capacity;
+        }
+        used += size;
+    }
+
+    /**
+     * Returns the no. of subsequent volumes needed to hold a segment that starts at the beginning of a volume.
+     *
+     * @param size the segment size
+     * @return the no. of volumes
+     */
+    private long getVolumes(long size)
+    {
+        return (size + capacity - 1) / capacity;
+    }
+}
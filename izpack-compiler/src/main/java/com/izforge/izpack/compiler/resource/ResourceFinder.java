@@ -27,7 +27,7 @@ import java.net.URL;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.IXMLParser;
-import com.izforge.izpack.api.adaptator.impl.XMLParser;
+import com.izforge.izpack.api.adaptator.impl.CompactXMLParser;
 import com.izforge.izpack.api.exception.CompilerException;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.data.PropertyManager;
@@ -158,7 +158,7 @@ public class ResourceFinder
      */
     public IXMLElement getXMLTree() throws IOException
     {
-        IXMLParser parser = new XMLParser();
+        IXMLParser parser = new CompactXMLParser();
         IXMLElement data;
         if (compilerData.getInstallFile() != null)
         {
@@ -179,7 +179,8 @@ public class ResourceFinder
             throw new CompilerException("Neither install file nor text specified");
         }
         // We check it
-        if (!"installation".equalsIgnoreCase(data.getElement().getLocalName()))
+        String name = data.getName();
+        if (!"installation".equalsIgnoreCase(name.substring(name.indexOf(':') + 1)))
         {
             assertionHelper.parseError(data, "this is not an IzPack XML installation file");
         }
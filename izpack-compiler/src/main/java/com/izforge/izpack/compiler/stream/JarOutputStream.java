@@ -37,6 +37,8 @@ import java.util.jar.Manifest;
 //import org.apache.tools.zip.ZipOutputStream;
 //import org.apache.tools.zip.ZipEntry;
 
+import com.izforge.izpack.merge.jar.RawZipOutputStream;
+
 /**
  * IzPack will be able to support different compression methods for the
  * packs included in the installation jar file.
@@ -49,7 +51,7 @@ import java.util.jar.Manifest;
  *
  * @author Klaus Bartz
  */
-public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
+public class JarOutputStream extends RawZipOutputStream
 {
     private static final int JAR_MAGIC = 0xCAFE;
     private boolean firstEntry = true;
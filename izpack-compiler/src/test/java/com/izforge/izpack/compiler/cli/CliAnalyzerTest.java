@@ -22,6 +22,7 @@ package com.izforge.izpack.compiler.cli;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import org.hamcrest.core.Is;
+import org.hamcrest.core.IsNull;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -81,4 +82,34 @@ public class CliAnalyzerTest
         assertThat(data.getOutput(), Is.is("graou.jar"));
     }
 
+    @Test
+    public void packThreadsShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-t4"});
+        assertThat(data.getPackThreads(), Is.is(4));
+
+        data = analyzer.parseArgs(new String[]{"myInstall.xml"});
+        assertThat(data.getPackThreads(), Is.is(1));
+    }
+
+    @Test
+    public void buildCacheShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-d", "target/cache"});
+        assertThat(data.getBuildCache(), Is.is("target/cache"));
+
+        data = analyzer.parseArgs(new String[]{"myInstall.xml"});
+        assertThat(data.getBuildCache(), IsNull.nullValue());
+    }
+
+    @Test
+    public void patchBaseShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-p", "target/install-1.0.jar"});
+        assertThat(data.getPatchBase(), Is.is("target/install-1.0.jar"));
+
+        data = analyzer.parseArgs(new String[]{"myInstall.xml"});
+        assertThat(data.getPatchBase(), IsNull.nullValue());
+    }
+
 }
@@ -39,6 +39,8 @@ import java.io.PrintStream;
 import java.net.URISyntaxException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -50,6 +52,7 @@ import com.izforge.izpack.api.data.GUIPrefs;
 import com.izforge.izpack.api.data.OverrideType;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.data.ArchiveEntryFile;
 import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.merge.MergeManager;
 
@@ -143,6 +146,40 @@ public abstract class AbstractPackagerTest
         assertTrue(file.delete());
     }
 
+    /**
+     * Verifies that archive content can be packed without being extracted first.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testArchiveContent() throws Exception
+    {
+        File archive = File.createTempFile("archive", ".zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        zip.putNextEntry(new ZipEntry("lib/"));
+        zip.putNextEntry(new ZipEntry("lib/a.txt"));
+        zip.write("This is a test".getBytes("UTF-8"));
+        zip.close();
+
+        File jar = File.createTempFile("installer", ".jar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        output.setPreventClose(true);
+        PackagerBase packager = createPackager(output, mergeManager);
+
+        PackInfo packInfo = new PackInfo("Core", "Core", null, true, false, null, true, 0);
+        for (ArchiveEntryFile entry : ArchiveEntryFile.list(archive))
+        {
+            packInfo.addFile(archive.getParentFile(), entry, "$INSTALL_PATH/" + entry.getEntryName(), null,
+                             OverrideType.OVERRIDE_TRUE, null, Blockable.BLOCKABLE_NONE, null, null);
+        }
+        packager.addPack(packInfo);
+        packager.createInstaller();
+        assertEquals(14, packInfo.getPack().getSize());
+
+        assertTrue(jar.delete());
+        assertTrue(archive.delete());
+    }
+
     /**
      * Helper to create a packager that writes to the provided jar.
      *
@@ -202,7 +239,7 @@ public abstract class AbstractPackagerTest
      * @return a stream to the content
      * @throws IOException for any I/O error
      */
-    private InputStream getJarEntry(String name, File jar) throws IOException
+    protected InputStream getJarEntry(String name, File jar) throws IOException
     {
         JarInputStream input = new JarInputStream(new FileInputStream(jar));
         JarEntry entry;
@@ -224,7 +261,7 @@ public abstract class AbstractPackagerTest
      * @return the new file
      * @throws IOException for any I/O error
      */
-    private File createTextFile(String text) throws IOException
+    protected File createTextFile(String text) throws IOException
     {
         File file = File.createTempFile("data", ".txt");
         PrintStream printStream = new PrintStream(file);
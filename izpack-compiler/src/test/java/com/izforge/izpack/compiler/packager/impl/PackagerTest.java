@@ -19,18 +19,68 @@
 
 package com.izforge.izpack.compiler.packager.impl;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileReader;
+import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.compiler.compressor.LZ4PackCompressor;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.io.LZ4InputStream;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.data.Delta;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackManifest;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+import com.izforge.izpack.installer.data.UninstallData;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.installer.unpacker.FileQueueFactory;
+import com.izforge.izpack.installer.unpacker.PackResources;
+import com.izforge.izpack.installer.unpacker.Unpacker;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.Platforms;
 
 /**
  * Tests the {@link Packager}.
@@ -38,6 +88,12 @@ import com.izforge.izpack.merge.resolve.MergeableResolver;
 public class PackagerTest extends AbstractPackagerTest
 {
 
+    /**
+     * Temporary folder for the build cache.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     /**
      * Helper to create a packager that writes to the provided jar.
      *
@@ -47,13 +103,734 @@ public class PackagerTest extends AbstractPackagerTest
      */
     @Override
     protected PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager)
+    {
+        return createPackager(jar, mergeManager, new CompilerData("", "", "", true),
+                              Mockito.mock(PackCompressor.class));
+    }
+
+    /**
+     * Verifies that packs compressed concurrently contain the same data as those compressed sequentially,
+     * and that back references across packs refer to the correct offsets.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testParallelPacks() throws Exception
+    {
+        File shared = createTextFile("Shared by all packs");
+        File file1 = createTextFile("Only in pack 1");
+        File file2 = createTextFile("Only in pack 2");
+        File file3 = createTextFile("Only in pack 3");
+        File[][] files = {{file1, shared}, {shared, file2}, {file3, shared}};
+
+        File sequential = createInstaller(1, files);
+        File parallel = createInstaller(3, files);
+
+        for (int i = 1; i <= files.length; ++i)
+        {
+            String name = "resources/packs/pack-Pack" + i;
+            assertArrayEquals(name, readEntry(name, sequential), readEntry(name, parallel));
+        }
+
+        // check the back reference in the last pack refers to the shared file stored in the first pack
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack3", parallel));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(2, reader.readHeader());
+        assertTrue(reader.isCompact());
+        PackFile packFile1 = reader.read();
+        assertFalse(packFile1.isBackReference());
+        byte[] skipped = new byte[(int) packFile1.length()];
+        packStream.readFully(skipped);
+        PackFile packFile2 = reader.read();
+        assertTrue(packFile2.isBackReference());
+        assertEquals("Pack1", packFile2.previousPackId);
+        packStream.close();
+
+        InputStream in = getJarEntry("resources/packs/pack-Pack1", parallel);
+        ObjectInputStream previous = new ObjectInputStream(in);
+        assertEquals(packFile2.offsetInPreviousPack - 4, in.skip(packFile2.offsetInPreviousPack - 4));
+        byte[] content = new byte[(int) shared.length()];
+        previous.readFully(content);
+        assertEquals("Shared by all packs", new String(content));
+        previous.close();
+
+        assertTrue(sequential.delete());
+        assertTrue(parallel.delete());
+        for (File file : new File[]{shared, file1, file2, file3})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that files with identical content at different paths are only stored once.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDuplicateContent() throws Exception
+    {
+        File file1 = createTextFile("Same content");
+        File file2 = createTextFile("Same content");
+        File file3 = createTextFile("Diff content");
+        File installer = createInstaller(1, new File[][]{{file1}, {file3, file2}});
+
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack2", installer));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(2, reader.readHeader());
+        PackFile packFile3 = reader.read();
+        assertFalse(packFile3.isBackReference());
+        packStream.readFully(new byte[(int) packFile3.length()]);
+        PackFile packFile2 = reader.read();
+        assertTrue(packFile2.isBackReference());
+        assertEquals("Pack1", packFile2.previousPackId);
+        assertEquals("$INSTALL_PATH/" + file2.getName(), packFile2.getTargetPath());
+
+        // back references record the digest of the content they refer to
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        assertArrayEquals(digest.digest("Diff content".getBytes("UTF-8")), packFile3.getDigest());
+        assertArrayEquals(digest.digest("Same content".getBytes("UTF-8")), packFile2.getDigest());
+        packStream.close();
+
+        assertTrue(installer.delete());
+        for (File file : new File[]{file1, file2, file3})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs compressed with LZ4 decode to the same data as uncompressed packs, whether written
+     * sequentially or concurrently.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testLZ4Packs() throws Exception
+    {
+        File shared = createTextFile("Shared by all packs");
+        File file1 = createTextFile("Only in pack 1");
+        File file2 = createTextFile("Only in pack 2");
+        File[][] files = {{file1, shared}, {shared, file2}};
+
+        File raw = createInstaller(1, files);
+        File sequential = createInstaller(1, files, new LZ4PackCompressor());
+        File parallel = createInstaller(2, files, new LZ4PackCompressor());
+
+        for (int i = 1; i <= files.length; ++i)
+        {
+            String name = "resources/packs/pack-Pack" + i;
+            byte[] expected = readEntry(name, raw);
+            assertArrayEquals(name, expected, IOUtils.toByteArray(new LZ4InputStream(getJarEntry(name, sequential))));
+            assertArrayEquals(name, expected, IOUtils.toByteArray(new LZ4InputStream(getJarEntry(name, parallel))));
+        }
+
+        for (File file : new File[]{raw, sequential, parallel, shared, file1, file2})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs are read from the build cache if their inputs are unchanged, and that the installer
+     * contains the same packs as one built without the cache.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testBuildCache() throws Exception
+    {
+        File cache = temporaryFolder.newFolder("cache");
+        File shared = createTextFile("Shared by all packs");
+        File file1 = createTextFile("Only in pack 1");
+        File file2 = createTextFile("Only in pack 2");
+        File file3 = createTextFile("Only in pack 3");
+        File[][] files = {{file1, shared}, {shared, file2}, {file3}};
+
+        // first build populates the cache
+        PackagerListener listener = Mockito.mock(PackagerListener.class);
+        File expected = createInstaller(1, files);
+        File cached = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 0 hits, 3 misses", PackagerListener.MSG_INFO);
+        checkPacks(expected, cached, files.length);
+        assertEquals(7, cache.list().length); // a pack and index per pack, and the file digests
+
+        // second build reads all packs from the cache
+        listener = Mockito.mock(PackagerListener.class);
+        cached = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 3 hits, 0 misses", PackagerListener.MSG_INFO);
+        checkPacks(expected, cached, files.length);
+
+        // changing a file only recompresses the pack containing it. The others are read from the cache,
+        // including the offsets of the content they store
+        PrintStream stream = new PrintStream(file2);
+        stream.print("Changed in pack 2");
+        stream.close();
+        assertTrue(file2.setLastModified(file2.lastModified() + 2000));
+        listener = Mockito.mock(PackagerListener.class);
+        expected = createInstaller(1, files);
+        cached = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 2 hits, 1 miss", PackagerListener.MSG_INFO);
+        checkPacks(expected, cached, files.length);
+        assertEquals(9, cache.list().length);
+
+        for (File file : new File[]{expected, cached, shared, file1, file2, file3})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that the pack manifest records the offsets of the content of each file stored in a pack, and of the
+     * pack's parsable files, whether the pack is written or read from the build cache.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPackOffsets() throws Exception
+    {
+        File cache = temporaryFolder.newFolder("cache");
+        File shared = createTextFile("Shared by all packs");
+        File file1 = createTextFile("Only in pack 1");
+        File parsable = createTextFile("value=${value}");
+        File[][] files = {{file1, shared}, {shared, parsable}};
+
+        File written = createInstaller(createCompilerData(cache), files, Mockito.mock(PackCompressor.class), null,
+                                       parsable);
+        File cached = createInstaller(createCompilerData(cache), files, Mockito.mock(PackCompressor.class), null,
+                                      parsable);
+        for (File installer : new File[]{written, cached})
+        {
+            PackManifest manifest = PackManifest.read(getJarEntry("resources/" + PackManifest.NAME, installer));
+            for (int i = 0; i < files.length; ++i)
+            {
+                String name = "Pack" + (i + 1);
+                List<PackFile> packFiles = manifest.getPackFiles(name);
+                for (int j = 0; j < packFiles.size(); ++j)
+                {
+                    PackFile packFile = packFiles.get(j);
+                    long offset = manifest.getOffset(name, j);
+                    assertEquals(packFile.isBackReference(), offset == -1);
+                    if (offset != -1)
+                    {
+                        ObjectInputStream packStream = openPack(name, installer, offset);
+                        byte[] content = new byte[(int) packFile.length()];
+                        packStream.readFully(content);
+                        assertArrayEquals(FileUtils.readFileToByteArray(files[i][j]), content);
+                        packStream.close();
+                    }
+                }
+                ObjectInputStream packStream = openPack(name, installer, manifest.getParsablesOffset(name));
+                assertEquals(i, packStream.readInt());
+                if (i == 1)
+                {
+                    ParsableFile parsableFile = (ParsableFile) packStream.readObject();
+                    assertEquals("$INSTALL_PATH/" + parsable.getName(), parsableFile.getPath());
+                }
+                assertEquals(0, packStream.readInt()); // executables
+                assertEquals(0, packStream.readInt()); // update checks
+                packStream.close();
+            }
+        }
+
+        for (File file : new File[]{written, cached, shared, file1, parsable})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that the build cache stores file digests, so that files that haven't changed since the previous
+     * build aren't digested again, and that files modified since are.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testBuildCacheDigests() throws Exception
+    {
+        File cache = temporaryFolder.newFolder("cache");
+        File file1 = createTextFile("File 1");
+        File file2 = createTextFile("File 2");
+        File recent = createTextFile("Recently modified");
+        long modified = System.currentTimeMillis() - 60000;
+        assertTrue(file1.setLastModified(modified));
+        assertTrue(file2.setLastModified(modified));
+        File[][] files = {{file1, file2, recent}};
+
+        // the first build digests all files. The recently modified file could change again without its
+        // modification time changing, so its digest isn't cached
+        PackagerListener listener = Mockito.mock(PackagerListener.class);
+        File installer = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 0 file digests reused", PackagerListener.MSG_VERBOSE);
+        assertTrue(installer.delete());
+
+        listener = Mockito.mock(PackagerListener.class);
+        installer = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 2 file digests reused", PackagerListener.MSG_VERBOSE);
+        assertTrue(installer.delete());
+
+        // a modified file is digested again, and the installer contains its new digest
+        PrintStream stream = new PrintStream(file2);
+        stream.print("File 3");
+        stream.close();
+        assertTrue(file2.setLastModified(modified + 2000));
+        listener = Mockito.mock(PackagerListener.class);
+        installer = createInstaller(createCompilerData(cache), files, listener);
+        Mockito.verify(listener).packagerMsg("Build cache: 1 file digest reused", PackagerListener.MSG_VERBOSE);
+
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack1", installer));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(3, reader.readHeader());
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        for (String content : new String[]{"File 1", "File 3", "Recently modified"})
+        {
+            PackFile packFile = reader.read();
+            assertArrayEquals(digest.digest(content.getBytes("UTF-8")), packFile.getDigest());
+            IOUtils.skipFully(packStream, packFile.length());
+        }
+        packStream.close();
+
+        for (File file : new File[]{installer, file1, file2, recent})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that a patch installer retains files unchanged since the patch base without storing their content,
+     * stores changed and new files, and removes files no longer present.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPatch() throws Exception
+    {
+        File unchanged = createTextFile("Unchanged");
+        File changed = createTextFile("Version 1");
+        File removed = createTextFile("Removed");
+        File added = createTextFile("Added");
+        File base = createInstaller(1, new File[][]{{unchanged, changed, removed}});
+
+        PrintStream stream = new PrintStream(changed);
+        stream.print("Version 2");
+        stream.close();
+        CompilerData data = new CompilerData("", "", "", true);
+        data.setPatchBase(base.getPath());
+        File patch = createInstaller(data, new File[][]{{unchanged, changed, added}}, null);
+
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack1", patch));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(3, reader.readHeader());
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        PackFile packFile1 = reader.read();
+        assertEquals("$INSTALL_PATH/" + unchanged.getName(), packFile1.getTargetPath());
+        assertTrue(packFile1.isRetained());
+        assertArrayEquals(digest.digest("Unchanged".getBytes("UTF-8")), packFile1.getDigest());
+        PackFile packFile2 = reader.read();
+        assertFalse(packFile2.isRetained());
+        byte[] content = new byte[(int) packFile2.length()];
+        packStream.readFully(content);
+        assertEquals("Version 2", new String(content, "UTF-8"));
+        PackFile packFile3 = reader.read();
+        assertFalse(packFile3.isRetained());
+        content = new byte[(int) packFile3.length()];
+        packStream.readFully(content);
+        assertEquals("Added", new String(content, "UTF-8"));
+
+        assertEquals(0, packStream.readInt()); // parsables
+        assertEquals(0, packStream.readInt()); // executables
+        assertEquals(1, packStream.readInt());
+        UpdateCheck updateCheck = (UpdateCheck) packStream.readObject();
+        assertEquals(Arrays.asList(removed.getName()), updateCheck.includesList);
+        packStream.close();
+
+        ObjectInputStream infoStream = new ObjectInputStream(getJarEntry("resources/info", patch));
+        Info info = (Info) infoStream.readObject();
+        infoStream.close();
+        assertEquals(Collections.singleton("Pack1"), info.getPatchedPacks());
+
+        for (File file : new File[]{base, patch, unchanged, changed, removed, added})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that a patch installer doesn't retain a file parsed by either installer, as the installed copy no
+     * longer has its pack content, and that the patch installs over the previous installation.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPatchParsable() throws Exception
+    {
+        File unchanged = createTextFile("Unchanged");
+        File parsable = createTextFile("value=${value}");
+        File base = createInstaller(new CompilerData("", "", "", true), new File[][]{{unchanged, parsable}},
+                                    Mockito.mock(PackCompressor.class), null, parsable);
+        File installDir = temporaryFolder.newFolder("install");
+        File installed = new File(installDir, parsable.getName());
+        install(base, installDir, "AAAAAAAA");
+        assertEquals("value=AAAAAAAA", FileUtils.readFileToString(installed, "UTF-8"));
+
+        CompilerData data = new CompilerData("", "", "", true);
+        data.setPatchBase(base.getPath());
+        File patch = createInstaller(data, new File[][]{{unchanged, parsable}}, Mockito.mock(PackCompressor.class),
+                                     null, parsable);
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack1", patch));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(2, reader.readHeader());
+        assertTrue(reader.read().isRetained());
+        assertFalse(reader.read().isRetained());
+        packStream.close();
+
+        install(patch, installDir, "BBBBBBBB");
+        assertEquals("value=BBBBBBBB", FileUtils.readFileToString(installed, "UTF-8"));
+
+        // the file was parsed by the previous installer, so isn't retained even if the patch doesn't parse it
+        File unparsed = createInstaller(data, new File[][]{{unchanged, parsable}}, null);
+        packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack1", unparsed));
+        reader = new PackFileReader(packStream);
+        assertEquals(2, reader.readHeader());
+        assertTrue(reader.read().isRetained());
+        assertFalse(reader.read().isRetained());
+        packStream.close();
+
+        for (File file : new File[]{base, patch, unparsed, unchanged, parsable})
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that a patch installer stores a delta for a large changed file, which recreates the file from the
+     * installed copy, and installs the whole file from the patch fallback jar if the installed copy has been modified.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPatchDelta() throws Exception
+    {
+        Random random = new Random(42);
+        byte[] content = new byte[200000];
+        random.nextBytes(content);
+        File large = temporaryFolder.newFile("large.bin");
+        FileUtils.writeByteArrayToFile(large, content);
+        CompilerData data = new CompilerData("", "", "", true);
+        data.setDeltaThreshold(100000);
+        File base = createInstaller(data, new File[][]{{large}}, null);
+        File installDir = temporaryFolder.newFolder("install");
+        File installed = new File(installDir, large.getName());
+        install(base, installDir, null);
+        assertArrayEquals(content, FileUtils.readFileToByteArray(installed));
+
+        // change a few bytes in the middle of the file, and append some
+        Arrays.fill(content, 100000, 100010, (byte) 0);
+        byte[] changed = Arrays.copyOf(content, content.length + 100);
+        FileUtils.writeByteArrayToFile(large, changed);
+        File output = new File(temporaryFolder.getRoot(), "patch.jar");
+        data = new CompilerData("", "", output.getPath(), true);
+        data.setDeltaThreshold(100000);
+        data.setPatchBase(base.getPath());
+        File patch = output;
+        // the installer is written to a temporary file, so move it alongside the fallback jar
+        FileUtils.moveFile(createInstaller(data, new File[][]{{large}}, null), patch);
+
+        ObjectInputStream packStream = new ObjectInputStream(getJarEntry("resources/packs/pack-Pack1", patch));
+        PackFileReader reader = new PackFileReader(packStream);
+        assertEquals(1, reader.readHeader());
+        assertTrue(reader.read().isDelta());
+        assertEquals(0, packStream.readInt());
+        packStream.close();
+        assertTrue(readEntry("resources/" + Delta.RESOURCE + "0", patch).length < 20000);
+        ObjectInputStream infoStream = new ObjectInputStream(getJarEntry("resources/info", patch));
+        Info info = (Info) infoStream.readObject();
+        infoStream.close();
+        File fallback = new File(temporaryFolder.getRoot(), "patch-full.jar");
+        assertEquals(fallback.getName(), info.getPatchFallback());
+        assertArrayEquals(changed, readEntry(Delta.FALLBACK_ENTRY + "0", fallback));
+
+        install(patch, installDir, null);
+        assertArrayEquals(changed, FileUtils.readFileToByteArray(installed));
+
+        // the installed copy no longer matches the delta's base, so the file is installed from the fallback jar
+        FileUtils.writeByteArrayToFile(installed, content);
+        install(patch, installDir, null);
+        assertArrayEquals(changed, FileUtils.readFileToByteArray(installed));
+
+        // without the fallback jar, the patch can't be installed
+        FileUtils.writeByteArrayToFile(installed, content);
+        assertTrue(fallback.delete());
+        assertFalse(unpack(patch, installDir, null));
+
+        assertTrue(base.delete());
+        assertTrue(patch.delete());
+    }
+
+    /**
+     * Helper to install all of the packs of an installer.
+     *
+     * @param installer  the installer jar
+     * @param installDir the installation directory
+     * @param value      the value of the {@code value} variable, substituted into parsable files
+     * @throws Exception for any error
+     */
+    private void install(File installer, File installDir, String value) throws Exception
+    {
+        assertTrue(unpack(installer, installDir, value));
+    }
+
+    /**
+     * Helper to unpack all of the packs of an installer.
+     * <p/>
+     * The installer is run from the directory containing it.
+     *
+     * @param installer  the installer jar
+     * @param installDir the installation directory
+     * @param value      the value of the {@code value} variable, substituted into parsable files
+     * @return {@code true} if the installation was successful
+     * @throws Exception for any error
+     */
+    private boolean unpack(final File installer, File installDir, String value) throws Exception
+    {
+        AutomatedInstallData installData = new AutomatedInstallData(new DefaultVariables(), Platforms.LINUX);
+        ObjectInputStream in = new ObjectInputStream(getJarEntry("resources/info", installer));
+        installData.setInfo((Info) in.readObject());
+        in.close();
+        List<Pack> packs = new ArrayList<Pack>();
+        in = new ObjectInputStream(getJarEntry("resources/packs.info", installer));
+        for (int i = in.readInt(); i > 0; --i)
+        {
+            packs.add((Pack) in.readObject());
+        }
+        in.close();
+        installData.setSelectedPacks(packs);
+        installData.setInstallPath(installDir.getPath());
+        if (value != null)
+        {
+            installData.setVariable("value", value);
+        }
+
+        PackResources resources = Mockito.mock(PackResources.class);
+        Mockito.when(resources.getPackStream(Mockito.anyString())).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws Throwable
+            {
+                return getJarEntry("resources/packs/pack-" + invocation.getArguments()[0], installer);
+            }
+        });
+        Mockito.when(resources.getInputStream(Mockito.anyString())).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws Throwable
+            {
+                return getJarEntry("resources/" + invocation.getArguments()[0], installer);
+            }
+        });
+        Prompt prompt = Mockito.mock(Prompt.class);
+        Unpacker unpacker = new Unpacker(installData, resources, Mockito.mock(RulesEngine.class),
+                                         new VariableSubstitutorImpl(installData.getVariables()),
+                                         new UninstallData(), Mockito.mock(FileQueueFactory.class),
+                                         Mockito.mock(Housekeeper.class), new InstallerListeners(installData, prompt),
+                                         prompt, new PlatformModelMatcher(new Platforms(), Platforms.LINUX))
+        {
+            @Override
+            protected File getAbsoluteInstallSource()
+            {
+                return installer.getParentFile();
+            }
+        };
+        unpacker.setProgressListener(Mockito.mock(ProgressListener.class));
+        unpacker.unpack();
+        return unpacker.getResult();
+    }
+
+    /**
+     * Helper to create an installer containing a pack for each set of files.
+     * <p/>
+     * The packs are not compressed.
+     *
+     * @param threads the no. of pack threads
+     * @param files   the files of each pack
+     * @return the installer jar
+     * @throws Exception for any error
+     */
+    private File createInstaller(int threads, File[][] files) throws Exception
+    {
+        return createInstaller(threads, files, Mockito.mock(PackCompressor.class));
+    }
+
+    /**
+     * Helper to create an installer containing a pack for each set of files.
+     *
+     * @param threads    the no. of pack threads
+     * @param files      the files of each pack
+     * @param compressor the pack compressor
+     * @return the installer jar
+     * @throws Exception for any error
+     */
+    private File createInstaller(int threads, File[][] files, PackCompressor compressor) throws Exception
+    {
+        CompilerData data = new CompilerData("", "", "", true);
+        data.setPackThreads(threads);
+        return createInstaller(data, files, compressor, null);
+    }
+
+    /**
+     * Helper to create an installer containing a pack for each set of files.
+     * <p/>
+     * The packs are not compressed.
+     *
+     * @param data     the compiler data
+     * @param files    the files of each pack
+     * @param listener the packager listener. May be {@code null}
+     * @return the installer jar
+     * @throws Exception for any error
+     */
+    private File createInstaller(CompilerData data, File[][] files, PackagerListener listener) throws Exception
+    {
+        return createInstaller(data, files, Mockito.mock(PackCompressor.class), listener);
+    }
+
+    /**
+     * Helper to create an installer containing a pack for each set of files.
+     *
+     * @param data       the compiler data
+     * @param files      the files of each pack
+     * @param compressor the pack compressor
+     * @param listener   the packager listener. May be {@code null}
+     * @param parsables  the files to parse after installation
+     * @return the installer jar
+     * @throws Exception for any error
+     */
+    private File createInstaller(CompilerData data, File[][] files, PackCompressor compressor,
+                                 PackagerListener listener, File... parsables) throws Exception
+    {
+        File jar = File.createTempFile("installer", ".jar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        output.setPreventClose(true);
+        PackagerBase packager = createPackager(output, Mockito.mock(MergeManager.class), data, compressor, listener);
+        for (int i = 0; i < files.length; ++i)
+        {
+            String name = "Pack" + (i + 1);
+            PackInfo packInfo = new PackInfo(name, name, null, true, false, null, true, 0);
+            for (File file : files[i])
+            {
+                packInfo.addFile(file.getParentFile(), file, "$INSTALL_PATH/" + file.getName(), null,
+                                 OverrideType.OVERRIDE_TRUE, null, Blockable.BLOCKABLE_NONE, null, null);
+                if (Arrays.asList(parsables).contains(file))
+                {
+                    packInfo.addParsable(new ParsableFile("$INSTALL_PATH/" + file.getName(),
+                                                          SubstitutionType.TYPE_PLAIN, null, null));
+                }
+            }
+            packager.addPack(packInfo);
+        }
+        packager.createInstaller();
+        return jar;
+    }
+
+    /**
+     * Helper to create compiler data that caches packs.
+     *
+     * @param cache the build cache directory
+     * @return new compiler data
+     */
+    private CompilerData createCompilerData(File cache)
+    {
+        CompilerData data = new CompilerData("", "", "", true);
+        data.setBuildCache(cache.getPath());
+        return data;
+    }
+
+    /**
+     * Verifies that two installers contain the same packs.
+     *
+     * @param expected the expected installer
+     * @param actual   the actual installer
+     * @param packs    the no. of packs
+     * @throws Exception for any error
+     */
+    private void checkPacks(File expected, File actual, int packs) throws Exception
+    {
+        for (int i = 1; i <= packs; ++i)
+        {
+            String name = "resources/packs/pack-Pack" + i;
+            assertArrayEquals(name, readEntry(name, expected), readEntry(name, actual));
+        }
+    }
+
+    /**
+     * Helper to open the stream of a pack, positioned at an offset.
+     *
+     * @param name      the pack name
+     * @param installer the installer jar
+     * @param offset    the offset of the uncompressed pack stream
+     * @return the pack stream
+     * @throws Exception for any error
+     */
+    private ObjectInputStream openPack(String name, File installer, long offset) throws Exception
+    {
+        InputStream in = getJarEntry("resources/packs/pack-" + name, installer);
+        ObjectInputStream result = new ObjectInputStream(in);
+        // the stream header has been read (== 4 bytes)
+        assertEquals(offset - 4, in.skip(offset - 4));
+        return result;
+    }
+
+    /**
+     * Helper to read the content of a jar entry.
+     *
+     * @param name the entry name
+     * @param jar  the jar
+     * @return the entry content
+     * @throws Exception for any error
+     */
+    private byte[] readEntry(String name, File jar) throws Exception
+    {
+        InputStream in = getJarEntry(name, jar);
+        try
+        {
+            return IOUtils.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Helper to create a packager that writes to the provided jar.
+     *
+     * @param jar          the jar stream
+     * @param mergeManager the merge manager
+     * @param data         the compiler data
+     * @param compressor   the pack compressor
+     * @return a new packager
+     */
+    private PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager, CompilerData data,
+                                        PackCompressor compressor)
+    {
+        return createPackager(jar, mergeManager, data, compressor, null);
+    }
+
+    /**
+     * Helper to create a packager that writes to the provided jar.
+     *
+     * @param jar          the jar stream
+     * @param mergeManager the merge manager
+     * @param data         the compiler data
+     * @param compressor   the pack compressor
+     * @param listener     the packager listener. May be {@code null}
+     * @return a new packager
+     */
+    private PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager, CompilerData data,
+                                        PackCompressor compressor, PackagerListener listener)
     {
         Properties properties = new Properties();
-        PackagerListener listener = null;
-        PackCompressor compressor = Mockito.mock(PackCompressor.class);
         CompilerPathResolver pathResolver = Mockito.mock(CompilerPathResolver.class);
         MergeableResolver resolver = Mockito.mock(MergeableResolver.class);
-        CompilerData data = new CompilerData("", "", "", true);
         Packager packager = new Packager(properties, listener, jar, compressor, jar, mergeManager,
                                          pathResolver, resolver, data);
         packager.setInfo(new Info());
@@ -0,0 +1,230 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackManifest;
+
+
+/**
+ * Tests the {@link PatchPlanner} class.
+ */
+public class PatchPlannerTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that only files that are always installed and overwritten are retained.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRetainUnconditional() throws Exception
+    {
+        File dir = temporaryFolder.getRoot();
+        File plain = createFile("plain.txt", "Plain");
+        File keep = createFile("keep.txt", "Keep");
+        File ask = createFile("ask.txt", "Ask");
+        File conditional = createFile("conditional.txt", "Conditional");
+        File platform = createFile("platform.txt", "Platform");
+        List<OsModel> linux = Arrays.asList(new OsModel(null, "unix", null, null, null));
+
+        PackInfo previous = new PackInfo("Core", null, null, true, false, null, true, 0);
+        PackInfo current = new PackInfo("Core", null, null, true, false, null, true, 0);
+        for (PackInfo packInfo : new PackInfo[]{previous, current})
+        {
+            addFile(packInfo, dir, plain, null, OverrideType.OVERRIDE_TRUE, null);
+            addFile(packInfo, dir, keep, null, OverrideType.OVERRIDE_FALSE, null);
+            addFile(packInfo, dir, ask, null, OverrideType.OVERRIDE_ASK_TRUE, null);
+            addFile(packInfo, dir, conditional, null, OverrideType.OVERRIDE_TRUE, "cond");
+            addFile(packInfo, dir, platform, linux, OverrideType.OVERRIDE_TRUE, null);
+        }
+
+        PatchPlanner planner = new PatchPlanner(createManifest(previous, -1), -1);
+        assertEquals(Collections.singleton("Core"), planner.plan(Arrays.asList(current)));
+        assertEquals(1, planner.getRetained());
+        for (PackFile packFile : current.getPackFiles())
+        {
+            if (current.getFile(packFile).equals(plain))
+            {
+                assertTrue(packFile.isRetained());
+            }
+            else
+            {
+                assertFalse(packFile.getTargetPath(), packFile.isRetained());
+            }
+        }
+    }
+
+    /**
+     * Verifies that large changed files are delta encoded, provided the delta is smaller than the file.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDelta() throws Exception
+    {
+        File dir = temporaryFolder.getRoot();
+        Random random = new Random(42);
+        byte[] content = new byte[100000];
+        random.nextBytes(content);
+        File edited = createFile("edited.bin", content);
+        File rewritten = createFile("rewritten.bin", content);
+        File small = createFile("small.txt", "Version 1");
+
+        PackInfo previous = new PackInfo("Core", null, null, true, false, null, true, 0);
+        PackInfo current = new PackInfo("Core", null, null, true, false, null, true, 0);
+        for (PackInfo packInfo : new PackInfo[]{previous, current})
+        {
+            addFile(packInfo, dir, edited, null, OverrideType.OVERRIDE_TRUE, null);
+            addFile(packInfo, dir, rewritten, null, OverrideType.OVERRIDE_TRUE, null);
+            addFile(packInfo, dir, small, null, OverrideType.OVERRIDE_TRUE, null);
+        }
+        PackManifest manifest = createManifest(previous, 1000);
+
+        // insert bytes near the start of one file, and replace the content of the other
+        byte[] inserted = new byte[content.length + 10];
+        System.arraycopy(content, 0, inserted, 0, 50);
+        System.arraycopy(content, 50, inserted, 60, content.length - 50);
+        createFile("edited.bin", inserted);
+        random.nextBytes(content);
+        createFile("rewritten.bin", content);
+        createFile("small.txt", "Version 2");
+
+        PatchPlanner planner = new PatchPlanner(manifest, 1000);
+        assertEquals(Collections.singleton("Core"), planner.plan(Arrays.asList(current)));
+        assertEquals(0, planner.getRetained());
+        assertEquals(1, planner.getDeltas().size());
+        for (PackFile packFile : current.getPackFiles())
+        {
+            assertFalse(packFile.isRetained());
+            assertEquals(packFile.getTargetPath(), current.getFile(packFile).equals(edited), packFile.isDelta());
+        }
+        File delta = planner.getDeltas().values().iterator().next();
+        assertTrue(delta.length() < 10000);
+        assertTrue(delta.delete());
+    }
+
+    /**
+     * Creates the manifest of a previous installer.
+     *
+     * @param packInfo        the pack of the previous installer
+     * @param signatureLength the length from which block signatures are recorded, or {@code -1} to record none
+     * @return the manifest
+     * @throws IOException for any I/O error
+     */
+    private PackManifest createManifest(PackInfo packInfo, long signatureLength) throws IOException
+    {
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            packFile.setDigest(PackFileReferences.digest(packInfo.getFile(packFile), PackFileReferences.getDigest()));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackManifest.write(Arrays.asList(packInfo), Collections.<String, long[]>emptyMap(), signatureLength, bytes);
+        return PackManifest.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Adds a file to a pack.
+     *
+     * @param packInfo  the pack
+     * @param dir       the base directory
+     * @param file      the file
+     * @param osList    the OS constraints. May be {@code null}
+     * @param override  the override type
+     * @param condition the condition. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void addFile(PackInfo packInfo, File dir, File file, List<OsModel> osList, OverrideType override,
+                         String condition) throws IOException
+    {
+        packInfo.addFile(dir, file, "$INSTALL_PATH/" + file.getName(), osList, override, null,
+                         Blockable.BLOCKABLE_NONE, null, condition);
+    }
+
+    /**
+     * Creates a file.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        writer.print(content);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Creates a binary file.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, byte[] content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+}
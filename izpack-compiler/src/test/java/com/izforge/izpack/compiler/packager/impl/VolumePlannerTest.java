@@ -0,0 +1,135 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link VolumePlanner}.
+ */
+public class VolumePlannerTest
+{
+
+    /**
+     * Verifies that segments that fit in the current volume are placed one after the other.
+     */
+    @Test
+    public void testSameVolume()
+    {
+        VolumePlanner planner = new VolumePlanner(50, 100);
+        List<long[]> plan = planner.plan(Arrays.asList(10L, 20L, 20L));
+
+        checkPlacement(plan.get(0), 0, 0);
+        checkPlacement(plan.get(1), 0, 10);
+        checkPlacement(plan.get(2), 0, 30);
+        assertEquals(1, planner.getVolumes());
+    }
+
+    /**
+     * Verifies that a segment that doesn't fit in the remaining space starts a new volume, rather than spanning
+     * two volumes.
+     */
+    @Test
+    public void testNewVolume()
+    {
+        VolumePlanner planner = new VolumePlanner(50, 100);
+        List<long[]> plan = planner.plan(Arrays.asList(40L, 30L, 80L, 30L));
+
+        checkPlacement(plan.get(0), 0, 0);
+        checkPlacement(plan.get(1), 1, 0);
+        checkPlacement(plan.get(2), 2, 0);
+        checkPlacement(plan.get(3), 3, 0);
+        assertEquals(4, planner.getVolumes());
+    }
+
+    /**
+     * Verifies that a segment larger than a volume fills the remaining space of the current volume when starting
+     * in the next volume would touch as many volumes.
+     */
+    @Test
+    public void testSpanning()
+    {
+        VolumePlanner planner = new VolumePlanner(50, 100);
+        List<long[]> plan = planner.plan(Arrays.asList(10L, 230L, 10L));
+
+        // 230 bytes touches 3 volumes whether started at offset 10 of volume 0, or at the beginning of volume 1
+        checkPlacement(plan.get(0), 0, 0);
+        checkPlacement(plan.get(1), 0, 10);
+        checkPlacement(plan.get(2), 2, 90);
+        assertEquals(3, planner.getVolumes());
+    }
+
+    /**
+     * Verifies that a segment larger than a volume starts a new volume if that means it touches fewer volumes.
+     */
+    @Test
+    public void testSpanningNewVolume()
+    {
+        VolumePlanner planner = new VolumePlanner(50, 100);
+        List<long[]> plan = planner.plan(Arrays.asList(45L, 150L));
+
+        // 150 bytes needs 2 volumes if started at the beginning of volume 1, but 3 if started at offset 45
+        checkPlacement(plan.get(0), 0, 0);
+        checkPlacement(plan.get(1), 1, 0);
+        assertEquals(3, planner.getVolumes());
+    }
+
+    /**
+     * Verifies that empty segments don't require a new volume.
+     */
+    @Test
+    public void testEmpty()
+    {
+        VolumePlanner planner = new VolumePlanner(50, 100);
+        List<long[]> plan = planner.plan(Arrays.asList(50L, 0L));
+
+        checkPlacement(plan.get(0), 0, 0);
+        checkPlacement(plan.get(1), 0, 50);
+        assertEquals(1, planner.getVolumes());
+    }
+
+    /**
+     * Verifies that invalid capacities are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity()
+    {
+        new VolumePlanner(0, 100);
+    }
+
+    /**
+     * Verifies a segment placement.
+     *
+     * @param placement the placement
+     * @param volume    the expected volume
+     * @param offset    the expected offset
+     */
+    private void checkPlacement(long[] placement, long volume, long offset)
+    {
+        assertArrayEquals(new long[]{volume, offset}, placement);
+    }
+}
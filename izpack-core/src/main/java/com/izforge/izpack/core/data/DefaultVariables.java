@@ -22,21 +22,30 @@
 package com.izforge.izpack.core.data;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.izforge.izpack.api.data.DynamicVariable;
+import com.izforge.izpack.api.data.Value;
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.core.variable.PlainValue;
 
 
 /**
  * Default implementation of the {@link Variables} interface.
+ * <p/>
+ * When dynamic variables are refreshed, the variables read by each are recorded. A dynamic variable is only
+ * re-evaluated if one of these has since changed, or if its value depends on something other than variables, and its
+ * {@link DynamicVariable#getTimeToLive() time to live} has expired. Conditions are always re-evaluated.
  *
  * @author Tim Anderson
  */
@@ -63,6 +72,15 @@ public class DefaultVariables implements Variables
      */
     private RulesEngine rules;
 
+    /**
+     * The last evaluation of each dynamic variable.
+     */
+    private final Map<DynamicVariable, Evaluation> evaluations = new IdentityHashMap<DynamicVariable, Evaluation>();
+
+    /**
+     * The variables read by the dynamic variable being evaluated by the current thread, and their values.
+     */
+    private final ThreadLocal<Map<String, String>> inputs = new ThreadLocal<Map<String, String>>();
 
     /**
      * The logger.
@@ -85,7 +103,14 @@ public class DefaultVariables implements Variables
     public DefaultVariables(Properties properties)
     {
         this.properties = properties;
-        replacer = new VariableSubstitutorImpl(properties);
+        replacer = new VariableSubstitutorImpl(properties)
+        {
+            @Override
+            public Value getValue(String name)
+            {
+                return new PlainValue(DefaultVariables.this.get(name));
+            }
+        };
     }
 
     /**
@@ -126,7 +151,9 @@ public class DefaultVariables implements Variables
     @Override
     public String get(String name)
     {
-        return properties.getProperty(name);
+        String value = properties.getProperty(name);
+        read(name, value);
+        return value;
     }
 
     /**
@@ -138,7 +165,8 @@ public class DefaultVariables implements Variables
     @Override
     public String get(String name, String defaultValue)
     {
-        return properties.getProperty(name, defaultValue);
+        String value = get(name);
+        return (value != null) ? value : defaultValue;
     }
 
     /**
@@ -296,6 +324,7 @@ public class DefaultVariables implements Variables
     @Override
     public synchronized void refresh()
     {
+        long now = System.currentTimeMillis();
         for (DynamicVariable variable : dynamicVariables)
         {
             String conditionId = variable.getConditionid();
@@ -311,18 +340,37 @@ public class DefaultVariables implements Variables
             else
             {
                 String newValue;
-                try
+                Evaluation evaluation = evaluations.get(variable);
+                if (evaluation != null && evaluation.isCurrent(variable, now))
                 {
-                    newValue = variable.evaluate(replacer);
-                }
-                catch (IzPackException exception)
-                {
-                    throw exception;
+                    newValue = evaluation.getValue();
+                    if (log)
+                    {
+                        logger.fine("Dynamic variable=" + variable.getName() + " not re-evaluated as its inputs are "
+                                            + "unchanged");
+                    }
                 }
-                catch (Exception exception)
+                else
                 {
-                    throw new IzPackException("Failed to refresh dynamic variables", exception);
-
+                    Map<String, String> read = new HashMap<String, String>();
+                    inputs.set(read);
+                    try
+                    {
+                        newValue = variable.evaluate(replacer);
+                    }
+                    catch (IzPackException exception)
+                    {
+                        throw exception;
+                    }
+                    catch (Exception exception)
+                    {
+                        throw new IzPackException("Failed to refresh dynamic variables", exception);
+                    }
+                    finally
+                    {
+                        inputs.remove();
+                    }
+                    evaluations.put(variable, new Evaluation(newValue, read, now));
                 }
                 if (newValue != null)
                 {
@@ -340,6 +388,21 @@ public class DefaultVariables implements Variables
         }
     }
 
+    /**
+     * Records a variable read by the dynamic variable being evaluated, if any.
+     *
+     * @param name  the variable name
+     * @param value the variable value. May be {@code null}
+     */
+    private void read(String name, String value)
+    {
+        Map<String, String> read = inputs.get();
+        if (read != null && !read.containsKey(name))
+        {
+            read.put(name, value);
+        }
+    }
+
     /**
      * Exposes the variables as properties.
      *
@@ -351,4 +414,74 @@ public class DefaultVariables implements Variables
         return properties;
     }
 
+    /**
+     * The result of evaluating a dynamic variable.
+     */
+    private class Evaluation
+    {
+
+        /**
+         * The evaluated value. May be {@code null}.
+         */
+        private final String value;
+
+        /**
+         * The variables read during evaluation, and their values at the time.
+         */
+        private final Map<String, String> inputs;
+
+        /**
+         * The time of evaluation, in milliseconds.
+         */
+        private final long time;
+
+        /**
+         * Constructs an {@code Evaluation}.
+         *
+         * @param value  the evaluated value. May be {@code null}
+         * @param inputs the variables read during evaluation, and their values
+         * @param time   the time of evaluation, in milliseconds
+         */
+        public Evaluation(String value, Map<String, String> inputs, long time)
+        {
+            this.value = value;
+            this.inputs = inputs;
+            this.time = time;
+        }
+
+        /**
+         * Returns the evaluated value.
+         *
+         * @return the evaluated value. May be {@code null}
+         */
+        public String getValue()
+        {
+            return value;
+        }
+
+        /**
+         * Determines if the evaluated value is still current.
+         * <p/>
+         * Plain values only depend on the variables they refer to. Other values may also depend on the environment,
+         * so are only current until their time to live expires.
+         *
+         * @param variable the dynamic variable
+         * @param now      the current time, in milliseconds
+         * @return {@code true} if the value is current, {@code false} if the variable needs to be re-evaluated
+         */
+        public boolean isCurrent(DynamicVariable variable, long now)
+        {
+            for (Map.Entry<String, String> input : inputs.entrySet())
+            {
+                String current = properties.getProperty(input.getKey());
+                String previous = input.getValue();
+                if (current == null ? previous != null : !current.equals(previous))
+                {
+                    return false;
+                }
+            }
+            return variable.getValue() instanceof PlainValue
+                    || now - time < variable.getTimeToLive() * 1000;
+        }
+    }
 }
@@ -51,6 +51,8 @@ public class DynamicVariableImpl implements DynamicVariable
 
     private boolean ignorefailure = true;
 
+    private long timeToLive = 0;
+
     private transient String currentValue;
 
     @Override
@@ -236,6 +238,18 @@ public class DynamicVariableImpl implements DynamicVariable
         this.ignorefailure = ignore;
     }
 
+    @Override
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    @Override
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -75,6 +75,30 @@ public class FileSpanningInputStream extends InputStream
         zippedInputStream = new GZIPInputStream(spanningInputStream);
     }
 
+    /**
+     * Constructs a <tt>FileSpanningInputStream</tt> that reads a compressed segment of the volumes.
+     * <p/>
+     * The segment starts at <tt>offset</tt> bytes after the magic number of volume <tt>index</tt>, and may
+     * continue into subsequent volumes. No more than <tt>length</tt> compressed bytes are read, so volumes after
+     * the segment are never opened.
+     *
+     * @param volume  the first volume
+     * @param volumes the no. of volumes
+     * @param index   the index of the volume that the segment starts in
+     * @param offset  the offset of the segment in the volume, excluding the magic number
+     * @param length  the compressed length of the segment
+     * @param locator the volume locator. May be <tt>null</tt>
+     * @throws CorruptVolumeException  if the volume magic no. cannot be read
+     * @throws VolumeNotFoundException if the volume cannot be found
+     * @throws IOException             for any other I/O exception
+     */
+    public FileSpanningInputStream(File volume, int volumes, int index, long offset, long length,
+                                   VolumeLocator locator) throws IOException
+    {
+        spanningInputStream = new SpanningInputStream(volume, volumes, index, offset, length, locator);
+        zippedInputStream = new GZIPInputStream(spanningInputStream);
+    }
+
     /**
      * Sets the volume locator.
      *
@@ -227,7 +251,7 @@ public class FileSpanningInputStream extends InputStream
         /**
          * The first volume magic number. All subsequent volumes must start with this.
          */
-        private final byte[] magicNumber;
+        private byte[] magicNumber;
 
         /**
          * The volume locator. May be <tt>null</tt>
@@ -239,6 +263,11 @@ public class FileSpanningInputStream extends InputStream
          */
         private File current;
 
+        /**
+         * The no. of bytes that may still be read, or <tt>-1</tt> if the stream is unlimited.
+         */
+        private long remaining = -1;
+
 
         /**
          * Constructs a <tt>SpanningInputStream</tt>.
@@ -267,6 +296,47 @@ public class FileSpanningInputStream extends InputStream
             }
         }
 
+        /**
+         * Constructs a <tt>SpanningInputStream</tt> that reads a segment of the volumes.
+         *
+         * @param volume  the first volume
+         * @param volumes the number of volumes
+         * @param index   the index of the volume that the segment starts in
+         * @param offset  the offset of the segment in the volume, excluding the magic number
+         * @param length  the length of the segment
+         * @param locator the volume locator. May be <tt>null</tt>
+         * @throws IOException for any I/O error
+         */
+        public SpanningInputStream(File volume, int volumes, int index, long offset, long length,
+                                   VolumeLocator locator) throws IOException
+        {
+            basePath = volume.getAbsolutePath();
+            this.volumes = volumes;
+            this.locator = locator;
+            if (index == 0 && volume.exists())
+            {
+                stream = new FileInputStream(volume);
+                current = volume;
+                checkMagicNumber();
+            }
+            else
+            {
+                openVolume(index);
+            }
+            long skip = offset;
+            while (skip > 0)
+            {
+                long skipped = stream.skip(skip);
+                if (skipped <= 0)
+                {
+                    FileUtils.close(stream);
+                    throw new CorruptVolumeException();
+                }
+                skip -= skipped;
+            }
+            remaining = length;
+        }
+
         /**
          * Sets the volume locator.
          *
@@ -292,6 +362,14 @@ public class FileSpanningInputStream extends InputStream
         @Override
         public int read(byte[] b, int off, int len) throws IOException
         {
+            if (remaining == 0)
+            {
+                return -1;
+            }
+            if (remaining > 0 && len > remaining)
+            {
+                len = (int) remaining;
+            }
             int count = -1;
             while (len != 0)
             {
@@ -310,6 +388,10 @@ public class FileSpanningInputStream extends InputStream
                     count = (count == -1) ? read : count + read;
                 }
             }
+            if (remaining > 0 && count > 0)
+            {
+                remaining -= count;
+            }
             return count;
         }
 
@@ -322,12 +404,20 @@ public class FileSpanningInputStream extends InputStream
         @Override
         public int read() throws IOException
         {
+            if (remaining == 0)
+            {
+                return -1;
+            }
             int read = stream.read();
             if (read == -1 && openNextVolume())
             {
                 // read from the next volume
                 read = stream.read();
             }
+            if (remaining > 0 && read != -1)
+            {
+                --remaining;
+            }
             return read;
         }
 
@@ -370,50 +460,61 @@ public class FileSpanningInputStream extends InputStream
             }
             else
             {
-                // the next volume name
-                String volumePath = basePath + "." + (index + 1);
-                File volume = new File(volumePath);
-                boolean found = false;
-                while (!found)
+                openVolume(index + 1);
+                result = true;
+            }
+            return result;
+        }
+
+        /**
+         * Opens a volume.
+         *
+         * @param index the volume index
+         * @throws CorruptVolumeException  if the magic no. of the volume does not match that expected
+         * @throws VolumeNotFoundException if the volume was not found
+         * @throws IOException             for any other I/O error
+         */
+        private void openVolume(int index) throws IOException
+        {
+            String volumePath = (index == 0) ? basePath : basePath + "." + index;
+            File volume = new File(volumePath);
+            boolean found = false;
+            while (!found)
+            {
+                if (volume.exists())
                 {
-                    if (volume.exists())
+                    try
+                    {
+                        // try to open new stream to the volume
+                        FileUtils.close(stream);
+                        stream = new FileInputStream(volume);
+                        current = volume;
+                        checkMagicNumber();
+                        found = true;
+                    }
+                    catch (CorruptVolumeException exception)
                     {
-                        try
+                        if (locator == null)
                         {
-                            // try to open new stream to next volume
-                            FileUtils.close(stream);
-                            stream = new FileInputStream(volume);
-                            current = volume;
-                            checkMagicNumber();
-                            found = true;
+                            throw exception;
                         }
-                        catch (CorruptVolumeException exception)
+                        else
                         {
-                            if (locator == null)
-                            {
-                                throw exception;
-                            }
-                            else
-                            {
-                                volume = locator.getVolume(volume.getAbsolutePath(), true);
-                            }
+                            volume = locator.getVolume(volume.getAbsolutePath(), true);
                         }
                     }
-                    else if (locator != null)
-                    {
-                        volume = locator.getVolume(volume.getAbsolutePath(), false);
-                    }
-                    else
-                    {
-                        throw new VolumeNotFoundException("Volume not found: " + volume.getAbsolutePath(),
-                                                          volume.getAbsolutePath());
-                    }
                 }
-
-                ++index;
-                result = true;
+                else if (locator != null)
+                {
+                    volume = locator.getVolume(volume.getAbsolutePath(), false);
+                }
+                else
+                {
+                    throw new VolumeNotFoundException("Volume not found: " + volume.getAbsolutePath(),
+                                                      volume.getAbsolutePath());
+                }
             }
-            return result;
+            this.index = index;
         }
 
         /**
@@ -434,6 +535,11 @@ public class FileSpanningInputStream extends InputStream
                     throw new CorruptVolumeException();
                 }
 
+                if (magicNumber == null)
+                {
+                    // the first volume opened
+                    magicNumber = volumeMagicNo;
+                }
                 if (logger.isLoggable(Level.FINE))
                 {
                     logger.fine("Magic number is " + FileSpanningOutputStream.formatMagic(volumeMagicNo));
@@ -55,7 +55,7 @@ public class FileSpanningOutputStream extends OutputStream
     /**
      * The no. of bytes allocated to the magic number written at the start of each volume.
      */
-    protected static final int MAGIC_NUMBER_LENGTH = 10;
+    public static final int MAGIC_NUMBER_LENGTH = 10;
 
     /**
      * The minimum volume size. Need to be able to fit at least MAGIC_NUMBER_LENGTH + 1 bytes per volume.
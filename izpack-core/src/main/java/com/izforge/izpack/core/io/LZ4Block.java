@@ -0,0 +1,360 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Compresses and decompresses blocks in the LZ4 block format.
+ * <p/>
+ * Compression uses a single-probe hash table, trading compression ratio for speed, as per the reference
+ * implementation's fast mode.
+ */
+class LZ4Block
+{
+
+    /**
+     * The minimum match length.
+     */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * The no. of bytes at the end of a block that are always literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * A match must start at least this many bytes before the end of a block.
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * The maximum match distance.
+     */
+    private static final int MAX_DISTANCE = 65535;
+
+    /**
+     * Controls how quickly the search accelerates over incompressible data.
+     */
+    private static final int SKIP_STRENGTH = 6;
+
+    /**
+     * The log2 of the hash table size.
+     */
+    private static final int HASH_LOG = 14;
+
+    /**
+     * The hash table, mapping hashed 4 byte sequences to their last position in the block.
+     */
+    private final int[] table = new int[1 << HASH_LOG];
+
+
+    /**
+     * Returns the maximum compressed length of a block.
+     *
+     * @param length the uncompressed length
+     * @return the maximum compressed length
+     */
+    public static int maxCompressedLength(int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block.
+     *
+     * @param src    the uncompressed data
+     * @param srcOff the offset of the data
+     * @param srcLen the length of the data
+     * @param dst    the buffer to compress to. Must have at least {@link #maxCompressedLength} bytes available
+     * @param dstOff the offset to compress to
+     * @return the compressed length
+     */
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff)
+    {
+        int end = srcOff + srcLen;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (srcLen >= MF_LIMIT + 1)
+        {
+            Arrays.fill(table, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+            int ip = srcOff;
+            table[hash(src, ip)] = ip;
+            ++ip;
+
+            search:
+            while (true)
+            {
+                // find a match, skipping faster the longer none is found
+                int ref;
+                int forward = ip;
+                int attempts = 1 << SKIP_STRENGTH;
+                do
+                {
+                    ip = forward;
+                    forward += attempts++ >>> SKIP_STRENGTH;
+                    if (forward > mfLimit)
+                    {
+                        break search;
+                    }
+                    int h = hash(src, ip);
+                    ref = table[h];
+                    table[h] = ip;
+                }
+                while (ref < srcOff || ip - ref > MAX_DISTANCE || !equals(src, ref, ip));
+
+                // extend the match backwards
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1])
+                {
+                    --ip;
+                    --ref;
+                }
+
+                // literals
+                int literals = ip - anchor;
+                int token = op++;
+                dst[token] = 0;
+                op = writeLength(literals, dst, token, op, 4);
+                System.arraycopy(src, anchor, dst, op, literals);
+                op += literals;
+
+                // match offset and length
+                dst[op++] = (byte) (ip - ref);
+                dst[op++] = (byte) ((ip - ref) >>> 8);
+                ip += MIN_MATCH;
+                ref += MIN_MATCH;
+                int start = ip;
+                while (ip < matchLimit && src[ip] == src[ref])
+                {
+                    ++ip;
+                    ++ref;
+                }
+                op = writeLength(ip - start, dst, token, op, 0);
+                anchor = ip;
+
+                if (ip > mfLimit)
+                {
+                    break;
+                }
+                table[hash(src, ip - 2)] = ip - 2;
+            }
+        }
+
+        // last literals
+        int literals = end - anchor;
+        int token = op++;
+        dst[token] = 0;
+        op = writeLength(literals, dst, token, op, 4);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        return op - dstOff;
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @param src    the compressed data
+     * @param srcOff the offset of the compressed data
+     * @param srcLen the length of the compressed data
+     * @param dst    the buffer to decompress to
+     * @param dstOff the offset to decompress to
+     * @param dstMax the maximum no. of bytes to decompress
+     * @return the decompressed length
+     * @throws IOException if the block is malformed
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstMax)
+            throws IOException
+    {
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int op = dstOff;
+        int dstEnd = dstOff + dstMax;
+        try
+        {
+            while (true)
+            {
+                if (ip >= end)
+                {
+                    throw new IOException("Malformed LZ4 block: unexpected end of block");
+                }
+                int token = src[ip++] & 0xFF;
+
+                // literals
+                int literals = token >>> 4;
+                if (literals == 15)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    }
+                    while (b == 255);
+                }
+                if (literals > end - ip || literals > dstEnd - op)
+                {
+                    throw new IOException("Malformed LZ4 block: literals exceed block");
+                }
+                copy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == end)
+                {
+                    break;
+                }
+
+                // match
+                if (end - ip < 2)
+                {
+                    throw new IOException("Malformed LZ4 block: unexpected end of block");
+                }
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff)
+                {
+                    throw new IOException("Malformed LZ4 block: invalid match offset " + offset);
+                }
+                int length = token & 0x0F;
+                if (length == 15)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[ip++] & 0xFF;
+                        length += b;
+                    }
+                    while (b == 255);
+                }
+                length += MIN_MATCH;
+                if (length > dstEnd - op)
+                {
+                    throw new IOException("Malformed LZ4 block: match exceeds block");
+                }
+                if (offset >= length)
+                {
+                    copy(dst, ref, dst, op, length);
+                    op += length;
+                }
+                else
+                {
+                    // overlapping match, which repeats the preceding bytes
+                    for (int i = 0; i < length; ++i)
+                    {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException exception)
+        {
+            throw new IOException("Malformed LZ4 block: unexpected end of block");
+        }
+        return op - dstOff;
+    }
+
+    /**
+     * Copies bytes between non-overlapping regions.
+     * <p/>
+     * Most literal runs and matches are short, and copying these in a loop avoids the overhead of
+     * {@code System.arraycopy}.
+     *
+     * @param src    the source
+     * @param srcOff the source offset
+     * @param dst    the destination
+     * @param dstOff the destination offset
+     * @param length the no. of bytes to copy
+     */
+    private static void copy(byte[] src, int srcOff, byte[] dst, int dstOff, int length)
+    {
+        if (length <= 32)
+        {
+            for (int i = 0; i < length; ++i)
+            {
+                dst[dstOff + i] = src[srcOff + i];
+            }
+        }
+        else
+        {
+            System.arraycopy(src, srcOff, dst, dstOff, length);
+        }
+    }
+
+    /**
+     * Writes a literal or match length to the token, followed by any additional length bytes.
+     *
+     * @param length the length
+     * @param dst    the buffer to write to
+     * @param token  the position of the token
+     * @param op     the position to write additional length bytes
+     * @param shift  the shift of the length within the token
+     * @return the position following the length bytes
+     */
+    private static int writeLength(int length, byte[] dst, int token, int op, int shift)
+    {
+        if (length >= 15)
+        {
+            dst[token] |= (byte) (15 << shift);
+            length -= 15;
+            while (length >= 255)
+            {
+                dst[op++] = (byte) 255;
+                length -= 255;
+            }
+            dst[op++] = (byte) length;
+        }
+        else
+        {
+            dst[token] |= (byte) (length << shift);
+        }
+        return op;
+    }
+
+    /**
+     * Hashes the 4 bytes at the specified position.
+     *
+     * @param b   the bytes
+     * @param off the position
+     * @return the hash table index
+     */
+    private static int hash(byte[] b, int off)
+    {
+        return (XXHash32.readInt(b, off) * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Determines if the 4 bytes at two positions are the same.
+     *
+     * @param b    the bytes
+     * @param off1 the first position
+     * @param off2 the second position
+     * @return {@code true} if the bytes are equal
+     */
+    private static boolean equals(byte[] b, int off1, int off2)
+    {
+        return b[off1] == b[off2] && b[off1 + 1] == b[off2 + 1] && b[off1 + 2] == b[off2 + 2]
+                && b[off1 + 3] == b[off2 + 3];
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Decompresses data in the LZ4 frame format, as written by {@link LZ4OutputStream}.
+ * <p/>
+ * Only frames with independent blocks and no dictionary are supported. Block and content checksums are verified
+ * if present. Reading stops at the end of the first frame.
+ */
+public class LZ4InputStream extends FilterInputStream
+{
+
+    /**
+     * The current block, decompressed.
+     */
+    private byte[] block;
+
+    /**
+     * The current block, compressed.
+     */
+    private byte[] compressed;
+
+    /**
+     * The position of the next byte to read in the block.
+     */
+    private int position;
+
+    /**
+     * The no. of bytes in the block.
+     */
+    private int limit;
+
+    /**
+     * The content checksum, or {@code null} if the frame has no content checksum.
+     */
+    private XXHash32 checksum;
+
+    /**
+     * Determines if each block is followed by a checksum.
+     */
+    private boolean blockChecksum;
+
+    /**
+     * Determines if the frame header has been read.
+     */
+    private boolean started;
+
+    /**
+     * Determines if the end of the frame has been reached.
+     */
+    private boolean finished;
+
+    /**
+     * Buffer for reading ints.
+     */
+    private final byte[] buffer = new byte[4];
+
+
+    /**
+     * Constructs an {@code LZ4InputStream}.
+     *
+     * @param in the stream to read compressed data from
+     */
+    public LZ4InputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (position == limit && !nextBlock())
+        {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (position == limit && !nextBlock())
+        {
+            return -1;
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long remaining = n;
+        while (remaining > 0)
+        {
+            if (position == limit && !nextBlock())
+            {
+                break;
+            }
+            int count = (int) Math.min(remaining, limit - position);
+            position += count;
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException
+    {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and decompresses the next block.
+     *
+     * @return {@code true} if a block was read, {@code false} if the end of the frame has been reached
+     * @throws IOException for any I/O error, or if the frame is malformed
+     */
+    private boolean nextBlock() throws IOException
+    {
+        if (finished)
+        {
+            return false;
+        }
+        if (!started)
+        {
+            readHeader();
+        }
+        int size = readInt();
+        if (size == 0)
+        {
+            // end mark
+            if (checksum != null && readInt() != (int) checksum.getValue())
+            {
+                throw new IOException("LZ4 content checksum mismatch");
+            }
+            finished = true;
+            return false;
+        }
+        boolean uncompressed = (size & LZ4OutputStream.UNCOMPRESSED) != 0;
+        size &= ~LZ4OutputStream.UNCOMPRESSED;
+        if (size > block.length)
+        {
+            throw new IOException("LZ4 block size " + size + " exceeds maximum of " + block.length);
+        }
+        byte[] data = uncompressed ? block : compressed;
+        readFully(data, size);
+        if (blockChecksum)
+        {
+            XXHash32 hash = new XXHash32();
+            hash.update(data, 0, size);
+            if (readInt() != (int) hash.getValue())
+            {
+                throw new IOException("LZ4 block checksum mismatch");
+            }
+        }
+        limit = uncompressed ? size : LZ4Block.decompress(compressed, 0, size, block, 0, block.length);
+        position = 0;
+        if (checksum != null)
+        {
+            checksum.update(block, 0, limit);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the frame header.
+     *
+     * @throws IOException for any I/O error, or if the header is invalid or unsupported
+     */
+    private void readHeader() throws IOException
+    {
+        if (readInt() != LZ4OutputStream.MAGIC)
+        {
+            throw new IOException("Not in LZ4 frame format");
+        }
+        byte[] header = new byte[10];
+        int length = 2;
+        readFully(header, length);
+        int flags = header[0] & 0xFF;
+        int descriptor = header[1] & 0xFF;
+        if ((flags >>> 6) != 1)
+        {
+            throw new IOException("Unsupported LZ4 frame version: " + (flags >>> 6));
+        }
+        if ((flags & 0x20) == 0)
+        {
+            throw new IOException("Unsupported LZ4 frame: blocks must be independent");
+        }
+        if ((flags & 0x01) != 0)
+        {
+            throw new IOException("Unsupported LZ4 frame: dictionaries are not supported");
+        }
+        int sizeCode = (descriptor >>> 4) & 0x07;
+        if (sizeCode < 4)
+        {
+            throw new IOException("Invalid LZ4 block maximum size: " + sizeCode);
+        }
+        if ((flags & 0x08) != 0)
+        {
+            // content size, which isn't needed other than for the header checksum
+            for (int i = 0; i < 8; ++i)
+            {
+                header[length++] = (byte) read(in);
+            }
+        }
+        if (read(in) != LZ4OutputStream.getHeaderChecksum(header, 0, length))
+        {
+            throw new IOException("LZ4 frame header checksum mismatch");
+        }
+        blockChecksum = (flags & 0x10) != 0;
+        checksum = ((flags & 0x04) != 0) ? new XXHash32() : null;
+
+        int maxBlockSize = 1 << (8 + 2 * sizeCode);
+        block = new byte[maxBlockSize];
+        compressed = new byte[maxBlockSize];
+        started = true;
+    }
+
+    /**
+     * Reads a little-endian int.
+     *
+     * @return the int
+     * @throws IOException for any I/O error
+     */
+    private int readInt() throws IOException
+    {
+        readFully(buffer, 4);
+        return XXHash32.readInt(buffer, 0);
+    }
+
+    /**
+     * Reads exactly the specified no. of bytes.
+     *
+     * @param b   the buffer to read to
+     * @param len the no. of bytes to read
+     * @throws IOException for any I/O error, or if the stream ends prematurely
+     */
+    private void readFully(byte[] b, int len) throws IOException
+    {
+        int off = 0;
+        while (off < len)
+        {
+            int read = in.read(b, off, len - off);
+            if (read == -1)
+            {
+                throw new EOFException("Unexpected end of LZ4 stream");
+            }
+            off += read;
+        }
+    }
+
+    /**
+     * Reads a byte from the underlying stream.
+     *
+     * @param stream the stream
+     * @return the byte
+     * @throws IOException for any I/O error, or if the stream has ended
+     */
+    private static int read(InputStream stream) throws IOException
+    {
+        int result = stream.read();
+        if (result == -1)
+        {
+            throw new EOFException("Unexpected end of LZ4 stream");
+        }
+        return result;
+    }
+}
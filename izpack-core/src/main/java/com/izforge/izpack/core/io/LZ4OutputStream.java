@@ -0,0 +1,270 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Compresses data in the LZ4 frame format.
+ * <p/>
+ * Data is compressed in independent blocks of 64KB, followed by an xxHash32 checksum of the content. The output can
+ * be decompressed by {@link LZ4InputStream} or the reference {@code lz4} tool.
+ */
+public class LZ4OutputStream extends FilterOutputStream
+{
+
+    /**
+     * The frame magic number.
+     */
+    static final int MAGIC = 0x184D2204;
+
+    /**
+     * The frame descriptor flags: version 01, independent blocks, content checksum.
+     */
+    static final int FLAGS = 0x64;
+
+    /**
+     * The frame descriptor block descriptor: 64KB maximum block size.
+     */
+    static final int BLOCK_DESCRIPTOR = 0x40;
+
+    /**
+     * The maximum uncompressed block size.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The flag set on the block size of blocks stored uncompressed.
+     */
+    static final int UNCOMPRESSED = 0x80000000;
+
+    /**
+     * The block compressor.
+     */
+    private final LZ4Block compressor = new LZ4Block();
+
+    /**
+     * The content checksum.
+     */
+    private final XXHash32 checksum = new XXHash32();
+
+    /**
+     * The uncompressed data of the current block.
+     */
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    /**
+     * The compressed data of the current block, preceded by its size.
+     */
+    private final byte[] compressed = new byte[4 + LZ4Block.maxCompressedLength(BLOCK_SIZE)];
+
+    /**
+     * The no. of bytes in the current block.
+     */
+    private int length;
+
+    /**
+     * Determines if the frame header has been written.
+     */
+    private boolean started;
+
+    /**
+     * Determines if the stream has been finished.
+     */
+    private boolean finished;
+
+
+    /**
+     * Constructs an {@code LZ4OutputStream}.
+     *
+     * @param out the stream to write compressed data to
+     */
+    public LZ4OutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    /**
+     * Constructs an {@code LZ4OutputStream}.
+     * <p/>
+     * This constructor is provided for compatibility with the pack compressor conventions. The compression level
+     * is ignored, as LZ4 is designed for speed rather than ratio.
+     *
+     * @param out   the stream to write compressed data to
+     * @param level the compression level. Ignored
+     */
+    public LZ4OutputStream(OutputStream out, int level)
+    {
+        this(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (finished)
+        {
+            throw new IOException("Stream finished");
+        }
+        while (len > 0)
+        {
+            int count = Math.min(len, BLOCK_SIZE - length);
+            System.arraycopy(b, off, block, length, count);
+            length += count;
+            off += count;
+            len -= count;
+            if (length == BLOCK_SIZE)
+            {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Flushes the underlying stream.
+     * <p/>
+     * Like {@link java.util.zip.DeflaterOutputStream}, this doesn't force out the current block, as small blocks
+     * compress poorly.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Finishes writing compressed data without closing the underlying stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void finish() throws IOException
+    {
+        if (!finished)
+        {
+            writeBlock();
+            writeHeader();
+            writeInt(0, compressed, 0);
+            writeInt((int) checksum.getValue(), compressed, 4);
+            out.write(compressed, 0, 8);
+            finished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the frame header, if it hasn't already been written.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void writeHeader() throws IOException
+    {
+        if (!started)
+        {
+            byte[] header = new byte[7];
+            writeInt(MAGIC, header, 0);
+            header[4] = (byte) FLAGS;
+            header[5] = (byte) BLOCK_DESCRIPTOR;
+            header[6] = (byte) getHeaderChecksum(header, 4, 2);
+            out.write(header);
+            started = true;
+        }
+    }
+
+    /**
+     * Compresses and writes the current block, if any.
+     * <p/>
+     * The block is stored uncompressed if compression doesn't reduce its size.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void writeBlock() throws IOException
+    {
+        if (length > 0)
+        {
+            writeHeader();
+            checksum.update(block, 0, length);
+            int size = compressor.compress(block, 0, length, compressed, 4);
+            if (size < length)
+            {
+                writeInt(size, compressed, 0);
+                out.write(compressed, 0, 4 + size);
+            }
+            else
+            {
+                writeInt(length | UNCOMPRESSED, compressed, 0);
+                out.write(compressed, 0, 4);
+                out.write(block, 0, length);
+            }
+            length = 0;
+        }
+    }
+
+    /**
+     * Calculates the checksum of the frame descriptor.
+     *
+     * @param header the frame header
+     * @param off    the offset of the frame descriptor
+     * @param len    the length of the frame descriptor, excluding the checksum
+     * @return the checksum
+     */
+    static int getHeaderChecksum(byte[] header, int off, int len)
+    {
+        XXHash32 hash = new XXHash32();
+        hash.update(header, off, len);
+        return (int) ((hash.getValue() >> 8) & 0xFF);
+    }
+
+    /**
+     * Writes a little-endian int.
+     *
+     * @param value the value to write
+     * @param b     the buffer to write to
+     * @param off   the offset to write at
+     */
+    private static void writeInt(int value, byte[] b, int off)
+    {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+}
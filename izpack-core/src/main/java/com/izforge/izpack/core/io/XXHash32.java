@@ -0,0 +1,202 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.util.zip.Checksum;
+
+
+/**
+ * The 32-bit xxHash checksum, as used by the LZ4 frame format.
+ */
+class XXHash32 implements Checksum
+{
+
+    private static final int PRIME1 = 0x9E3779B1;
+
+    private static final int PRIME2 = 0x85EBCA77;
+
+    private static final int PRIME3 = 0xC2B2AE3D;
+
+    private static final int PRIME4 = 0x27D4EB2F;
+
+    private static final int PRIME5 = 0x165667B1;
+
+    /**
+     * The seed.
+     */
+    private final int seed;
+
+    /**
+     * The accumulators.
+     */
+    private int v1, v2, v3, v4;
+
+    /**
+     * The total no. of bytes hashed.
+     */
+    private long length;
+
+    /**
+     * Bytes not yet forming a complete 16 byte stripe.
+     */
+    private final byte[] buffer = new byte[16];
+
+    /**
+     * The no. of bytes in the buffer.
+     */
+    private int buffered;
+
+    /**
+     * Single byte buffer for {@link #update(int)}.
+     */
+    private final byte[] single = new byte[1];
+
+
+    /**
+     * Constructs an {@code XXHash32} with a seed of {@code 0}.
+     */
+    public XXHash32()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructs an {@code XXHash32}.
+     *
+     * @param seed the seed
+     */
+    public XXHash32(int seed)
+    {
+        this.seed = seed;
+        reset();
+    }
+
+    @Override
+    public void update(int b)
+    {
+        single[0] = (byte) b;
+        update(single, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len)
+    {
+        length += len;
+        if (buffered + len < 16)
+        {
+            System.arraycopy(b, off, buffer, buffered, len);
+            buffered += len;
+            return;
+        }
+        int end = off + len;
+        if (buffered > 0)
+        {
+            int fill = 16 - buffered;
+            System.arraycopy(b, off, buffer, buffered, fill);
+            process(buffer, 0);
+            off += fill;
+            buffered = 0;
+        }
+        while (off <= end - 16)
+        {
+            process(b, off);
+            off += 16;
+        }
+        buffered = end - off;
+        System.arraycopy(b, off, buffer, 0, buffered);
+    }
+
+    @Override
+    public long getValue()
+    {
+        int hash;
+        if (length >= 16)
+        {
+            hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12)
+                    + Integer.rotateLeft(v4, 18);
+        }
+        else
+        {
+            hash = seed + PRIME5;
+        }
+        hash += (int) length;
+
+        int i = 0;
+        for (; i <= buffered - 4; i += 4)
+        {
+            hash += readInt(buffer, i) * PRIME3;
+            hash = Integer.rotateLeft(hash, 17) * PRIME4;
+        }
+        for (; i < buffered; ++i)
+        {
+            hash += (buffer[i] & 0xFF) * PRIME5;
+            hash = Integer.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 15;
+        hash *= PRIME2;
+        hash ^= hash >>> 13;
+        hash *= PRIME3;
+        hash ^= hash >>> 16;
+        return hash & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset()
+    {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        length = 0;
+        buffered = 0;
+    }
+
+    /**
+     * Hashes a 16 byte stripe.
+     *
+     * @param b   the bytes
+     * @param off the offset of the stripe
+     */
+    private void process(byte[] b, int off)
+    {
+        v1 = round(v1, readInt(b, off));
+        v2 = round(v2, readInt(b, off + 4));
+        v3 = round(v3, readInt(b, off + 8));
+        v4 = round(v4, readInt(b, off + 12));
+    }
+
+    private static int round(int acc, int input)
+    {
+        return Integer.rotateLeft(acc + input * PRIME2, 13) * PRIME1;
+    }
+
+    /**
+     * Reads a little-endian int.
+     *
+     * @param b   the bytes
+     * @param off the offset to read from
+     * @return the int
+     */
+    static int readInt(byte[] b, int off)
+    {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+}
@@ -24,6 +24,7 @@ package com.izforge.izpack.core.rules;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -77,12 +78,22 @@ public class RulesEngineImpl implements RulesEngine
 
     private final Set<ConditionReference> refConditions = new HashSet<ConditionReference>();
 
+    /**
+     * The conditions parsed from expressions, keyed on expression.
+     */
+    private final ExpressionCache expressions = new ExpressionCache(MAX_CACHED_EXPRESSIONS);
+
     private final InstallData installData;
 
     private final ConditionContainer container;
 
     private static final Logger logger = Logger.getLogger(RulesEngineImpl.class.getName());
 
+    /**
+     * The maximum no. of parsed condition expressions to cache.
+     */
+    private static final int MAX_CACHED_EXPRESSIONS = 1024;
+
     /**
      * The built-in condition types, with their corresponding class names.
      */
@@ -125,6 +136,7 @@ public class RulesEngineImpl implements RulesEngine
     @Override
     public void readConditionMap(Map<String, Condition> rules)
     {
+        expressions.clear();
         for (Map.Entry<String, Condition> entry : rules.entrySet())
         {
             Condition condition = entry.getValue();
@@ -185,6 +197,7 @@ public class RulesEngineImpl implements RulesEngine
                 result.setInstallData(installData);
                 result.readFromXML(condition);
                 conditionsMap.put(id, result);
+                expressions.clear();
                 if (result instanceof ConditionReference)
                 {
                     refConditions.add((ConditionReference) result);
@@ -237,6 +250,7 @@ public class RulesEngineImpl implements RulesEngine
                     {
                         resolveBuiltinConditions(cond);
                         conditionsMap.put(condid, cond);
+                        expressions.clear();
                     }
                 }
             }
@@ -278,6 +292,8 @@ public class RulesEngineImpl implements RulesEngine
      * A condition ID as defined in the install.xml
      * A simple expression with !,+,|,\
      * A complex expression with !,&&,||,\\ - must begin with char @
+     * <p/>
+     * Conditions parsed from expressions are cached until the known conditions change.
      *
      * @param id
      * @return the condition. May be <tt>null</tt>
@@ -288,13 +304,21 @@ public class RulesEngineImpl implements RulesEngine
         Condition result = conditionsMap.get(id);
         if (result == null)
         {
-            if (id.startsWith("@"))
-            {
-                result = parseComplexCondition(id.substring(1));
-            }
-            else
+            result = expressions.get(id);
+            if (result == null)
             {
-                result = getConditionByExpr(new StringBuffer(id));
+                if (id.startsWith("@"))
+                {
+                    result = parseComplexCondition(id.substring(1));
+                }
+                else
+                {
+                    result = getConditionByExpr(new StringBuffer(id));
+                }
+                if (result != null)
+                {
+                    expressions.put(id, result);
+                }
             }
         }
         return result;
@@ -438,6 +462,7 @@ public class RulesEngineImpl implements RulesEngine
             else
             {
                 conditionsMap.put(id, condition);
+                expressions.clear();
             }
         }
         else
@@ -785,6 +810,67 @@ public class RulesEngineImpl implements RulesEngine
         }
     }
 
+    /**
+     * A thread-safe, bounded cache of conditions parsed from expressions.
+     * <p/>
+     * When full, the least recently used condition is discarded.
+     */
+    private static class ExpressionCache
+    {
+
+        /**
+         * The cached conditions, in least recently used order.
+         */
+        private final Map<String, Condition> conditions;
+
+        /**
+         * Constructs an {@code ExpressionCache}.
+         *
+         * @param maxSize the maximum no. of conditions to cache
+         */
+        public ExpressionCache(final int maxSize)
+        {
+            conditions = new LinkedHashMap<String, Condition>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Condition> eldest)
+                {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * Returns the condition for an expression.
+         *
+         * @param expression the expression
+         * @return the corresponding condition, or {@code null} if it isn't cached
+         */
+        public synchronized Condition get(String expression)
+        {
+            return conditions.get(expression);
+        }
+
+        /**
+         * Caches the condition for an expression.
+         *
+         * @param expression the expression
+         * @param condition  the condition
+         */
+        public synchronized void put(String expression, Condition condition)
+        {
+            conditions.put(expression, condition);
+        }
+
+        /**
+         * Removes all cached conditions.
+         */
+        public synchronized void clear()
+        {
+            conditions.clear();
+        }
+    }
+
     /**
      * A built-in condition, created by the RulesEngine. These are not intended to be serialized - the RulesEngine
      * will replace any instance of a built in condition with its own version.
@@ -162,6 +162,11 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         {
             return null;
         }
+        if (str.indexOf(getVariableStart(type != null ? type : SubstitutionType.getDefault())) == -1)
+        {
+            // nothing to substitute
+            return str;
+        }
 
         // Create reader and write for the strings
         StringReader reader = new StringReader(str);
@@ -297,40 +302,23 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         }
 
         // determine character which starts (and ends) a variable
-        char variable_start = '$';
-        char variable_end = '\0';
-        switch (type)
-        {
-            case TYPE_SHELL:
-                variable_start = '%';
-                break;
-
-            case TYPE_AT:
-                variable_start = '@';
-                break;
-
-            case TYPE_ANT:
-                variable_start = '@';
-                variable_end = '@';
-                break;
-
-            default:
-                break;
-        }
+        char variable_start = getVariableStart(type);
+        char variable_end = (type == SubstitutionType.TYPE_ANT) ? '@' : '\0';
 
         int subs = 0;
+        CharInput input = new CharInput(reader);
+        StringBuilder nameBuffer = new StringBuilder();
+
+        // the escaped values of the variables referenced so far, or null for undefined variables
+        Map<String, String> values = new HashMap<String, String>();
 
         // Copy data and substitute variables
-        int c = reader.read();
+        int c = input.read();
 
         while (true)
         {
             // Find the next potential variable reference or EOF
-            while (c != -1 && c != variable_start)
-            {
-                writer.write(c);
-                c = reader.read();
-            }
+            c = input.copyUntil(c, variable_start, writer);
             if (c == -1)
             {
                 return subs;
@@ -338,11 +326,11 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
 
             // Check if braces used or start char escaped
             boolean braces = false;
-            c = reader.read();
+            c = input.read();
             if (c == '{')
             {
                 braces = true;
-                c = reader.read();
+                c = input.read();
             }
             else if (bracesRequired)
             {
@@ -356,52 +344,42 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
             }
 
             // Read the variable name
-            StringBuffer nameBuffer = new StringBuffer();
+            nameBuffer.setLength(0);
             while (c != -1 && (braces && c != '}') || (c >= 'a' && c <= 'z')
                     || (c >= 'A' && c <= 'Z') || (braces && ((c == '[') || (c == ']')))
                     || (((c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-') && nameBuffer.length() > 0))
             {
                 nameBuffer.append((char) c);
-                c = reader.read();
+                c = input.read();
             }
             String name = nameBuffer.toString();
 
             // Check if a legal and defined variable found
-            String varvalue = null;
+            String value = null;
 
             if (((!braces || c == '}') &&
                     (!braces || variable_end == '\0' || variable_end == c)
             ) && name.length() > 0)
             {
-                // check for environment variables
-                if (braces && name.startsWith("ENV[")
-                        && (name.lastIndexOf(']') == name.length() - 1))
+                if (values.containsKey(name))
                 {
-                    varvalue = IoHelper.getenv(name.substring(4, name.length() - 1));
-                    if (varvalue == null)
-                    {
-                        varvalue = "";
-                    }
+                    value = values.get(name);
                 }
                 else
                 {
-                    Value val = getValue(name);
-                    if (val != null)
-                    {
-                        varvalue = val.resolve();
-                    }
+                    value = getEscapedValue(name, braces, type);
+                    values.put(name, value);
                 }
-
                 subs++;
             }
 
             // Substitute the variable...
-            if (varvalue != null)
+            if (value != null)
             {
-                writer.write(escapeSpecialChars(varvalue, type));
+                writer.write(value);
                 if (braces || variable_end != '\0')
                 {
-                    c = reader.read();
+                    c = input.read();
                 }
             }
             // ...or ignore it
@@ -417,6 +395,62 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         }
     }
 
+    /**
+     * Returns the character which starts a variable reference.
+     *
+     * @param type the file type
+     * @return the start character
+     */
+    private char getVariableStart(SubstitutionType type)
+    {
+        switch (type)
+        {
+            case TYPE_SHELL:
+                return '%';
+
+            case TYPE_AT:
+            case TYPE_ANT:
+                return '@';
+
+            default:
+                return '$';
+        }
+    }
+
+    /**
+     * Returns the value of a variable, escaped for the file type.
+     *
+     * @param name   the variable name
+     * @param braces determines if the variable was referenced using braces
+     * @param type   the file type
+     * @return the escaped value, or <tt>null</tt> if the variable is undefined
+     * @throws Exception if the value cannot be resolved
+     */
+    private String getEscapedValue(String name, boolean braces, SubstitutionType type) throws Exception
+    {
+        String varvalue = null;
+
+        // check for environment variables
+        if (braces && name.startsWith("ENV[")
+                && (name.lastIndexOf(']') == name.length() - 1))
+        {
+            varvalue = IoHelper.getenv(name.substring(4, name.length() - 1));
+            if (varvalue == null)
+            {
+                varvalue = "";
+            }
+        }
+        else
+        {
+            Value val = getValue(name);
+            if (val != null)
+            {
+                varvalue = val.resolve();
+            }
+        }
+        return (varvalue != null) ? escapeSpecialChars(varvalue, type) : null;
+    }
+
     /**
      * Returns the internal constant for the specified file type.
      *
@@ -573,4 +607,118 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
                 throw new Error("Unknown file type constant " + type);
         }
     }
+
+    /**
+     * Reads characters from a reader in blocks, so that text between variable references can be copied in bulk.
+     */
+    private static class CharInput
+    {
+
+        /**
+         * The buffer size.
+         */
+        private static final int BUFFER_SIZE = 8192;
+
+        /**
+         * The reader.
+         */
+        private final Reader reader;
+
+        /**
+         * The buffered characters.
+         */
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * The position of the next character in the buffer.
+         */
+        private int position;
+
+        /**
+         * The no. of characters in the buffer.
+         */
+        private int limit;
+
+        /**
+         * Constructs a <tt>CharInput</tt>.
+         *
+         * @param reader the reader
+         */
+        public CharInput(Reader reader)
+        {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the next character.
+         *
+         * @return the character, or <tt>-1</tt> if the end of the stream has been reached
+         * @throws IOException for any I/O error
+         */
+        public int read() throws IOException
+        {
+            if (position == limit && !fill())
+            {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        /**
+         * Writes the current character and those following it, up to the next occurrence of a stop character.
+         * <p/>
+         * The stop character is consumed but not written.
+         *
+         * @param c      the current character, or <tt>-1</tt> if the end of the stream has been reached
+         * @param stop   the stop character
+         * @param writer the writer to write to
+         * @return the stop character, or <tt>-1</tt> if the end of the stream was reached
+         * @throws IOException for any I/O error
+         */
+        public int copyUntil(int c, char stop, Writer writer) throws IOException
+        {
+            if (c == -1 || c == stop)
+            {
+                return c;
+            }
+            writer.write(c);
+            while (position < limit || fill())
+            {
+                int start = position;
+                while (position < limit && buffer[position] != stop)
+                {
+                    ++position;
+                }
+                if (position > start)
+                {
+                    writer.write(buffer, start, position - start);
+                }
+                if (position < limit)
+                {
+                    ++position;
+                    return stop;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Fills the buffer.
+         *
+         * @return <tt>true</tt> if characters were read, <tt>false</tt> if the end of the stream has been reached
+         * @throws IOException for any I/O error
+         */
+        private boolean fill() throws IOException
+        {
+            int count;
+            do
+            {
+                count = reader.read(buffer, 0, buffer.length);
+            }
+            while (count == 0);
+            position = 0;
+            limit = Math.max(count, 0);
+            return count > 0;
+        }
+    }
 }
@@ -0,0 +1,345 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * The names of the entries in a jar, and the offsets of their local headers, read from its central directory.
+ * <p/>
+ * Jars are typically merged many times, once for each package or file required from them. Indexes are cached so
+ * that each jar is only read once, and are rebuilt if the jar changes. Only the most recently used indexes are
+ * cached, so that long running processes that compile many installers don't retain every jar they have merged.
+ * <p/>
+ * The offsets are used to copy entries without decompressing them. They aren't available for zip64, encrypted or
+ * self-extracting jars, which are listed using {@link ZipFile} instead.
+ */
+class JarIndex
+{
+
+    /**
+     * The maximum no. of cached indexes.
+     */
+    private static final int MAX_INDEXES = 64;
+
+    /**
+     * The cached indexes, keyed on jar path, in least recently used order.
+     */
+    private static final Map<String, JarIndex> indexes = new LinkedHashMap<String, JarIndex>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JarIndex> eldest)
+        {
+            return size() > MAX_INDEXES;
+        }
+    };
+
+    /**
+     * The end of central directory record signature.
+     */
+    private static final int END_SIG = 0x06054b50;
+
+    /**
+     * The central directory file header signature.
+     */
+    private static final int CENTRAL_SIG = 0x02014b50;
+
+    /**
+     * The local file header signature.
+     */
+    private static final int LOCAL_SIG = 0x04034b50;
+
+    /**
+     * The size of the end of central directory record, excluding the comment.
+     */
+    private static final int END_SIZE = 22;
+
+    /**
+     * The size of a central directory file header, excluding variable length fields.
+     */
+    private static final int CENTRAL_SIZE = 46;
+
+    /**
+     * The size of a local file header, excluding variable length fields.
+     */
+    private static final int LOCAL_SIZE = 30;
+
+    /**
+     * Value of a 16 or 32 bit field indicating that the actual value is in a zip64 extra field.
+     */
+    private static final long ZIP64 = 0xFFFFFFFFL;
+
+    /**
+     * The jar length, when the index was built.
+     */
+    private final long length;
+
+    /**
+     * The jar modification time, when the index was built.
+     */
+    private final long lastModified;
+
+    /**
+     * The entry names, in the order they appear in the jar.
+     */
+    private final List<String> names;
+
+    /**
+     * The no. of leading META-INF/ and manifest entries. These aren't returned by {@link java.util.jar.JarInputStream}
+     * so aren't merged.
+     */
+    private final int manifestEntries;
+
+    /**
+     * The local header offsets of the entries that may be copied without decompressing them, keyed on entry name.
+     */
+    private final Map<String, Long> offsets = new HashMap<String, Long>();
+
+
+    /**
+     * Constructs a {@code JarIndex}.
+     *
+     * @param jar the jar
+     * @throws IOException if the jar cannot be read
+     */
+    private JarIndex(File jar) throws IOException
+    {
+        length = jar.length();
+        lastModified = jar.lastModified();
+        List<String> list = new ArrayList<String>();
+        if (!readCentralDirectory(jar, list))
+        {
+            list.clear();
+            offsets.clear();
+            ZipFile zipFile = new ZipFile(jar);
+            try
+            {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements())
+                {
+                    list.add(entries.nextElement().getName());
+                }
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+        names = Collections.unmodifiableList(list);
+
+        int count = 0;
+        if (count < list.size() && list.get(count).equalsIgnoreCase("META-INF/"))
+        {
+            ++count;
+        }
+        if (count < list.size() && list.get(count).equalsIgnoreCase("META-INF/MANIFEST.MF"))
+        {
+            ++count;
+        }
+        manifestEntries = count;
+    }
+
+    /**
+     * Returns the index for a jar, building it if it is not cached or the jar has changed.
+     *
+     * @param jar the jar
+     * @return the index
+     * @throws IOException if the jar cannot be read
+     */
+    public static JarIndex getIndex(File jar) throws IOException
+    {
+        String key = jar.getAbsolutePath();
+        synchronized (indexes)
+        {
+            JarIndex index = indexes.get(key);
+            if (index == null || index.length != jar.length() || index.lastModified != jar.lastModified())
+            {
+                index = new JarIndex(jar);
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the names of all entries.
+     *
+     * @return the entry names
+     */
+    public List<String> getNames()
+    {
+        return names;
+    }
+
+    /**
+     * Returns the names of the entries that may be merged. This excludes the manifest.
+     *
+     * @return the entry names
+     */
+    public List<String> getContentNames()
+    {
+        return names.subList(manifestEntries, names.size());
+    }
+
+    /**
+     * Returns the offset of the data of an entry, so that it can be copied without decompressing it.
+     *
+     * @param jar  the jar, opened for reading
+     * @param name the entry name
+     * @return the offset of the entry data, or {@code -1} if it is not known
+     * @throws IOException if the jar cannot be read
+     */
+    public long getDataOffset(RandomAccessFile jar, String name) throws IOException
+    {
+        Long offset = offsets.get(name);
+        if (offset == null)
+        {
+            return -1;
+        }
+        byte[] header = new byte[LOCAL_SIZE];
+        jar.seek(offset);
+        jar.readFully(header);
+        if (getInt(header, 0) != LOCAL_SIG)
+        {
+            return -1;
+        }
+        return offset + LOCAL_SIZE + getShort(header, 26) + getShort(header, 28);
+    }
+
+    /**
+     * Reads the entry names and local header offsets from the central directory of a jar.
+     *
+     * @param jar   the jar
+     * @param names the list to add entry names to
+     * @return {@code true} if the central directory was read, {@code false} if it isn't supported
+     * @throws IOException if the jar cannot be read
+     */
+    private boolean readCentralDirectory(File jar, List<String> names) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(jar, "r");
+        try
+        {
+            // locate the end of central directory record, which is followed by a comment of up to 64K
+            long fileLength = file.length();
+            int tailLength = (int) Math.min(fileLength, END_SIZE + 0xFFFF);
+            byte[] tail = new byte[tailLength];
+            file.seek(fileLength - tailLength);
+            file.readFully(tail);
+            int end = tailLength - END_SIZE;
+            while (end >= 0 && getInt(tail, end) != END_SIG)
+            {
+                --end;
+            }
+            if (end < 0)
+            {
+                return false;
+            }
+            int count = getShort(tail, end + 10);
+            long size = getInt(tail, end + 12) & ZIP64;
+            long start = getInt(tail, end + 16) & ZIP64;
+            if (count == 0xFFFF || size == ZIP64 || start == ZIP64
+                    || start + size != fileLength - tailLength + end)
+            {
+                // zip64, or data precedes the zip so offsets are relative
+                return false;
+            }
+
+            byte[] directory = new byte[(int) size];
+            file.seek(start);
+            file.readFully(directory);
+            int pos = 0;
+            for (int i = 0; i < count; ++i)
+            {
+                if (pos + CENTRAL_SIZE > directory.length || getInt(directory, pos) != CENTRAL_SIG)
+                {
+                    return false;
+                }
+                int flags = getShort(directory, pos + 8);
+                int method = getShort(directory, pos + 10);
+                long compressedSize = getInt(directory, pos + 20) & ZIP64;
+                long uncompressedSize = getInt(directory, pos + 24) & ZIP64;
+                int nameLength = getShort(directory, pos + 28);
+                int extraLength = getShort(directory, pos + 30);
+                int commentLength = getShort(directory, pos + 32);
+                long offset = getInt(directory, pos + 42) & ZIP64;
+                String name = new String(directory, pos + CENTRAL_SIZE, nameLength, "UTF-8");
+                names.add(name);
+
+                boolean encrypted = (flags & 1) != 0;
+                boolean zip64 = compressedSize == ZIP64 || uncompressedSize == ZIP64 || offset == ZIP64;
+                if (!encrypted && !zip64 && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+                        && offsets.put(name, offset) != null)
+                {
+                    // duplicate entry, so the offset may not be that of the entry returned by ZipFile
+                    offsets.put(name, -1L);
+                }
+                pos += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+            }
+            for (Map.Entry<String, Long> entry : new ArrayList<Map.Entry<String, Long>>(offsets.entrySet()))
+            {
+                if (entry.getValue() == -1)
+                {
+                    offsets.remove(entry.getKey());
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /**
+     * Returns an unsigned little endian 16 bit value.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the value
+     * @return the value
+     */
+    private static int getShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Returns a little endian 32 bit value.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the value
+     * @return the value
+     */
+    private static int getInt(byte[] buffer, int offset)
+    {
+        return getShort(buffer, offset) | (getShort(buffer, offset + 2) << 16);
+    }
+}
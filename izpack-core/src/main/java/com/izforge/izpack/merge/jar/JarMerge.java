@@ -21,18 +21,20 @@ package com.izforge.izpack.merge.jar;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarInputStream;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import org.apache.tools.zip.ZipOutputStream;
 
@@ -62,7 +64,7 @@ public class JarMerge extends AbstractMerge
      * @param jarPath      Path to the jar to merge
      * @param mergeContent map linking outputstream to their content to avoir duplication
      */
-    public JarMerge(URL resource, String jarPath, Map<OutputStream, List<String>> mergeContent)
+    public JarMerge(URL resource, String jarPath, Map<OutputStream, Set<String>> mergeContent)
     {
         this.jarPath = jarPath;
         this.mergeContent = mergeContent;
@@ -93,7 +95,7 @@ public class JarMerge extends AbstractMerge
      * @param mergeContent  map linking outputstream to their content to avoir duplication
      */
     public JarMerge(String jarPath, String pathInsideJar, String destination,
-                    Map<OutputStream, List<String>> mergeContent)
+                    Map<OutputStream, Set<String>> mergeContent)
     {
         this.jarPath = jarPath;
         this.destination = destination;
@@ -160,51 +162,65 @@ public class JarMerge extends AbstractMerge
 
     public ArrayList<String> getFileNameInZip() throws IOException
     {
-        ZipInputStream inputStream = new ZipInputStream(new FileInputStream(jarPath));
-        ArrayList<String> arrayList = new ArrayList<String>();
-        ZipEntry zipEntry;
-        while ((zipEntry = inputStream.getNextEntry()) != null)
-        {
-            arrayList.add(zipEntry.getName());
-        }
-        return arrayList;
+        return new ArrayList<String>(JarIndex.getIndex(new File(jarPath)).getNames());
     }
 
+    /**
+     * Merges the matching entries of the jar.
+     * <p/>
+     * Stored entries are copied as is, with their CRC and size known in advance. Deflated entries are inflated and
+     * deflated again.
+     *
+     * @param outputStream the stream to merge to
+     */
     public void merge(java.util.zip.ZipOutputStream outputStream)
     {
-        Pattern pattern = Pattern.compile(regexp);
-        List<String> mergeList = getMergeList(outputStream);
-        ZipEntry zentry;
         try
         {
-            JarInputStream jarInputStream = new JarInputStream(new FileInputStream(new File(jarPath)));
-            while ((zentry = jarInputStream.getNextEntry()) != null)
+            Map<String, String> entries = getEntriesToMerge(getMergeList(outputStream));
+            if (!entries.isEmpty())
             {
-                Matcher matcher = pattern.matcher(zentry.getName());
-                if (matcher.matches() && !isSignature(zentry.getName()))
+                ZipFile zipFile = new ZipFile(jarPath);
+                try
                 {
-                    if (mergeList.contains(zentry.getName()))
+                    for (Map.Entry<String, String> entry : entries.entrySet())
                     {
-                        continue;
-                    }
-                    mergeList.add(zentry.getName());
-
-                    String matchFile = matcher.group(1);
-                    StringBuilder dest = new StringBuilder(destination);
-                    if (matchFile != null && matchFile.length() > 0)
-                    {
-                        if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
+                        ZipEntry zentry = zipFile.getEntry(entry.getKey());
+                        InputStream inputStream = zipFile.getInputStream(zentry);
+                        try
                         {
-                            dest.append('/');
+                            if (zentry.getMethod() == ZipEntry.STORED && RawZipOutputStream.canCopy(zentry))
+                            {
+                                ZipEntry stored = new ZipEntry(entry.getValue());
+                                stored.setMethod(ZipEntry.STORED);
+                                stored.setSize(zentry.getSize());
+                                stored.setCompressedSize(zentry.getSize());
+                                stored.setCrc(zentry.getCrc());
+                                if (zentry.getTime() != -1)
+                                {
+                                    stored.setTime(zentry.getTime());
+                                }
+                                outputStream.putNextEntry(stored);
+                                IoHelper.copyStream(inputStream, outputStream);
+                                outputStream.closeEntry();
+                            }
+                            else
+                            {
+                                IoHelper.copyStreamToJar(inputStream, outputStream, entry.getValue(),
+                                                         zentry.getTime());
+                            }
+                        }
+                        finally
+                        {
+                            inputStream.close();
                         }
-                        dest.append(matchFile);
                     }
-                    IoHelper.copyStreamToJar(jarInputStream, outputStream, dest.toString().replaceAll("//", "/"),
-                                             zentry.getTime());
                 }
-
+                finally
+                {
+                    zipFile.close();
+                }
             }
-            jarInputStream.close();
         }
         catch (IOException e)
         {
@@ -212,40 +228,59 @@ public class JarMerge extends AbstractMerge
         }
     }
 
+    /**
+     * Merges the matching entries of the jar.
+     * <p/>
+     * If the stream is a {@link RawZipOutputStream}, entries are copied without decompressing them. Otherwise they are
+     * inflated and deflated again.
+     *
+     * @param outJar the stream to merge to
+     */
     public void merge(ZipOutputStream outJar)
     {
-        Pattern pattern = Pattern.compile(regexp);
-        List<String> mergeList = getMergeList(outJar);
-        ZipEntry zentry;
         try
         {
-            JarInputStream jarInputStream = new JarInputStream(new FileInputStream(new File(jarPath)));
-            while ((zentry = jarInputStream.getNextEntry()) != null)
+            Map<String, String> entries = getEntriesToMerge(getMergeList(outJar));
+            if (!entries.isEmpty())
             {
-                Matcher matcher = pattern.matcher(zentry.getName());
-                if (matcher.matches() && !isSignature(zentry.getName()))
+                JarIndex index = JarIndex.getIndex(new File(jarPath));
+                ZipFile zipFile = new ZipFile(jarPath);
+                RandomAccessFile rawJar = null;
+                try
                 {
-                    if (mergeList.contains(zentry.getName()))
+                    if (outJar instanceof RawZipOutputStream)
                     {
-                        continue;
+                        rawJar = new RandomAccessFile(jarPath, "r");
                     }
-                    mergeList.add(zentry.getName());
-                    String matchFile = matcher.group(1);
-                    StringBuilder dest = new StringBuilder(destination);
-                    if (matchFile != null && matchFile.length() > 0)
+                    for (Map.Entry<String, String> entry : entries.entrySet())
                     {
-                        if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
+                        ZipEntry zentry = zipFile.getEntry(entry.getKey());
+                        long offset = (rawJar != null && RawZipOutputStream.canCopy(zentry))
+                                ? index.getDataOffset(rawJar, entry.getKey()) : -1;
+                        if (offset != -1)
                         {
-                            dest.append('/');
+                            RawZipOutputStream rawOut = (RawZipOutputStream) outJar;
+                            rawOut.putRawEntry(zentry, entry.getValue());
+                            copyRaw(rawJar, offset, zentry.getCompressedSize(), rawOut);
+                            rawOut.closeEntry();
+                        }
+                        else
+                        {
+                            InputStream inputStream = zipFile.getInputStream(zentry);
+                            IoHelper.copyStreamToJar(inputStream, outJar, entry.getValue(), zentry.getTime());
+                            inputStream.close();
                         }
-                        dest.append(matchFile);
                     }
-                    IoHelper.copyStreamToJar(jarInputStream, outJar, dest.toString().replaceAll("//", "/"),
-                                             zentry.getTime());
                 }
-
+                finally
+                {
+                    zipFile.close();
+                    if (rawJar != null)
+                    {
+                        rawJar.close();
+                    }
+                }
             }
-            jarInputStream.close();
         }
         catch (IOException e)
         {
@@ -253,6 +288,62 @@ public class JarMerge extends AbstractMerge
         }
     }
 
+    /**
+     * Determines the entries to merge, using the jar index rather than reading the jar.
+     * <p/>
+     * Entries that have already been merged are excluded, and the remainder added to the merge list.
+     *
+     * @param mergeList the names of the entries already merged to the output stream
+     * @return the names of the entries to merge, mapped to their destination names, in jar order
+     * @throws IOException if the jar cannot be read
+     */
+    private Map<String, String> getEntriesToMerge(Set<String> mergeList) throws IOException
+    {
+        Pattern pattern = Pattern.compile(regexp);
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (String name : JarIndex.getIndex(new File(jarPath)).getContentNames())
+        {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches() && !isSignature(name) && mergeList.add(name))
+            {
+                String matchFile = matcher.group(1);
+                StringBuilder dest = new StringBuilder(destination);
+                if (matchFile != null && matchFile.length() > 0)
+                {
+                    if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
+                    {
+                        dest.append('/');
+                    }
+                    dest.append(matchFile);
+                }
+                result.put(name, dest.toString().replaceAll("//", "/"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the data of an entry as stored in the jar.
+     *
+     * @param jar    the jar
+     * @param offset the offset of the entry data
+     * @param length the length of the entry data
+     * @param out    the stream to copy to
+     * @throws IOException if the data cannot be copied
+     */
+    private void copyRaw(RandomAccessFile jar, long offset, long length, OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        jar.seek(offset);
+        while (length > 0)
+        {
+            int read = (int) Math.min(buffer.length, length);
+            jar.readFully(buffer, 0, read);
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,319 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
+
+
+/**
+ * A {@code ZipOutputStream} that can copy entries from another zip without decompressing and compressing them again.
+ * <p/>
+ * A copied entry is started with {@link #putRawEntry}, its data written as stored in the source zip, and completed
+ * with {@link #closeEntry}. Deflated data is passed through to the zip unchanged, and the entry is written with the
+ * CRC and uncompressed size of the source entry.
+ */
+public class RawZipOutputStream extends ZipOutputStream
+{
+
+    /**
+     * The deflater used to pass deflated data through. May be {@code null}.
+     */
+    private RawDeflater rawDeflater;
+
+    /**
+     * The deflater replaced while a deflated entry is being copied. May be {@code null}.
+     */
+    private Deflater deflater;
+
+
+    /**
+     * Constructs a {@code RawZipOutputStream}.
+     *
+     * @param out the stream to write to
+     */
+    public RawZipOutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    /**
+     * Constructs a {@code RawZipOutputStream} that writes to a file, using random access if possible.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file cannot be opened
+     */
+    public RawZipOutputStream(File file) throws IOException
+    {
+        super(file);
+    }
+
+    /**
+     * Determines if an entry can be copied without decompressing it.
+     *
+     * @param source the source entry
+     * @return {@code true} if the entry is stored or deflated, and its CRC and sizes are known
+     */
+    public static boolean canCopy(java.util.zip.ZipEntry source)
+    {
+        int method = source.getMethod();
+        return (method == STORED || method == DEFLATED) && source.getCrc() != -1
+                && source.getSize() >= 0 && source.getSize() <= Integer.MAX_VALUE
+                && source.getCompressedSize() >= 0 && source.getCompressedSize() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Begins writing an entry copied from another zip.
+     * <p/>
+     * The entry's data must be written exactly as stored in the source zip, i.e. {@code source.getCompressedSize()}
+     * bytes, compressed if the source entry is.
+     *
+     * @param source the source entry
+     * @param name   the name of the entry to write
+     * @throws IOException if the entry cannot be written
+     * @throws IllegalArgumentException if the entry cannot be {@link #canCopy copied}
+     */
+    public void putRawEntry(java.util.zip.ZipEntry source, String name) throws IOException
+    {
+        if (!canCopy(source))
+        {
+            throw new IllegalArgumentException("Cannot copy entry: " + source.getName());
+        }
+        closeEntry();
+        RawEntry entry = new RawEntry(name, source.getCrc());
+        entry.setMethod(source.getMethod());
+        if (source.getTime() != -1)
+        {
+            entry.setTime(source.getTime());
+        }
+        if (source.getMethod() == STORED)
+        {
+            entry.setSize(source.getSize());
+            entry.setCompressedSize(source.getSize());
+            entry.setCrc(source.getCrc());
+            putNextEntry(entry);
+        }
+        else
+        {
+            putNextEntry(entry);
+            if (rawDeflater == null)
+            {
+                rawDeflater = new RawDeflater();
+            }
+            rawDeflater.start(source.getSize());
+            deflater = def;
+            def = rawDeflater;
+        }
+    }
+
+    /**
+     * Writes all necessary data for this entry.
+     *
+     * @throws IOException if the entry cannot be written
+     */
+    @Override
+    public void closeEntry() throws IOException
+    {
+        try
+        {
+            super.closeEntry();
+        }
+        finally
+        {
+            if (deflater != null)
+            {
+                def = deflater;
+                deflater = null;
+            }
+        }
+    }
+
+    /**
+     * Finishes writing the contents of the zip without closing the underlying stream.
+     *
+     * @throws IOException if the zip cannot be written
+     */
+    @Override
+    public void finish() throws IOException
+    {
+        super.finish();
+        if (rawDeflater != null)
+        {
+            rawDeflater.end();
+            rawDeflater = null;
+        }
+    }
+
+    /**
+     * An entry whose CRC is that of its source entry, rather than that of the data written.
+     */
+    private static class RawEntry extends ZipEntry
+    {
+
+        /**
+         * The CRC of the uncompressed data.
+         */
+        private final long crc;
+
+        /**
+         * Constructs a {@code RawEntry}.
+         *
+         * @param name the entry name
+         * @param crc  the CRC of the uncompressed data
+         */
+        public RawEntry(String name, long crc)
+        {
+            super(name);
+            this.crc = crc;
+        }
+
+        @Override
+        public long getCrc()
+        {
+            return crc;
+        }
+    }
+
+    /**
+     * A deflater that passes its input through unchanged, as it is already deflated, reporting the uncompressed size
+     * of the source entry as the no. of bytes read.
+     */
+    private static class RawDeflater extends Deflater
+    {
+
+        /**
+         * The uncompressed size of the entry.
+         */
+        private long size;
+
+        /**
+         * The input buffer.
+         */
+        private byte[] input;
+
+        /**
+         * The offset of the remaining input.
+         */
+        private int offset;
+
+        /**
+         * The no. of bytes of remaining input.
+         */
+        private int length;
+
+        /**
+         * Determines if all input has been supplied.
+         */
+        private boolean finish;
+
+        /**
+         * The no. of bytes passed through.
+         */
+        private int written;
+
+        /**
+         * Starts passing through an entry.
+         *
+         * @param size the uncompressed size of the entry
+         */
+        public void start(long size)
+        {
+            reset();
+            this.size = size;
+        }
+
+        @Override
+        public void setInput(byte[] b, int off, int len)
+        {
+            input = b;
+            offset = off;
+            length = len;
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return length == 0;
+        }
+
+        @Override
+        public void finish()
+        {
+            finish = true;
+        }
+
+        @Override
+        public boolean finished()
+        {
+            return finish && length == 0;
+        }
+
+        @Override
+        public int deflate(byte[] b, int off, int len)
+        {
+            int count = Math.min(len, length);
+            System.arraycopy(input, offset, b, off, count);
+            offset += count;
+            length -= count;
+            written += count;
+            return count;
+        }
+
+        @Override
+        public int getTotalIn()
+        {
+            return (int) size;
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return size;
+        }
+
+        @Override
+        public int getTotalOut()
+        {
+            return written;
+        }
+
+        @Override
+        public long getBytesWritten()
+        {
+            return written;
+        }
+
+        @Override
+        public void reset()
+        {
+            size = 0;
+            input = null;
+            offset = 0;
+            length = 0;
+            finish = false;
+            written = 0;
+        }
+    }
+}
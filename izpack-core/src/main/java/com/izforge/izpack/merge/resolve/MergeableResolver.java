@@ -21,9 +21,11 @@ package com.izforge.izpack.merge.resolve;
 
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.merge.file.FileMerge;
@@ -36,7 +38,7 @@ import com.izforge.izpack.merge.jar.JarMerge;
  */
 public class MergeableResolver
 {
-    private Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+    private Map<OutputStream, Set<String>> mergeContent = new HashMap<OutputStream, Set<String>>();
 
     public MergeableResolver()
     {
@@ -78,4 +80,22 @@ public class MergeableResolver
             return new FileMerge(url, destination, mergeContent);
         }
     }
+
+    /**
+     * Records entries written to an output stream by other means than a {@link Mergeable}, so that they are not
+     * merged to it again.
+     *
+     * @param outputStream the output stream
+     * @param entries      the entry names
+     */
+    public void addMerged(OutputStream outputStream, Collection<String> entries)
+    {
+        Set<String> merged = mergeContent.get(outputStream);
+        if (merged == null)
+        {
+            merged = new HashSet<String>();
+            mergeContent.put(outputStream, merged);
+        }
+        merged.addAll(entries);
+    }
 }
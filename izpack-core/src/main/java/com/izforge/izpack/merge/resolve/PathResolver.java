@@ -163,7 +163,7 @@ public class PathResolver
      *
      * @return the mergeable resolver
      */
-    protected MergeableResolver getMergeableResolver()
+    public MergeableResolver getMergeableResolver()
     {
         return mergeableResolver;
     }
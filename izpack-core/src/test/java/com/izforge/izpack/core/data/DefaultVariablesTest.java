@@ -33,11 +33,13 @@ import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.api.rules.Condition;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.container.DefaultContainer;
 import com.izforge.izpack.core.rules.ConditionContainer;
 import com.izforge.izpack.core.rules.RulesEngineImpl;
 import com.izforge.izpack.core.rules.process.VariableCondition;
 import com.izforge.izpack.core.variable.PlainValue;
+import com.izforge.izpack.core.variable.ValueImpl;
 import com.izforge.izpack.util.Platforms;
 
 
@@ -236,6 +238,72 @@ public class DefaultVariablesTest
         assertEquals("/usr/local/bin", variables.get("INSTALL_PATH"));
     }
 
+    /**
+     * Verifies that dynamic variables with plain values are only re-evaluated when the variables they refer to
+     * change.
+     */
+    @Test
+    public void testRefreshPlainValueOnInputChange()
+    {
+        CountingPlainValue value = new CountingPlainValue("${INSTALL_PATH}/lib");
+        DynamicVariableImpl variable = new DynamicVariableImpl();
+        variable.setName("var1");
+        variable.setValue(value);
+        variables.add(variable);
+
+        variables.set("INSTALL_PATH", "a");
+        variables.refresh();
+        variables.refresh();
+        assertEquals("a/lib", variables.get("var1"));
+        assertEquals(1, value.count);
+
+        variables.set("INSTALL_PATH", "b");
+        variables.refresh();
+        assertEquals("b/lib", variables.get("var1"));
+        assertEquals(2, value.count);
+
+        // the value is restored if overwritten, without re-evaluation
+        variables.set("var1", "c");
+        variables.refresh();
+        assertEquals("b/lib", variables.get("var1"));
+        assertEquals(2, value.count);
+    }
+
+    /**
+     * Verifies that dynamic variables with values that depend on the environment are re-evaluated on each refresh,
+     * unless they have a time to live.
+     */
+    @Test
+    public void testRefreshWithTimeToLive()
+    {
+        CountingValue value1 = new CountingValue();
+        DynamicVariableImpl variable1 = new DynamicVariableImpl();
+        variable1.setName("var1");
+        variable1.setValue(value1);
+        variables.add(variable1);
+
+        CountingValue value2 = new CountingValue();
+        DynamicVariableImpl variable2 = new DynamicVariableImpl();
+        variable2.setName("var2");
+        variable2.setValue(value2);
+        variable2.setTimeToLive(3600);
+        variables.add(variable2);
+
+        variables.set("INSTALL_PATH", "a");
+        variables.refresh();
+        variables.refresh();
+        assertEquals(2, value1.count);
+        assertEquals(1, value2.count);
+        assertEquals("a1", variables.get("var2"));
+
+        // a change to an input forces re-evaluation, regardless of the time to live
+        variables.set("INSTALL_PATH", "b");
+        variables.refresh();
+        assertEquals(3, value1.count);
+        assertEquals(2, value2.count);
+        assertEquals("b2", variables.get("var2"));
+    }
+
     /**
      * Creates a dynamic variable.
      *
@@ -264,5 +332,57 @@ public class DefaultVariablesTest
         result.setConditionid(conditionId);
         return result;
     }
-}
 
+    /**
+     * A plain value that counts the times it is resolved.
+     */
+    private static class CountingPlainValue extends PlainValue
+    {
+
+        private int count;
+
+        public CountingPlainValue(String value)
+        {
+            super(value);
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors) throws Exception
+        {
+            ++count;
+            return super.resolve(substitutors);
+        }
+    }
+
+    /**
+     * A value that isn't a plain value, that counts the times it is resolved.
+     */
+    private static class CountingValue extends ValueImpl
+    {
+
+        private int count;
+
+        @Override
+        public void validate()
+        {
+        }
+
+        @Override
+        public String resolve()
+        {
+            return null;
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors) throws Exception
+        {
+            ++count;
+            String result = "${INSTALL_PATH}" + count;
+            for (VariableSubstitutor substitutor : substitutors)
+            {
+                result = substitutor.substitute(result);
+            }
+            return result;
+        }
+    }
+}
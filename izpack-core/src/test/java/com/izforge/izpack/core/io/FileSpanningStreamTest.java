@@ -26,9 +26,12 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Random;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -161,6 +164,47 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Tests reading a compressed segment that starts part way into a volume and spans into the next, without
+     * the first volume, or the volume after the segment, being present.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testReadSegment() throws IOException
+    {
+        byte[] data = new byte[1000];
+        new Random().nextBytes(data);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream zip = new GZIPOutputStream(bytes);
+        zip.write(data);
+        zip.close();
+        byte[] segment = bytes.toByteArray();
+
+        byte[] magic = new byte[FileSpanningOutputStream.MAGIC_NUMBER_LENGTH];
+        new Random().nextBytes(magic);
+        int offset = 7;
+        int split = 600;
+        File volume = new File(temporaryFolder.getRoot(), "volume");
+        writeVolume(new File(volume.getPath() + ".1"), magic, new byte[offset], segment, 0, split);
+        writeVolume(new File(volume.getPath() + ".2"), magic, new byte[0], segment, split, segment.length - split);
+
+        FileSpanningInputStream spanningInputStream = new FileSpanningInputStream(volume, 4, 1, offset,
+                                                                                  segment.length, null);
+        byte[] read = new byte[data.length];
+        int count = 0;
+        int n;
+        while (count < read.length && (n = spanningInputStream.read(read, count, read.length - count)) != -1)
+        {
+            count += n;
+        }
+        assertEquals(data.length, count);
+        assertArrayEquals(data, read);
+        assertEquals(-1, spanningInputStream.read());
+        assertEquals(new File(volume.getPath() + ".2"), spanningInputStream.getVolume());
+        spanningInputStream.close();
+    }
+
     /**
      * Writes 10GB of random data and verifies it can be read back in.
      *
@@ -207,6 +251,27 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Writes a volume.
+     *
+     * @param file    the volume file
+     * @param magic   the volume magic number
+     * @param prefix  the data to write before the segment
+     * @param segment the segment
+     * @param offset  the offset of the segment data to write
+     * @param length  the length of the segment data to write
+     * @throws IOException for any I/O error
+     */
+    private void writeVolume(File file, byte[] magic, byte[] prefix, byte[] segment, int offset, int length)
+            throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(magic);
+        out.write(prefix);
+        out.write(segment, offset, length);
+        out.close();
+    }
+
     /**
      * Checks the existence of volumes and their expected size.
      *
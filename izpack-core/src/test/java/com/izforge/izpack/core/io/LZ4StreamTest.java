@@ -0,0 +1,178 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link LZ4OutputStream} and {@link LZ4InputStream}.
+ */
+public class LZ4StreamTest
+{
+
+    /**
+     * Verifies the xxHash32 implementation against known values.
+     */
+    @Test
+    public void testXXHash32()
+    {
+        assertEquals(0x02CC5D05L, hash(""));
+        assertEquals(0x32D153FFL, hash("abc"));
+        assertEquals(0xE2293B2FL, hash("Nobody inspects the spammish repetition"));
+
+        // the result must not depend on how the data is split
+        byte[] data = "Nobody inspects the spammish repetition".getBytes();
+        XXHash32 hash = new XXHash32();
+        for (byte b : data)
+        {
+            hash.update(b);
+        }
+        assertEquals(0xE2293B2FL, hash.getValue());
+    }
+
+    /**
+     * Verifies that an empty stream matches that produced by the reference implementation.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testEmpty() throws IOException
+    {
+        byte[] expected = {0x04, 0x22, 0x4D, 0x18, 0x64, 0x40, (byte) 0xA7, 0, 0, 0, 0, 0x05, 0x5D, (byte) 0xCC, 0x02};
+        byte[] compressed = compress(new byte[0]);
+        assertArrayEquals(expected, compressed);
+        assertEquals(0, decompress(compressed).length);
+    }
+
+    /**
+     * Verifies that data of various sizes and compressibility is decompressed to the original.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Random random = new Random(42);
+        int[] sizes = {1, 12, 13, 100, 65535, 65536, 65537, 300000};
+        for (int size : sizes)
+        {
+            // incompressible
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            assertArrayEquals(data, decompress(compress(data)));
+
+            // compressible, with both short and long repeats
+            for (int i = 0; i < size; ++i)
+            {
+                data[i] = (byte) ((i % 1000 < 500) ? 'a' + (i % 7) : 'a' + random.nextInt(4));
+            }
+            byte[] compressed = compress(data);
+            assertArrayEquals(data, decompress(compressed));
+            if (size > 1000)
+            {
+                assertTrue(compressed.length < size / 2);
+            }
+        }
+    }
+
+    /**
+     * Verifies that skipping returns the correct data.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSkip() throws IOException
+    {
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; ++i)
+        {
+            data[i] = (byte) (i % 253);
+        }
+        LZ4InputStream in = new LZ4InputStream(new ByteArrayInputStream(compress(data)));
+        assertEquals(150000, in.skip(150000));
+        assertEquals(data[150000] & 0xFF, in.read());
+        assertEquals(data.length - 150001, in.skip(data.length));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    /**
+     * Verifies that corrupt data is detected.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCorrupt() throws IOException
+    {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; ++i)
+        {
+            data[i] = (byte) ('a' + (i % 13));
+        }
+        byte[] compressed = compress(data);
+        compressed[compressed.length - 12] ^= 0x01;
+        try
+        {
+            decompress(compressed);
+            fail("Expected corruption to be detected");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+    }
+
+    private static long hash(String value)
+    {
+        XXHash32 hash = new XXHash32();
+        byte[] bytes = value.getBytes();
+        hash.update(bytes, 0, bytes.length);
+        return hash.getValue();
+    }
+
+    private static byte[] compress(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZ4OutputStream out = new LZ4OutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException
+    {
+        LZ4InputStream in = new LZ4InputStream(new ByteArrayInputStream(data));
+        byte[] result = IOUtils.toByteArray(in);
+        in.close();
+        return result;
+    }
+}
@@ -22,6 +22,8 @@ package com.izforge.izpack.core.rules;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -497,6 +499,29 @@ public class RulesEngineImplTest
     /**
      * Verifies that conditions read from a <tt>conditions.xml</tt> have the expected type.
      */
+    /**
+     * Verifies that conditions parsed from expressions are cached, and that the cache is discarded when
+     * conditions are added.
+     */
+    @Test
+    public void testExpressionCache()
+    {
+        Condition complex = engine.getCondition("@true && !false");
+        assertSame(complex, engine.getCondition("@true && !false"));
+
+        Condition simple = engine.getCondition("true+other");
+        assertSame(simple, engine.getCondition("true+other"));
+
+        Condition other = NotCondition.createFromCondition(engine.getCondition("false"), engine);
+        other.setId("other");
+        engine.addCondition(other);
+
+        assertNotSame(complex, engine.getCondition("@true && !false"));
+        Condition resolved = engine.getCondition("true+other");
+        assertNotSame(simple, resolved);
+        assertTrue(resolved.isTrue());
+    }
+
     @Test
     public void testReadConditionTypes()
     {
@@ -0,0 +1,142 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.substitutor;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+
+
+/**
+ * Measures the throughput of {@link VariableSubstitutorBase#substitute} for each {@link SubstitutionType}.
+ * <p/>
+ * This is not run as part of the build. To run it:
+ * <pre>
+ * mvn test -pl izpack-core -Dtest=SubstitutorBenchmark
+ * </pre>
+ */
+public class SubstitutorBenchmark
+{
+
+    /**
+     * The no. of untimed substitutions, to allow the JIT to warm up.
+     */
+    private static final int WARMUP = 10;
+
+    /**
+     * The no. of timed substitutions.
+     */
+    private static final int ITERATIONS = 20;
+
+    /**
+     * The approximate size of the template, in characters.
+     */
+    private static final int SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Measures the throughput of substituting a large configuration template for each type.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSubstitute() throws Exception
+    {
+        Properties properties = new Properties();
+        for (int i = 0; i < 100; ++i)
+        {
+            properties.setProperty("VAR" + i, "value <" + i + "> with \"special\" characters\\");
+        }
+        VariableSubstitutorImpl substitutor = new VariableSubstitutorImpl(properties);
+
+        for (SubstitutionType type : SubstitutionType.values())
+        {
+            String template = createTemplate(type);
+            for (int i = 0; i < WARMUP; ++i)
+            {
+                substitute(substitutor, template, type);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i)
+            {
+                substitute(substitutor, template, type);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%s: %d chars, %.2f MB/s", type.getType(), template.length(),
+                                             ITERATIONS * template.length() / seconds / (1024 * 1024)));
+        }
+    }
+
+    /**
+     * Creates a template with a variable reference every few lines, using the syntax of the type.
+     *
+     * @param type the substitution type
+     * @return a new template
+     */
+    private String createTemplate(SubstitutionType type)
+    {
+        StringBuilder template = new StringBuilder(SIZE + 100);
+        int line = 0;
+        while (template.length() < SIZE)
+        {
+            template.append("# configuration line ").append(line).append(", which has no variables in it\n");
+            if (line % 4 == 0)
+            {
+                String name = "VAR" + (line % 100);
+                template.append("key").append(line).append('=');
+                switch (type)
+                {
+                    case TYPE_SHELL:
+                        template.append('%').append(name).append('\n');
+                        break;
+                    case TYPE_AT:
+                        template.append('@').append(name).append('\n');
+                        break;
+                    case TYPE_ANT:
+                        template.append('@').append(name).append("@\n");
+                        break;
+                    default:
+                        template.append("${").append(name).append("}\n");
+                        break;
+                }
+            }
+            ++line;
+        }
+        return template.toString();
+    }
+
+    /**
+     * Substitutes a template.
+     *
+     * @param substitutor the substitutor
+     * @param template    the template
+     * @param type        the substitution type
+     * @throws Exception for any error
+     */
+    private void substitute(VariableSubstitutorImpl substitutor, String template, SubstitutionType type)
+            throws Exception
+    {
+        StringWriter writer = new StringWriter(template.length() * 2);
+        substitutor.substitute(new StringReader(template), writer, type);
+    }
+}
@@ -20,8 +20,16 @@
 package com.izforge.izpack.core.substitutor;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Properties;
+import java.util.Random;
 
 import org.hamcrest.core.Is;
 import org.junit.Before;
@@ -29,6 +37,7 @@ import org.junit.Test;
 
 import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.util.IoHelper;
 
 /**
  * Unit tests of substitutor features
@@ -46,6 +55,7 @@ public class VariableSubstitutorImplTest
         Properties properties = new Properties(System.getProperties());
         properties.put("MY_PROP", "one");
         properties.put("MY_PROP2", "two");
+        properties.put("SPECIAL", " <a href=\"x\">'\\\t\r\n");
         variableSubstitutor = new VariableSubstitutorImpl(properties);
     }
 
@@ -85,5 +95,160 @@ public class VariableSubstitutorImplTest
                 Is.is("onetwo"));
     }
 
+    /**
+     * Verifies that substitution produces the same output as reading and writing one character at a time,
+     * including when references span the reads.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void shouldSubstituteSameAsCharacterScan() throws Exception
+    {
+        String[] fragments = {"$", "${", "}", "%", "@", "{", "MY_PROP", "MY_PROP2", "SPECIAL", "UNDEFINED",
+                "ENV[PATH]", "ENV[UNDEFINED_ENV]", "x", "1", "_", ".", "-", "[", "]", " ", "\n", "text "};
+        Random random = new Random(42);
+        VariableSubstitutorBase substitutor = (VariableSubstitutorBase) variableSubstitutor;
+        for (int i = 0; i < 2000; ++i)
+        {
+            StringBuilder input = new StringBuilder();
+            int count = random.nextInt(30);
+            for (int j = 0; j < count; ++j)
+            {
+                input.append(fragments[random.nextInt(fragments.length)]);
+            }
+            for (SubstitutionType type : SubstitutionType.values())
+            {
+                for (boolean braces : new boolean[]{false, true})
+                {
+                    substitutor.setBracesRequired(braces);
+                    StringWriter expected = new StringWriter();
+                    int expectedSubs = substituteCharacters(substitutor, new StringReader(input.toString()),
+                                                            expected, type);
+                    StringWriter actual = new StringWriter();
+                    int subs = substitutor.substitute(new ShortReader(input.toString(), random), actual, type);
+                    String message = type + ", braces=" + braces + ": " + input;
+                    assertEquals(message, expected.toString(), actual.toString());
+                    assertEquals(message, expectedSubs, subs);
+                    assertEquals(message, expected.toString(), substitutor.substitute(input.toString(), type));
+                }
+            }
+        }
+    }
+
+    /**
+     * Substitutes variables one character at a time, as substitution was originally implemented.
+     */
+    private int substituteCharacters(VariableSubstitutorBase substitutor, Reader reader, Writer writer,
+                                     SubstitutionType type) throws Exception
+    {
+        char variable_start = '$';
+        char variable_end = '\0';
+        if (type == SubstitutionType.TYPE_SHELL)
+        {
+            variable_start = '%';
+        }
+        else if (type == SubstitutionType.TYPE_AT)
+        {
+            variable_start = '@';
+        }
+        else if (type == SubstitutionType.TYPE_ANT)
+        {
+            variable_start = '@';
+            variable_end = '@';
+        }
+        int subs = 0;
+        int c = reader.read();
+        while (true)
+        {
+            while (c != -1 && c != variable_start)
+            {
+                writer.write(c);
+                c = reader.read();
+            }
+            if (c == -1)
+            {
+                return subs;
+            }
+            boolean braces = false;
+            c = reader.read();
+            if (c == '{')
+            {
+                braces = true;
+                c = reader.read();
+            }
+            else if (substitutor.isBracesRequired())
+            {
+                writer.write(variable_start);
+                continue;
+            }
+            else if (c == -1)
+            {
+                writer.write(variable_start);
+                return subs;
+            }
+            StringBuilder nameBuffer = new StringBuilder();
+            while (c != -1 && (braces && c != '}') || (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z') || (braces && ((c == '[') || (c == ']')))
+                    || (((c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-') && nameBuffer.length() > 0))
+            {
+                nameBuffer.append((char) c);
+                c = reader.read();
+            }
+            String name = nameBuffer.toString();
+            String varvalue = null;
+            if ((!braces || c == '}') && (!braces || variable_end == '\0' || variable_end == c) && name.length() > 0)
+            {
+                if (braces && name.startsWith("ENV[") && (name.lastIndexOf(']') == name.length() - 1))
+                {
+                    varvalue = IoHelper.getenv(name.substring(4, name.length() - 1));
+                    if (varvalue == null)
+                    {
+                        varvalue = "";
+                    }
+                }
+                else
+                {
+                    varvalue = substitutor.getValue(name).resolve();
+                }
+                subs++;
+            }
+            if (varvalue != null)
+            {
+                writer.write(substitutor.escapeSpecialChars(varvalue, type));
+                if (braces || variable_end != '\0')
+                {
+                    c = reader.read();
+                }
+            }
+            else
+            {
+                writer.write(variable_start);
+                if (braces)
+                {
+                    writer.write('{');
+                }
+                writer.write(name);
+            }
+        }
+    }
+
+    /**
+     * A reader that returns at most a few characters from each read.
+     */
+    private static class ShortReader extends FilterReader
+    {
+        private final Random random;
 
+        public ShortReader(String str, Random random)
+        {
+            super(new StringReader(str));
+            this.random = random;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException
+        {
+            return super.read(buffer, offset, Math.min(length, 1 + random.nextInt(3)));
+        }
+    }
 }
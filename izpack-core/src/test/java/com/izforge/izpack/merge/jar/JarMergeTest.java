@@ -20,10 +20,13 @@
 package com.izforge.izpack.merge.jar;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -31,8 +34,17 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
 
 import org.hamcrest.core.Is;
 import org.hamcrest.text.StringContains;
@@ -187,7 +199,7 @@ public class JarMergeTest
         // now merge to a mocked JarOutputStream
         URL url = jar.toURI().toURL();
         String jarPath = ResolveUtils.processUrlToJarPath(url);
-        JarMerge merge = new JarMerge(url, jarPath, new HashMap<OutputStream, List<String>>());
+        JarMerge merge = new JarMerge(url, jarPath, new HashMap<OutputStream, Set<String>>());
         JarOutputStream output = Mockito.mock(JarOutputStream.class);
         merge.merge(output);
 
@@ -200,4 +212,105 @@ public class JarMergeTest
         assertEquals("META-INF/ok2", allValues.get(1).getName());
     }
 
+    /**
+     * Verifies that entries are only merged once to the same stream, and that the manifest is not merged.
+     */
+    @Test
+    public void testMergeOnce() throws IOException
+    {
+        File jar = File.createTempFile("mergetest", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar), new Manifest());
+        stream.putNextEntry(new ZipEntry("a/one.txt"));
+        stream.closeEntry();
+        stream.putNextEntry(new ZipEntry("a/two.txt"));
+        stream.closeEntry();
+        stream.close();
+
+        // merge the jar twice to the same mocked JarOutputStream
+        URL url = jar.toURI().toURL();
+        String jarPath = ResolveUtils.processUrlToJarPath(url);
+        Map<OutputStream, Set<String>> mergeContent = new HashMap<OutputStream, Set<String>>();
+        JarOutputStream output = Mockito.mock(JarOutputStream.class);
+        new JarMerge(url, jarPath, mergeContent).merge(output);
+        new JarMerge(url, jarPath, mergeContent).merge(output);
+
+        ArgumentCaptor<ZipEntry> captor = ArgumentCaptor.forClass(ZipEntry.class);
+        Mockito.verify(output, Mockito.times(2)).putNextEntry(captor.capture());
+        List<ZipEntry> allValues = captor.getAllValues();
+        assertEquals("a/one.txt", allValues.get(0).getName());
+        assertEquals("a/two.txt", allValues.get(1).getName());
+    }
+
+    /**
+     * Verifies that entries are copied to a {@link RawZipOutputStream} without being decompressed and compressed
+     * again, and that the resulting zip is valid, whether or not it is written using random access.
+     */
+    @Test
+    public void testCopyCompressedEntries() throws IOException
+    {
+        // the deflated entry isn't compressed, so if it were deflated again it would be smaller
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; ++i)
+        {
+            text.append("Line ").append(i).append('\n');
+        }
+        byte[] deflatedContent = text.toString().getBytes("UTF-8");
+        byte[] storedContent = "Stored".getBytes("UTF-8");
+        File jar = File.createTempFile("rawtest", ".jar");
+        jar.deleteOnExit();
+        java.util.zip.ZipOutputStream stream = new java.util.zip.ZipOutputStream(new FileOutputStream(jar));
+        stream.setLevel(Deflater.NO_COMPRESSION);
+        stream.putNextEntry(new ZipEntry("raw/deflated.txt"));
+        stream.write(deflatedContent);
+        stream.closeEntry();
+        ZipEntry stored = new ZipEntry("raw/stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(storedContent.length);
+        CRC32 crc = new CRC32();
+        crc.update(storedContent);
+        stored.setCrc(crc.getValue());
+        stream.putNextEntry(stored);
+        stream.write(storedContent);
+        stream.closeEntry();
+        stream.close();
+
+        ZipFile source = new ZipFile(jar);
+        long compressedSize = source.getEntry("raw/deflated.txt").getCompressedSize();
+        source.close();
+
+        File randomAccess = File.createTempFile("rawtest", ".jar");
+        randomAccess.deleteOnExit();
+        File sequential = File.createTempFile("rawtest", ".jar");
+        sequential.deleteOnExit();
+        RawZipOutputStream[] outputs = {new RawZipOutputStream(randomAccess),
+                new RawZipOutputStream(new FileOutputStream(sequential))};
+        for (RawZipOutputStream output : outputs)
+        {
+            JarMerge merge = new JarMerge(jar.getPath(), "raw/", "dest",
+                                          new HashMap<OutputStream, Set<String>>());
+            merge.merge(output);
+            output.close();
+        }
+
+        for (File file : new File[]{randomAccess, sequential})
+        {
+            ZipFile zipFile = new ZipFile(file);
+            ZipEntry deflated = zipFile.getEntry("dest/deflated.txt");
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertEquals(compressedSize, deflated.getCompressedSize());
+            assertEquals(deflatedContent.length, deflated.getSize());
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("dest/stored.txt").getMethod());
+            zipFile.close();
+
+            // reading the zip as a stream verifies the CRCs and sizes
+            ZipInputStream input = new ZipInputStream(new FileInputStream(file));
+            assertEquals("dest/deflated.txt", input.getNextEntry().getName());
+            assertArrayEquals(deflatedContent, IOUtils.toByteArray(input));
+            assertEquals("dest/stored.txt", input.getNextEntry().getName());
+            assertArrayEquals(storedContent, IOUtils.toByteArray(input));
+            assertNull(input.getNextEntry());
+            input.close();
+        }
+    }
 }
@@ -35,6 +35,7 @@ import com.izforge.izpack.installer.automation.AutomatedInstaller;
 import com.izforge.izpack.installer.console.ConsoleInstaller;
 import com.izforge.izpack.installer.container.impl.ConsoleInstallerContainer;
 import com.izforge.izpack.installer.container.impl.InstallerContainer;
+import com.izforge.izpack.installer.unpacker.UnpackerBase;
 import com.izforge.izpack.util.Debug;
 import com.izforge.izpack.util.StringTool;
 
@@ -173,6 +174,21 @@ public class Installer
                     {
                         media = args_it.next().trim();
                     }
+                    else if ("-repair".equalsIgnoreCase(arg))
+                    {
+                        // only unpack files missing from, or modified in, an existing installation
+                        System.setProperty(UnpackerBase.REPAIR, Boolean.TRUE.toString());
+                    }
+                    else if ("-resume".equalsIgnoreCase(arg))
+                    {
+                        // resume an interrupted installation without asking
+                        System.setProperty(UnpackerBase.RESUME, Boolean.TRUE.toString());
+                    }
+                    else if ("-noresume".equalsIgnoreCase(arg))
+                    {
+                        // unpack all files again, rather than resume an interrupted installation
+                        System.setProperty(UnpackerBase.RESUME, Boolean.FALSE.toString());
+                    }
                     else
                     {
                         type = INSTALLER_AUTO;
@@ -205,6 +221,14 @@ public class Installer
             type = INSTALLER_CONSOLE;
         }
 
+        // unattended installations can't ask whether to resume an interrupted installation, so resume by default
+        boolean unattended = (type == INSTALLER_AUTO) || (type == INSTALLER_CONSOLE
+                && consoleAction != CONSOLE_INSTALL && consoleAction != CONSOLE_GEN_TEMPLATE);
+        if (unattended && System.getProperty(UnpackerBase.RESUME) == null)
+        {
+            System.setProperty(UnpackerBase.RESUME, Boolean.TRUE.toString());
+        }
+
         switch (type)
         {
             case INSTALLER_GUI:
@@ -20,12 +20,14 @@ import com.izforge.izpack.installer.container.provider.GUIInstallDataProvider;
 import com.izforge.izpack.installer.container.provider.IconsProvider;
 import com.izforge.izpack.installer.container.provider.IzPanelsProvider;
 import com.izforge.izpack.installer.gui.DefaultNavigator;
+import com.izforge.izpack.installer.gui.GUIListener;
 import com.izforge.izpack.installer.gui.InstallerController;
 import com.izforge.izpack.installer.gui.InstallerFrame;
 import com.izforge.izpack.installer.language.LanguageDialog;
 import com.izforge.izpack.installer.multiunpacker.MultiVolumeUnpackerHelper;
 import com.izforge.izpack.installer.unpacker.GUIPackResources;
 import com.izforge.izpack.installer.unpacker.IUnpacker;
+import com.izforge.izpack.installer.web.WebPackPrefetcher;
 
 /**
  * GUI Installer container.
@@ -77,6 +79,7 @@ public class GUIInstallerContainer extends InstallerContainer
                 .addComponent(InstallerFrame.class)
                 .addComponent(Log.class)
                 .addComponent(GUIPackResources.class)
+                .addComponent(WebPackPrefetcher.class)
                 .addComponent(MultiVolumeUnpackerHelper.class)
                 .as(Characteristics.USE_NAMES).addComponent(LanguageDialog.class);
     }
@@ -98,6 +101,20 @@ public class GUIInstallerContainer extends InstallerContainer
         InstallerFrame frame = pico.getComponent(InstallerFrame.class);
         IUnpacker unpacker = pico.getComponent(IUnpacker.class);
         frame.setUnpacker(unpacker);
+
+        // download web-based packs in the background as they are selected
+        final InstallData data = installdata;
+        final WebPackPrefetcher prefetcher = pico.getComponent(WebPackPrefetcher.class);
+        frame.addGuiListener(new GUIListener()
+        {
+            public void guiActionPerformed(int what, Object param)
+            {
+                if (what == GUIListener.PANEL_SWITCHED && data.getSelectedPacks() != null)
+                {
+                    prefetcher.prefetch(data.getSelectedPacks());
+                }
+            }
+        });
     }
 
     private JFrame initFrame()
@@ -32,6 +32,7 @@ import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Locales;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.installer.unpacker.UnpackerBase;
 import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.OsVersion;
@@ -177,6 +178,19 @@ public abstract class AbstractInstallDataProvider implements Provider
             }
         }
 
+        // Repair an existing installation if requested on the command line, for any installer type
+        if (Boolean.getBoolean(UnpackerBase.REPAIR))
+        {
+            installData.setVariable(UnpackerBase.REPAIR, Boolean.TRUE.toString());
+        }
+
+        // Resume an interrupted installation, or not, without asking if specified on the command line
+        String resume = System.getProperty(UnpackerBase.RESUME);
+        if (resume != null)
+        {
+            installData.setVariable(UnpackerBase.RESUME, resume);
+        }
+
         installData.setPanelsOrder(panelsOrder);
         installData.setAvailablePacks(availablePacks);
         installData.setAllPacks(allPacks);
@@ -1,5 +1,6 @@
 package com.izforge.izpack.installer.data;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
@@ -7,19 +8,28 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.merge.Mergeable;
+import com.izforge.izpack.api.resource.Resources;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.ExecutableFile;
@@ -62,6 +72,11 @@ public class UninstallDataWriter
      */
     private RulesEngine rules;
 
+    /**
+     * The resources.
+     */
+    private Resources resources;
+
     /**
      * The logger.
      */
@@ -79,14 +94,16 @@ public class UninstallDataWriter
      * @param installData   the install data
      * @param pathResolver  the path resolver
      * @param rules         the rules engine
+     * @param resources     the resources
      */
     public UninstallDataWriter(UninstallData uninstallData, AutomatedInstallData installData, PathResolver pathResolver,
-                               RulesEngine rules)
+                               RulesEngine rules, Resources resources)
     {
         this.uninstallData = uninstallData;
         this.installData = installData;
         this.pathResolver = pathResolver;
         this.rules = rules;
+        this.resources = resources;
     }
 
     /**
@@ -193,32 +210,25 @@ public class UninstallDataWriter
      */
     private void writeJarSkeleton() throws IOException
     {
-        List<Mergeable> uninstallerMerge = pathResolver.getMergeableFromPath("com/izforge/izpack/uninstaller/");
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("uninstaller-META-INF/", "META-INF/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/api/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/data/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/core/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/util/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/gui/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/img/"));
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("org/picocontainer/"));
-
-        // indirectly required by Librarian, which pulls in IoHelper. TODO
-        uninstallerMerge.addAll(pathResolver.getMergeableFromPath("org/apache/tools/zip/"));
-
+        List<UninstallerSkeleton> parts = new ArrayList<UninstallerSkeleton>();
+        parts.add(UninstallerSkeleton.BASE);
         if (!uninstallData.getUninstallerListeners().isEmpty())
         {
-            uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/event/"));
+            parts.add(UninstallerSkeleton.EVENT);
         }
         if (rules.isConditionTrue("izpack.windowsinstall"))
         {
-            uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/izforge/izpack/core/os/"));
-            uninstallerMerge.addAll(pathResolver.getMergeableFromPath("com/coi/tools/os/"));
+            parts.add(UninstallerSkeleton.WINDOWS);
         }
 
-        for (Mergeable mergeable : uninstallerMerge)
+        Set<String> written = new HashSet<String>();
+        for (UninstallerSkeleton part : parts)
         {
-            mergeable.merge(jar);
+            if (!copySkeleton(part, written))
+            {
+                // the installer doesn't contain the part, so merge it from the class path
+                part.merge(pathResolver, jar);
+            }
         }
 
         if (installData.getInfo().isPrivilegedExecutionRequiredUninstaller())
@@ -257,15 +267,84 @@ public class UninstallDataWriter
         }
     }
 
+    /**
+     * Copies a prebuilt uninstaller skeleton part from the installer to the jar.
+     * <p/>
+     * Entries that have already been written are skipped.
+     *
+     * @param part    the skeleton part
+     * @param written the names of the entries written so far. Names of copied entries are added to this
+     * @return <tt>true</tt> if the part was copied, <tt>false</tt> if the installer doesn't contain it
+     * @throws IOException for any I/O error
+     */
+    private boolean copySkeleton(UninstallerSkeleton part, Set<String> written) throws IOException
+    {
+        InputStream stream;
+        try
+        {
+            stream = resources.getInputStream(part.getResource());
+        }
+        catch (ResourceNotFoundException exception)
+        {
+            return false;
+        }
+        ZipInputStream skeleton = new ZipInputStream(new BufferedInputStream(stream));
+        try
+        {
+            ZipEntry entry;
+            while ((entry = skeleton.getNextEntry()) != null)
+            {
+                if (written.add(entry.getName()))
+                {
+                    JarEntry jarEntry = new JarEntry(entry.getName());
+                    jarEntry.setTime(entry.getTime());
+                    jar.putNextEntry(jarEntry);
+                    IoHelper.copyStream(skeleton, jar);
+                    jar.closeEntry();
+                }
+            }
+        }
+        finally
+        {
+            skeleton.close();
+        }
+
+        // prevent resources merged later from being written again
+        pathResolver.getMergeableResolver().addMerged(jar, written);
+        return true;
+    }
+
+    /**
+     * Sorts file paths in leaf first order, removing duplicates.
+     *
+     * @param paths the paths
+     * @return the sorted paths
+     */
+    private List<String> getLeafFirst(List<String> paths)
+    {
+        TreeMap<File, String> files = new TreeMap<File, String>(Collections.reverseOrder());
+        for (String path : paths)
+        {
+            File file = new File(path);
+            if (!files.containsKey(file))
+            {
+                files.put(file, path);
+            }
+        }
+        return new ArrayList<String>(files.values());
+    }
+
     /**
      * Writes the file log.
+     * <p/>
+     * The files are written in leaf first order, so that the uninstaller doesn't need to sort them.
      *
      * @param extLogWriter the external log writer. May be <tt>null</tt>
      * @throws IOException for any I/O error
      */
     private void writeFilesLog(BufferedWriter extLogWriter) throws IOException
     {
-        List<String> files = uninstallData.getUninstalableFilesList();
+        List<String> files = getLeafFirst(uninstallData.getUninstalableFilesList());
 
         jar.putNextEntry(new JarEntry("install.log"));
         BufferedWriter logWriter = new BufferedWriter(new OutputStreamWriter(jar));
@@ -0,0 +1,122 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import com.izforge.izpack.api.merge.Mergeable;
+import com.izforge.izpack.merge.resolve.PathResolver;
+
+
+/**
+ * The parts of the uninstaller skeleton, i.e. the classes and resources of the uninstaller that don't depend on the
+ * installation.
+ * <p/>
+ * The compiler merges each part into a jar stored in the installer, so that at installation the uninstaller can be
+ * created by copying the parts it requires, rather than by merging them from the installer's class path.
+ */
+public enum UninstallerSkeleton
+{
+    /**
+     * The classes and resources always required.
+     */
+    BASE("base.jar", "com/izforge/izpack/uninstaller/", "uninstaller-META-INF/=META-INF/", "com/izforge/izpack/api/",
+         "com/izforge/izpack/data/", "com/izforge/izpack/core/", "com/izforge/izpack/util/", "com/izforge/izpack/gui/",
+         "com/izforge/izpack/img/", "org/picocontainer/",
+         // indirectly required by Librarian, which pulls in IoHelper. TODO
+         "org/apache/tools/zip/"),
+
+    /**
+     * The classes required when there are uninstaller listeners.
+     */
+    EVENT("event.jar", "com/izforge/izpack/event/"),
+
+    /**
+     * The classes required when installing on Windows.
+     */
+    WINDOWS("windows.jar", "com/izforge/izpack/core/os/", "com/coi/tools/os/");
+
+    /**
+     * The resource path of the skeleton parts.
+     */
+    private static final String PATH = "uninstaller-skeleton/";
+
+    /**
+     * The resource name of the part.
+     */
+    private final String resource;
+
+    /**
+     * The paths to merge, optionally followed by <em>=destination</em>.
+     */
+    private final String[] paths;
+
+    /**
+     * Constructs an <tt>UninstallerSkeleton</tt>.
+     *
+     * @param resource the resource name, relative to {@link #PATH}
+     * @param paths    the paths to merge, optionally followed by <em>=destination</em>
+     */
+    private UninstallerSkeleton(String resource, String... paths)
+    {
+        this.resource = PATH + resource;
+        this.paths = paths;
+    }
+
+    /**
+     * Returns the name of the installer resource that the part is stored in.
+     *
+     * @return the resource name
+     */
+    public String getResource()
+    {
+        return resource;
+    }
+
+    /**
+     * Merges the part from the class path to a jar.
+     *
+     * @param pathResolver the path resolver
+     * @param jar          the jar to write to
+     */
+    public void merge(PathResolver pathResolver, ZipOutputStream jar)
+    {
+        List<Mergeable> mergeables = new ArrayList<Mergeable>();
+        for (String path : paths)
+        {
+            int index = path.indexOf('=');
+            if (index != -1)
+            {
+                mergeables.addAll(pathResolver.getMergeableFromPath(path.substring(0, index),
+                                                                    path.substring(index + 1)));
+            }
+            else
+            {
+                mergeables.addAll(pathResolver.getMergeableFromPath(path));
+            }
+        }
+        for (Mergeable mergeable : mergeables)
+        {
+            mergeable.merge(jar);
+        }
+    }
+}
@@ -29,7 +29,9 @@ import java.io.ObjectInputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.CodeSource;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.izforge.izpack.api.data.InstallData;
@@ -43,6 +45,9 @@ import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.io.FileSpanningInputStream;
 import com.izforge.izpack.core.io.VolumeLocator;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
 import com.izforge.izpack.installer.unpacker.Cancellable;
@@ -72,7 +77,23 @@ public class MultiVolumeUnpacker extends UnpackerBase
     private VolumeLocator locator;
 
     /**
-     * The pack data volumes stream.
+     * The first volume.
+     */
+    private File volume;
+
+    /**
+     * The no. of volumes.
+     */
+    private int volumeCount;
+
+    /**
+     * The location of each pack's data in the volumes, keyed on pack name. Each location is the index of the
+     * volume the data starts in, the offset of the data in that volume, and the data length.
+     */
+    private final Map<String, long[]> locations = new HashMap<String, long[]>();
+
+    /**
+     * The pack data volumes stream for the pack being unpacked. May be {@code null}.
      */
     private FileSpanningInputStream volumes;
 
@@ -131,9 +152,21 @@ public class MultiVolumeUnpacker extends UnpackerBase
             // get volume metadata
             in = getResources().getInputStream(VOLUMES_INFO);
             objectIn = new ObjectInputStream(in);
-            int volumeCount = objectIn.readInt();
+            volumeCount = objectIn.readInt();
             String volumeName = objectIn.readUTF();
             logger.fine("Reading from " + volumeCount + " volumes with basename " + volumeName + " ");
+            int packCount = objectIn.readInt();
+            for (int i = 0; i < packCount; ++i)
+            {
+                String name = objectIn.readUTF();
+                int index = objectIn.readInt();
+                long offset = objectIn.readLong();
+                long length = objectIn.readLong();
+                if (index >= 0)
+                {
+                    locations.put(name, new long[]{index, offset, length});
+                }
+            }
 
             String mediaPath = getInstallData().getMediaPath();
             if ((mediaPath == null) || (mediaPath.length() == 0))
@@ -141,13 +174,7 @@ public class MultiVolumeUnpacker extends UnpackerBase
                 mediaPath = getDefaultMediaPath();
             }
             logger.fine("Using mediaDirectory = " + mediaPath);
-            File volume = new File(mediaPath, volumeName);
-            if (!volume.exists())
-            {
-                volume = locator.getVolume(volume.getAbsolutePath(), false);
-            }
-            volumes = new FileSpanningInputStream(volume, volumeCount);
-            volumes.setLocator(locator);
+            volume = new File(mediaPath, volumeName);
         }
         catch (IOException exception)
         {
@@ -160,6 +187,68 @@ public class MultiVolumeUnpacker extends UnpackerBase
         }
     }
 
+    /**
+     * Unpacks a pack.
+     * <p/>
+     * Only the volumes holding the pack's data are read.
+     *
+     * @param pack         the pack to unpack
+     * @param packNo       the pack number
+     * @param queue        the file queue. May be {@code null}
+     * @param parsables    used to collect parsable files in the pack
+     * @param executables  used to collect executable files files in the pack
+     * @param updateChecks used to collect update checks in the pack
+     * @throws IzPackException for any error
+     */
+    @Override
+    protected void unpack(Pack pack, int packNo, FileQueue queue, List<ParsableFile> parsables,
+                          List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
+    {
+        long[] location = locations.get(pack.getName());
+        if (location != null)
+        {
+            try
+            {
+                volumes = new FileSpanningInputStream(volume, volumeCount, (int) location[0], location[1],
+                                                      location[2], locator);
+            }
+            catch (IOException exception)
+            {
+                throw new InstallerException(exception);
+            }
+        }
+        try
+        {
+            super.unpack(pack, packNo, queue, parsables, executables, updateChecks);
+        }
+        finally
+        {
+            FileUtils.close(volumes);
+            volumes = null;
+        }
+    }
+
+    /**
+     * Repairs the damaged files of a pack.
+     * <p/>
+     * This implementation always unpacks the pack, as file content is stored in the volumes rather than the pack
+     * stream.
+     *
+     * @param pack         the pack to repair
+     * @param packNo       the pack number
+     * @param queue        the file queue. May be {@code null}
+     * @param parsables    used to collect parsable files in the pack
+     * @param executables  used to collect executable files files in the pack
+     * @param updateChecks used to collect update checks in the pack
+     * @return {@code false}
+     */
+    @Override
+    protected boolean repair(Pack pack, int packNo, FileQueue queue, List<ParsableFile> parsables,
+                             List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
+    {
+        return false;
+    }
+
     /**
      * Creates an unpacker to unpack a pack file.
      *
@@ -225,8 +314,8 @@ public class MultiVolumeUnpacker extends UnpackerBase
         File loose = new File(result, file.getRelativeSourcePath());
         if (!loose.exists())
         {
-            File volume = volumes.getVolume();
-            File dir = volume.getParentFile();
+            File current = (volumes != null) ? volumes.getVolume() : volume;
+            File dir = current.getParentFile();
             if (dir != null)
             {
                 loose = new File(dir, file.getRelativeSourcePath());
@@ -22,6 +22,7 @@
 package com.izforge.izpack.installer.unpacker;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 
@@ -75,16 +76,21 @@ public abstract class AbstractPackResources implements PackResources
     {
         InputStream result;
         String webDirURL = installData.getInfo().getWebDirURL();
+        String className = installData.getInfo().getPackDecoderClassName();
 
         if (webDirURL == null)
         {
             result = getLocalPackStream(name);
+            InputStream index = getLocalPackIndex(name);
+            if (index != null)
+            {
+                return getIndexedInputStream(result, index, className);
+            }
         }
         else
         {
             result = getWebPackStream(name, webDirURL);
         }
-        String className = installData.getInfo().getPackDecoderClassName();
         if (className != null)
         {
             result = getDecodingInputStream(result, className);
@@ -143,6 +149,54 @@ public abstract class AbstractPackResources implements PackResources
         return (InputStream) result;
     }
 
+    /**
+     * Returns a stream that decodes a pack made up of independently compressed blocks.
+     *
+     * @param in        the pack stream
+     * @param index     the pack index stream
+     * @param className the decoding input stream class name. May be {@code null}
+     * @return the decoding stream
+     * @throws ResourceException for any error
+     */
+    protected InputStream getIndexedInputStream(InputStream in, InputStream index, final String className)
+    {
+        try
+        {
+            return new IndexedPackInputStream(in, index)
+            {
+                @Override
+                protected InputStream createDecoder(InputStream block)
+                {
+                    return (className != null) ? getDecodingInputStream(block, className) : block;
+                }
+            };
+        }
+        catch (IOException exception)
+        {
+            throw new ResourceException("Failed to read pack index", exception);
+        }
+    }
+
+    /**
+     * Returns a stream to the index of a local pack.
+     * <p/>
+     * Only packs made up of independently compressed blocks have an index.
+     *
+     * @param name the pack name
+     * @return the index stream, or {@code null} if the pack has no index
+     */
+    protected InputStream getLocalPackIndex(String name)
+    {
+        try
+        {
+            return resources.getInputStream("packs/index-" + name);
+        }
+        catch (ResourceNotFoundException exception)
+        {
+            return null;
+        }
+    }
+
     /**
      * Returns a stream to a local pack.
      *
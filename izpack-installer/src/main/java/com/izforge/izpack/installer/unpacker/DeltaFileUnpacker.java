@@ -0,0 +1,272 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.data.BlockSignatures;
+import com.izforge.izpack.data.Delta;
+import com.izforge.izpack.util.file.FileUtils;
+import com.izforge.izpack.util.os.FileQueue;
+
+
+/**
+ * A file unpacker for files delta encoded by a patch installer.
+ * <p/>
+ * The {@link Delta} is applied to the installed copy of the file, provided it has the length and digest the delta was
+ * encoded against, and the result verified against the digest of the pack file. If either doesn't match, the whole
+ * file is installed from the patch fallback jar instead.
+ */
+class DeltaFileUnpacker extends FileUnpacker
+{
+
+    /**
+     * The resources.
+     */
+    private final PackResources resources;
+
+    /**
+     * The patch fallback jar. May be {@code null}
+     */
+    private final File fallback;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(DeltaFileUnpacker.class.getName());
+
+
+    /**
+     * Constructs a {@code DeltaFileUnpacker}.
+     *
+     * @param cancellable determines if unpacking should be cancelled
+     * @param resources   the pack resources
+     * @param fallback    the patch fallback jar. May be {@code null}
+     * @param queue       the file queue. May be {@code null}
+     */
+    public DeltaFileUnpacker(Cancellable cancellable, PackResources resources, File fallback, FileQueue queue)
+    {
+        super(cancellable, queue);
+        this.resources = resources;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Unpacks a pack file.
+     *
+     * @param file            the pack file meta-data
+     * @param packInputStream the pack input stream
+     * @param target          the target
+     * @throws IOException        for any I/O error
+     * @throws InstallerException if the delta cannot be applied, and there is no fallback
+     */
+    @Override
+    public void unpack(PackFile file, ObjectInputStream packInputStream, File target)
+            throws IOException, InstallerException
+    {
+        int id = packInputStream.readInt();
+        File patched;
+        InputStream in = resources.getInputStream(Delta.RESOURCE + id);
+        try
+        {
+            patched = apply(file, new DataInputStream(new BufferedInputStream(in)), target);
+        }
+        finally
+        {
+            FileUtils.close(in);
+        }
+        if (patched != null)
+        {
+            move(file, patched, target);
+        }
+        else
+        {
+            unpackFallback(file, id, target);
+        }
+    }
+
+    /**
+     * Applies a delta to the installed copy of a file.
+     *
+     * @param file   the pack file meta-data
+     * @param delta  the delta
+     * @param target the installed file
+     * @return a temporary file in the target's directory with the pack file content, or {@code null} if the installed
+     *         file isn't the delta's base, or the result doesn't match the pack file
+     * @throws IOException for any I/O error
+     */
+    private File apply(PackFile file, DataInputStream delta, File target) throws IOException
+    {
+        int version = delta.readInt();
+        if (version != Delta.VERSION)
+        {
+            throw new IOException("Unsupported delta version " + version + " for " + target);
+        }
+        long length = delta.readLong();
+        byte[] digest = new byte[delta.readUnsignedByte()];
+        delta.readFully(digest);
+        int blockSize = delta.readInt();
+        if (!target.isFile() || target.length() != length || !Arrays.equals(digest, InstalledFiles.digest(target)))
+        {
+            logger.info("Cannot apply delta to " + target + ": the installed file is missing or has been modified");
+            return null;
+        }
+
+        File result = File.createTempFile("__delta__", null, target.getParentFile());
+        MessageDigest resultDigest = BlockSignatures.getDigest();
+        boolean valid = false;
+        RandomAccessFile base = null;
+        OutputStream out = null;
+        try
+        {
+            base = new RandomAccessFile(target, "r");
+            out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(result)), resultDigest);
+            byte[] buffer = new byte[8192];
+            long written = 0;
+            int instruction;
+            while ((instruction = delta.readUnsignedByte()) != Delta.END)
+            {
+                checkCancelled();
+                if (instruction == Delta.COPY)
+                {
+                    long offset = (long) delta.readInt() * blockSize;
+                    long count = (long) delta.readInt() * blockSize;
+                    if (offset < 0 || count <= 0 || offset >= length)
+                    {
+                        throw new IOException("Invalid delta for " + target);
+                    }
+                    base.seek(offset);
+                    written += copy(base, out, Math.min(count, length - offset), buffer);
+                }
+                else if (instruction == Delta.INSERT)
+                {
+                    int count = delta.readInt();
+                    if (count < 0)
+                    {
+                        throw new IOException("Invalid delta for " + target);
+                    }
+                    written += copy(delta, out, count, buffer);
+                }
+                else
+                {
+                    throw new IOException("Invalid delta instruction " + instruction + " for " + target);
+                }
+            }
+            out.close();
+            valid = written == file.length() && Arrays.equals(resultDigest.digest(), file.getDigest());
+            if (!valid)
+            {
+                logger.warning("Delta for " + target + " didn't produce the expected content");
+            }
+        }
+        finally
+        {
+            FileUtils.close(base);
+            FileUtils.close(out);
+            if (!valid && !result.delete())
+            {
+                result.deleteOnExit();
+            }
+        }
+        return valid ? result : null;
+    }
+
+    /**
+     * Installs the whole content of a delta encoded file from the patch fallback jar.
+     *
+     * @param file   the pack file meta-data
+     * @param id     the delta identifier
+     * @param target the target
+     * @throws IOException        for any I/O error
+     * @throws InstallerException if there is no fallback jar
+     */
+    private void unpackFallback(PackFile file, int id, File target) throws IOException
+    {
+        if (fallback == null || !fallback.isFile())
+        {
+            throw new InstallerException("Cannot patch " + target
+                                                 + ": the installed file is missing or has been modified");
+        }
+        logger.info("Installing " + target + " from " + fallback);
+        JarFile jar = new JarFile(fallback);
+        try
+        {
+            ZipEntry entry = jar.getEntry(Delta.FALLBACK_ENTRY + id);
+            if (entry == null)
+            {
+                throw new IOException("Patch fallback " + fallback + " has no content for " + target);
+            }
+            InputStream in = jar.getInputStream(entry);
+            try
+            {
+                copy(file, in, target);
+            }
+            finally
+            {
+                FileUtils.close(in);
+            }
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Copies bytes from the installed file or the delta.
+     *
+     * @param in     the file or stream to read from
+     * @param out    the stream to write to
+     * @param count  the no. of bytes to copy
+     * @param buffer the buffer to use
+     * @return the no. of bytes copied
+     * @throws IOException if there are fewer bytes than expected, or for any I/O error
+     */
+    private long copy(DataInput in, OutputStream out, long count, byte[] buffer) throws IOException
+    {
+        long remaining = count;
+        while (remaining > 0)
+        {
+            int size = (int) Math.min(remaining, buffer.length);
+            in.readFully(buffer, 0, size);
+            out.write(buffer, 0, size);
+            remaining -= size;
+        }
+        return count;
+    }
+}
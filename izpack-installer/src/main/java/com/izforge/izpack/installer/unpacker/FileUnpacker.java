@@ -33,6 +33,9 @@ import java.util.logging.Logger;
 import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.OsVersion;
+import com.izforge.izpack.util.file.FilePermissions;
 import com.izforge.izpack.util.file.FileUtils;
 import com.izforge.izpack.util.os.FileQueue;
 import com.izforge.izpack.util.os.FileQueueMove;
@@ -133,11 +136,7 @@ public abstract class FileUnpacker
             long bytesCopied = 0;
             while (bytesCopied < file.length())
             {
-                if (cancellable.isCancelled())
-                {
-                    // operation cancelled
-                    throw new InterruptedIOException("Copy operation cancelled");
-                }
+                checkCancelled();
                 bytesCopied = copy(file, buffer, in, out, bytesCopied);
             }
         }
@@ -149,7 +148,45 @@ public abstract class FileUnpacker
     }
 
     /**
-     * Invoked after copying is complete to set the last modified timestamp, and queue blockable files.
+     * Moves a file written elsewhere to a target, setting its timestamp to that of the pack file.
+     * <p/>
+     * If the target is a blockable file, then the file is queued to replace it instead.
+     *
+     * @param file   the pack file
+     * @param source the file to move. This must be in the same directory as the target
+     * @param target the file to replace
+     * @throws IOException if the file cannot be moved
+     */
+    protected void move(PackFile file, File source, File target) throws IOException
+    {
+        this.target = target;
+        if (isBlockable(file))
+        {
+            tmpTarget = source;
+        }
+        else if ((target.exists() && !target.delete()) || !source.renameTo(target))
+        {
+            throw new IOException("Failed to move " + source + " to " + target);
+        }
+        postCopy(file);
+    }
+
+    /**
+     * Determines if unpacking has been cancelled.
+     *
+     * @throws InterruptedIOException if unpacking has been cancelled
+     */
+    protected void checkCancelled() throws InterruptedIOException
+    {
+        if (cancellable.isCancelled())
+        {
+            throw new InterruptedIOException("Copy operation cancelled");
+        }
+    }
+
+    /**
+     * Invoked after copying is complete to set the last modified timestamp and permissions, and queue blockable
+     * files.
      *
      * @param file the pack file meta-data
      * @throws IOException for any I/O error
@@ -157,6 +194,7 @@ public abstract class FileUnpacker
     protected void postCopy(PackFile file) throws IOException
     {
         setLastModified(file);
+        setPermissions(file);
 
         if (isBlockable(file))
         {
@@ -250,6 +288,26 @@ public abstract class FileUnpacker
         }
     }
 
+    /**
+     * Makes a file executable if its source was executable when the installer was compiled.
+     * <p/>
+     * This is done in-process; <em>chmod</em> is only run if that fails.
+     *
+     * @param file the pack file meta-data
+     * @throws IOException for any I/O error
+     */
+    protected void setPermissions(PackFile file) throws IOException
+    {
+        if (file.isExecutable() && OsVersion.IS_UNIX)
+        {
+            File f = (tmpTarget != null) ? tmpTarget : target;
+            if (!FilePermissions.setExecutable(f))
+            {
+                IoHelper.chmod(f, "a+x");
+            }
+        }
+    }
+
     /**
      * Determines if a pack file is blockable.
      * <p/>
@@ -0,0 +1,329 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.util.os.FileQueue;
+
+
+/**
+ * Writes unpacked files using a pool of threads.
+ * <p/>
+ * The pack stream is decoded by the calling thread, which reads the content of each file into memory and hands it
+ * to a writer thread to create, write and close the target file. This hides the per-file open and close latency
+ * that dominates installing many small files.
+ * <p/>
+ * The {@link InstallerListeners#afterFile} notifications are delivered on the calling thread, in the order that
+ * files were submitted. The no. of files awaiting writing is bounded, limiting the memory used to buffer them.
+ */
+public class FileWriterPool
+{
+
+    /**
+     * The maximum size of a file that may be written by the pool. Larger files should be unpacked directly.
+     */
+    public static final int MAX_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * The writer threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The listeners to notify when files have been written.
+     */
+    private final InstallerListeners listeners;
+
+    /**
+     * The maximum no. of files awaiting writing.
+     */
+    private final int maxPending;
+
+    /**
+     * The files awaiting writing, in the order they were submitted.
+     */
+    private final LinkedList<PendingFile> pending = new LinkedList<PendingFile>();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(FileWriterPool.class.getName());
+
+
+    /**
+     * Constructs a {@code FileWriterPool}.
+     *
+     * @param threads   the no. of writer threads
+     * @param listeners the listeners to notify when files have been written
+     */
+    public FileWriterPool(int threads, InstallerListeners listeners)
+    {
+        this.listeners = listeners;
+        maxPending = threads * 4;
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack - Unpacker writer " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Determines if a pack file can be written by the pool.
+     * <p/>
+     * Only files unpacked by a {@link DefaultFileUnpacker} that are small enough to buffer, and that won't be queued,
+     * may be written by the pool.
+     *
+     * @param file     the pack file
+     * @param unpacker the unpacker that would otherwise unpack the file
+     * @param queue    the file queue. May be {@code null}
+     * @return {@code true} if the file can be written by the pool
+     */
+    public boolean canWrite(PackFile file, FileUnpacker unpacker, FileQueue queue)
+    {
+        return unpacker instanceof DefaultFileUnpacker && file.length() <= MAX_FILE_SIZE
+                && (queue == null || file.blockable() == Blockable.BLOCKABLE_NONE);
+    }
+
+    /**
+     * Reads the content of a pack file and submits it for writing.
+     * <p/>
+     * If the maximum no. of files are awaiting writing, this blocks until the earliest has been written.
+     *
+     * @param file            the pack file
+     * @param packInputStream the pack stream, positioned at the content of the file
+     * @param target          the file to write to
+     * @param pack            the pack that the pack file comes from
+     * @param unpacker        the unpacker to write the file with
+     * @throws IOException for any I/O error
+     */
+    public void write(final PackFile file, ObjectInputStream packInputStream, final File target, Pack pack,
+                      final FileUnpacker unpacker) throws IOException
+    {
+        final byte[] content = new byte[(int) file.length()];
+        packInputStream.readFully(content);
+
+        while (pending.size() >= maxPending)
+        {
+            complete(pending.removeFirst());
+        }
+        Future<Void> future = executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws IOException
+            {
+                unpacker.copy(file, new ByteArrayInputStream(content), target);
+                return null;
+            }
+        });
+        pending.add(new PendingFile(file, target, pack, unpacker, future));
+
+        // notify listeners of any files that have already been written
+        while (!pending.isEmpty() && pending.getFirst().future.isDone())
+        {
+            complete(pending.removeFirst());
+        }
+    }
+
+    /**
+     * Waits for any pending write of the specified target to complete.
+     * <p/>
+     * This must be invoked prior to examining or replacing a target that may have been submitted earlier.
+     *
+     * @param target the target
+     * @throws IOException for any I/O error
+     */
+    public void await(File target) throws IOException
+    {
+        while (isPending(target))
+        {
+            complete(pending.removeFirst());
+        }
+    }
+
+    /**
+     * Waits for all pending writes to complete.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void complete() throws IOException
+    {
+        while (!pending.isEmpty())
+        {
+            complete(pending.removeFirst());
+        }
+    }
+
+    /**
+     * Shuts down the pool, cancelling any pending writes.
+     */
+    public void shutdown()
+    {
+        for (PendingFile file : pending)
+        {
+            file.future.cancel(false);
+        }
+        pending.clear();
+        executor.shutdownNow();
+        try
+        {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                logger.warning("Timed out waiting for unpacker writer threads to terminate");
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Determines if a write of the specified target is pending.
+     *
+     * @param target the target
+     * @return {@code true} if the target is awaiting writing
+     */
+    private boolean isPending(File target)
+    {
+        for (PendingFile file : pending)
+        {
+            if (file.target.equals(target))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a file to be written, and notifies the listeners.
+     *
+     * @param file the file
+     * @throws IOException if the file could not be written
+     */
+    private void complete(PendingFile file) throws IOException
+    {
+        try
+        {
+            file.future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + file.target);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to write " + file.target, cause);
+        }
+        if (!file.unpacker.isQueued())
+        {
+            listeners.afterFile(file.target, file.file, file.pack);
+        }
+    }
+
+    /**
+     * A file awaiting writing.
+     */
+    private static class PendingFile
+    {
+
+        /**
+         * The pack file.
+         */
+        private final PackFile file;
+
+        /**
+         * The target file.
+         */
+        private final File target;
+
+        /**
+         * The pack that the file comes from.
+         */
+        private final Pack pack;
+
+        /**
+         * The unpacker writing the file.
+         */
+        private final FileUnpacker unpacker;
+
+        /**
+         * The result of the write.
+         */
+        private final Future<Void> future;
+
+        /**
+         * Constructs a {@code PendingFile}.
+         *
+         * @param file     the pack file
+         * @param target   the target file
+         * @param pack     the pack that the file comes from
+         * @param unpacker the unpacker writing the file
+         * @param future   the result of the write
+         */
+        public PendingFile(PackFile file, File target, Pack pack, FileUnpacker unpacker, Future<Void> future)
+        {
+            this.file = file;
+            this.target = target;
+            this.pack = pack;
+            this.unpacker = unpacker;
+            this.future = future;
+        }
+    }
+}
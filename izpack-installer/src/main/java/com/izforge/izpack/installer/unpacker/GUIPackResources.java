@@ -11,6 +11,7 @@ import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceInterruptedException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.installer.web.WebPackPrefetcher;
 import com.izforge.izpack.installer.web.WebRepositoryAccessor;
 import com.izforge.izpack.util.IoHelper;
 
@@ -28,15 +29,22 @@ public class GUIPackResources extends AbstractPackResources
      */
     private static final String tempSubPath = "/IzpackWebTemp";
 
+    /**
+     * The web pack prefetcher.
+     */
+    private final WebPackPrefetcher prefetcher;
+
     /**
      * Constructs a {@code GUIPackResources}.
      *
      * @param resources   the resources
      * @param installData the installation data
+     * @param prefetcher  the web pack prefetcher
      */
-    public GUIPackResources(Resources resources, InstallData installData)
+    public GUIPackResources(Resources resources, InstallData installData, WebPackPrefetcher prefetcher)
     {
         super(resources, installData);
+        this.prefetcher = prefetcher;
     }
 
     /**
@@ -54,7 +62,6 @@ public class GUIPackResources extends AbstractPackResources
 
         // TODO: Look first in same directory as primary jar
         // This may include prompting for changing of media
-        // TODO: download and cache them all before starting copy process
 
         // See compiler.Packager#getJarOutputStream for the counterpart
         InstallData installData = getInstallData();
@@ -66,7 +73,12 @@ public class GUIPackResources extends AbstractPackResources
         String tempFile;
         try
         {
-            tempFile = WebRepositoryAccessor.getCachedUrl(packURL, tempFolder);
+            // use the pack downloaded in the background, if any
+            tempFile = prefetcher.getPack(name);
+            if (tempFile == null)
+            {
+                tempFile = WebRepositoryAccessor.getCachedUrl(packURL, tempFolder);
+            }
         }
         catch (InterruptedIOException exception)
         {
@@ -0,0 +1,349 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Decodes a pack made up of independently compressed blocks.
+ * <p/>
+ * The pack index records the length of each block before and after compression. This enables {@link #skip(long)}
+ * to pass over whole blocks without decompressing them, so that a back referenced file can be located by only
+ * decompressing the block that contains it.
+ * <p/>
+ * Skipping over the compressed blocks is only efficient if the underlying stream supports efficient skipping, as is
+ * the case for uncompressed jar entries.
+ */
+public abstract class IndexedPackInputStream extends InputStream
+{
+
+    /**
+     * The supported index version.
+     */
+    public static final int INDEX_VERSION = 1;
+
+    /**
+     * The compressed pack stream.
+     */
+    private final InputStream in;
+
+    /**
+     * The uncompressed length of each block.
+     */
+    private final long[] decodedLengths;
+
+    /**
+     * The compressed length of each block.
+     */
+    private final long[] encodedLengths;
+
+    /**
+     * The current block, or {@code -1} if no block has been read.
+     */
+    private int block = -1;
+
+    /**
+     * The compressed data of the current block.
+     */
+    private BlockInputStream encoded;
+
+    /**
+     * The decoder of the current block, or {@code null} if the block is not being decoded.
+     */
+    private InputStream decoder;
+
+    /**
+     * The no. of uncompressed bytes remaining in the current block.
+     */
+    private long decodedRemaining;
+
+
+    /**
+     * Constructs an {@code IndexedPackInputStream}.
+     *
+     * @param in    the compressed pack stream
+     * @param index the pack index stream. This is closed on return
+     * @throws IOException if the index cannot be read
+     */
+    public IndexedPackInputStream(InputStream in, InputStream index) throws IOException
+    {
+        this.in = in;
+        DataInputStream data = new DataInputStream(index);
+        try
+        {
+            int version = data.readInt();
+            if (version != INDEX_VERSION)
+            {
+                throw new IOException("Unsupported pack index version: " + version);
+            }
+            int count = data.readInt();
+            decodedLengths = new long[count];
+            encodedLengths = new long[count];
+            for (int i = 0; i < count; ++i)
+            {
+                decodedLengths[i] = data.readLong();
+                encodedLengths[i] = data.readLong();
+            }
+        }
+        finally
+        {
+            data.close();
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return (read == -1) ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        while (decodedRemaining == 0)
+        {
+            if (!nextBlock())
+            {
+                return -1;
+            }
+        }
+        int read = decoder.read(b, off, (int) Math.min(len, decodedRemaining));
+        if (read == -1)
+        {
+            throw new EOFException("Unexpected end of pack block " + block);
+        }
+        decodedRemaining -= read;
+        return read;
+    }
+
+    /**
+     * Skips over uncompressed bytes.
+     * <p/>
+     * Whole blocks are skipped without being decompressed.
+     *
+     * @param n the no. of bytes to skip
+     * @return the no. of bytes skipped. This is less than {@code n} only if the end of the pack is reached
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long remaining = n;
+        while (remaining > 0)
+        {
+            if (decodedRemaining > 0)
+            {
+                if (remaining < decodedRemaining)
+                {
+                    skipFully(decoder, remaining);
+                    decodedRemaining -= remaining;
+                    return n;
+                }
+                remaining -= decodedRemaining;
+                closeBlock();
+            }
+            while (block + 1 < decodedLengths.length && decodedLengths[block + 1] <= remaining)
+            {
+                ++block;
+                skipFully(in, encodedLengths[block]);
+                remaining -= decodedLengths[block];
+            }
+            if (remaining > 0 && !nextBlock())
+            {
+                break;
+            }
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closeBlock();
+        in.close();
+    }
+
+    /**
+     * Creates a stream to decode a block.
+     *
+     * @param block the compressed block. Closing this doesn't close the underlying stream
+     * @return the decoding stream
+     * @throws IOException if the stream cannot be created
+     */
+    protected abstract InputStream createDecoder(InputStream block) throws IOException;
+
+    /**
+     * Moves to the next block.
+     *
+     * @return {@code true} if there is another block, {@code false} if the end of the pack has been reached
+     * @throws IOException for any I/O error
+     */
+    private boolean nextBlock() throws IOException
+    {
+        closeBlock();
+        if (block + 1 >= decodedLengths.length)
+        {
+            return false;
+        }
+        ++block;
+        encoded = new BlockInputStream(in, encodedLengths[block]);
+        decoder = createDecoder(encoded);
+        decodedRemaining = decodedLengths[block];
+        return true;
+    }
+
+    /**
+     * Closes the current block, skipping any of its compressed data that hasn't been read.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void closeBlock() throws IOException
+    {
+        if (decoder != null)
+        {
+            decoder.close();
+            decoder = null;
+        }
+        if (encoded != null)
+        {
+            skipFully(in, encoded.remaining);
+            encoded = null;
+        }
+        decodedRemaining = 0;
+    }
+
+    /**
+     * Skips an exact no. of bytes in a stream.
+     *
+     * @param stream the stream
+     * @param n      the no. of bytes to skip
+     * @throws IOException if the stream ends before the bytes are skipped, or for any other I/O error
+     */
+    private static void skipFully(InputStream stream, long n) throws IOException
+    {
+        while (n > 0)
+        {
+            long skipped = stream.skip(n);
+            if (skipped <= 0)
+            {
+                if (stream.read() == -1)
+                {
+                    throw new EOFException("Unexpected end of pack");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Limits reading of the underlying stream to a single block.
+     */
+    private static class BlockInputStream extends InputStream
+    {
+
+        /**
+         * The underlying stream.
+         */
+        private final InputStream in;
+
+        /**
+         * The no. of compressed bytes remaining in the block.
+         */
+        private long remaining;
+
+        /**
+         * Constructs a {@code BlockInputStream}.
+         *
+         * @param in     the underlying stream
+         * @param length the compressed length of the block
+         */
+        public BlockInputStream(InputStream in, long length)
+        {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int result = in.read();
+            if (result != -1)
+            {
+                --remaining;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+            {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = in.skip(Math.min(n, remaining));
+            if (skipped > 0)
+            {
+                remaining -= skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        /**
+         * Does nothing, as the underlying stream is shared by all blocks.
+         */
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.api.exception.ResourceInterruptedException;
+
+
+/**
+ * Verifies installed files against their expected content, using a pool of threads.
+ * <p/>
+ * Each file is digested on a separate thread, so that verifying a large installation is bound by disk throughput
+ * rather than by the digest computation of a single core.
+ */
+public class InstallationVerifier
+{
+
+    /**
+     * The no. of threads to digest files with.
+     */
+    private final int threads;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(InstallationVerifier.class.getName());
+
+
+    /**
+     * Constructs an {@code InstallationVerifier}.
+     *
+     * @param threads the no. of threads to digest files with. If less than {@code 1}, the no. of available
+     *                processors is used
+     */
+    public InstallationVerifier(int threads)
+    {
+        this.threads = (threads < 1) ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Verifies files.
+     * <p/>
+     * A file is damaged if it is missing, or if it has an expected digest that its content doesn't match. Files
+     * without an expected digest are only checked for existence.
+     *
+     * @param files       the expected SHA-1 content digest of each file. Digests may be {@code null}
+     * @param cancellable determines if verification should be cancelled
+     * @return the damaged files
+     * @throws ResourceInterruptedException if verification is cancelled
+     * @throws InstallerException           for any other error
+     */
+    public Set<File> verify(Map<File, byte[]> files, Cancellable cancellable)
+    {
+        Set<File> result = new HashSet<File>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack - Verifier " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            List<Future<File>> futures = new ArrayList<Future<File>>(files.size());
+            for (Map.Entry<File, byte[]> entry : files.entrySet())
+            {
+                futures.add(executor.submit(new Verification(entry.getKey(), entry.getValue(), cancellable)));
+            }
+            for (Future<File> future : futures)
+            {
+                File file = future.get();
+                if (file != null)
+                {
+                    result.add(file);
+                }
+                if (cancellable.isCancelled())
+                {
+                    throw new ResourceInterruptedException("Installation cancelled");
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new ResourceInterruptedException("Installation cancelled");
+        }
+        catch (ExecutionException exception)
+        {
+            throw new InstallerException("Failed to verify installation", exception.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Verifies a single file.
+     */
+    private static class Verification implements Callable<File>
+    {
+
+        /**
+         * The file.
+         */
+        private final File file;
+
+        /**
+         * The expected SHA-1 content digest. May be {@code null}.
+         */
+        private final byte[] digest;
+
+        /**
+         * Determines if verification has been cancelled.
+         */
+        private final Cancellable cancellable;
+
+        /**
+         * Constructs a {@code Verification}.
+         *
+         * @param file        the file
+         * @param digest      the expected SHA-1 content digest. May be {@code null}
+         * @param cancellable determines if verification has been cancelled
+         */
+        public Verification(File file, byte[] digest, Cancellable cancellable)
+        {
+            this.file = file;
+            this.digest = digest;
+            this.cancellable = cancellable;
+        }
+
+        /**
+         * Verifies the file.
+         *
+         * @return the file if it is damaged, otherwise {@code null}
+         */
+        @Override
+        public File call()
+        {
+            if (cancellable.isCancelled())
+            {
+                return null;
+            }
+            boolean damaged;
+            if (!file.isFile())
+            {
+                damaged = true;
+            }
+            else if (digest == null)
+            {
+                damaged = false;
+            }
+            else
+            {
+                try
+                {
+                    damaged = !Arrays.equals(digest, InstalledFiles.digest(file));
+                }
+                catch (IOException exception)
+                {
+                    logger.log(Level.FINE, "Failed to read " + file, exception);
+                    damaged = true;
+                }
+            }
+            if (damaged && logger.isLoggable(Level.FINE))
+            {
+                logger.fine("Damaged: " + file);
+            }
+            return damaged ? file : null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Records the content digests of installed files, so that an upgrade can skip files whose content hasn't changed.
+ * <p/>
+ * Each file is recorded with its length and last modified time once unpacked. If these still match when the file is
+ * next checked, the file is assumed to be unmodified, and its recorded digest is used rather than digesting the file
+ * again. Files that are modified after unpacking, such as parsed files, must be recorded without a digest.
+ * <p/>
+ * The records are saved with the {@link InstallData#INSTALLATION_INFORMATION installation information}.
+ */
+public class InstalledFiles implements Serializable
+{
+
+    private static final long serialVersionUID = 4384930275712380416L;
+
+    /**
+     * The installed files, keyed on absolute path.
+     */
+    private final Map<String, Entry> files = new HashMap<String, Entry>();
+
+
+    /**
+     * Determines if a file has the specified content.
+     * <p/>
+     * If the file has been recorded and its length and last modified time are unchanged, the recorded digest is
+     * compared. Otherwise, the file is digested.
+     *
+     * @param file   the file
+     * @param length the expected content length
+     * @param digest the expected SHA-1 content digest
+     * @return {@code true} if the file has the specified content
+     * @throws IOException if the file cannot be read
+     */
+    public boolean matches(File file, long length, byte[] digest) throws IOException
+    {
+        if (!file.isFile() || file.length() != length)
+        {
+            return false;
+        }
+        Entry entry = files.get(file.getAbsolutePath());
+        if (entry != null && entry.digest != null && entry.length == length
+                && entry.lastModified == file.lastModified())
+        {
+            return Arrays.equals(entry.digest, digest);
+        }
+        return Arrays.equals(digest(file), digest);
+    }
+
+    /**
+     * Records the content digest of a file.
+     * <p/>
+     * The file's length and last modified time are recorded by {@link #update()}, once the file has been unpacked.
+     *
+     * @param file   the file
+     * @param digest the SHA-1 content digest, or {@code null} if it is unknown
+     */
+    public void add(File file, byte[] digest)
+    {
+        String path = file.getAbsolutePath();
+        if (digest != null)
+        {
+            files.put(path, new Entry(digest));
+        }
+        else
+        {
+            files.remove(path);
+        }
+    }
+
+    /**
+     * Records the length and last modified time of files added since the last update, and removes files that no
+     * longer exist.
+     */
+    public void update()
+    {
+        Iterator<Map.Entry<String, Entry>> iterator = files.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.length == -1)
+            {
+                File file = new File(mapEntry.getKey());
+                if (file.isFile())
+                {
+                    entry.length = file.length();
+                    entry.lastModified = file.lastModified();
+                }
+                else
+                {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the no. of recorded files.
+     *
+     * @return the no. of recorded files
+     */
+    public int size()
+    {
+        return files.size();
+    }
+
+    /**
+     * Digests the content of a file.
+     *
+     * @param file the file
+     * @return the SHA-1 digest of the file
+     * @throws IOException if the file cannot be read
+     */
+    static byte[] digest(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 digest is not supported", exception);
+        }
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            FileUtils.close(in);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * An installed file.
+     */
+    private static class Entry implements Serializable
+    {
+
+        private static final long serialVersionUID = -2307463165813467396L;
+
+        /**
+         * The SHA-1 content digest.
+         */
+        private final byte[] digest;
+
+        /**
+         * The file length, or {@code -1} if it hasn't been recorded yet.
+         */
+        private long length = -1;
+
+        /**
+         * The file last modified time.
+         */
+        private long lastModified;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param digest the SHA-1 content digest
+         */
+        public Entry(byte[] digest)
+        {
+            this.digest = digest;
+        }
+    }
+}
@@ -105,9 +105,14 @@ public class LooseFileUnpacker extends FileUnpacker
             InputStream stream = new FileInputStream(resolvedFile);
             // may have a different length & last modified than we had at compile time, therefore we have to
             // build a new PackFile for the copy process...
+            boolean executable = file.isExecutable();
             file = new PackFile(resolvedFile.getParentFile(), resolvedFile, file.getTargetPath(),
                                 file.osConstraints(), file.override(), file.overrideRenameTo(),
                                 file.blockable(), file.getAdditionals());
+            if (executable)
+            {
+                file.setExecutable(true);
+            }
 
             copy(file, stream, target);
         }
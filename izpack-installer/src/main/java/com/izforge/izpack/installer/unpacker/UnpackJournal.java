@@ -0,0 +1,328 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * A journal of the files written by an installation, so that an interrupted installation can be resumed.
+ * <p/>
+ * Files are added once they have been written, and committed to the journal when no earlier write is outstanding.
+ * Each entry records the file's length and last modified time, so that a file that has changed since it was
+ * journaled is unpacked again. Resuming is per file: each pack is read again, and only the files it journaled are
+ * skipped.
+ * <p/>
+ * Committed entries survive the installer exiting. The journal is also synced to disk at each {@link #checkpoint()},
+ * so that entries up to the last checkpoint survive a system crash. A truncated trailing entry is ignored.
+ * <p/>
+ * The journaled files themselves aren't synced, so after a system crash a file may have its journaled length and
+ * last modified time without its content having been written. Callers must verify the content of a file before
+ * skipping it.
+ * <p/>
+ * The journal is deleted once installation completes.
+ */
+public class UnpackJournal
+{
+
+    /**
+     * The journal file name, relative to the installation directory.
+     */
+    public static final String NAME = ".installationjournal";
+
+    /**
+     * The journal file header.
+     */
+    private static final int MAGIC = 0x495A4A31;
+
+    /**
+     * Entry type for a written file.
+     */
+    private static final int FILE = 'F';
+
+    /**
+     * The journal file.
+     */
+    private final File file;
+
+    /**
+     * The identity of the installer that wrote the journal.
+     */
+    private final String installer;
+
+    /**
+     * The files recorded by the journal being resumed, keyed on absolute path. Each value is the length and last
+     * modified time.
+     */
+    private final Map<String, long[]> files = new HashMap<String, long[]>();
+
+    /**
+     * The files written but not yet committed.
+     */
+    private final List<File> pending = new ArrayList<File>();
+
+    /**
+     * The journal file stream, or {@code null} if it isn't open.
+     */
+    private FileOutputStream stream;
+
+    /**
+     * The journal output.
+     */
+    private DataOutputStream out;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(UnpackJournal.class.getName());
+
+
+    /**
+     * Constructs an {@code UnpackJournal}.
+     *
+     * @param installPath the installation directory
+     * @param installer   identifies the installer, so that a journal written by a different installer isn't resumed
+     */
+    public UnpackJournal(File installPath, String installer)
+    {
+        this.file = new File(installPath, NAME);
+        this.installer = installer;
+    }
+
+    /**
+     * Reads the journal of an interrupted installation.
+     *
+     * @return {@code true} if there is a journal written by the same installer that can be resumed
+     */
+    public boolean read()
+    {
+        files.clear();
+        if (!file.isFile())
+        {
+            return false;
+        }
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || !installer.equals(in.readUTF()))
+            {
+                logger.fine("Ignoring journal " + file + " written by a different installer");
+                return false;
+            }
+            int type;
+            while ((type = in.read()) != -1)
+            {
+                if (type == FILE)
+                {
+                    String path = in.readUTF();
+                    long length = in.readLong();
+                    long lastModified = in.readLong();
+                    files.put(path, new long[]{length, lastModified});
+                }
+                else
+                {
+                    logger.warning("Ignoring invalid entries at the end of journal " + file);
+                    break;
+                }
+            }
+        }
+        catch (EOFException exception)
+        {
+            // the last entry was only partially written
+            logger.fine("Journal " + file + " ends with a truncated entry");
+        }
+        catch (IOException exception)
+        {
+            logger.log(Level.WARNING, "Failed to read journal " + file, exception);
+        }
+        finally
+        {
+            FileUtils.close(in);
+        }
+        return !files.isEmpty();
+    }
+
+    /**
+     * Returns the no. of files recorded by the journal being resumed.
+     *
+     * @return the no. of files
+     */
+    public int getFiles()
+    {
+        return files.size();
+    }
+
+    /**
+     * Determines if a file was written by the installation being resumed, and is unchanged since.
+     *
+     * @param target the file
+     * @return {@code true} if the file has its journaled length and last modified time
+     */
+    public boolean isComplete(File target)
+    {
+        long[] entry = files.get(target.getAbsolutePath());
+        return entry != null && target.isFile() && target.length() == entry[0] && target.lastModified() == entry[1];
+    }
+
+    /**
+     * Starts journaling.
+     * <p/>
+     * The files recorded by the journal being resumed, if any, are carried over into the new journal.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void open() throws IOException
+    {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        stream = new FileOutputStream(file);
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeUTF(installer);
+        for (Map.Entry<String, long[]> entry : files.entrySet())
+        {
+            writeFile(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        sync();
+    }
+
+    /**
+     * Adds a file that has been written.
+     * <p/>
+     * The file is journaled by the next {@link #commit()}.
+     *
+     * @param target the file
+     */
+    public void add(File target)
+    {
+        if (out != null)
+        {
+            pending.add(target);
+        }
+    }
+
+    /**
+     * Journals the files added since the last commit.
+     * <p/>
+     * This must only be invoked once the added files have been completely written.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void commit() throws IOException
+    {
+        if (out != null && !pending.isEmpty())
+        {
+            for (File target : pending)
+            {
+                writeFile(target.getAbsolutePath(), target.length(), target.lastModified());
+            }
+            pending.clear();
+            out.flush();
+        }
+    }
+
+    /**
+     * Journals the files added since the last commit, and syncs the journal to disk.
+     * <p/>
+     * This must only be invoked once the added files have been completely written.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void checkpoint() throws IOException
+    {
+        if (out != null)
+        {
+            commit();
+            sync();
+        }
+    }
+
+    /**
+     * Closes the journal, leaving it in place so that the installation can be resumed.
+     */
+    public void close()
+    {
+        if (out != null)
+        {
+            FileUtils.close(out);
+            out = null;
+            stream = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal, once installation is complete.
+     */
+    public void delete()
+    {
+        close();
+        if (file.exists() && !file.delete())
+        {
+            logger.warning("Failed to delete journal " + file);
+        }
+    }
+
+    /**
+     * Writes a file entry.
+     *
+     * @param path         the absolute path of the file
+     * @param length       the file length
+     * @param lastModified the file last modified time
+     * @throws IOException for any I/O error
+     */
+    private void writeFile(String path, long length, long lastModified) throws IOException
+    {
+        out.write(FILE);
+        out.writeUTF(path);
+        out.writeLong(length);
+        out.writeLong(lastModified);
+    }
+
+    /**
+     * Flushes the journal and syncs it to disk.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void sync() throws IOException
+    {
+        out.flush();
+        stream.getFD().sync();
+    }
+}
@@ -36,24 +36,32 @@ import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.Pack200;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.OverrideType;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileReader;
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.api.event.InstallerListener;
 import com.izforge.izpack.api.event.ProgressListener;
 import com.izforge.izpack.api.exception.InstallerException;
 import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.exception.ResourceInterruptedException;
+import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.handler.Prompt;
 import com.izforge.izpack.api.resource.Messages;
 import com.izforge.izpack.api.rules.RulesEngine;
@@ -61,6 +69,7 @@ import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.handler.ProgressHandler;
 import com.izforge.izpack.core.handler.PromptUIHandler;
 import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackManifest;
 import com.izforge.izpack.data.ParsableFile;
 import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.installer.data.UninstallData;
@@ -86,6 +95,34 @@ import com.izforge.izpack.util.os.FileQueue;
 public abstract class UnpackerBase implements IUnpacker
 {
 
+    /**
+     * The variable specifying the no. of threads used to write unpacked files. If unset or {@code 1}, files are
+     * written by the unpacker thread. If less than {@code 1}, the no. of available processors is used.
+     */
+    public static final String UNPACK_THREADS = "izpack.unpack.threads";
+
+    /**
+     * The variable that, if {@code true}, skips writing files whose content matches that already installed. This
+     * avoids rewriting unchanged files when upgrading an existing installation.
+     */
+    public static final String SKIP_UNCHANGED = "izpack.unpack.skipUnchanged";
+
+    /**
+     * The variable that, if {@code true}, repairs an existing installation. It is set by the {@code -repair}
+     * installer argument. Installed files are verified against the pack manifest, and only those that are missing or
+     * modified are unpacked. Files that aren't always overwritten are only unpacked if missing, so that user edits are
+     * preserved. Only the files unpacked again are parsed and executed.
+     */
+    public static final String REPAIR = "izpack.unpack.repair";
+
+    /**
+     * The variable that determines if an interrupted installation is resumed. It is set by the {@code -resume} and
+     * {@code -noresume} installer arguments. If unset, interactive installations ask the user. Unattended
+     * installations, i.e. automated installations and console installations driven by an options file or system
+     * properties, resume by default.
+     */
+    public static final String RESUME = "izpack.unpack.resume";
+
     /**
      * The installation data.
      */
@@ -179,6 +216,46 @@ public abstract class UnpackerBase implements IUnpacker
      */
     private boolean disableInterrupt = false;
 
+    /**
+     * The pool used to write unpacked files, or {@code null} if files are written by the unpacker thread.
+     */
+    private FileWriterPool writers;
+
+    /**
+     * The content digests of installed files.
+     */
+    private InstalledFiles installedFiles;
+
+    /**
+     * The names of the packs installed by a previous installation, or {@code null} if there is none.
+     */
+    private Set<String> installedPacks;
+
+    /**
+     * Determines if files whose content matches that already installed are skipped.
+     */
+    private boolean skipUnchanged;
+
+    /**
+     * The files found to be missing or modified when repairing, or {@code null} if not repairing.
+     */
+    private Set<File> damaged;
+
+    /**
+     * The files unpacked again when repairing, or {@code null} if not repairing.
+     */
+    private Set<File> repaired;
+
+    /**
+     * The pack manifest, or {@code null} if not repairing.
+     */
+    private PackManifest manifest;
+
+    /**
+     * The journal of written files, or {@code null} if there is none.
+     */
+    private UnpackJournal journal;
+
     /**
      * The logger.
      */
@@ -396,18 +473,171 @@ public abstract class UnpackerBase implements IUnpacker
     protected void unpack(List<Pack> packs, FileQueue queue, List<ParsableFile> parsables,
                           List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
     {
-        int count = packs.size();
-        for (int i = 0; i < count; i++)
+        readInstallationInformation();
+        checkPatch(packs);
+        skipUnchanged = installData.getVariables().getBoolean(SKIP_UNCHANGED, false);
+        damaged = installData.getVariables().getBoolean(REPAIR, false) ? verify(packs) : null;
+        repaired = (damaged != null) ? new HashSet<File>() : null;
+        journal = openJournal();
+        int threads = getUnpackThreads();
+        if (threads > 1)
+        {
+            logger.fine("Writing unpacked files using " + threads + " threads");
+            writers = new FileWriterPool(threads, listeners);
+        }
+        try
+        {
+            int count = packs.size();
+            for (int i = 0; i < count; i++)
+            {
+                Pack pack = packs.get(i);
+                if (shouldUnpack(pack))
+                {
+                    listeners.beforePack(pack, i, listener);
+                    if (damaged == null || !repair(pack, i, queue, parsables, executables, updateChecks))
+                    {
+                        unpack(pack, i, queue, parsables, executables, updateChecks);
+                    }
+                    checkInterrupt();
+                    listeners.afterPack(pack, i, listener);
+                }
+            }
+        }
+        finally
+        {
+            if (writers != null)
+            {
+                writers.shutdown();
+                writers = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the journal of written files, so that the installation can be resumed if it is interrupted.
+     * <p/>
+     * If an earlier installation by this installer was interrupted, it is resumed if {@link #RESUME} is set, or
+     * the user agrees.
+     *
+     * @return the journal, or {@code null} if it cannot be created
+     */
+    protected UnpackJournal openJournal()
+    {
+        String installPath = installData.getInstallPath();
+        if (installPath == null)
+        {
+            return null;
+        }
+        File dir = new File(installPath);
+        Info info = installData.getInfo();
+        String installer = info.getAppName() + " " + info.getAppVersion();
+        UnpackJournal result = new UnpackJournal(dir, installer);
+        if (result.read())
+        {
+            if (isResume())
+            {
+                logger.info("Resuming interrupted installation. " + result.getFiles()
+                                    + " files were already unpacked");
+            }
+            else
+            {
+                result = new UnpackJournal(dir, installer);
+            }
+        }
+        try
+        {
+            result.open();
+        }
+        catch (IOException exception)
+        {
+            logger.log(Level.WARNING, "Failed to create installation journal. The installation cannot be resumed "
+                    + "if it is interrupted", exception);
+            result.close();
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Determines if an interrupted installation should be resumed.
+     *
+     * @return the value of {@link #RESUME} if set, otherwise the user's choice
+     */
+    protected boolean isResume()
+    {
+        String value = installData.getVariable(RESUME);
+        if (value != null)
+        {
+            return Boolean.valueOf(value);
+        }
+        Messages messages = installData.getMessages();
+        Option answer = prompt.confirm(Type.QUESTION, messages.get("InstallPanel.resume.title"),
+                                       messages.get("InstallPanel.resume.question"), Options.YES_NO, Option.YES);
+        return answer == Option.YES;
+    }
+
+    /**
+     * Verifies the installed files of the packs to be unpacked against the pack manifest.
+     * <p/>
+     * Files are digested in parallel, using a thread per available processor. Files of loose packs, files that are
+     * parsed or executed after unpacking, and files that aren't always overwritten, are only verified to exist.
+     *
+     * @param packs the packs to unpack
+     * @return the files that are missing or modified
+     * @throws ResourceInterruptedException if installation is cancelled
+     * @throws IzPackException              for any other error
+     */
+    protected Set<File> verify(List<Pack> packs)
+    {
+        try
+        {
+            manifest = PackManifest.read(resources.getInputStream(PackManifest.NAME));
+        }
+        catch (ResourceNotFoundException exception)
+        {
+            throw new InstallerException("Cannot repair the installation: the installer has no pack manifest",
+                                         exception);
+        }
+        catch (IOException exception)
+        {
+            throw new InstallerException("Failed to read the pack manifest", exception);
+        }
+        Variables variables = installData.getVariables();
+        Map<File, byte[]> files = new LinkedHashMap<File, byte[]>();
+        for (Pack pack : packs)
         {
-            Pack pack = packs.get(i);
             if (shouldUnpack(pack))
             {
-                listeners.beforePack(pack, i, listener);
-                unpack(pack, i, queue, parsables, executables, updateChecks);
-                checkInterrupt();
-                listeners.afterPack(pack, i, listener);
+                for (PackFile file : manifest.getPackFiles(pack.getName()))
+                {
+                    if (!file.isDirectory() && shouldUnpack(file))
+                    {
+                        // loose and modified files can only be verified for existence, and files that aren't
+                        // overwritten may have been edited by the user, so are only repaired if missing
+                        String path = file.getTargetPath();
+                        File target = new File(IoHelper.translatePath(path, variables));
+                        boolean exists = pack.isLoose() || manifest.isModified(path)
+                                || file.override() != OverrideType.OVERRIDE_TRUE;
+                        files.put(target, exists ? null : file.getDigest());
+                    }
+                }
             }
         }
+        logger.info("Verifying " + files.size() + " installed files");
+        Set<File> result = new InstallationVerifier(0).verify(files, cancellable);
+        logger.info(result.size() + " files are missing or modified, and will be repaired");
+        return result;
+    }
+
+    /**
+     * Returns the no. of threads to write unpacked files with.
+     *
+     * @return the no. of threads, as specified by the {@link #UNPACK_THREADS} variable
+     */
+    protected int getUnpackThreads()
+    {
+        int threads = installData.getVariables().getInt(UNPACK_THREADS, 1);
+        return (threads < 1) ? Runtime.getRuntime().availableProcessors() : threads;
     }
 
     /**
@@ -430,8 +660,9 @@ public abstract class UnpackerBase implements IUnpacker
         {
             in = resources.getPackStream(pack.getName());
             packInputStream = new ObjectInputStream(in);
+            PackFileReader reader = new PackFileReader(packInputStream);
 
-            int fileCount = packInputStream.readInt();
+            int fileCount = reader.readHeader();
 
             String stepName = getStepName(pack);
             listener.nextStep(stepName, packNo + 1, fileCount);
@@ -439,7 +670,7 @@ public abstract class UnpackerBase implements IUnpacker
             for (int i = 0; i < fileCount; ++i)
             {
                 // read the header
-                PackFile file = (PackFile) packInputStream.readObject();
+                PackFile file = reader.read();
                 if (shouldUnpack(file))
                 {
                     // unpack the file
@@ -451,6 +682,14 @@ public abstract class UnpackerBase implements IUnpacker
                     skip(file, pack, packInputStream);
                 }
             }
+            if (writers != null)
+            {
+                writers.complete();
+            }
+            if (journal != null)
+            {
+                journal.checkpoint();
+            }
             readParsableFiles(packInputStream, parsables);
             readExecutableFiles(packInputStream, executables);
             readUpdateChecks(packInputStream, updateChecks);
@@ -470,6 +709,129 @@ public abstract class UnpackerBase implements IUnpacker
         }
     }
 
+    /**
+     * Repairs the damaged files of a pack, reading only their content from the pack stream.
+     * <p/>
+     * The pack files are read from the pack manifest. The content of each damaged file is read by seeking to its
+     * offset in the pack stream, which skips whole blocks without decompressing them, and the parsable files,
+     * executable files and update checks by seeking to the end of the pack.
+     *
+     * @param pack         the pack to repair
+     * @param packNo       the pack number
+     * @param queue        the file queue, or {@code null} if queuing is not supported
+     * @param parsables    used to collect parsable files in the pack
+     * @param executables  used to collect executable files files in the pack
+     * @param updateChecks used to collect update checks in the pack
+     * @return {@code true} if the pack was repaired, or {@code false} if the pack stream doesn't support random
+     *         access or the manifest doesn't record the offsets of the pack's content, in which case the pack
+     *         must be unpacked
+     * @throws IzPackException for any error
+     */
+    protected boolean repair(Pack pack, int packNo, FileQueue queue, List<ParsableFile> parsables,
+                             List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
+    {
+        String name = pack.getName();
+        long parsablesOffset = manifest.getParsablesOffset(name);
+        if (parsablesOffset == -1)
+        {
+            return false;
+        }
+        Variables variables = installData.getVariables();
+        List<PackFile> files = manifest.getPackFiles(name);
+        List<File> targets = new ArrayList<File>(files.size());
+        for (int i = 0; i < files.size(); ++i)
+        {
+            PackFile file = files.get(i);
+            File target = new File(IoHelper.translatePath(file.getTargetPath(), variables));
+            if (isDamagedContent(file, target, pack) && manifest.getOffset(name, i) == -1)
+            {
+                return false;
+            }
+            targets.add(target);
+        }
+
+        InputStream in = null;
+        ObjectInputStream packInputStream = null;
+        try
+        {
+            in = resources.getPackStream(name);
+            if (!(in instanceof IndexedPackInputStream))
+            {
+                return false;
+            }
+            logger.fine("Repairing pack " + name + " by random access");
+            listener.nextStep(getStepName(pack), packNo + 1, files.size());
+
+            for (int i = 0; i < files.size(); ++i)
+            {
+                PackFile file = files.get(i);
+                if (shouldUnpack(file))
+                {
+                    InputStream fileIn = null;
+                    ObjectInputStream fileStream = null;
+                    try
+                    {
+                        if (isDamagedContent(file, targets.get(i), pack))
+                        {
+                            fileIn = resources.getPackStream(name);
+                            fileStream = new ObjectInputStream(fileIn);
+                            // the stream header has been read (== 4 bytes)
+                            skip(fileIn, manifest.getOffset(name, i) - 4);
+                        }
+                        // intact files are skipped without reading the stream
+                        unpack(file, fileStream, i, pack, queue);
+                    }
+                    finally
+                    {
+                        FileUtils.close(fileStream);
+                        FileUtils.close(fileIn);
+                    }
+                }
+            }
+            if (writers != null)
+            {
+                writers.complete();
+            }
+            if (journal != null)
+            {
+                journal.checkpoint();
+            }
+            packInputStream = new ObjectInputStream(in);
+            skip(in, parsablesOffset - 4);
+            readParsableFiles(packInputStream, parsables);
+            readExecutableFiles(packInputStream, executables);
+            readUpdateChecks(packInputStream, updateChecks);
+        }
+        catch (IzPackException exception)
+        {
+            throw exception;
+        }
+        catch (Exception exception)
+        {
+            throw new InstallerException("Failed to repair pack: " + name, exception);
+        }
+        finally
+        {
+            FileUtils.close(packInputStream);
+            FileUtils.close(in);
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a pack file is damaged, and its content is stored in its pack stream.
+     *
+     * @param file   the pack file
+     * @param target the target file
+     * @param pack   the pack that the pack file comes from
+     * @return {@code true} if the content must be read from the pack stream to repair the file
+     */
+    private boolean isDamagedContent(PackFile file, File target, Pack pack)
+    {
+        return !pack.isLoose() && !file.isDirectory() && !file.isBackReference() && !file.isRetained()
+                && damaged.contains(target);
+    }
+
     /**
      * Determines if a file should be unpacked.
      *
@@ -494,7 +856,8 @@ public abstract class UnpackerBase implements IUnpacker
      * Unpacks a pack file.
      *
      * @param file            the pack file
-     * @param packInputStream the pack file input stream
+     * @param packInputStream the pack file input stream. When repairing, this is {@code null} unless the file is
+     *                        damaged and its content is stored in the pack
      * @param fileNo          the pack file number
      * @param pack            the pack that the pack file comes from
      * @param queue           the file queue, or {@code null} if queuing is not supported
@@ -529,32 +892,99 @@ public abstract class UnpackerBase implements IUnpacker
             return;
         }
 
+        if (writers != null)
+        {
+            // the target may still be being written from an earlier pack file
+            writers.await(target);
+        }
+
         listeners.beforeFile(target, file, pack);
 
         listener.progress(fileNo, path);
 
-        // if this file exists and should not be overwritten, check what to do
-        if (target.exists() && (file.override() != OverrideType.OVERRIDE_TRUE) && !isOverwriteFile(file, target))
+        if (file.isRetained())
         {
-            if (!file.isBackReference() && !pack.isLoose())
+            // the patch installer doesn't contain the file, so the installed file must be that expected
+            if (installedFiles == null || !installedFiles.matches(target, file.length(), file.getDigest()))
             {
-                if (file.isPack200Jar())
-                {
-                    skip(packInputStream, Integer.SIZE / 8);
-                }
-                else
-                {
-                    skip(packInputStream, file.length());
-                }
+                throw new InstallerException("Cannot patch " + path
+                                                     + ": the installed file is missing or has been modified");
             }
+            installedFiles.add(target, file.getDigest());
+        }
+        else if (journal != null && journal.isComplete(target) && isResumable(file, target, pack))
+        {
+            // written by the interrupted installation being resumed
+            skip(file, pack, packInputStream);
+            installedFiles.add(target, file.getDigest());
+        }
+        else if (damaged != null && !damaged.contains(target))
+        {
+            // repairing, and the installed file is intact
+            skip(file, pack, packInputStream);
+            installedFiles.add(target, pack.isLoose() ? null : file.getDigest());
+        }
+        else if (isUnchanged(file, target, pack))
+        {
+            // the target already has the content, so don't rewrite it
+            skip(file, pack, packInputStream);
+            installedFiles.add(target, file.getDigest());
+        }
+        // if this file exists and should not be overwritten, check what to do
+        else if (target.exists() && (file.override() != OverrideType.OVERRIDE_TRUE)
+                && !isOverwriteFile(file, target))
+        {
+            skip(file, pack, packInputStream);
         }
         else
         {
             handleOverrideRename(file, target);
             extract(file, target, packInputStream, pack, queue);
+            if (installedFiles != null)
+            {
+                installedFiles.add(target, pack.isLoose() ? null : file.getDigest());
+            }
+            if (repaired != null)
+            {
+                repaired.add(target);
+            }
         }
     }
 
+    /**
+     * Determines if a pack file written by the interrupted installation being resumed can be skipped.
+     * <p/>
+     * The journal doesn't sync the files it records, so after a system crash a journaled file may have its recorded
+     * length and last modified time but not its content. The file is only skipped if its content matches the digest
+     * of the pack file.
+     *
+     * @param file   the pack file
+     * @param target the target file
+     * @param pack   the pack that the pack file comes from
+     * @return {@code true} if the target content matches that of the pack file
+     * @throws IOException if the target cannot be read
+     */
+    protected boolean isResumable(PackFile file, File target, Pack pack) throws IOException
+    {
+        return !pack.isLoose() && file.getDigest() != null && target.length() == file.length()
+                && Arrays.equals(file.getDigest(), InstalledFiles.digest(target));
+    }
+
+    /**
+     * Determines if a pack file can be skipped as the target already has its content.
+     *
+     * @param file   the pack file
+     * @param target the target file
+     * @param pack   the pack that the pack file comes from
+     * @return {@code true} if {@link #SKIP_UNCHANGED} is set, and the target content matches that of the pack file
+     * @throws IOException if the target cannot be read
+     */
+    protected boolean isUnchanged(PackFile file, File target, Pack pack) throws IOException
+    {
+        return skipUnchanged && installedFiles != null && !pack.isLoose() && file.getDigest() != null
+                && installedFiles.matches(target, file.length(), file.getDigest());
+    }
+
     /**
      * Extracts a pack file.
      *
@@ -587,12 +1017,35 @@ public abstract class UnpackerBase implements IUnpacker
             }
 
             unpacker = createFileUnpacker(file, pack, queue, cancellable);
-            unpacker.unpack(file, packStream, target);
-            checkInterrupt();
-
-            if (!unpacker.isQueued())
+            if (writers != null && packStream == packInputStream && writers.canWrite(file, unpacker, queue))
             {
-                listeners.afterFile(target, file, pack);
+                // the pool notifies listeners once the file is written. It is journaled at the next commit that
+                // follows completion of the pool's writes
+                writers.write(file, packStream, target, pack, unpacker);
+                if (journal != null)
+                {
+                    journal.add(target);
+                }
+            }
+            else
+            {
+                unpacker.unpack(file, packStream, target);
+                checkInterrupt();
+
+                if (writers != null)
+                {
+                    // notify listeners of earlier files first
+                    writers.complete();
+                }
+                if (!unpacker.isQueued())
+                {
+                    listeners.afterFile(target, file, pack);
+                    if (journal != null)
+                    {
+                        journal.add(target);
+                        journal.commit();
+                    }
+                }
             }
         }
         finally
@@ -610,7 +1063,8 @@ public abstract class UnpackerBase implements IUnpacker
      *
      * @param file            the pack file
      * @param pack            the pack
-     * @param packInputStream the pack stream
+     * @param packInputStream the pack stream, or {@code null} if the pack is being repaired and the stream isn't
+     *                        positioned at the file's content
      * @throws IOException if the file cannot be skipped
      */
     protected void skip(PackFile file, Pack pack, ObjectInputStream packInputStream) throws IOException
@@ -620,9 +1074,10 @@ public abstract class UnpackerBase implements IUnpacker
             logger.fine("Skip " + file.getTargetPath());
         }
 
-        if (!pack.isLoose() && !file.isBackReference())
+        if (packInputStream != null && !pack.isLoose() && !file.isBackReference() && !file.isRetained())
         {
-            skip(packInputStream, file.length());
+            // pack200 jars and deltas are stored separately. The pack stream only contains their identifier
+            skip(packInputStream, (file.isPack200Jar() || file.isDelta()) ? Integer.SIZE / 8 : file.length());
         }
     }
 
@@ -649,6 +1104,10 @@ public abstract class UnpackerBase implements IUnpacker
         {
             unpacker = new Pack200FileUnpacker(cancellable, resources, getPack200Unpacker(), queue);
         }
+        else if (file.isDelta())
+        {
+            unpacker = new DeltaFileUnpacker(cancellable, resources, getPatchFallback(), queue);
+        }
         else
         {
             unpacker = new DefaultFileUnpacker(cancellable, queue);
@@ -680,6 +1139,23 @@ public abstract class UnpackerBase implements IUnpacker
         }
         checkInterrupt();
 
+        if (installedFiles != null)
+        {
+            // record the unpacked files before parsing and execution modify them. A parsed file no longer has the
+            // content of its pack file, so its digest is discarded
+            installedFiles.update();
+            for (ParsableFile file : parsables)
+            {
+                installedFiles.add(new File(file.getPath()), null);
+            }
+        }
+
+        if (repaired != null)
+        {
+            // only parse and execute the files that were repaired, so that intact files aren't processed again
+            retainRepaired(parsables, executables);
+        }
+
         parseFiles(parsables);
         checkInterrupt();
 
@@ -696,15 +1172,54 @@ public abstract class UnpackerBase implements IUnpacker
         // write installation information
         writeInstallationInformation();
 
+        // the installation no longer needs to be resumed
+        if (journal != null)
+        {
+            journal.delete();
+            journal = null;
+        }
+
         // unpacking complete
         listener.stopAction();
     }
 
+    /**
+     * Removes the parsable and executable files that weren't unpacked again when repairing.
+     *
+     * @param parsables   the parsable files
+     * @param executables the executable files
+     */
+    private void retainRepaired(List<ParsableFile> parsables, List<ExecutableFile> executables)
+    {
+        Iterator<ParsableFile> parsableIterator = parsables.iterator();
+        while (parsableIterator.hasNext())
+        {
+            if (!repaired.contains(new File(parsableIterator.next().getPath())))
+            {
+                parsableIterator.remove();
+            }
+        }
+        Iterator<ExecutableFile> executableIterator = executables.iterator();
+        while (executableIterator.hasNext())
+        {
+            if (!repaired.contains(new File(executableIterator.next().path)))
+            {
+                executableIterator.remove();
+            }
+        }
+    }
+
     /**
      * Invoked after unpacking has completed, in order to clean up.
      */
     protected void cleanup()
     {
+        if (journal != null)
+        {
+            // leave the journal in place, so that the installation can be resumed
+            journal.close();
+            journal = null;
+        }
         state = State.READY;
     }
 
@@ -1143,11 +1658,95 @@ public abstract class UnpackerBase implements IUnpacker
         }
         */
         oout.writeObject(installData.getVariables().getProperties());
+        InstalledFiles files = (installedFiles != null) ? installedFiles : new InstalledFiles();
+        files.update();
+        oout.writeObject(files);
         logger.fine("Writing installation information finished");
         FileUtils.close(oout);
         FileUtils.close(fout);
     }
 
+    /**
+     * Verifies that a patch installer is only used to update an installation of the packs it patches.
+     *
+     * @param packs the packs to unpack
+     * @throws InstallerException if a pack is patched, but wasn't installed by a previous installation
+     */
+    protected void checkPatch(List<Pack> packs)
+    {
+        Set<String> patched = installData.getInfo().getPatchedPacks();
+        for (Pack pack : packs)
+        {
+            if (patched.contains(pack.getName())
+                    && (installedPacks == null || !installedPacks.contains(pack.getName())))
+            {
+                throw new InstallerException("Pack " + pack.getName() + " can only be installed as an update to a "
+                                                     + "previous installation of it");
+            }
+        }
+    }
+
+    /**
+     * Reads the installed packs and the content digests of installed files from the installation information of a
+     * previous installation.
+     * <p/>
+     * If there is no previous installation, no packs are recorded as installed. If the previous installation didn't
+     * record installed files, no files are recorded.
+     */
+    @SuppressWarnings("unchecked")
+    protected void readInstallationInformation()
+    {
+        installedPacks = null;
+        installedFiles = null;
+        String installPath = installData.getInstallPath();
+        File file = (installPath != null) ? new File(installPath, InstallData.INSTALLATION_INFORMATION) : null;
+        if (file != null && file.exists())
+        {
+            FileInputStream in = null;
+            ObjectInputStream objectIn = null;
+            try
+            {
+                in = new FileInputStream(file);
+                objectIn = new ObjectInputStream(in);
+                installedPacks = new HashSet<String>();
+                for (Pack pack : (List<Pack>) objectIn.readObject())
+                {
+                    installedPacks.add(pack.getName());
+                }
+                objectIn.readObject(); // the variables
+                installedFiles = (InstalledFiles) objectIn.readObject();
+                logger.fine("Read content digests of " + installedFiles.size() + " installed files");
+            }
+            catch (Exception exception)
+            {
+                // installation information written by earlier versions doesn't record installed files
+                logger.log(Level.FINE, "Failed to read installed files from " + file, exception);
+            }
+            finally
+            {
+                FileUtils.close(objectIn);
+                FileUtils.close(in);
+            }
+        }
+        if (installedFiles == null)
+        {
+            installedFiles = new InstalledFiles();
+        }
+    }
+
+    /**
+     * Returns the patch fallback jar, which holds the whole content of the files delta encoded by a patch installer.
+     *
+     * @return the fallback jar, in the same directory as the installer, or {@code null} if the installer has none
+     * @throws IOException        for any I/O error
+     * @throws InstallerException if the installer location cannot be determined
+     */
+    protected File getPatchFallback() throws IOException, InstallerException
+    {
+        String name = installData.getInfo().getPatchFallback();
+        return (name != null) ? new File(getAbsoluteInstallSource(), name) : null;
+    }
+
     protected File getAbsoluteInstallSource() throws IOException, InstallerException
     {
         if (absoluteInstallSource == null)
@@ -0,0 +1,685 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Downloads files over HTTP in parallel segments, using range requests.
+ * <p/>
+ * Each segment is downloaded to its own part file. If a connection drops, the segment is resumed from where it
+ * left off. Part files are retained if the download fails, so that a later download of the same file only fetches
+ * what is missing. A state file next to the target records the remote length and validators, so that partial
+ * downloads are discarded if the remote file changes.
+ * <p/>
+ * Segment streams are always read to the end and closed, so that connections are returned to the
+ * {@code HttpURLConnection} keep-alive cache and reused by subsequent requests to the same server.
+ * <p/>
+ * Servers that don't support range requests, and non-HTTP URLs, are downloaded with a single request.
+ */
+public class SegmentedDownloader
+{
+
+    /**
+     * The default no. of segments.
+     */
+    public static final int DEFAULT_SEGMENTS = 4;
+
+    /**
+     * The default minimum segment size. Files smaller than twice this are downloaded with a single request.
+     */
+    public static final long DEFAULT_MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * The no. of times a segment is resumed after a failure, before giving up.
+     */
+    private static final int RETRIES = 3;
+
+    /**
+     * The connect and read timeout, in milliseconds.
+     */
+    private static final int TIMEOUT = 30000;
+
+    /**
+     * The download buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The part file suffix.
+     */
+    private static final String PART = ".part";
+
+    /**
+     * The state file suffix.
+     */
+    private static final String STATE = ".state";
+
+    /**
+     * The maximum no. of segments.
+     */
+    private final int segments;
+
+    /**
+     * The minimum segment size.
+     */
+    private final long minSegmentSize;
+
+    /**
+     * The locks for files being downloaded, keyed on path. These prevent concurrent downloads of the same file.
+     */
+    private static final Map<String, Lock> locks = new HashMap<String, Lock>();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(SegmentedDownloader.class.getName());
+
+
+    /**
+     * Constructs a {@code SegmentedDownloader} with the default no. and minimum size of segments.
+     */
+    public SegmentedDownloader()
+    {
+        this(DEFAULT_SEGMENTS, DEFAULT_MIN_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a {@code SegmentedDownloader}.
+     *
+     * @param segments       the maximum no. of segments to download in parallel
+     * @param minSegmentSize the minimum segment size, in bytes
+     */
+    public SegmentedDownloader(int segments, long minSegmentSize)
+    {
+        this.segments = segments;
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    /**
+     * Downloads a file.
+     * <p/>
+     * If the file has already been downloaded and the remote file hasn't changed, it is not downloaded again.
+     *
+     * @param url  the URL to download
+     * @param file the file to download to
+     * @throws InterruptedIOException if the download is interrupted
+     * @throws IOException            if the file cannot be downloaded, or is not the expected size
+     */
+    public void download(URL url, File file) throws IOException
+    {
+        Lock lock = getLock(file);
+        try
+        {
+            lock.lockInterruptibly();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("Interrupted waiting to download " + url);
+        }
+        try
+        {
+            Remote remote = probe(url);
+            List<Segment> list = plan(file, remote);
+            File stateFile = new File(file.getPath() + STATE);
+            String state = remote.getState(list.size());
+            if (!state.equals(readState(stateFile)))
+            {
+                // never downloaded, or the remote file has changed since
+                deleteParts(file);
+                file.delete();
+                writeState(stateFile, state);
+            }
+            else if (file.exists() && file.length() == remote.length)
+            {
+                return;
+            }
+            download(url, remote, list);
+            join(file, list);
+            if (remote.length >= 0 && file.length() != remote.length)
+            {
+                file.delete();
+                throw new IOException("Downloaded " + file.length() + " bytes from " + url + ", expected "
+                                              + remote.length);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Determines the length of a remote file, whether it supports range requests, and its validators.
+     *
+     * @param url the URL
+     * @return the remote file details
+     * @throws IOException if the remote file cannot be accessed
+     */
+    private Remote probe(URL url) throws IOException
+    {
+        Remote remote = new Remote();
+        URLConnection connection = url.openConnection();
+        if (connection instanceof HttpURLConnection)
+        {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            http.setConnectTimeout(TIMEOUT);
+            http.setReadTimeout(TIMEOUT);
+            http.setRequestMethod("HEAD");
+            int code = http.getResponseCode();
+            if (code >= HttpURLConnection.HTTP_BAD_REQUEST && code != HttpURLConnection.HTTP_BAD_METHOD)
+            {
+                throw new IOException("Server returned HTTP response code " + code + " for " + url);
+            }
+            if (code == HttpURLConnection.HTTP_OK)
+            {
+                remote.length = getLength(http);
+                remote.ranges = "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges"));
+                remote.etag = http.getHeaderField("ETag");
+                remote.lastModified = http.getHeaderField("Last-Modified");
+                FileUtils.close(http.getInputStream());
+            }
+        }
+        return remote;
+    }
+
+    /**
+     * Divides a file into segments.
+     *
+     * @param file   the file to download to
+     * @param remote the remote file details
+     * @return the segments
+     */
+    private List<Segment> plan(File file, Remote remote)
+    {
+        List<Segment> result = new ArrayList<Segment>();
+        int count = 1;
+        if (remote.ranges && remote.length > 0)
+        {
+            count = (int) Math.max(1, Math.min(segments, remote.length / minSegmentSize));
+        }
+        if (count == 1)
+        {
+            result.add(new Segment(new File(file.getPath() + PART + 0), 0, remote.length, true));
+        }
+        else
+        {
+            long size = remote.length / count;
+            for (int i = 0; i < count; ++i)
+            {
+                long start = i * size;
+                long length = (i < count - 1) ? size : remote.length - start;
+                result.add(new Segment(new File(file.getPath() + PART + i), start, length, false));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Downloads segments in parallel.
+     *
+     * @param url    the URL to download
+     * @param remote the remote file details
+     * @param list   the segments to download
+     * @throws IOException if a segment cannot be downloaded
+     */
+    private void download(final URL url, final Remote remote, List<Segment> list) throws IOException
+    {
+        if (list.size() == 1)
+        {
+            download(url, remote, list.get(0));
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(list.size(), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack-Download");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (final Segment segment : list)
+        {
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    download(url, remote, segment);
+                    return null;
+                }
+            }));
+        }
+        try
+        {
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("Download of " + url + " interrupted");
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to download " + url, cause);
+        }
+        finally
+        {
+            // stop any segments still running, and wait for them so that they don't write to the parts of a
+            // subsequent download
+            executor.shutdownNow();
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    if (executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS))
+                    {
+                        break;
+                    }
+                }
+                catch (InterruptedException exception)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Downloads a segment, resuming it if the connection fails.
+     *
+     * @param url     the URL to download
+     * @param remote  the remote file details
+     * @param segment the segment to download
+     * @throws IOException if the segment cannot be downloaded
+     */
+    private void download(URL url, Remote remote, Segment segment) throws IOException
+    {
+        IOException failure = null;
+        for (int attempt = 0; attempt <= RETRIES; ++attempt)
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedIOException("Download of " + url + " interrupted");
+            }
+            long offset = segment.part.length();
+            if (!remote.ranges || (segment.length >= 0 && offset > segment.length))
+            {
+                // can't resume, or the part is corrupt
+                segment.part.delete();
+                offset = 0;
+            }
+            if (segment.length >= 0 && offset == segment.length)
+            {
+                return;
+            }
+            try
+            {
+                fetch(url, segment, offset);
+                if (segment.length < 0 || segment.part.length() == segment.length)
+                {
+                    return;
+                }
+                failure = new IOException("Connection to " + url + " closed before the download completed");
+            }
+            catch (InterruptedIOException exception)
+            {
+                throw exception;
+            }
+            catch (IOException exception)
+            {
+                failure = exception;
+            }
+            logger.fine("Resuming download of " + url + " at " + (segment.start + segment.part.length()) + ": "
+                                + failure.getMessage());
+        }
+        throw failure;
+    }
+
+    /**
+     * Fetches the remainder of a segment, appending it to the segment's part file.
+     *
+     * @param url     the URL to download
+     * @param segment the segment
+     * @param offset  the offset into the segment to start at
+     * @throws IOException if the segment cannot be fetched
+     */
+    private void fetch(URL url, Segment segment, long offset) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        boolean range = offset > 0 || !segment.whole;
+        if (range)
+        {
+            String end = (segment.length >= 0) ? Long.toString(segment.start + segment.length - 1) : "";
+            connection.setRequestProperty("Range", "bytes=" + (segment.start + offset) + "-" + end);
+        }
+        InputStream in = connection.getInputStream();
+        OutputStream out = null;
+        try
+        {
+            if (range && ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+            {
+                throw new IOException("Server ignored range request for " + url);
+            }
+            out = new FileOutputStream(segment.part, true);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedIOException("Download of " + url + " interrupted");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            FileUtils.close(in);
+            FileUtils.close(out);
+        }
+    }
+
+    /**
+     * Joins the segment part files into the target file.
+     *
+     * @param file the target file
+     * @param list the segments
+     * @throws IOException if the parts cannot be joined
+     */
+    private void join(File file, List<Segment> list) throws IOException
+    {
+        File first = list.get(0).part;
+        if (list.size() > 1)
+        {
+            FileOutputStream out = new FileOutputStream(first, true);
+            try
+            {
+                FileChannel channel = out.getChannel();
+                for (Segment segment : list.subList(1, list.size()))
+                {
+                    FileInputStream in = new FileInputStream(segment.part);
+                    try
+                    {
+                        FileChannel source = in.getChannel();
+                        long position = 0;
+                        long size = source.size();
+                        while (position < size)
+                        {
+                            position += source.transferTo(position, size - position, channel);
+                        }
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        file.delete();
+        if (!first.renameTo(file))
+        {
+            throw new IOException("Failed to rename " + first + " to " + file);
+        }
+        deleteParts(file);
+    }
+
+    /**
+     * Deletes the part files of a download.
+     *
+     * @param file the target file
+     */
+    private void deleteParts(File file)
+    {
+        File[] parts = file.getAbsoluteFile().getParentFile().listFiles();
+        if (parts != null)
+        {
+            String prefix = file.getName() + PART;
+            for (File part : parts)
+            {
+                if (part.getName().startsWith(prefix))
+                {
+                    part.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of a remote file, from its Content-Length header.
+     *
+     * @param connection the connection
+     * @return the length, or {@code -1} if it is not known
+     */
+    private long getLength(URLConnection connection)
+    {
+        String value = connection.getHeaderField("Content-Length");
+        long result = -1;
+        if (value != null)
+        {
+            try
+            {
+                result = Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException ignore)
+            {
+                // length not known
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the state of a previous download.
+     *
+     * @param file the state file
+     * @return the state, or {@code null} if there is none
+     */
+    private String readState(File file)
+    {
+        String result = null;
+        if (file.exists())
+        {
+            Reader reader = null;
+            try
+            {
+                reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                result = FileUtils.readFully(reader);
+            }
+            catch (IOException ignore)
+            {
+                // treat as no previous download
+            }
+            finally
+            {
+                FileUtils.close(reader);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the state of a download.
+     *
+     * @param file  the state file
+     * @param state the state
+     * @throws IOException if the state cannot be written
+     */
+    private void writeState(File file, String state) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(state.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the lock for a file.
+     *
+     * @param file the file
+     * @return the lock
+     */
+    private static Lock getLock(File file)
+    {
+        String key = file.getAbsolutePath();
+        synchronized (locks)
+        {
+            Lock lock = locks.get(key);
+            if (lock == null)
+            {
+                lock = new ReentrantLock();
+                locks.put(key, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * The details of a remote file.
+     */
+    private static class Remote
+    {
+        /**
+         * The length, or {@code -1} if it is not known.
+         */
+        long length = -1;
+
+        /**
+         * Determines if the server supports range requests.
+         */
+        boolean ranges;
+
+        /**
+         * The entity tag. May be {@code null}.
+         */
+        String etag;
+
+        /**
+         * The last modification date. May be {@code null}.
+         */
+        String lastModified;
+
+        /**
+         * Returns the state to record for a download of this file.
+         *
+         * @param segments the no. of segments
+         * @return the state
+         */
+        String getState(int segments)
+        {
+            return length + "\n" + ranges + "\n" + etag + "\n" + lastModified + "\n" + segments;
+        }
+    }
+
+    /**
+     * A segment of a file.
+     */
+    private static class Segment
+    {
+        /**
+         * The file that the segment is downloaded to.
+         */
+        final File part;
+
+        /**
+         * The offset of the segment in the file.
+         */
+        final long start;
+
+        /**
+         * The segment length, or {@code -1} if it is not known.
+         */
+        final long length;
+
+        /**
+         * Determines if the segment covers the whole file.
+         */
+        final boolean whole;
+
+        /**
+         * Constructs a {@code Segment}.
+         *
+         * @param part   the file to download to
+         * @param start  the offset of the segment in the file
+         * @param length the segment length, or {@code -1} if it is not known
+         * @param whole  determines if the segment covers the whole file
+         */
+        Segment(File part, long start, long length, boolean whole)
+        {
+            this.part = part;
+            this.start = start;
+            this.length = length;
+            this.whole = whole;
+        }
+    }
+}
@@ -127,9 +127,11 @@ public class WebAccessor
                     Thread.sleep(200);
                     retry--;
                 }
-                catch (Exception e)
+                catch (InterruptedException e)
                 {
-                    System.out.println("In openInputStream: " + e);
+                    // give up, preserving the interrupt for the caller
+                    Thread.currentThread().interrupt();
+                    break OPEN_URL;
                 }
             }
 
@@ -0,0 +1,292 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.util.CleanupClient;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Downloads web-based packs in the background, while the user is still working through the installer panels.
+ * <p/>
+ * Each time the pack selection changes, downloads are started for newly selected packs and cancelled for packs
+ * that are no longer selected. Several packs are downloaded at a time, and a pack can be unpacked as soon as it has
+ * been downloaded, while later packs are still downloading.
+ * <p/>
+ * Downloads are quiet; no progress dialog is displayed.
+ */
+public class WebPackPrefetcher implements CleanupClient
+{
+
+    /**
+     * The default no. of concurrent downloads.
+     */
+    public static final int DEFAULT_THREADS = 3;
+
+    /**
+     * The web directory URL. May be {@code null}.
+     */
+    private final String webDirURL;
+
+    /**
+     * The installer base name.
+     */
+    private final String baseName;
+
+    /**
+     * The no. of concurrent downloads.
+     */
+    private final int threads;
+
+    /**
+     * The downloads, keyed on pack name. Each completes with the URL of the downloaded pack jar.
+     */
+    private final Map<String, Future<String>> downloads = new LinkedHashMap<String, Future<String>>();
+
+    /**
+     * The downloader.
+     */
+    private final SegmentedDownloader downloader = new SegmentedDownloader();
+
+    /**
+     * The executor. Created on first use.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The directory that packs are downloaded to. Created on first use.
+     */
+    private File directory;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(WebPackPrefetcher.class.getName());
+
+
+    /**
+     * Constructs a {@code WebPackPrefetcher}.
+     *
+     * @param installData the installation data
+     * @param housekeeper the house-keeper, used to remove downloaded packs on exit
+     */
+    public WebPackPrefetcher(InstallData installData, Housekeeper housekeeper)
+    {
+        this(installData.getInfo().getWebDirURL(), installData.getInfo().getInstallerBase(), DEFAULT_THREADS);
+        housekeeper.registerForCleanup(this);
+    }
+
+    /**
+     * Constructs a {@code WebPackPrefetcher}.
+     *
+     * @param webDirURL the web directory URL. If {@code null}, there are no web-based packs
+     * @param baseName  the installer base name
+     * @param threads   the no. of concurrent downloads
+     */
+    public WebPackPrefetcher(String webDirURL, String baseName, int threads)
+    {
+        this.webDirURL = webDirURL;
+        this.baseName = baseName;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts downloading the selected packs.
+     * <p/>
+     * Downloads of packs that are no longer selected are cancelled. Packs that have already been downloaded are
+     * retained, in case they are selected again, and partial downloads are resumed if they are.
+     *
+     * @param packs the selected packs
+     */
+    public synchronized void prefetch(Collection<Pack> packs)
+    {
+        if (webDirURL == null)
+        {
+            return;
+        }
+        Set<String> selected = new HashSet<String>();
+        for (Pack pack : packs)
+        {
+            selected.add(pack.getName());
+        }
+        Iterator<Map.Entry<String, Future<String>>> iterator = downloads.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<String, Future<String>> entry = iterator.next();
+            if (!selected.contains(entry.getKey()) && !entry.getValue().isDone())
+            {
+                entry.getValue().cancel(true);
+                iterator.remove();
+            }
+        }
+        for (final String name : selected)
+        {
+            if (!downloads.containsKey(name))
+            {
+                downloads.put(name, getExecutor().submit(new Callable<String>()
+                {
+                    public String call() throws Exception
+                    {
+                        return download(name);
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Returns the URL of a downloaded pack jar, waiting for the download to complete if necessary.
+     *
+     * @param name the pack name
+     * @return the URL of the pack jar, or {@code null} if the pack wasn't prefetched or couldn't be downloaded
+     * @throws InterruptedIOException if interrupted while waiting for the download
+     */
+    public String getPack(String name) throws InterruptedIOException
+    {
+        Future<String> download;
+        synchronized (this)
+        {
+            download = downloads.get(name);
+        }
+        String result = null;
+        if (download != null)
+        {
+            try
+            {
+                result = download.get();
+            }
+            catch (InterruptedException exception)
+            {
+                throw new InterruptedIOException("Interrupted waiting for pack " + name);
+            }
+            catch (CancellationException exception)
+            {
+                // pack was deselected
+            }
+            catch (ExecutionException exception)
+            {
+                logger.log(Level.WARNING, "Failed to prefetch pack " + name, exception.getCause());
+                synchronized (this)
+                {
+                    downloads.remove(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cancels any outstanding downloads, and removes downloaded packs.
+     */
+    @Override
+    public synchronized void cleanUp()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+        downloads.clear();
+        if (directory != null)
+        {
+            FileUtils.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Downloads a pack jar.
+     *
+     * @param name the pack name
+     * @return the URL of the downloaded jar
+     * @throws IOException if the pack cannot be downloaded, or the download is cancelled
+     */
+    protected String download(String name) throws IOException
+    {
+        // See compiler.Packager#getJarOutputStream for the counterpart
+        String jar = baseName + ".pack-" + name + ".jar";
+        File file = new File(getDirectory(), jar);
+        downloader.download(new URL(webDirURL + "/" + jar), file);
+        return "file:///" + file.getAbsolutePath();
+    }
+
+    /**
+     * Returns the executor, creating it if required.
+     *
+     * @return the executor
+     */
+    private synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack-Prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the download directory, creating it if required.
+     *
+     * @return the download directory
+     * @throws IOException if the directory cannot be created
+     */
+    private synchronized File getDirectory() throws IOException
+    {
+        if (directory == null)
+        {
+            File dir = File.createTempFile("IzpackWebTemp", "");
+            if (!dir.delete() || !dir.mkdir())
+            {
+                throw new IOException("Failed to create directory: " + dir);
+            }
+            directory = dir;
+        }
+        return directory;
+    }
+}
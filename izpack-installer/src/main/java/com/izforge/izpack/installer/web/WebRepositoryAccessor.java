@@ -21,15 +21,19 @@
 
 package com.izforge.izpack.installer.web;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.IXMLParser;
@@ -43,6 +47,7 @@ import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.data.ParsableFile;
 import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.util.OsConstraintHelper;
+import com.izforge.izpack.util.file.FileUtils;
 
 /**
  * This class enumerates the availabe packs at the web repository. Parses the config files
@@ -97,9 +102,16 @@ public class WebRepositoryAccessor
     private static final String packsinfoFilename = "packsinfo.xml";
 
     /**
-     * Files being downloaded in the buffer, 1MB max
+     * The download buffer size.
      */
-    private static final int BUFFER_SIZE = 1000000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The downloader used to cache packs.
+     */
+    private static final SegmentedDownloader downloader = new SegmentedDownloader();
+
+    private static final Logger logger = Logger.getLogger(WebRepositoryAccessor.class.getName());
 
 
     /**
@@ -135,8 +147,6 @@ public class WebRepositoryAccessor
      */
     private String stringFromURL(String url)
     {
-        int max = BUFFER_SIZE;
-        byte[] raw = new byte[max];
         InputStream in = null;
         try
         {
@@ -146,14 +156,14 @@ public class WebRepositoryAccessor
             {
                 throw new RuntimeException("Unable to open network stream");
             }
-            int r = in.read(raw);
-            int off = r;
-            while (r > 0)
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] raw = new byte[BUFFER_SIZE];
+            int r;
+            while ((r = in.read(raw)) != -1)
             {
-                r = in.read(raw, off, max - off);
-                off += r;
+                out.write(raw, 0, r);
             }
-            return new String(raw);
+            return out.toString();
         }
         catch (Exception e)
         {
@@ -246,33 +256,78 @@ public class WebRepositoryAccessor
      * downloaded file. This is because the Jar connection's openInputStream
      * will blocks until the whole jar in order to unzip it (there is no way
      * to see the download progress there).
+     * <p/>
+     * The jar is downloaded in parallel segments where the server supports it, and is cached under its own name
+     * so that an interrupted download is resumed by the next call. If the segmented download cannot connect, the
+     * jar is downloaded with a {@link WebAccessor}, which prompts for proxy settings.
      *
      * @param url
      * @return the url
      */
     public static String getCachedUrl(String url, String tempFolder) throws IOException
     {
-        int max = BUFFER_SIZE;
-        byte[] raw = new byte[max];
-        WebAccessor webAccessor = new WebAccessor(null);
-        InputStream in = webAccessor.openInputStream(new URL(url));
-        int r = in.read(raw);
         File tempDir = new File(tempFolder);
 
         tempDir.mkdirs();
 
-        File temp = File.createTempFile("izpacktempfile", "jar", new File(tempFolder));
-        FileOutputStream fos = new FileOutputStream(temp);
-        String path = "file:///" + temp.getAbsolutePath();
-        while (r > 0)
+        URL source = new URL(url);
+        String name = new File(source.getPath()).getName();
+        if (name.length() != 0)
         {
-            fos.write(raw, 0, r);
-            r = in.read(raw);
+            File file = new File(tempDir, name);
+            try
+            {
+                downloader.download(source, file);
+                return "file:///" + file.getAbsolutePath();
+            }
+            catch (InterruptedIOException exception)
+            {
+                throw exception;
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.WARNING, "Segmented download of " + url + " failed, retrying: "
+                        + exception.getMessage(), exception);
+            }
+        }
+
+        byte[] raw = new byte[BUFFER_SIZE];
+        WebAccessor webAccessor = new WebAccessor(null);
+        InputStream in = webAccessor.openInputStream(source);
+        if (in == null)
+        {
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedIOException("Retrieval of " + url + " interrupted");
+            }
+            throw new IOException("Failed to open " + url);
+        }
+
+        File temp = File.createTempFile("izpacktempfile", "jar", tempDir);
+        FileOutputStream fos = null;
+        boolean success = false;
+        try
+        {
+            fos = new FileOutputStream(temp);
+            int r = in.read(raw);
+            while (r > 0)
+            {
+                fos.write(raw, 0, r);
+                r = in.read(raw);
+            }
+            success = true;
+        }
+        finally
+        {
+            FileUtils.close(in);
+            FileUtils.close(fos);
+            if (!success)
+            {
+                temp.delete();
+            }
         }
-        in.close();
-        fos.close();
 
-        return path;
+        return "file:///" + temp.getAbsolutePath();
     }
 
 
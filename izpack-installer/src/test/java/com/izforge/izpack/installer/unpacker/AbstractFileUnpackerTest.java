@@ -26,6 +26,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -46,6 +47,7 @@ import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.exception.InstallerException;
 import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.Librarian;
+import com.izforge.izpack.util.OsVersion;
 import com.izforge.izpack.util.Platforms;
 import com.izforge.izpack.util.os.FileQueue;
 
@@ -119,6 +121,32 @@ public abstract class AbstractFileUnpackerTest
         checkTarget(source, target);
     }
 
+    /**
+     * Verifies that a pack file marked executable is executable once unpacked.
+     *
+     * @throws Exception throws exception for any error
+     */
+    @Test
+    public void testUnpackExecutable() throws Exception
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+        File baseDir = temporaryFolder.getRoot();
+        File sourceDir = baseDir.getAbsoluteFile();
+
+        File source = createSourceFile(baseDir);
+        File target = getTargetFile(baseDir);
+
+        FileQueue queue = new FileQueueFactory(Platforms.LINUX, librarian).create();
+        FileUnpacker unpacker = createUnpacker(sourceDir, queue);
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        file.setExecutable(true);
+
+        unpacker.unpack(file, createPackStream(source), target);
+        checkTarget(source, target);
+        assertTrue(target.canExecute());
+    }
+
     /**
      * Verifies that a file that does not have a blockable type of {@link Blockable#BLOCKABLE_NONE} is queued rather
      * than unpacked to its target.
@@ -0,0 +1,184 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.util.Librarian;
+import com.izforge.izpack.util.Platforms;
+import com.izforge.izpack.util.os.FileQueue;
+
+
+/**
+ * Tests the {@link FileWriterPool}.
+ */
+public class FileWriterPoolTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Cancellable implementation.
+     */
+    private final Cancellable cancellable = new Cancellable()
+    {
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * Verifies that files are written by the pool, and that listeners are notified in submission order.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("source");
+        File targetDir = temporaryFolder.newFolder("target");
+        int count = 50;
+
+        // create the source files and the pack stream containing them
+        PackFile[] files = new PackFile[count];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < count; ++i)
+        {
+            File source = new File(baseDir, "file" + i + ".txt");
+            FileUtils.writeStringToFile(source, "content of file " + i);
+            files[i] = createPackFile(baseDir, source, Blockable.BLOCKABLE_NONE);
+            FileUtils.copyFile(source, out);
+        }
+        out.close();
+
+        InstallerListeners listeners = Mockito.mock(InstallerListeners.class);
+        Pack pack = Mockito.mock(Pack.class);
+        ObjectInputStream packStream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        FileWriterPool pool = new FileWriterPool(3, listeners);
+        try
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                FileUnpacker unpacker = new DefaultFileUnpacker(cancellable, null);
+                assertTrue(pool.canWrite(files[i], unpacker, null));
+                pool.write(files[i], packStream, getTarget(targetDir, i), pack, unpacker);
+            }
+            pool.complete();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        InOrder order = Mockito.inOrder(listeners);
+        for (int i = 0; i < count; ++i)
+        {
+            File target = getTarget(targetDir, i);
+            assertEquals("content of file " + i, FileUtils.readFileToString(target));
+            assertEquals(files[i].lastModified(), target.lastModified());
+            order.verify(listeners).afterFile(target, files[i], pack);
+        }
+    }
+
+    /**
+     * Verifies that files that would be queued, or that aren't unpacked by a {@link DefaultFileUnpacker} aren't
+     * written by the pool.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCanWrite() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = new File(baseDir, "source.txt");
+        FileUtils.writeStringToFile(source, "Here we go");
+
+        FileWriterPool pool = new FileWriterPool(2, Mockito.mock(InstallerListeners.class));
+        try
+        {
+            FileQueue queue = new FileQueueFactory(Platforms.WINDOWS, Mockito.mock(Librarian.class)).create();
+            PackFile none = createPackFile(baseDir, source, Blockable.BLOCKABLE_NONE);
+            PackFile auto = createPackFile(baseDir, source, Blockable.BLOCKABLE_AUTO);
+
+            assertTrue(pool.canWrite(none, new DefaultFileUnpacker(cancellable, queue), queue));
+            assertTrue(pool.canWrite(auto, new DefaultFileUnpacker(cancellable, null), null));
+            assertFalse(pool.canWrite(auto, new DefaultFileUnpacker(cancellable, queue), queue));
+            assertFalse(pool.canWrite(none, new LooseFileUnpacker(baseDir, cancellable, null, null), null));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates a pack file.
+     *
+     * @param baseDir   the base directory
+     * @param source    the source file
+     * @param blockable the blockable type
+     * @return a new pack file
+     * @throws IOException if the source file doesn't exist
+     */
+    private PackFile createPackFile(File baseDir, File source, Blockable blockable) throws IOException
+    {
+        return new PackFile(baseDir, source, source.getName(), null, OverrideType.OVERRIDE_TRUE, null, blockable);
+    }
+
+    /**
+     * Returns a target file.
+     *
+     * @param targetDir the target directory
+     * @param index     the file index
+     * @return the target file
+     */
+    private File getTarget(File targetDir, int index)
+    {
+        return new File(targetDir, "file" + index + ".txt");
+    }
+}
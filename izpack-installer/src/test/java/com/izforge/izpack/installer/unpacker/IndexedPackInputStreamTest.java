@@ -0,0 +1,163 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link IndexedPackInputStream}.
+ */
+public class IndexedPackInputStreamTest
+{
+
+    /**
+     * The uncompressed pack data.
+     */
+    private byte[] data;
+
+    /**
+     * The compressed pack data.
+     */
+    private byte[] pack;
+
+    /**
+     * The pack index.
+     */
+    private byte[] index;
+
+    /**
+     * The no. of blocks decoded.
+     */
+    private int decoded;
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        data = new byte[9500];
+        for (int i = 0; i < data.length; ++i)
+        {
+            data[i] = (byte) (i % 251);
+        }
+
+        // compress the data in blocks of 1000 bytes, with a shorter last block
+        int blockSize = 1000;
+        ByteArrayOutputStream packStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream indexStream = new ByteArrayOutputStream();
+        DataOutputStream indexData = new DataOutputStream(indexStream);
+        indexData.writeInt(IndexedPackInputStream.INDEX_VERSION);
+        indexData.writeInt(10);
+        for (int offset = 0; offset < data.length; offset += blockSize)
+        {
+            int length = Math.min(blockSize, data.length - offset);
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            DeflaterOutputStream encoder = new DeflaterOutputStream(block);
+            encoder.write(data, offset, length);
+            encoder.close();
+            packStream.write(block.toByteArray());
+            indexData.writeLong(length);
+            indexData.writeLong(block.size());
+        }
+        indexData.close();
+        pack = packStream.toByteArray();
+        index = indexStream.toByteArray();
+    }
+
+    /**
+     * Verifies that all blocks are decoded when the pack is read.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRead() throws IOException
+    {
+        InputStream stream = createStream();
+        assertArrayEquals(data, IOUtils.toByteArray(stream));
+        assertEquals(10, decoded);
+        stream.close();
+    }
+
+    /**
+     * Verifies that skipping only decodes the block containing the target offset.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSkip() throws IOException
+    {
+        InputStream stream = createStream();
+        assertEquals(data[0], (byte) stream.read());
+        assertEquals(1, decoded);
+
+        // skip into the middle of the 8th block
+        assertEquals(7499, stream.skip(7499));
+        assertEquals(2, decoded);
+        byte[] buffer = new byte[1000];
+        IOUtils.readFully(stream, buffer);
+        for (int i = 0; i < buffer.length; ++i)
+        {
+            assertEquals(data[7500 + i], buffer[i]);
+        }
+        assertEquals(3, decoded);
+
+        // skip past the end
+        assertEquals(1000, stream.skip(2000));
+        assertEquals(-1, stream.read());
+        stream.close();
+    }
+
+    /**
+     * Creates a stream to read the pack.
+     *
+     * @return a new stream
+     * @throws IOException for any I/O error
+     */
+    private InputStream createStream() throws IOException
+    {
+        decoded = 0;
+        return new IndexedPackInputStream(new ByteArrayInputStream(pack), new ByteArrayInputStream(index))
+        {
+            @Override
+            protected InputStream createDecoder(InputStream block)
+            {
+                ++decoded;
+                return new InflaterInputStream(block);
+            }
+        };
+    }
+}
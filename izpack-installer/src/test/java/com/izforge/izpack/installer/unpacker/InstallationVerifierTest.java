@@ -0,0 +1,140 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.api.exception.ResourceInterruptedException;
+
+
+/**
+ * Tests the {@link InstallationVerifier} class.
+ */
+public class InstallationVerifierTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Cancellable that is never cancelled.
+     */
+    private final Cancellable notCancelled = new Cancellable()
+    {
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+    };
+
+
+    /**
+     * Verifies that missing and modified files are reported as damaged, and that files without a digest are only
+     * checked for existence.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testVerify() throws Exception
+    {
+        Map<File, byte[]> files = new HashMap<File, byte[]>();
+        File intact = createFile("intact.txt", "Content");
+        File modified = createFile("modified.txt", "Modified");
+        File unverified = createFile("unverified.txt", "Anything");
+        File missing = new File(temporaryFolder.getRoot(), "missing.txt");
+        File missingUnverified = new File(temporaryFolder.getRoot(), "missingUnverified.txt");
+        files.put(intact, digest("Content"));
+        files.put(modified, digest("Original"));
+        files.put(unverified, null);
+        files.put(missing, digest("Content"));
+        files.put(missingUnverified, null);
+
+        Set<File> expected = new HashSet<File>(Arrays.asList(modified, missing, missingUnverified));
+        assertEquals(expected, new InstallationVerifier(1).verify(files, notCancelled));
+        assertEquals(expected, new InstallationVerifier(4).verify(files, notCancelled));
+    }
+
+    /**
+     * Verifies that verification can be cancelled.
+     *
+     * @throws Exception for any error
+     */
+    @Test(expected = ResourceInterruptedException.class)
+    public void testCancel() throws Exception
+    {
+        Map<File, byte[]> files = new HashMap<File, byte[]>();
+        files.put(createFile("a.txt", "Content"), digest("Content"));
+        new InstallationVerifier(2).verify(files, new Cancellable()
+        {
+            @Override
+            public boolean isCancelled()
+            {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Creates a file.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        writer.print(content);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Returns the SHA-1 digest of a string.
+     *
+     * @param content the string
+     * @return the digest of its UTF-8 encoding
+     * @throws Exception for any error
+     */
+    private byte[] digest(String content) throws Exception
+    {
+        return MessageDigest.getInstance("SHA-1").digest(content.getBytes("UTF-8"));
+    }
+}
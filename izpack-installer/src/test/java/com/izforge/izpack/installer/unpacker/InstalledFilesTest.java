@@ -0,0 +1,173 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link InstalledFiles} class.
+ */
+public class InstalledFilesTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that files are matched on their content digest.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testMatches() throws Exception
+    {
+        File file = createFile("a.txt", "Version 1");
+        InstalledFiles files = new InstalledFiles();
+
+        // unrecorded files are digested
+        assertTrue(files.matches(file, 9, digest("Version 1")));
+        assertFalse(files.matches(file, 9, digest("Version 2")));
+        assertFalse(files.matches(file, 10, digest("Version 1")));
+        assertFalse(files.matches(new File(file.getParentFile(), "b.txt"), 9, digest("Version 1")));
+    }
+
+    /**
+     * Verifies that the recorded digest is used while a file's length and last modified time are unchanged, and that
+     * the file is digested again once they change.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRecordedDigest() throws Exception
+    {
+        File file = createFile("a.txt", "Version 1");
+        long lastModified = file.lastModified();
+        InstalledFiles files = new InstalledFiles();
+        files.add(file, digest("Version 1"));
+        files.update();
+        assertEquals(1, files.size());
+
+        // change the content without changing the length or last modified time. The recorded digest is used
+        createFile("a.txt", "Version 2");
+        assertTrue(file.setLastModified(lastModified));
+        assertTrue(files.matches(file, 9, digest("Version 1")));
+
+        // once the last modified time changes, the file is digested
+        assertTrue(file.setLastModified(lastModified - 10000));
+        assertFalse(files.matches(file, 9, digest("Version 1")));
+        assertTrue(files.matches(file, 9, digest("Version 2")));
+    }
+
+    /**
+     * Verifies that files without a digest, and files that no longer exist, aren't recorded.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRemove() throws Exception
+    {
+        File file1 = createFile("a.txt", "Version 1");
+        File file2 = createFile("b.txt", "Version 1");
+        InstalledFiles files = new InstalledFiles();
+        files.add(file1, digest("Version 1"));
+        files.add(file2, digest("Version 1"));
+        files.add(file1, null);
+        assertTrue(file2.delete());
+        files.update();
+        assertEquals(0, files.size());
+    }
+
+    /**
+     * Verifies that recorded files survive serialization.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSerialization() throws Exception
+    {
+        File file = createFile("a.txt", "Version 1");
+        long lastModified = file.lastModified();
+        InstalledFiles files = new InstalledFiles();
+        files.add(file, digest("Version 1"));
+        files.update();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(files);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        InstalledFiles read = (InstalledFiles) in.readObject();
+        in.close();
+
+        assertEquals(1, read.size());
+        createFile("a.txt", "Version 2");
+        assertTrue(file.setLastModified(lastModified));
+        assertTrue(read.matches(file, 9, digest("Version 1")));
+    }
+
+    /**
+     * Creates a file.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        writer.print(content);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Returns the SHA-1 digest of a string.
+     *
+     * @param content the string
+     * @return the digest of its UTF-8 encoding
+     * @throws Exception for any error
+     */
+    private byte[] digest(String content) throws Exception
+    {
+        return MessageDigest.getInstance("SHA-1").digest(content.getBytes("UTF-8"));
+    }
+}
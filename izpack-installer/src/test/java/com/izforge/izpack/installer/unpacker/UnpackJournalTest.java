@@ -0,0 +1,147 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link UnpackJournal} class.
+ */
+public class UnpackJournalTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that committed files can be resumed, and that uncommitted and modified files cannot.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResume() throws Exception
+    {
+        File dir = temporaryFolder.getRoot();
+        File file1 = createFile("a.txt", "Content 1");
+        File file2 = createFile("b.txt", "Content 2");
+        File file3 = createFile("c.txt", "Content 3");
+        File file4 = createFile("d.txt", "Content 4");
+
+        UnpackJournal journal = new UnpackJournal(dir, "Test 1.0");
+        assertFalse(journal.read());
+        journal.open();
+        journal.add(file1);
+        journal.add(file2);
+        journal.checkpoint();
+        journal.add(file3);
+        journal.commit();
+        journal.add(file4);
+        journal.close();
+
+        // modify a committed file
+        createFile("b.txt", "Modified 2");
+
+        journal = new UnpackJournal(dir, "Test 1.0");
+        assertTrue(journal.read());
+        assertEquals(3, journal.getFiles());
+        assertTrue(journal.isComplete(file1));
+        assertFalse(journal.isComplete(file2));
+        assertTrue(journal.isComplete(file3));
+        assertFalse(journal.isComplete(file4));
+
+        // resuming carries the entries over into the new journal
+        journal.open();
+        journal.close();
+        journal = new UnpackJournal(dir, "Test 1.0");
+        assertTrue(journal.read());
+        assertEquals(3, journal.getFiles());
+        assertTrue(journal.isComplete(file1));
+
+        // a journal written by a different installer isn't resumed
+        assertFalse(new UnpackJournal(dir, "Test 2.0").read());
+
+        journal.delete();
+        assertFalse(new File(dir, UnpackJournal.NAME).exists());
+    }
+
+    /**
+     * Verifies that a partially written trailing entry is ignored.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testTruncated() throws Exception
+    {
+        File dir = temporaryFolder.getRoot();
+        File file1 = createFile("a.txt", "Content 1");
+        File file2 = createFile("b.txt", "Content 2");
+
+        UnpackJournal journal = new UnpackJournal(dir, "Test 1.0");
+        journal.open();
+        journal.add(file1);
+        journal.commit();
+        journal.add(file2);
+        journal.commit();
+        journal.close();
+
+        RandomAccessFile raf = new RandomAccessFile(new File(dir, UnpackJournal.NAME), "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        journal = new UnpackJournal(dir, "Test 1.0");
+        assertTrue(journal.read());
+        assertEquals(1, journal.getFiles());
+        assertTrue(journal.isComplete(file1));
+        assertFalse(journal.isComplete(file2));
+    }
+
+    /**
+     * Creates a file.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        writer.print(content);
+        writer.close();
+        return file;
+    }
+}
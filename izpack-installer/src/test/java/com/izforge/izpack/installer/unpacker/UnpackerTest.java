@@ -0,0 +1,541 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileWriter;
+import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackManifest;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.installer.data.UninstallData;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.OsVersion;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.Platforms;
+
+
+/**
+ * Tests the {@link Unpacker} class.
+ */
+public class UnpackerTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The installation directory.
+     */
+    private File installDir;
+
+    /**
+     * The pack to install.
+     */
+    private PackInfo packInfo;
+
+    /**
+     * The uncompressed size of each block of the pack stream, or {@code 0} if the pack stream isn't indexed.
+     */
+    private int blockSize;
+
+    /**
+     * The blocks of the pack stream that have been decoded.
+     */
+    private final Set<Integer> decodedBlocks = new HashSet<Integer>();
+
+    /**
+     * The offsets of the content of each pack file, followed by the offset of the parsable files.
+     */
+    private long[] offsets;
+
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws Exception for any error
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        File sourceDir = temporaryFolder.newFolder("source");
+        installDir = temporaryFolder.newFolder("install");
+        packInfo = new PackInfo("Core", null, null, true, false, null, true, 0);
+        addFile(sourceDir, "readme.txt", "Read me");
+        addFile(sourceDir, "config.txt", "value=${value}");
+        addFile(sourceDir, "settings.txt", "Default settings", OverrideType.OVERRIDE_FALSE);
+        packInfo.addParsable(new ParsableFile("$INSTALL_PATH/config.txt", SubstitutionType.TYPE_PLAIN, null, null));
+    }
+
+    /**
+     * Verifies that a parsed file isn't skipped as unchanged when upgrading, so that it is parsed again from its
+     * pack content.
+     * <p/>
+     * The substituted value has the same length as the variable reference, so the parsed file has the same length
+     * as its pack file.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSkipUnchangedParsedFile() throws Exception
+    {
+        File config = new File(installDir, "config.txt");
+        install("AAAAAAAA", false);
+        assertEquals("value=AAAAAAAA", FileUtils.readFileToString(config, "UTF-8"));
+
+        install("BBBBBBBB", true);
+        assertEquals("value=BBBBBBBB", FileUtils.readFileToString(config, "UTF-8"));
+    }
+
+    /**
+     * Verifies that a parsed file is only verified to exist when repairing an installation, and that missing files
+     * are repaired.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRepairParsedFile() throws Exception
+    {
+        File config = new File(installDir, "config.txt");
+        File readme = new File(installDir, "readme.txt");
+        install("AAAAAAAA", false);
+
+        List<Pack> packs = Arrays.asList(packInfo.getPack());
+        assertEquals(Collections.<File>emptySet(), createUnpacker("AAAAAAAA", false).verify(packs));
+
+        assertTrue(readme.delete());
+        assertEquals(Collections.singleton(readme), createUnpacker("AAAAAAAA", false).verify(packs));
+        assertTrue(config.delete());
+        assertEquals(new HashSet<File>(Arrays.asList(config, readme)),
+                     createUnpacker("AAAAAAAA", false).verify(packs));
+
+        repair();
+        assertEquals("Read me", FileUtils.readFileToString(readme, "UTF-8"));
+        assertEquals("value=AAAAAAAA", FileUtils.readFileToString(config, "UTF-8"));
+    }
+
+    /**
+     * Verifies that repairing an installation preserves user edits to files that aren't overwritten, but restores
+     * them if missing.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRepairPreservesEdits() throws Exception
+    {
+        File settings = new File(installDir, "settings.txt");
+        install("AAAAAAAA", false);
+        FileUtils.writeStringToFile(settings, "Edited settings", "UTF-8");
+
+        List<Pack> packs = Arrays.asList(packInfo.getPack());
+        assertEquals(Collections.<File>emptySet(), createUnpacker("AAAAAAAA", false).verify(packs));
+        repair();
+        assertEquals("Edited settings", FileUtils.readFileToString(settings, "UTF-8"));
+
+        assertTrue(settings.delete());
+        assertEquals(Collections.singleton(settings), createUnpacker("AAAAAAAA", false).verify(packs));
+        repair();
+        assertEquals("Default settings", FileUtils.readFileToString(settings, "UTF-8"));
+    }
+
+    /**
+     * Verifies that repairing an installation only parses and executes the files that are unpacked again.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRepairOnlyProcessesRepairedFiles() throws Exception
+    {
+        Assume.assumeTrue(OsVersion.IS_UNIX);
+        addFile(temporaryFolder.newFolder("scripts"), "run.sh", "#!/bin/sh\necho run >> \"$0.log\"\n");
+        packInfo.addExecutable(new ExecutableFile("$INSTALL_PATH/run.sh", ExecutableFile.POSTINSTALL,
+                                                  ExecutableFile.ABORT, null, true));
+        File config = new File(installDir, "config.txt");
+        File readme = new File(installDir, "readme.txt");
+        File script = new File(installDir, "run.sh");
+        File log = new File(installDir, "run.sh.log");
+        install("AAAAAAAA", false);
+        assertEquals(1, FileUtils.readLines(log).size());
+
+        // only the readme is repaired
+        long lastModified = config.lastModified() - 10000;
+        assertTrue(config.setLastModified(lastModified));
+        assertTrue(readme.delete());
+        repair();
+        assertTrue(readme.exists());
+        assertEquals(lastModified, config.lastModified());
+        assertEquals(1, FileUtils.readLines(log).size());
+
+        // the script and config are repaired, so are executed and parsed again
+        assertTrue(script.delete());
+        assertTrue(config.delete());
+        repair();
+        assertEquals(2, FileUtils.readLines(log).size());
+        assertEquals("value=AAAAAAAA", FileUtils.readFileToString(config, "UTF-8"));
+    }
+
+    /**
+     * Verifies that repairing an installation from an indexed pack only decodes the blocks containing the content
+     * of the damaged files and the pack's parsable files.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRepairSeeksToDamagedFiles() throws Exception
+    {
+        blockSize = 8;
+        File config = new File(installDir, "config.txt");
+        File readme = new File(installDir, "readme.txt");
+        File settings = new File(installDir, "settings.txt");
+        install("AAAAAAAA", false);
+
+        assertTrue(readme.delete());
+        decodedBlocks.clear();
+        repair();
+        assertEquals("Read me", FileUtils.readFileToString(readme, "UTF-8"));
+
+        // the blocks holding the config and settings files were skipped
+        int first = (int) (offsets[1] / blockSize) + 1;
+        int last = (int) (offsets[3] / blockSize) - 1;
+        assertTrue(first < last);
+        for (int block = first; block < last; ++block)
+        {
+            assertFalse(decodedBlocks.contains(block));
+        }
+
+        // parsable files are repaired from the metadata at the end of the pack
+        assertTrue(config.delete());
+        assertTrue(settings.delete());
+        repair();
+        assertEquals("value=AAAAAAAA", FileUtils.readFileToString(config, "UTF-8"));
+        assertEquals("Default settings", FileUtils.readFileToString(settings, "UTF-8"));
+    }
+
+    /**
+     * Verifies that a journaled file is only skipped when resuming if its content matches its pack file.
+     * <p/>
+     * This simulates a crash where the journal was synced, but a journaled file's content was never written.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResumeVerifiesContent() throws Exception
+    {
+        File readme = new File(installDir, "readme.txt");
+        install("AAAAAAAA", false);
+
+        // same length and last modified time, different content
+        long lastModified = readme.lastModified() - 10000;
+        FileUtils.writeStringToFile(readme, "XXXXXXX", "UTF-8");
+        assertTrue(readme.setLastModified(lastModified));
+        journal(readme);
+        resume();
+        assertEquals("Read me", FileUtils.readFileToString(readme, "UTF-8"));
+
+        // intact files aren't written again
+        assertTrue(readme.setLastModified(lastModified));
+        journal(readme);
+        resume();
+        assertEquals(lastModified, readme.lastModified());
+    }
+
+    /**
+     * Writes the journal of an interrupted installation.
+     *
+     * @param files the files written by the interrupted installation
+     * @throws Exception for any error
+     */
+    private void journal(File... files) throws Exception
+    {
+        Info info = new Info();
+        UnpackJournal journal = new UnpackJournal(installDir, info.getAppName() + " " + info.getAppVersion());
+        journal.open();
+        for (File file : files)
+        {
+            journal.add(file);
+        }
+        journal.checkpoint();
+        journal.close();
+    }
+
+    /**
+     * Resumes an interrupted installation.
+     *
+     * @throws Exception for any error
+     */
+    private void resume() throws Exception
+    {
+        Unpacker unpacker = createUnpacker("AAAAAAAA", false);
+        unpacker.getInstallData().setVariable(UnpackerBase.RESUME, "true");
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+    }
+
+    /**
+     * Repairs the installation.
+     *
+     * @throws Exception for any error
+     */
+    private void repair() throws Exception
+    {
+        Unpacker unpacker = createUnpacker("AAAAAAAA", false);
+        unpacker.getInstallData().setVariable(UnpackerBase.REPAIR, "true");
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+    }
+
+    /**
+     * Installs the pack.
+     *
+     * @param value         the value of the variable substituted into the parsed file
+     * @param skipUnchanged if {@code true}, skip files whose content is unchanged
+     * @throws Exception for any error
+     */
+    private void install(String value, boolean skipUnchanged) throws Exception
+    {
+        Unpacker unpacker = createUnpacker(value, skipUnchanged);
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+    }
+
+    /**
+     * Creates an unpacker to install the pack.
+     *
+     * @param value         the value of the variable substituted into the parsed file
+     * @param skipUnchanged if {@code true}, skip files whose content is unchanged
+     * @return a new unpacker
+     * @throws Exception for any error
+     */
+    private Unpacker createUnpacker(String value, boolean skipUnchanged) throws Exception
+    {
+        AutomatedInstallData installData = new AutomatedInstallData(new DefaultVariables(), Platforms.LINUX);
+        installData.setInfo(new Info());
+        installData.setInstallPath(installDir.getPath());
+        installData.setSelectedPacks(Arrays.asList(packInfo.getPack()));
+        installData.setVariable("value", value);
+        installData.setVariable(UnpackerBase.SKIP_UNCHANGED, Boolean.toString(skipUnchanged));
+
+        Prompt prompt = Mockito.mock(Prompt.class);
+        Unpacker unpacker = new Unpacker(installData, createResources(), Mockito.mock(RulesEngine.class),
+                                         new VariableSubstitutorImpl(installData.getVariables()),
+                                         new UninstallData(), Mockito.mock(FileQueueFactory.class),
+                                         Mockito.mock(Housekeeper.class), new InstallerListeners(installData, prompt),
+                                         prompt, new PlatformModelMatcher(new Platforms(), Platforms.LINUX));
+        unpacker.setProgressListener(Mockito.mock(ProgressListener.class));
+        return unpacker;
+    }
+
+    /**
+     * Creates the pack resources of the installer.
+     *
+     * @return the pack resources
+     * @throws IOException for any I/O error
+     */
+    private PackResources createResources() throws IOException
+    {
+        final byte[] pack = createPack();
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        PackManifest.write(Arrays.asList(packInfo), Collections.singletonMap(packInfo.getPack().getName(), offsets),
+                           -1, manifest);
+        final byte[] manifestBytes = manifest.toByteArray();
+        PackResources resources = Mockito.mock(PackResources.class);
+        Mockito.when(resources.getPackStream(packInfo.getPack().getName())).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws IOException
+            {
+                return (blockSize != 0) ? createIndexedStream(pack) : new ByteArrayInputStream(pack);
+            }
+        });
+        Mockito.when(resources.getInputStream(PackManifest.NAME)).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation)
+            {
+                return new ByteArrayInputStream(manifestBytes);
+            }
+        });
+        return resources;
+    }
+
+    /**
+     * Creates an indexed stream of the pack, recording the blocks that are decoded.
+     *
+     * @param pack the pack content
+     * @return a new stream
+     * @throws IOException for any I/O error
+     */
+    private InputStream createIndexedStream(final byte[] pack) throws IOException
+    {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        int count = (pack.length + blockSize - 1) / blockSize;
+        out.writeInt(IndexedPackInputStream.INDEX_VERSION);
+        out.writeInt(count);
+        for (int i = 0; i < count; ++i)
+        {
+            int length = Math.min(blockSize, pack.length - i * blockSize);
+            out.writeLong(length);
+            out.writeLong(length);
+        }
+        out.close();
+        final ByteArrayInputStream in = new ByteArrayInputStream(pack);
+        return new IndexedPackInputStream(in, new ByteArrayInputStream(index.toByteArray()))
+        {
+            @Override
+            protected InputStream createDecoder(InputStream block) throws IOException
+            {
+                // blocks are stored uncompressed, so the block no. is determined by the position in the pack
+                decodedBlocks.add((pack.length - in.available()) / blockSize);
+                return block;
+            }
+        };
+    }
+
+    /**
+     * Writes the pack, in the format written by the compiler, recording the offsets of its content.
+     *
+     * @return the pack content
+     * @throws IOException for any I/O error
+     */
+    private byte[] createPack() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        PackFileWriter writer = new PackFileWriter(out);
+        writer.writeHeader(packInfo.getPackFiles().size());
+        offsets = new long[packInfo.getPackFiles().size() + 1];
+        int index = 0;
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            writer.write(packFile);
+            out.flush();
+            offsets[index++] = bytes.size();
+            InputStream in = new FileInputStream(packInfo.getFile(packFile));
+            try
+            {
+                IoHelper.copyStream(in, out);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        out.reset();
+        offsets[index] = bytes.size();
+        out.writeInt(packInfo.getParsables().size());
+        for (ParsableFile parsable : packInfo.getParsables())
+        {
+            out.writeObject(parsable);
+        }
+        out.writeInt(packInfo.getExecutables().size());
+        for (ExecutableFile executable : packInfo.getExecutables())
+        {
+            out.writeObject(executable);
+        }
+        out.writeInt(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Adds a file to the pack, installed to the installation directory.
+     *
+     * @param dir     the source directory
+     * @param name    the file name
+     * @param content the file content
+     * @throws IOException for any I/O error
+     */
+    private void addFile(File dir, String name, String content) throws IOException
+    {
+        addFile(dir, name, content, OverrideType.OVERRIDE_TRUE);
+    }
+
+    /**
+     * Adds a file to the pack, installed to the installation directory.
+     *
+     * @param dir      the source directory
+     * @param name     the file name
+     * @param content  the file content
+     * @param override determines if the file overwrites an existing file
+     * @throws IOException for any I/O error
+     */
+    private void addFile(File dir, String name, String content, OverrideType override) throws IOException
+    {
+        File file = new File(dir, name);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        writer.print(content);
+        writer.close();
+        packInfo.addFile(dir, file, "$INSTALL_PATH/" + name, null, override, null,
+                         Blockable.BLOCKABLE_NONE, null, null);
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            if (packInfo.getFile(packFile).equals(file))
+            {
+                packFile.setDigest(InstalledFiles.digest(file));
+            }
+        }
+    }
+}
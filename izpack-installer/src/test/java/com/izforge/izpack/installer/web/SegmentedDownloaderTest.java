@@ -0,0 +1,333 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link SegmentedDownloader} against a local HTTP server.
+ */
+public class SegmentedDownloaderTest
+{
+
+    /**
+     * Temporary folder to download to.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The HTTP server.
+     */
+    private HttpServer server;
+
+    /**
+     * The URL of the file to download.
+     */
+    private URL url;
+
+    /**
+     * The file content.
+     */
+    private volatile byte[] content;
+
+    /**
+     * The file entity tag.
+     */
+    private volatile String etag = "\"1\"";
+
+    /**
+     * Determines if the server supports range requests.
+     */
+    private volatile boolean ranges = true;
+
+    /**
+     * The no. of bytes the server will send before dropping connections.
+     */
+    private final AtomicLong budget = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * The no. of bytes sent.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * The Range headers of GET requests. A {@code null} element indicates a request for the whole file.
+     */
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        content = createContent(1024 * 1024, 1);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    serve(exchange);
+                }
+                catch (IOException ignore)
+                {
+                    // connection dropped
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/install.pack-base.jar");
+    }
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    /**
+     * Verifies that a file is downloaded in segments, and isn't downloaded again if it hasn't changed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSegmented() throws Exception
+    {
+        File file = new File(temporaryFolder.getRoot(), "install.pack-base.jar");
+        SegmentedDownloader downloader = new SegmentedDownloader(4, 64 * 1024);
+        downloader.download(url, file);
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+        assertEquals(4, requests.size());
+        assertTrue(requests.contains("bytes=0-262143"));
+        assertTrue(requests.contains("bytes=786432-1048575"));
+        assertEquals(content.length, sent.get());
+
+        downloader.download(url, file);
+        assertEquals(4, requests.size());
+    }
+
+    /**
+     * Verifies that a file is downloaded with a single request if the server doesn't support range requests.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testNoRanges() throws Exception
+    {
+        ranges = false;
+        File file = new File(temporaryFolder.getRoot(), "install.pack-base.jar");
+        new SegmentedDownloader(4, 64 * 1024).download(url, file);
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+        assertEquals(1, requests.size());
+        assertEquals(null, requests.get(0));
+    }
+
+    /**
+     * Verifies that an interrupted download is resumed, rather than restarted.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResume() throws Exception
+    {
+        File file = new File(temporaryFolder.getRoot(), "install.pack-base.jar");
+        SegmentedDownloader downloader = new SegmentedDownloader(4, 64 * 1024);
+        budget.set(content.length / 2);
+        try
+        {
+            downloader.download(url, file);
+            fail("Expected download to fail");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+        long first = sent.get();
+        assertTrue(first > 0);
+
+        budget.set(Long.MAX_VALUE);
+        downloader.download(url, file);
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+        assertEquals(content.length, sent.get());
+        assertEquals(2, temporaryFolder.getRoot().list().length); // the file and its state
+    }
+
+    /**
+     * Verifies that partial downloads are discarded if the remote file changes.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testChanged() throws Exception
+    {
+        File file = new File(temporaryFolder.getRoot(), "install.pack-base.jar");
+        SegmentedDownloader downloader = new SegmentedDownloader(4, 64 * 1024);
+        budget.set(content.length / 2);
+        try
+        {
+            downloader.download(url, file);
+            fail("Expected download to fail");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+
+        content = createContent(content.length, 2);
+        etag = "\"2\"";
+        budget.set(Long.MAX_VALUE);
+        sent.set(0);
+        downloader.download(url, file);
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+        assertEquals(content.length, sent.get());
+    }
+
+    /**
+     * Verifies that a missing file is reported.
+     *
+     * @throws Exception for any error
+     */
+    @Test(expected = IOException.class)
+    public void testMissing() throws Exception
+    {
+        File file = new File(temporaryFolder.getRoot(), "missing.jar");
+        new SegmentedDownloader().download(new URL(url, "/missing.jar"), file);
+    }
+
+    /**
+     * Serves a request.
+     *
+     * @param exchange the exchange
+     * @throws IOException for any I/O error
+     */
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        byte[] data = content;
+        if (!exchange.getRequestURI().getPath().equals(url.getPath()))
+        {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if (ranges)
+        {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        if ("HEAD".equals(exchange.getRequestMethod()))
+        {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        requests.add(range);
+        int start = 0;
+        int end = data.length - 1;
+        if (ranges && range != null)
+        {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            start = Integer.parseInt(bounds[0]);
+            if (bounds[1].length() != 0)
+            {
+                end = Integer.parseInt(bounds[1]);
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+        }
+        else
+        {
+            exchange.sendResponseHeaders(200, data.length);
+        }
+
+        OutputStream out = exchange.getResponseBody();
+        int position = start;
+        while (position <= end)
+        {
+            int length = Math.min(8192, end - position + 1);
+            long available = budget.getAndAdd(-length);
+            if (available < length)
+            {
+                // drop the connection
+                return;
+            }
+            out.write(data, position, length);
+            out.flush();
+            sent.addAndGet(length);
+            position += length;
+        }
+        out.close();
+    }
+
+    /**
+     * Creates random file content.
+     *
+     * @param length the content length
+     * @param seed   the random seed
+     * @return the content
+     */
+    private static byte[] createContent(int length, long seed)
+    {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link WebPackPrefetcher} against a local HTTP server.
+ */
+public class WebPackPrefetcherTest
+{
+
+    /**
+     * The HTTP server.
+     */
+    private HttpServer server;
+
+    /**
+     * The executor used to handle requests.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The web directory URL.
+     */
+    private String webDirURL;
+
+    /**
+     * The paths of the GET requests made to the server.
+     */
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Released to allow the slow pack to be served.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * The prefetcher under test.
+     */
+    private WebPackPrefetcher prefetcher;
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                boolean head = "HEAD".equals(exchange.getRequestMethod());
+                if (!head)
+                {
+                    requests.add(path);
+                }
+                try
+                {
+                    if (path.endsWith("pack-slow.jar"))
+                    {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    if (path.startsWith("/install.pack-"))
+                    {
+                        byte[] content = ("content of " + path).getBytes("UTF-8");
+                        if (head)
+                        {
+                            exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+                            exchange.sendResponseHeaders(200, -1);
+                        }
+                        else
+                        {
+                            exchange.sendResponseHeaders(200, content.length);
+                            OutputStream out = exchange.getResponseBody();
+                            out.write(content);
+                            out.close();
+                        }
+                    }
+                    else
+                    {
+                        exchange.sendResponseHeaders(404, -1);
+                    }
+                }
+                catch (InterruptedException exception)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        webDirURL = "http://localhost:" + server.getAddress().getPort();
+        prefetcher = new WebPackPrefetcher(webDirURL, "install", 2);
+    }
+
+    /**
+     * Stops the server, and removes downloaded packs.
+     */
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        prefetcher.cleanUp();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies that selected packs are downloaded.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        prefetcher.prefetch(Arrays.asList(createPack("base"), createPack("docs")));
+
+        checkPack("base");
+        checkPack("docs");
+        assertNull(prefetcher.getPack("other"));
+
+        // reselecting the packs shouldn't download them again
+        prefetcher.prefetch(Arrays.asList(createPack("base"), createPack("docs")));
+        checkPack("base");
+        assertEquals(2, requests.size());
+    }
+
+    /**
+     * Verifies that downloads are cancelled when packs are deselected.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDeselect() throws Exception
+    {
+        prefetcher.prefetch(Arrays.asList(createPack("base"), createPack("slow")));
+        checkPack("base");
+
+        prefetcher.prefetch(Arrays.asList(createPack("base")));
+        assertNull(prefetcher.getPack("slow"));
+        checkPack("base");
+    }
+
+    /**
+     * Verifies that a pack that cannot be downloaded is reported as not prefetched.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testMissingPack() throws Exception
+    {
+        WebPackPrefetcher missing = new WebPackPrefetcher(webDirURL + "/missing", "install", 1);
+        try
+        {
+            missing.prefetch(Arrays.asList(createPack("base")));
+            assertNull(missing.getPack("base"));
+        }
+        finally
+        {
+            missing.cleanUp();
+        }
+    }
+
+    /**
+     * Verifies that a pack has been downloaded with the expected content.
+     *
+     * @param name the pack name
+     * @throws Exception for any error
+     */
+    private void checkPack(String name) throws Exception
+    {
+        String url = prefetcher.getPack(name);
+        assertNotNull(url);
+        File file = new File(new URL(url).getPath());
+        assertEquals("content of /install.pack-" + name + ".jar", FileUtils.readFileToString(file, "UTF-8"));
+    }
+
+    /**
+     * Creates a pack.
+     *
+     * @param name the pack name
+     * @return a new pack
+     */
+    private Pack createPack(String name)
+    {
+        return new Pack(name, null, null, Collections.<OsModel>emptyList(), null, true, true, false, null, true, 0);
+    }
+}
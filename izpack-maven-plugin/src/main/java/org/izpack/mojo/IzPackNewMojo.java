@@ -48,7 +48,7 @@ public class IzPackNewMojo extends AbstractMojo
     private MavenProjectHelper projectHelper;
 
     /**
-     * Format compression. Choices are bzip2, default
+     * Format compression. Choices are bzip2, lz4, raw, default
      *
      * @parameter default-value="default"
      */
@@ -97,6 +97,30 @@ public class IzPackNewMojo extends AbstractMojo
      */
     private int comprLevel;
 
+    /**
+     * Number of threads used to compress packs. Packs are compressed sequentially by default (1).
+     * Use 0 to use one thread per processor
+     *
+     * @parameter default-value="1"
+     */
+    private int packThreads;
+
+    /**
+     * Directory in which to cache compressed packs between builds. Packs whose inputs haven't changed are not
+     * compressed again. Packs are not cached by default
+     *
+     * @parameter expression="${izpack.buildCache}"
+     */
+    private File buildCache;
+
+    /**
+     * Previous installer jar to create a patch installer for. The patch only contains files that were added or
+     * changed since that installer. A full installer is created by default
+     *
+     * @parameter expression="${izpack.patchBase}"
+     */
+    private File patchBase;
+
     /**
      * Whether to automatically include project.url from Maven into
      * IzPack info header
@@ -273,8 +297,18 @@ public class IzPackNewMojo extends AbstractMojo
                 info.setAppURL(project.getUrl());
             }
         }
-        return new CompilerData(comprFormat, kind, installFile, null, baseDir, jarFile.getPath(),
-                                mkdirs, comprLevel, info);
+        CompilerData compilerData = new CompilerData(comprFormat, kind, installFile, null, baseDir,
+                                                     jarFile.getPath(), mkdirs, comprLevel, info);
+        compilerData.setPackThreads(packThreads);
+        if (buildCache != null)
+        {
+            compilerData.setBuildCache(buildCache.getAbsolutePath());
+        }
+        if (patchBase != null)
+        {
+            compilerData.setPatchBase(patchBase.getAbsolutePath());
+        }
+        return compilerData;
     }
 
 }
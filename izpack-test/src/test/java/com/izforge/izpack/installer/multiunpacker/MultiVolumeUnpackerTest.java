@@ -33,7 +33,9 @@ import java.io.ObjectInputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Rule;
@@ -148,6 +150,15 @@ public class MultiVolumeUnpackerTest
         // verify the loose pack files are present
         assertTrue(new File(packageDir, file10.getName()).exists());
 
+        // verify each pack starts in a new volume, as none of them fit in the space left by the previous pack.
+        // The volume holding pack1 can then be removed, as pack1 won't be installed
+        Map<String, long[]> locations = getLocations(resources);
+        assertEquals(0, locations.get("base")[0]);
+        assertEquals(1, locations.get("pack1")[0]);
+        assertEquals(2, locations.get("pack2")[0]);
+        assertEquals(-1, locations.get("pack3")[0]);
+        assertTrue(new File(packageDir, "installer.pak.1").delete());
+
         // unpack the installer
         AutomatedInstallData installData = createInstallData(packageDir, installDir, resources);
         setSelectedPacks(installData, "base", "pack2", "pack3");  // exclude pack1 from installation
@@ -223,24 +234,44 @@ public class MultiVolumeUnpackerTest
         info.close();
         assertTrue(count >= 1);
 
-        // verify the primary volume exists, with the expected size
+        // verify the primary volume exists, and doesn't exceed the maximum size
         File volume = new File(dir, name);
         assertTrue(volume.exists());
-        assertEquals(maxFirstVolumeSize, volume.length());
+        assertTrue(volume.length() <= maxFirstVolumeSize);
 
-        // check the existence and size of the remaining volumes
+        // check the existence and size of the remaining volumes. Volumes may not be full, as packs are only split
+        // across volumes if they don't fit in a single volume
         for (int i = 1; i < count; ++i)
         {
             volume = new File(dir, name + "." + i);
             assertTrue(volume.exists());
-            if (i < count - 1)
-            {
-                // can't check the size of the last volume
-                assertEquals(maxVolumeSize, volume.length());
-            }
+            assertTrue(volume.length() <= maxVolumeSize);
         }
     }
 
+    /**
+     * Returns the location of each pack's data in the volumes.
+     *
+     * @param resources the resources
+     * @return the volume index, offset and length of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private Map<String, long[]> getLocations(Resources resources) throws IOException
+    {
+        Map<String, long[]> result = new HashMap<String, long[]>();
+        ObjectInputStream info = new ObjectInputStream(resources.getInputStream(MultiVolumeUnpacker.VOLUMES_INFO));
+        info.readInt();
+        info.readUTF();
+        int packs = info.readInt();
+        for (int i = 0; i < packs; ++i)
+        {
+            String name = info.readUTF();
+            result.put(name, new long[]{info.readInt(), info.readLong(), info.readLong()});
+        }
+        info.close();
+        return result;
+    }
+
     /**
      * Creates a new unpacker.
      *
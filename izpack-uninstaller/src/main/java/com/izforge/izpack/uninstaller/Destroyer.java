@@ -25,7 +25,17 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -81,11 +91,21 @@ public class Destroyer implements Runnable
      */
     private boolean forceDelete;
 
+    /**
+     * The no. of threads to delete files with. If <tt>1</tt>, files are deleted serially.
+     */
+    private int threads = 1;
+
     /**
      * Tracks the no. of files that couldn't be deleted.
      */
     private List<File> failed = new ArrayList<File>();
 
+    /**
+     * The no. of files deleted by each task, when deleting in parallel.
+     */
+    private static final int BATCH_SIZE = 64;
+
     /**
      * The logger.
      */
@@ -138,6 +158,20 @@ public class Destroyer implements Runnable
         this.forceDelete = force;
     }
 
+    /**
+     * Sets the no. of threads to delete files with.
+     * <p/>
+     * Files are deleted in parallel, deepest directory level first, so that directories are only removed after their
+     * contents. This is only done if no uninstaller listener needs to be notified of each file deleted; otherwise,
+     * files are deleted serially.
+     *
+     * @param threads the no. of threads. If <tt>1</tt>, files are deleted serially
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
     /**
      * Runs the destroyer.
      */
@@ -195,18 +229,14 @@ public class Destroyer implements Runnable
             listener.startAction("destroy", size);
         }
 
-        for (int i = 0; i < size; i++)
+        List<File> remaining;
+        if (threads > 1 && !listeners.isFileListener())
         {
-            File file = files.get(i);
-            listeners.beforeDelete(file, listener);
-
-            delete(file);
-
-            listeners.afterDelete(file, listener);
-            if (listener != null)
-            {
-                listener.progress(i, file.getAbsolutePath());
-            }
+            remaining = deleteParallel(files);
+        }
+        else
+        {
+            remaining = deleteSerial(files);
         }
 
         listeners.afterDeletion(files, listener);
@@ -216,14 +246,14 @@ public class Destroyer implements Runnable
         // We make a complementary cleanup
         if (listener != null)
         {
-            listener.progress(log.getInstalled().size(), "[ cleanups ]");
+            listener.progress(size, "[ cleanups ]");
         }
 
         File installPath = new File(log.getInstallPath());
         cleanup(installPath);
 
         // verify that the files no longer exist. Check this here, as the root scripts may have performed cleanup.
-        checkDeletion(files, installPath);
+        checkDeletion(remaining, installPath);
 
         if (listener != null)
         {
@@ -231,10 +261,147 @@ public class Destroyer implements Runnable
         }
     }
 
+    /**
+     * Deletes files one at a time, notifying listeners of each file.
+     *
+     * @param files the files to delete, in leaf first order
+     * @return the files that couldn't be deleted
+     */
+    private List<File> deleteSerial(List<File> files)
+    {
+        List<File> remaining = new ArrayList<File>();
+        for (int i = 0; i < files.size(); i++)
+        {
+            File file = files.get(i);
+            listeners.beforeDelete(file, listener);
+
+            if (!delete(file))
+            {
+                remaining.add(file);
+            }
+
+            listeners.afterDelete(file, listener);
+            if (listener != null)
+            {
+                listener.progress(i, file.getAbsolutePath());
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Deletes files using a pool of {@link #threads} threads.
+     * <p/>
+     * The files are grouped by depth. Each group is deleted in batches, deepest first, and a group is only started
+     * when the previous one has completed, so that directories are only removed after their contents.
+     * <p/>
+     * Progress is reported from the calling thread as each batch completes.
+     *
+     * @param files the files to delete
+     * @return the files that couldn't be deleted
+     * @throws InterruptedException if the calling thread is interrupted
+     * @throws ExecutionException   if a batch fails
+     */
+    private List<File> deleteParallel(List<File> files) throws InterruptedException, ExecutionException
+    {
+        Map<Integer, List<File>> levels = new TreeMap<Integer, List<File>>(Collections.reverseOrder());
+        for (File file : files)
+        {
+            Integer depth = getDepth(file);
+            List<File> level = levels.get(depth);
+            if (level == null)
+            {
+                level = new ArrayList<File>();
+                levels.put(depth, level);
+            }
+            level.add(file);
+        }
+
+        List<File> remaining = new ArrayList<File>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            CompletionService<List<File>> service = new ExecutorCompletionService<List<File>>(executor);
+            int deleted = 0;
+            for (List<File> level : levels.values())
+            {
+                int batches = 0;
+                for (int i = 0; i < level.size(); i += BATCH_SIZE)
+                {
+                    final List<File> batch = level.subList(i, Math.min(i + BATCH_SIZE, level.size()));
+                    service.submit(new Callable<List<File>>()
+                    {
+                        @Override
+                        public List<File> call()
+                        {
+                            return delete(batch);
+                        }
+                    });
+                    ++batches;
+                }
+                int done = 0;
+                for (int i = 0; i < batches; ++i)
+                {
+                    remaining.addAll(service.take().get());
+                    done = Math.min(done + BATCH_SIZE, level.size());
+                    if (listener != null)
+                    {
+                        listener.progress(deleted + done - 1, level.get(done - 1).getAbsolutePath());
+                    }
+                }
+                deleted += level.size();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return remaining;
+    }
+
+    /**
+     * Deletes a batch of files.
+     *
+     * @param files the files to delete
+     * @return the files that couldn't be deleted
+     */
+    private List<File> delete(Collection<File> files)
+    {
+        List<File> remaining = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (!delete(file))
+            {
+                remaining.add(file);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Returns the depth of a file, i.e. the no. of separators in its path.
+     *
+     * @param file the file
+     * @return the depth of the file
+     */
+    private int getDepth(File file)
+    {
+        String path = file.getPath();
+        int depth = 0;
+        for (int i = 0; i < path.length(); ++i)
+        {
+            if (path.charAt(i) == File.separatorChar)
+            {
+                ++depth;
+            }
+        }
+        return depth;
+    }
+
     /**
      * Verifies that the installed files have been deleted.
      *
-     * @param files       the files to check
+     * @param files       the files that couldn't be deleted
      * @param installPath the installation path
      */
     private void checkDeletion(List<File> files, File installPath)
@@ -282,13 +449,16 @@ public class Destroyer implements Runnable
      * Deletes a file.
      *
      * @param file the file to delete
+     * @return <tt>true</tt> if the file was deleted or didn't exist, otherwise <tt>false</tt>
      */
-    private void delete(File file)
+    private boolean delete(File file)
     {
-        if (file.exists() && !file.delete())
+        if (!file.delete() && file.exists())
         {
             logger.info("Failed to delete: " + file);
+            return false;
         }
+        return true;
     }
 
 }
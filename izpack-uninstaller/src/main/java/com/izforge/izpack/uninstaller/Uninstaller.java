@@ -141,6 +141,7 @@ public class Uninstaller
                     force = true;
                 }
             }
+            container.getComponent(Destroyer.class).setThreads(getThreads(args));
             uninstaller.uninstall(force);
         }
         catch (Exception err)
@@ -174,6 +175,7 @@ public class Uninstaller
                     }
 
                     UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                    container.getComponent(Destroyer.class).setThreads(getThreads(args));
                     UninstallerFrame uninstaller = container.getComponent(UninstallerFrame.class);
                     uninstaller.init(displayForceOption, forceOptionState);
                 }
@@ -185,6 +187,39 @@ public class Uninstaller
         });
     }
 
+    /**
+     * Determines the no. of threads to delete files with.
+     * <p/>
+     * This is specified by <em>-j [threads]</em>. If the no. of threads is omitted, twice the no. of available
+     * processors is used, as deletion is typically limited by I/O rather than CPU.
+     *
+     * @param args the command line arguments
+     * @return the no. of threads. Defaults to <tt>1</tt>
+     */
+    static int getThreads(String[] args)
+    {
+        int threads = 1;
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-j"))
+            {
+                threads = 2 * Runtime.getRuntime().availableProcessors();
+                if (i + 1 < args.length)
+                {
+                    try
+                    {
+                        threads = Integer.parseInt(args[i + 1]);
+                    }
+                    catch (NumberFormatException ignore)
+                    {
+                        // use the default
+                    }
+                }
+            }
+        }
+        return threads;
+    }
+
     private static void shutdown(UninstallerContainer container, Exception error)
     {
         logger.log(Level.SEVERE, error.getMessage(), error);
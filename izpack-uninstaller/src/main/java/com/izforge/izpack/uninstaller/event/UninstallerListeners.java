@@ -81,6 +81,17 @@ public class UninstallerListeners
         }
     }
 
+    /**
+     * Determines if any of the listeners should be notified of file and directory events.
+     *
+     * @return <tt>true</tt> if {@link #beforeDelete(File, ProgressListener)} and
+     *         {@link #afterDelete(File, ProgressListener)} notify listeners
+     */
+    public boolean isFileListener()
+    {
+        return fileListener;
+    }
+
     /**
      * Initialises the listeners.
      *
@@ -29,7 +29,6 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.TreeSet;
 
 import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.resource.Resources;
@@ -161,6 +160,9 @@ public class InstallLog
 
     /**
      * Returns the installed files, in leaf first order.
+     * <p/>
+     * Installers write the log in leaf first order, so it is read as is; older logs are sorted once read.
+     * Duplicates are removed.
      *
      * @param reader the <em>install.log</em> reader
      * @return the installed files
@@ -168,17 +170,36 @@ public class InstallLog
      */
     private List<File> getFiles(BufferedReader reader) throws IOException
     {
-        TreeSet<File> files = new TreeSet<File>(Collections.reverseOrder());
+        ArrayList<File> files = new ArrayList<File>();
+        boolean sorted = true;
+        File last = null;
         String read = reader.readLine();
         while (read != null)
         {
-            files.add(new File(read));
+            File file = new File(read);
+            if (last != null && sorted && last.compareTo(file) <= 0)
+            {
+                sorted = false;
+            }
+            files.add(file);
+            last = file;
             read = reader.readLine();
         }
-
-        // We return it
-        return new ArrayList<File>(files);
+        if (!sorted)
+        {
+            Collections.sort(files, Collections.reverseOrder());
+            int size = 0;
+            for (File file : files)
+            {
+                if (size == 0 || !file.equals(files.get(size - 1)))
+                {
+                    files.set(size++, file);
+                }
+            }
+            files.subList(size, files.size()).clear();
+        }
+        files.trimToSize();
+        return files;
     }
 
-
 }
@@ -0,0 +1,164 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.uninstaller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import com.izforge.izpack.api.event.UninstallerListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.uninstaller.event.UninstallerListeners;
+import com.izforge.izpack.uninstaller.resource.Executables;
+import com.izforge.izpack.uninstaller.resource.InstallLog;
+import com.izforge.izpack.uninstaller.resource.RootScripts;
+
+
+/**
+ * Tests the {@link Destroyer}.
+ */
+public class DestroyerTest
+{
+
+    /**
+     * Temporary folder to install files to.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The installation directory.
+     */
+    private File installPath;
+
+    /**
+     * The installed files, in leaf first order.
+     */
+    private List<File> installed;
+
+    /**
+     * The installation log.
+     */
+    private InstallLog log;
+
+    /**
+     * The prompt.
+     */
+    private Prompt prompt;
+
+    /**
+     * The executables.
+     */
+    private Executables executables;
+
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        installPath = temporaryFolder.newFolder("install");
+        installed = new ArrayList<File>();
+        for (int i = 0; i < 5; ++i)
+        {
+            File dir = new File(installPath, "dir" + i);
+            installed.add(dir);
+            for (int j = 0; j < 4; ++j)
+            {
+                File subdir = new File(dir, "subdir" + j);
+                assertTrue(subdir.mkdirs());
+                installed.add(subdir);
+                for (int k = 0; k < 5; ++k)
+                {
+                    File file = new File(subdir, "file" + k);
+                    assertTrue(file.createNewFile());
+                    installed.add(file);
+                }
+            }
+        }
+        Collections.sort(installed, Collections.reverseOrder());
+
+        log = Mockito.mock(InstallLog.class);
+        when(log.getInstalled()).thenReturn(installed);
+        when(log.getInstallPath()).thenReturn(installPath.getPath());
+
+        prompt = Mockito.mock(Prompt.class);
+        executables = Mockito.mock(Executables.class);
+        when(executables.run()).thenReturn(true);
+    }
+
+    /**
+     * Verifies that files are deleted in parallel, directories included.
+     */
+    @Test
+    public void testDeleteParallel()
+    {
+        Destroyer destroyer = new Destroyer(log, new UninstallerListeners(prompt), executables,
+                                            Mockito.mock(RootScripts.class), prompt);
+        destroyer.setThreads(4);
+        destroyer.run();
+
+        assertTrue(destroyer.getFailedToDelete().isEmpty());
+        assertFalse(installPath.exists());
+    }
+
+    /**
+     * Verifies that files are deleted serially, in leaf first order, when there is a listener for each file.
+     */
+    @Test
+    public void testDeleteWithFileListener()
+    {
+        UninstallerListener listener = Mockito.mock(UninstallerListener.class);
+        when(listener.isFileListener()).thenReturn(true);
+        UninstallerListeners listeners = new UninstallerListeners(prompt);
+        listeners.add(listener);
+
+        Destroyer destroyer = new Destroyer(log, listeners, executables, Mockito.mock(RootScripts.class), prompt);
+        destroyer.setThreads(4);
+        destroyer.run();
+
+        assertTrue(destroyer.getFailedToDelete().isEmpty());
+        assertFalse(installPath.exists());
+
+        InOrder order = inOrder(listener);
+        for (File file : installed)
+        {
+            order.verify(listener).beforeDelete(file);
+            order.verify(listener).afterDelete(file);
+        }
+    }
+}
@@ -104,4 +104,36 @@ public class InstallLogTest
         assertEquals(new File("myapp/dir1"), installed.get(3));
     }
 
+    /**
+     * Verifies that a log that is already in leaf first order is read as is, and that duplicates are removed from
+     * one that isn't.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testInstalledDuplicates() throws IOException
+    {
+        String sorted = "myapp\n"
+                + "myapp/dir2/file1\n"
+                + "myapp/dir2\n"
+                + "myapp/dir1\n";
+        when(resources.getInputStream("install.log")).thenReturn(new ReaderInputStream(new StringReader(sorted)));
+        List<File> installed = new InstallLog(resources).getInstalled();
+        assertEquals(3, installed.size());
+        assertEquals(new File("myapp/dir2/file1"), installed.get(0));
+        assertEquals(new File("myapp/dir2"), installed.get(1));
+        assertEquals(new File("myapp/dir1"), installed.get(2));
+
+        String duplicates = "myapp\n"
+                + "myapp/dir1\n"
+                + "myapp/dir2/file1\n"
+                + "myapp/dir1\n"
+                + "myapp/dir2/file1\n";
+        when(resources.getInputStream("install.log")).thenReturn(new ReaderInputStream(new StringReader(duplicates)));
+        installed = new InstallLog(resources).getInstalled();
+        assertEquals(2, installed.size());
+        assertEquals(new File("myapp/dir2/file1"), installed.get(0));
+        assertEquals(new File("myapp/dir1"), installed.get(1));
+    }
+
 }
@@ -0,0 +1,310 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * A pack file source that is an entry in a zip archive.
+ * <p/>
+ * This allows archive content to be added to packs without extracting it to temporary files first. The length,
+ * modification time and type of the entry are taken from the archive's central directory, and its content is
+ * streamed from the archive when the pack is written. Use {@link #open(File)} to read the content of a pack file
+ * source that may be an archive entry.
+ * <p/>
+ * The path of an entry is that of the archive, followed by the entry name.
+ */
+public class ArchiveEntryFile extends File
+{
+
+    private static final long serialVersionUID = -1853209485766394286L;
+
+    /**
+     * The archive.
+     */
+    private final Archive archive;
+
+    /**
+     * The entry name.
+     */
+    private final String entryName;
+
+    /**
+     * Determines if the entry is a directory.
+     */
+    private final boolean directory;
+
+    /**
+     * The uncompressed length of the entry.
+     */
+    private final long length;
+
+    /**
+     * The entry modification time.
+     */
+    private final long lastModified;
+
+
+    /**
+     * Constructs an <tt>ArchiveEntryFile</tt>.
+     *
+     * @param archive the archive
+     * @param entry   the archive entry
+     * @throws IOException if the length of the entry is unknown
+     */
+    public ArchiveEntryFile(Archive archive, ZipEntry entry) throws IOException
+    {
+        super(archive.getFile(), entry.getName());
+        this.archive = archive;
+        this.entryName = entry.getName();
+        this.directory = entry.isDirectory();
+        this.length = directory ? 0 : entry.getSize();
+        this.lastModified = Math.max(entry.getTime(), 0);
+        if (length < 0)
+        {
+            throw new IOException("Unknown size for " + entryName + " in archive " + archive.getFile());
+        }
+    }
+
+    /**
+     * Returns the entries of an archive, in the order they appear in its central directory.
+     * <p/>
+     * The archive is closed on return. It is reopened when entry content is read.
+     *
+     * @param file the archive file
+     * @return the archive entries
+     * @throws IOException if the archive cannot be read
+     */
+    public static List<ArchiveEntryFile> list(File file) throws IOException
+    {
+        List<ArchiveEntryFile> result = new ArrayList<ArchiveEntryFile>();
+        Archive archive = new Archive(file);
+        ZipFile zip = new ZipFile(file);
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                result.add(new ArchiveEntryFile(archive, entries.nextElement()));
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return result;
+    }
+
+    /**
+     * Opens a stream to read the content of a pack file source.
+     *
+     * @param file the file. May be an <tt>ArchiveEntryFile</tt>
+     * @return a stream to read the file content
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(File file) throws IOException
+    {
+        return (file instanceof ArchiveEntryFile) ? ((ArchiveEntryFile) file).openStream()
+                : new FileInputStream(file);
+    }
+
+    /**
+     * Opens a stream to read the content of the entry.
+     *
+     * @return a stream to read the entry content
+     * @throws IOException if the archive cannot be read
+     */
+    public InputStream openStream() throws IOException
+    {
+        return archive.getInputStream(entryName);
+    }
+
+    /**
+     * Returns the archive that the entry belongs to.
+     *
+     * @return the archive
+     */
+    public Archive getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * Returns the entry name.
+     *
+     * @return the entry name
+     */
+    public String getEntryName()
+    {
+        return entryName;
+    }
+
+    /**
+     * Archive entries always exist.
+     *
+     * @return <tt>true</tt>
+     */
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    /**
+     * Determines if the entry is a directory.
+     *
+     * @return <tt>true</tt> if the entry is a directory
+     */
+    @Override
+    public boolean isDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Determines if the entry is a file.
+     *
+     * @return <tt>true</tt> if the entry is a file
+     */
+    @Override
+    public boolean isFile()
+    {
+        return !directory;
+    }
+
+    /**
+     * Returns the uncompressed length of the entry.
+     *
+     * @return the entry length, or <tt>0</tt> if the entry is a directory
+     */
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the modification time of the entry.
+     *
+     * @return the modification time, or <tt>0</tt> if it is unknown
+     */
+    @Override
+    public long lastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * A zip archive, shared by its entries.
+     * <p/>
+     * The archive is opened when entry content is first read, and remains open until {@link #close() closed}.
+     * It is safe to read entries from several threads.
+     */
+    public static class Archive implements Closeable, Serializable
+    {
+
+        private static final long serialVersionUID = 5291638025148337490L;
+
+        /**
+         * The archive file.
+         */
+        private final File file;
+
+        /**
+         * The open archive. May be <tt>null</tt>.
+         */
+        private transient ZipFile zip;
+
+
+        /**
+         * Constructs an <tt>Archive</tt>.
+         *
+         * @param file the archive file
+         */
+        public Archive(File file)
+        {
+            this.file = file;
+        }
+
+        /**
+         * Returns the archive file.
+         *
+         * @return the archive file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Opens a stream to read an entry, opening the archive if required.
+         *
+         * @param name the entry name
+         * @return a stream to read the entry
+         * @throws IOException if the archive cannot be read, or doesn't contain the entry
+         */
+        public synchronized InputStream getInputStream(String name) throws IOException
+        {
+            if (zip == null)
+            {
+                zip = new ZipFile(file);
+            }
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null)
+            {
+                throw new FileNotFoundException(name + " not found in archive " + file);
+            }
+            return zip.getInputStream(entry);
+        }
+
+        /**
+         * Closes the archive, if it is open. Any open entry streams are closed.
+         *
+         * @throws IOException for any I/O error
+         */
+        @Override
+        public synchronized void close() throws IOException
+        {
+            if (zip != null)
+            {
+                try
+                {
+                    zip.close();
+                }
+                finally
+                {
+                    zip = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * The signatures of the fixed size blocks of a file, used to create a {@link Delta} against the file without having
+ * its content.
+ * <p/>
+ * Each block has a weak checksum that can be rolled over a file a byte at a time, and a strong checksum, the first
+ * {@link #STRONG_LENGTH} bytes of the block's SHA-1 digest, to confirm matches. The last block may be shorter than
+ * the others.
+ */
+public class BlockSignatures
+{
+
+    /**
+     * The length of the strong checksums, in bytes.
+     */
+    public static final int STRONG_LENGTH = 8;
+
+    /**
+     * The minimum block size.
+     */
+    private static final int MIN_BLOCK_SIZE = 4096;
+
+    /**
+     * The maximum block size.
+     */
+    private static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The length of the file.
+     */
+    private final long length;
+
+    /**
+     * The block size.
+     */
+    private final int blockSize;
+
+    /**
+     * The weak checksum of each block.
+     */
+    private final int[] weak;
+
+    /**
+     * The strong checksum of each block.
+     */
+    private final byte[][] strong;
+
+
+    /**
+     * Constructs a {@code BlockSignatures}.
+     *
+     * @param length    the length of the file
+     * @param blockSize the block size
+     * @param weak      the weak checksum of each block
+     * @param strong    the strong checksum of each block
+     */
+    private BlockSignatures(long length, int blockSize, int[] weak, byte[][] strong)
+    {
+        this.length = length;
+        this.blockSize = blockSize;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    /**
+     * Returns the length of the file.
+     *
+     * @return the file length
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the block size.
+     *
+     * @return the block size
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Returns the no. of blocks.
+     *
+     * @return the no. of blocks
+     */
+    public int getBlocks()
+    {
+        return weak.length;
+    }
+
+    /**
+     * Returns the length of a block.
+     *
+     * @param block the block
+     * @return the block length
+     */
+    public int getBlockLength(int block)
+    {
+        return (int) Math.min(blockSize, length - (long) block * blockSize);
+    }
+
+    /**
+     * Returns the weak checksum of a block.
+     *
+     * @param block the block
+     * @return the weak checksum
+     */
+    public int getWeak(int block)
+    {
+        return weak[block];
+    }
+
+    /**
+     * Returns the strong checksum of a block.
+     *
+     * @param block the block
+     * @return the strong checksum
+     */
+    public byte[] getStrong(int block)
+    {
+        return strong[block];
+    }
+
+    /**
+     * Computes the signatures of the content of a file.
+     * <p/>
+     * The block size is the square root of the file length, rounded up to a power of two, within limits.
+     *
+     * @param in     the file content. This isn't closed
+     * @param length the length of the file
+     * @return the signatures
+     * @throws IOException if the content cannot be read, or is shorter than expected
+     */
+    public static BlockSignatures create(InputStream in, long length) throws IOException
+    {
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < MAX_BLOCK_SIZE && (long) blockSize * blockSize < length)
+        {
+            blockSize <<= 1;
+        }
+        int blocks = (int) ((length + blockSize - 1) / blockSize);
+        int[] weak = new int[blocks];
+        byte[][] strong = new byte[blocks][];
+        MessageDigest digest = getDigest();
+        byte[] buffer = new byte[blockSize];
+        for (int i = 0; i < blocks; ++i)
+        {
+            int size = (int) Math.min(blockSize, length - (long) i * blockSize);
+            int read = 0;
+            while (read < size)
+            {
+                int count = in.read(buffer, read, size - read);
+                if (count == -1)
+                {
+                    throw new EOFException("Expected " + length + " bytes but read " + ((long) i * blockSize + read));
+                }
+                read += count;
+            }
+            weak[i] = weak(buffer, 0, size);
+            strong[i] = strong(digest, buffer, 0, size);
+        }
+        return new BlockSignatures(length, blockSize, weak, strong);
+    }
+
+    /**
+     * Computes the weak checksum of a block.
+     * <p/>
+     * The checksum is made up of two 16 bit sums: the sum of the bytes in the low half, and the sum of the bytes
+     * weighted by their distance from the end of the block in the high half. It can be {@link #roll rolled}.
+     *
+     * @param buffer the buffer containing the block
+     * @param offset the offset of the block in the buffer
+     * @param length the block length
+     * @return the weak checksum
+     */
+    public static int weak(byte[] buffer, int offset, int length)
+    {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            int value = buffer[offset + i] & 0xFF;
+            a += value;
+            b += (length - i) * value;
+        }
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    /**
+     * Rolls a weak checksum forward a byte.
+     *
+     * @param checksum the checksum of the block starting at the removed byte
+     * @param removed  the byte leaving the block
+     * @param added    the byte entering the block
+     * @param length   the block length
+     * @return the checksum of the block starting after the removed byte
+     */
+    public static int roll(int checksum, byte removed, byte added, int length)
+    {
+        int out = removed & 0xFF;
+        int a = (checksum - out + (added & 0xFF)) & 0xFFFF;
+        int b = ((checksum >>> 16) - length * out + a) & 0xFFFF;
+        return a | (b << 16);
+    }
+
+    /**
+     * Computes the strong checksum of a block.
+     *
+     * @param digest the SHA-1 digest to use
+     * @param buffer the buffer containing the block
+     * @param offset the offset of the block in the buffer
+     * @param length the block length
+     * @return the strong checksum
+     */
+    public static byte[] strong(MessageDigest digest, byte[] buffer, int offset, int length)
+    {
+        digest.reset();
+        digest.update(buffer, offset, length);
+        byte[] result = new byte[STRONG_LENGTH];
+        System.arraycopy(digest.digest(), 0, result, 0, STRONG_LENGTH);
+        return result;
+    }
+
+    /**
+     * Returns a SHA-1 message digest.
+     *
+     * @return a new digest
+     */
+    public static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-1 digest is not supported", exception);
+        }
+    }
+
+    /**
+     * Writes the signatures.
+     *
+     * @param out the stream to write to
+     * @throws IOException for any I/O error
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeLong(length);
+        out.writeInt(blockSize);
+        for (int i = 0; i < weak.length; ++i)
+        {
+            out.writeInt(weak[i]);
+            out.write(strong[i]);
+        }
+    }
+
+    /**
+     * Reads signatures written by {@link #write}.
+     *
+     * @param in the stream to read from
+     * @return the signatures
+     * @throws IOException for any I/O error
+     */
+    public static BlockSignatures read(DataInput in) throws IOException
+    {
+        long length = in.readLong();
+        int blockSize = in.readInt();
+        if (blockSize <= 0 || length < 0)
+        {
+            throw new IOException("Invalid block signatures");
+        }
+        int blocks = (int) ((length + blockSize - 1) / blockSize);
+        int[] weak = new int[blocks];
+        byte[][] strong = new byte[blocks][STRONG_LENGTH];
+        for (int i = 0; i < blocks; ++i)
+        {
+            weak[i] = in.readInt();
+            in.readFully(strong[i]);
+        }
+        return new BlockSignatures(length, blockSize, weak, strong);
+    }
+}
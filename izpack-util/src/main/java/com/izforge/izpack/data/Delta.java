@@ -0,0 +1,71 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+/**
+ * The format of a delta, which recreates the content of a file from an earlier version of it.
+ * <p/>
+ * A delta starts with a header: the format {@link #VERSION}, the length and SHA-1 digest of the earlier version (the
+ * base), and the block size of the base's {@link BlockSignatures}. A sequence of instructions follows, each an
+ * instruction byte and its operands:
+ * <ul>
+ * <li>{@link #COPY}: the int index of the first block of the base to copy, and the int no. of blocks</li>
+ * <li>{@link #INSERT}: the int no. of bytes, and the bytes to insert</li>
+ * <li>{@link #END}: no operands</li>
+ * </ul>
+ * A delta is stored in the installer as a resource named {@code packs/delta-<id>}, where the id is stored in the
+ * pack stream in place of the file content. The whole content of each delta encoded file is stored in the patch
+ * fallback jar as an entry named {@code full-<id>}, for installations whose copy of the base is missing or
+ * modified.
+ */
+public class Delta
+{
+
+    /**
+     * The format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Ends the delta.
+     */
+    public static final int END = 0;
+
+    /**
+     * Copies blocks from the base.
+     */
+    public static final int COPY = 1;
+
+    /**
+     * Inserts bytes from the delta.
+     */
+    public static final int INSERT = 2;
+
+    /**
+     * The name prefix of delta resources.
+     */
+    public static final String RESOURCE = "packs/delta-";
+
+    /**
+     * The name prefix of entries in the patch fallback jar.
+     */
+    public static final String FALLBACK_ENTRY = "full-";
+
+}
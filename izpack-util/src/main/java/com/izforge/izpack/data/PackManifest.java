@@ -0,0 +1,387 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackFileReader;
+import com.izforge.izpack.api.data.PackFileWriter;
+
+
+/**
+ * The manifest of the files in each pack of an installer.
+ * <p/>
+ * The manifest is stored in the installer, and records the metadata of each pack file, including its target path
+ * and content digest. This allows a patch installer to be created against the installer, and an installation to be
+ * verified, without decompressing its packs.
+ * <p/>
+ * Files that are parsed or executed after unpacking are recorded as modified, as their installed content differs
+ * from their pack content.
+ * <p/>
+ * Where known, the offset of the content of each file in its pack stream is also recorded, along with that of the
+ * pack's parsable files, executable files and update checks. This allows an installation to be repaired by
+ * extracting only the damaged files.
+ * <p/>
+ * Large files may also have the {@link BlockSignatures} of their content recorded, so that a patch installer can
+ * store a {@link Delta} against their installed copy.
+ */
+public class PackManifest
+{
+
+    /**
+     * The manifest resource name.
+     */
+    public static final String NAME = "packs.manifest";
+
+    /**
+     * The manifest format version.
+     */
+    private static final int VERSION = 4;
+
+    /**
+     * The earliest manifest format version that can be read. Manifests prior to version 2 don't record modified
+     * files, those prior to version 3 don't record offsets, and those prior to version 4 don't record signatures.
+     */
+    private static final int MIN_VERSION = 1;
+
+    /**
+     * The pack files of each pack, keyed on pack name.
+     */
+    private final Map<String, List<PackFile>> packs = new LinkedHashMap<String, List<PackFile>>();
+
+    /**
+     * The pack files, keyed on target path.
+     */
+    private final Map<String, PackFile> files = new HashMap<String, PackFile>();
+
+    /**
+     * The name of the pack of each pack file, keyed on target path.
+     */
+    private final Map<String, String> filePacks = new HashMap<String, String>();
+
+    /**
+     * The target paths of files that are modified after unpacking.
+     */
+    private final Set<String> modified = new HashSet<String>();
+
+    /**
+     * The offsets of the content of each pack's files, followed by the offset of its parsable files, keyed on pack
+     * name.
+     */
+    private final Map<String, long[]> offsets = new HashMap<String, long[]>();
+
+    /**
+     * The block signatures of file content, keyed on target path.
+     */
+    private final Map<String, BlockSignatures> signatures = new HashMap<String, BlockSignatures>();
+
+
+    /**
+     * Returns the names of the packs.
+     *
+     * @return the pack names, in installer order
+     */
+    public Set<String> getPackNames()
+    {
+        return Collections.unmodifiableSet(packs.keySet());
+    }
+
+    /**
+     * Returns the files of a pack.
+     *
+     * @param pack the pack name
+     * @return the pack files. Empty if the pack doesn't exist
+     */
+    public List<PackFile> getPackFiles(String pack)
+    {
+        List<PackFile> result = packs.get(pack);
+        return (result != null) ? result : Collections.<PackFile>emptyList();
+    }
+
+    /**
+     * Returns the pack file with the specified target path.
+     *
+     * @param target the target path
+     * @return the corresponding pack file, or {@code null} if none is found
+     */
+    public PackFile getFile(String target)
+    {
+        return files.get(target);
+    }
+
+    /**
+     * Returns the name of the pack that installs a file.
+     *
+     * @param target the target path
+     * @return the pack name, or {@code null} if no pack installs the file
+     */
+    public String getPack(String target)
+    {
+        return filePacks.get(target);
+    }
+
+    /**
+     * Determines if a file is modified after unpacking, i.e. it is parsed or executed.
+     * <p/>
+     * The installed content of a modified file won't match the digest of its pack file.
+     *
+     * @param target the target path
+     * @return {@code true} if the file is modified after unpacking
+     */
+    public boolean isModified(String target)
+    {
+        return modified.contains(target);
+    }
+
+    /**
+     * Returns the offset of the content of a file in its pack stream.
+     *
+     * @param pack  the pack name
+     * @param index the index of the file in the pack
+     * @return the offset of the content in the uncompressed pack stream, or {@code -1} if the content isn't stored in
+     *         the pack or its offset isn't known
+     */
+    public long getOffset(String pack, int index)
+    {
+        long[] result = offsets.get(pack);
+        return (result != null) ? result[index] : -1;
+    }
+
+    /**
+     * Returns the offset of the parsable files of a pack in its pack stream. These are followed by the executable
+     * files and update checks.
+     *
+     * @param pack the pack name
+     * @return the offset in the uncompressed pack stream, or {@code -1} if it isn't known
+     */
+    public long getParsablesOffset(String pack)
+    {
+        long[] result = offsets.get(pack);
+        return (result != null) ? result[result.length - 1] : -1;
+    }
+
+    /**
+     * Returns the block signatures of the content of a file.
+     *
+     * @param target the target path
+     * @return the signatures, or {@code null} if they weren't recorded
+     */
+    public BlockSignatures getSignatures(String target)
+    {
+        return signatures.get(target);
+    }
+
+    /**
+     * Writes the manifest of a set of packs, without offsets or signatures.
+     *
+     * @param packs the packs
+     * @param out   the stream to write to
+     * @throws IOException for any I/O error
+     */
+    public static void write(List<PackInfo> packs, OutputStream out) throws IOException
+    {
+        write(packs, Collections.<String, long[]>emptyMap(), -1, out);
+    }
+
+    /**
+     * Writes the manifest of a set of packs.
+     *
+     * @param packs           the packs
+     * @param offsets         the offsets in each pack stream of the content of each pack file, or {@code -1} if the
+     *                        content isn't stored in the pack, followed by the offset of the pack's parsable files,
+     *                        keyed on pack name. Packs without offsets are repaired by reading the whole pack
+     * @param signatureLength the length from which the block signatures of files are recorded, or {@code -1} to
+     *                        record none. Files without a digest, such as those of loose packs, have no signatures
+     * @param out             the stream to write to
+     * @throws IOException for any I/O error
+     */
+    public static void write(List<PackInfo> packs, Map<String, long[]> offsets, long signatureLength,
+                             OutputStream out) throws IOException
+    {
+        ObjectOutputStream objOut = new ObjectOutputStream(out);
+        objOut.writeInt(VERSION);
+        objOut.writeInt(packs.size());
+        for (PackInfo packInfo : packs)
+        {
+            objOut.writeUTF(packInfo.getPack().getName());
+            PackFileWriter writer = new PackFileWriter(objOut);
+            writer.writeHeader(packInfo.getPackFiles().size());
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                writer.write(packFile);
+            }
+            List<String> paths = new ArrayList<String>();
+            for (ParsableFile parsable : packInfo.getParsables())
+            {
+                paths.add(parsable.getPath());
+            }
+            for (ExecutableFile executable : packInfo.getExecutables())
+            {
+                paths.add(executable.path);
+            }
+            objOut.writeInt(paths.size());
+            for (String path : paths)
+            {
+                objOut.writeUTF(path);
+            }
+            long[] packOffsets = offsets.get(packInfo.getPack().getName());
+            if (packOffsets != null && packOffsets.length != packInfo.getPackFiles().size() + 1)
+            {
+                throw new IllegalArgumentException("Invalid offsets for pack: " + packInfo.getPack().getName());
+            }
+            objOut.writeBoolean(packOffsets != null);
+            if (packOffsets != null)
+            {
+                for (long offset : packOffsets)
+                {
+                    objOut.writeLong(offset);
+                }
+            }
+            writeSignatures(packInfo, signatureLength, objOut);
+        }
+        objOut.flush();
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param in the stream to read from. This is closed on return
+     * @return the manifest
+     * @throws IOException if the manifest is invalid, or for any I/O error
+     */
+    public static PackManifest read(InputStream in) throws IOException
+    {
+        PackManifest result = new PackManifest();
+        ObjectInputStream objIn = new ObjectInputStream(in);
+        try
+        {
+            int version = objIn.readInt();
+            if (version < MIN_VERSION || version > VERSION)
+            {
+                throw new IOException("Unsupported pack manifest version: " + version);
+            }
+            int count = objIn.readInt();
+            for (int i = 0; i < count; ++i)
+            {
+                String name = objIn.readUTF();
+                PackFileReader reader = new PackFileReader(objIn);
+                int size = reader.readHeader();
+                List<PackFile> packFiles = new ArrayList<PackFile>(size);
+                for (int j = 0; j < size; ++j)
+                {
+                    PackFile packFile = reader.read();
+                    packFiles.add(packFile);
+                    result.files.put(packFile.getTargetPath(), packFile);
+                    result.filePacks.put(packFile.getTargetPath(), name);
+                }
+                result.packs.put(name, packFiles);
+                if (version >= 2)
+                {
+                    for (int j = objIn.readInt(); j > 0; --j)
+                    {
+                        result.modified.add(objIn.readUTF());
+                    }
+                }
+                if (version >= 3 && objIn.readBoolean())
+                {
+                    long[] packOffsets = new long[size + 1];
+                    for (int j = 0; j < packOffsets.length; ++j)
+                    {
+                        packOffsets[j] = objIn.readLong();
+                    }
+                    result.offsets.put(name, packOffsets);
+                }
+                if (version >= 4)
+                {
+                    for (int j = objIn.readInt(); j > 0; --j)
+                    {
+                        PackFile packFile = packFiles.get(objIn.readInt());
+                        result.signatures.put(packFile.getTargetPath(), BlockSignatures.read(objIn));
+                    }
+                }
+            }
+        }
+        catch (ClassNotFoundException exception)
+        {
+            throw new IOException("Failed to read pack manifest", exception);
+        }
+        finally
+        {
+            objIn.close();
+        }
+        return result;
+    }
+
+    /**
+     * Writes the block signatures of the files of a pack.
+     *
+     * @param packInfo        the pack
+     * @param signatureLength the length from which the signatures of files are written, or {@code -1} to write none
+     * @param out             the stream to write to
+     * @throws IOException if a file cannot be read, or for any I/O error
+     */
+    private static void writeSignatures(PackInfo packInfo, long signatureLength, ObjectOutputStream out)
+            throws IOException
+    {
+        Map<Integer, PackFile> files = new LinkedHashMap<Integer, PackFile>();
+        if (signatureLength >= 0 && !packInfo.getPack().isLoose())
+        {
+            int index = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                if (!packFile.isDirectory() && packFile.getDigest() != null && packFile.length() >= signatureLength
+                        && packFile.length() > 0)
+                {
+                    files.put(index, packFile);
+                }
+                ++index;
+            }
+        }
+        out.writeInt(files.size());
+        for (Map.Entry<Integer, PackFile> entry : files.entrySet())
+        {
+            PackFile packFile = entry.getValue();
+            InputStream in = new BufferedInputStream(ArchiveEntryFile.open(packInfo.getFile(packFile)));
+            try
+            {
+                out.writeInt(entry.getKey());
+                BlockSignatures.create(in, packFile.length()).write(out);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+}
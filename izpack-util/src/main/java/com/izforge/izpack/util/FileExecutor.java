@@ -37,6 +37,7 @@ import java.util.logging.Logger;
 
 import com.izforge.izpack.api.handler.AbstractUIHandler;
 import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.util.file.FilePermissions;
 
 /**
  * Executes a bunch of files. This class is intended to do a system dependent installation
@@ -329,15 +330,18 @@ public class FileExecutor
 
             if (ExecutableFile.BIN == efile.type && currentStage != ExecutableFile.UNINSTALL && isUnix)
             {
-                // fix executable permission for unix systems
+                // fix executable permission for unix systems. Only run chmod if it can't be done in-process
                 logger.fine("Making file executable (setting executable flag)");
-                String[] params = {"/bin/chmod", permissions, file.toString()};
-                exitStatus = executeCommand(params, output);
-                if (exitStatus != 0)
+                if (!FilePermissions.set(file, permissions))
                 {
-                    handler.emitWarning("file execution error", "Error executing \n" + params[0]
-                            + " " + params[1] + " " + params[2]);
-                    continue;
+                    String[] params = {"/bin/chmod", permissions, file.toString()};
+                    exitStatus = executeCommand(params, output);
+                    if (exitStatus != 0)
+                    {
+                        handler.emitWarning("file execution error", "Error executing \n" + params[0]
+                                + " " + params[1] + " " + params[2]);
+                        continue;
+                    }
                 }
             }
 
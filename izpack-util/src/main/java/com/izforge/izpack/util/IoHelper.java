@@ -45,6 +45,7 @@ import org.apache.tools.zip.ZipOutputStream;
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.util.file.FilePermissions;
 
 /**
  * <p>
@@ -322,6 +323,10 @@ public class IoHelper
         // Perform UNIX
         if (OsVersion.IS_UNIX)
         {
+            if (FilePermissions.set(new File(path), permissions))
+            {
+                return;
+            }
             String[] params = {"chmod", permissions, path};
             String[] output = new String[2];
             FileExecutor fe = new FileExecutor();
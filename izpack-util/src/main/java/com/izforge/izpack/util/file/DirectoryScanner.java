@@ -25,6 +25,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
@@ -34,6 +35,8 @@ import com.izforge.izpack.util.file.types.Resource;
 import com.izforge.izpack.util.file.types.ResourceFactory;
 import com.izforge.izpack.util.file.types.selectors.FileSelector;
 import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
+import com.izforge.izpack.util.file.types.selectors.TokenizedPath;
+import com.izforge.izpack.util.file.types.selectors.TokenizedPattern;
 
 /**
  * Class for scanning a directory for files/directories which match certain
@@ -333,6 +336,55 @@ public class DirectoryScanner
      */
     private String[] excludePatterns;
 
+    /**
+     * The include patterns that contain wildcards, compiled for matching.
+     * <p/>
+     * <p>Initialized along with includePatterns.</p>
+     */
+    private TokenizedPattern[] includeMatchers;
+
+    /**
+     * The exclude patterns that contain wildcards, compiled for matching.
+     * <p/>
+     * <p>Initialized along with excludePatterns.</p>
+     */
+    private TokenizedPattern[] excludeMatchers;
+
+    /**
+     * All include patterns, compiled for matching the start of paths.
+     * Used to prune directories that cannot hold included files.
+     * <p/>
+     * <p>Initialized along with includePatterns.</p>
+     */
+    private TokenizedPattern[] includeStartMatchers;
+
+    /**
+     * The exclude patterns ending in "**", minus the "**", compiled
+     * for matching directories whose entire contents are excluded.
+     * <p/>
+     * <p>Initialized along with excludePatterns.</p>
+     */
+    private TokenizedPattern[] contentExcludeMatchers;
+
+    /**
+     * Set of all exclude patterns.
+     * <p/>
+     * <p>Initialized along with excludePatterns.</p>
+     */
+    private Set<String> excludeSet = new HashSet<String>();
+
+    /**
+     * The files that have been included, excluded or deselected.
+     * Avoids searching the result vectors for each file.
+     */
+    private Set<String> filesAccounted = new HashSet<String>();
+
+    /**
+     * The directories that have been included, excluded or deselected.
+     * Avoids searching the result vectors for each directory.
+     */
+    private Set<String> dirsAccounted = new HashSet<String>();
+
     /**
      * Have the non-pattern sets and pattern arrays for in- and
      * excludes been initialized?
@@ -938,10 +990,11 @@ public class DirectoryScanner
                     }
                     if (myfile.isDirectory())
                     {
-                        if (isIncluded(currentelement)
+                        TokenizedPath path = new TokenizedPath(currentelement);
+                        if (isIncluded(path)
                                 && currentelement.length() > 0)
                         {
-                            accountForIncludedDir(currentelement, myfile, true);
+                            accountForIncludedDir(path, myfile, true);
                         }
                         else
                         {
@@ -965,7 +1018,7 @@ public class DirectoryScanner
                                 : originalpattern.equalsIgnoreCase(currentelement);
                         if (included)
                         {
-                            accountForIncludedFile(currentelement, myfile);
+                            accountForIncludedFile(new TokenizedPath(currentelement), myfile);
                         }
                     }
                 }
@@ -988,6 +1041,8 @@ public class DirectoryScanner
         dirsDeselected = new Vector<String>();
         everythingIncluded = (basedir != null);
         scannedDirs.clear();
+        filesAccounted.clear();
+        dirsAccounted.clear();
     }
 
     /**
@@ -1134,8 +1189,16 @@ public class DirectoryScanner
                     {
                         String name = vpath + newfile;
                         File file = new File(dir, newfile);
-                        (file.isDirectory()
-                                ? dirsExcluded : filesExcluded).addElement(name);
+                        if (file.isDirectory())
+                        {
+                            dirsAccounted.add(name);
+                            dirsExcluded.addElement(name);
+                        }
+                        else
+                        {
+                            filesAccounted.add(name);
+                            filesExcluded.addElement(name);
+                        }
                     }
                     else
                     {
@@ -1157,18 +1220,19 @@ public class DirectoryScanner
         for (String newfile : newfiles)
         {
             String name = vpath + newfile;
+            TokenizedPath path = new TokenizedPath(name);
             File file = new File(dir, newfile);
             if (file.isDirectory())
             {
-                if (isIncluded(name))
+                if (isIncluded(path))
                 {
-                    accountForIncludedDir(name, file, fast);
+                    accountForIncludedDir(path, file, fast);
                 }
                 else
                 {
                     everythingIncluded = false;
                     dirsNotIncluded.addElement(name);
-                    if (fast && couldHoldIncluded(name))
+                    if (fast && couldHoldIncluded(path))
                     {
                         scandir(file, name + File.separator, fast);
                     }
@@ -1180,9 +1244,9 @@ public class DirectoryScanner
             }
             else if (file.isFile())
             {
-                if (isIncluded(name))
+                if (isIncluded(path))
                 {
-                    accountForIncludedFile(name, file);
+                    accountForIncludedFile(path, file);
                 }
                 else
                 {
@@ -1196,19 +1260,18 @@ public class DirectoryScanner
     /**
      * Process included file.
      *
-     * @param name path of the file relative to the directory of the FileSet.
+     * @param path path of the file relative to the directory of the FileSet.
      * @param file included File.
      */
-    private void accountForIncludedFile(String name, File file) throws Exception
+    private void accountForIncludedFile(TokenizedPath path, File file) throws Exception
     {
-        if (filesIncluded.contains(name)
-                || filesExcluded.contains(name)
-                || filesDeselected.contains(name))
+        String name = path.getPath();
+        if (!filesAccounted.add(name))
         {
             return;
         }
         boolean included = false;
-        if (isExcluded(name))
+        if (isExcluded(path))
         {
             filesExcluded.addElement(name);
         }
@@ -1227,22 +1290,21 @@ public class DirectoryScanner
     /**
      * Process included directory.
      *
-     * @param name path of the directory relative to the directory of
+     * @param path path of the directory relative to the directory of
      *             the FileSet.
      * @param file directory as File.
      * @param fast whether to perform fast scans.
      */
-    private void accountForIncludedDir(String name, File file, boolean fast)
+    private void accountForIncludedDir(TokenizedPath path, File file, boolean fast)
             throws Exception
     {
-        if (dirsIncluded.contains(name)
-                || dirsExcluded.contains(name)
-                || dirsDeselected.contains(name))
+        String name = path.getPath();
+        if (!dirsAccounted.add(name))
         {
             return;
         }
         boolean included = false;
-        if (isExcluded(name))
+        if (isExcluded(path))
         {
             dirsExcluded.addElement(name);
         }
@@ -1256,7 +1318,7 @@ public class DirectoryScanner
             dirsDeselected.addElement(name);
         }
         everythingIncluded &= included;
-        if (fast && couldHoldIncluded(name) && !contentsExcluded(name))
+        if (fast && couldHoldIncluded(path) && !contentsExcluded(path))
         {
             scandir(file, name + File.separator, fast);
         }
@@ -1271,18 +1333,32 @@ public class DirectoryScanner
      *         include pattern, or <code>false</code> otherwise.
      */
     protected boolean isIncluded(String name)
+    {
+        return isIncluded(new TokenizedPath(name));
+    }
+
+    /**
+     * Test whether or not a path matches against at least one include
+     * pattern.
+     *
+     * @param path The path to match. Must not be <code>null</code>.
+     * @return <code>true</code> when the path matches against at least one
+     *         include pattern, or <code>false</code> otherwise.
+     */
+    private boolean isIncluded(TokenizedPath path)
     {
         ensureNonPatternSetsReady();
 
+        String name = path.getPath();
         if (isCaseSensitive()
                 ? includeNonPatterns.contains(name)
                 : includeNonPatterns.contains(name.toUpperCase()))
         {
             return true;
         }
-        for (String includePattern : includePatterns)
+        for (TokenizedPattern includeMatcher : includeMatchers)
         {
-            if (matchPath(includePattern, name, isCaseSensitive()))
+            if (includeMatcher.matchPath(path, isCaseSensitive()))
             {
                 return true;
             }
@@ -1300,31 +1376,31 @@ public class DirectoryScanner
      */
     protected boolean couldHoldIncluded(String name)
     {
-        for (String include : includes)
-        {
-            if (matchPatternStart(include, name, isCaseSensitive())
-                    && isMorePowerfulThanExcludes(name, include)
-                    && isDeeper(include, name))
-            {
-                return true;
-            }
-        }
-        return false;
+        return couldHoldIncluded(new TokenizedPath(name));
     }
 
     /**
-     * Verify that a pattern specifies files deeper
-     * than the level of the specified file.
+     * Test whether or not a path matches the start of at least one include
+     * pattern.
      *
-     * @param pattern the pattern to check.
-     * @param name    the name to check.
-     * @return whether the pattern is deeper than the name.
+     * @param path The path to match. Must not be <code>null</code>.
+     * @return <code>true</code> when the path matches against the start of at
+     *         least one include pattern, or <code>false</code> otherwise.
      */
-    private boolean isDeeper(String pattern, String name)
+    private boolean couldHoldIncluded(TokenizedPath path)
     {
-        Vector<?> p = SelectorUtils.tokenizePath(pattern);
-        Vector<?> n = SelectorUtils.tokenizePath(name);
-        return p.contains("**") || p.size() > n.size();
+        ensureNonPatternSetsReady();
+
+        for (TokenizedPattern include : includeStartMatchers)
+        {
+            if (include.matchStartOf(path, isCaseSensitive())
+                    && isMorePowerfulThanExcludes(path.getPath())
+                    && include.isDeeperThan(path))
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -1338,36 +1414,25 @@ public class DirectoryScanner
      * <p/>
      * IMPORTANT : this function should return false "with care".
      *
-     * @param name           the relative path to test.
-     * @param includepattern one include pattern.
-     * @return true if there is no exclude pattern more powerful than this include pattern.
+     * @param name the relative path to test.
+     * @return true if there is no exclude pattern more powerful than the include patterns.
      */
-    private boolean isMorePowerfulThanExcludes(String name, String includepattern)
+    private boolean isMorePowerfulThanExcludes(String name)
     {
-        String soughtexclude = name + File.separator + "**";
-        for (String exclude : excludes)
-        {
-            if (exclude.equals(soughtexclude))
-            {
-                return false;
-            }
-        }
-        return true;
+        return !excludeSet.contains(name + File.separator + "**");
     }
 
     /**
      * Test whether all contents of the specified directory must be excluded.
      *
-     * @param name the directory name to check.
+     * @param path the directory path to check.
      * @return whether all the specified directory's contents are excluded.
      */
-    private boolean contentsExcluded(String name)
+    private boolean contentsExcluded(TokenizedPath path)
     {
-        name = (name.endsWith(File.separator)) ? name : name + File.separator;
-        for (String e : excludes)
+        for (TokenizedPattern matcher : contentExcludeMatchers)
         {
-            if (e.endsWith("**") && SelectorUtils.matchPath(
-                    e.substring(0, e.length() - 2), name, isCaseSensitive()))
+            if (matcher.matchPath(path, isCaseSensitive()))
             {
                 return true;
             }
@@ -1384,18 +1449,32 @@ public class DirectoryScanner
      *         exclude pattern, or <code>false</code> otherwise.
      */
     protected boolean isExcluded(String name)
+    {
+        return isExcluded(new TokenizedPath(name));
+    }
+
+    /**
+     * Test whether or not a path matches against at least one exclude
+     * pattern.
+     *
+     * @param path The path to match. Must not be <code>null</code>.
+     * @return <code>true</code> when the path matches against at least one
+     *         exclude pattern, or <code>false</code> otherwise.
+     */
+    private boolean isExcluded(TokenizedPath path)
     {
         ensureNonPatternSetsReady();
 
+        String name = path.getPath();
         if (isCaseSensitive()
                 ? excludeNonPatterns.contains(name)
                 : excludeNonPatterns.contains(name.toUpperCase()))
         {
             return true;
         }
-        for (String excludePattern : excludePatterns)
+        for (TokenizedPattern excludeMatcher : excludeMatchers)
         {
-            if (matchPath(excludePattern, name, isCaseSensitive()))
+            if (excludeMatcher.matchPath(path, isCaseSensitive()))
             {
                 return true;
             }
@@ -1785,6 +1864,11 @@ public class DirectoryScanner
         excludeNonPatterns.clear();
         includePatterns = null;
         excludePatterns = null;
+        includeMatchers = null;
+        excludeMatchers = null;
+        includeStartMatchers = null;
+        contentExcludeMatchers = null;
+        excludeSet.clear();
         areNonPatternSetsReady = false;
     }
 
@@ -1798,10 +1882,40 @@ public class DirectoryScanner
         {
             includePatterns = fillNonPatternSet(includeNonPatterns, includes);
             excludePatterns = fillNonPatternSet(excludeNonPatterns, excludes);
+            includeMatchers = tokenize(includePatterns);
+            excludeMatchers = tokenize(excludePatterns);
+            includeStartMatchers = tokenize(includes);
+
+            List<TokenizedPattern> contentExcludes = new ArrayList<TokenizedPattern>();
+            for (String exclude : excludes)
+            {
+                excludeSet.add(exclude);
+                if (exclude.endsWith("**"))
+                {
+                    contentExcludes.add(new TokenizedPattern(exclude.substring(0, exclude.length() - 2)));
+                }
+            }
+            contentExcludeMatchers = contentExcludes.toArray(new TokenizedPattern[contentExcludes.size()]);
             areNonPatternSetsReady = true;
         }
     }
 
+    /**
+     * Compiles patterns for matching.
+     *
+     * @param patterns the patterns
+     * @return the compiled patterns
+     */
+    private TokenizedPattern[] tokenize(String[] patterns)
+    {
+        TokenizedPattern[] result = new TokenizedPattern[patterns.length];
+        for (int i = 0; i < patterns.length; ++i)
+        {
+            result[i] = new TokenizedPattern(patterns[i]);
+        }
+        return result;
+    }
+
     /**
      * Add all patterns that are not real patterns (do not contain
      * wildcards) to the set and returns the real patterns.
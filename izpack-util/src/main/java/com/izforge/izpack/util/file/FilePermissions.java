@@ -0,0 +1,228 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file;
+
+import java.io.File;
+
+
+/**
+ * Changes file permissions in-process, rather than by running <em>chmod</em>.
+ * <p/>
+ * Permissions are specified as for <em>chmod</em>, either as an octal mode (e.g. <em>755</em>) or as a symbolic
+ * mode (e.g. <em>a+x</em>). Only modes that {@link File#setReadable(boolean, boolean)},
+ * {@link File#setWritable(boolean, boolean)} and {@link File#setExecutable(boolean, boolean)} can express are
+ * supported, i.e. those that change either the owner's permissions, or everyone's. For others, {@link #set} returns
+ * {@code false}, and the caller should fall back to running <em>chmod</em>.
+ */
+public class FilePermissions
+{
+
+    /**
+     * Read permission.
+     */
+    private static final int READ = 4;
+
+    /**
+     * Write permission.
+     */
+    private static final int WRITE = 2;
+
+    /**
+     * Execute permission.
+     */
+    private static final int EXECUTE = 1;
+
+
+    /**
+     * Changes the permissions of a file.
+     *
+     * @param file        the file
+     * @param permissions the octal or symbolic permissions
+     * @return {@code true} if the permissions were changed, {@code false} if they are not supported or couldn't be
+     *         changed
+     */
+    public static boolean set(File file, String permissions)
+    {
+        if (permissions == null || permissions.length() == 0 || !file.exists())
+        {
+            return false;
+        }
+        if (Character.isDigit(permissions.charAt(0)))
+        {
+            return setOctal(file, permissions);
+        }
+        return setSymbolic(file, permissions);
+    }
+
+    /**
+     * Makes a file executable by everyone, as per <em>chmod a+x</em>.
+     *
+     * @param file the file
+     * @return {@code true} if the file was made executable
+     */
+    public static boolean setExecutable(File file)
+    {
+        return file.setExecutable(true, false);
+    }
+
+    /**
+     * Changes the permissions of a file given an octal mode.
+     *
+     * @param file  the file
+     * @param value the octal mode
+     * @return {@code true} if the permissions were changed
+     */
+    private static boolean setOctal(File file, String value)
+    {
+        int mode;
+        try
+        {
+            mode = Integer.parseInt(value, 8);
+        }
+        catch (NumberFormatException exception)
+        {
+            return false;
+        }
+        int owner = (mode >> 6) & 7;
+        int group = (mode >> 3) & 7;
+        int other = mode & 7;
+        if ((mode & ~0777) != 0 || group != other)
+        {
+            // special bits, or group and other permissions differ
+            return false;
+        }
+        // set everyone's permissions first, then override the owner's
+        return apply(file, other, false) && apply(file, owner, true);
+    }
+
+    /**
+     * Changes the permissions of a file given a symbolic mode.
+     * <p/>
+     * Multiple clauses separated by commas are supported, each of the form <em>[ugoa]*[+-][rwx]+</em>.
+     *
+     * @param file  the file
+     * @param value the symbolic mode
+     * @return {@code true} if the permissions were changed
+     */
+    private static boolean setSymbolic(File file, String value)
+    {
+        for (String clause : value.split(","))
+        {
+            int index = 0;
+            boolean user = false;
+            boolean group = false;
+            boolean other = false;
+            while (index < clause.length() && "ugoa".indexOf(clause.charAt(index)) != -1)
+            {
+                char who = clause.charAt(index++);
+                user |= who == 'u' || who == 'a';
+                group |= who == 'g' || who == 'a';
+                other |= who == 'o' || who == 'a';
+            }
+            if (index == 0)
+            {
+                user = group = other = true;
+            }
+            if (index + 1 >= clause.length())
+            {
+                return false;
+            }
+            char op = clause.charAt(index++);
+            int bits = 0;
+            for (char permission : clause.substring(index).toCharArray())
+            {
+                switch (permission)
+                {
+                    case 'r':
+                        bits |= READ;
+                        break;
+                    case 'w':
+                        bits |= WRITE;
+                        break;
+                    case 'x':
+                        bits |= EXECUTE;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            boolean ownerOnly;
+            if (user && group && other)
+            {
+                ownerOnly = false;
+            }
+            else if (user && !group && !other)
+            {
+                ownerOnly = true;
+            }
+            else
+            {
+                return false;
+            }
+            if ((op != '+' && op != '-') || !change(file, bits, op == '+', ownerOnly))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the permissions of a file, granting those specified and revoking the others.
+     *
+     * @param file      the file
+     * @param bits      the permissions to grant
+     * @param ownerOnly if {@code true}, only change the owner's permissions, otherwise change everyone's
+     * @return {@code true} if the permissions were changed
+     */
+    private static boolean apply(File file, int bits, boolean ownerOnly)
+    {
+        return file.setReadable((bits & READ) != 0, ownerOnly)
+                && file.setWritable((bits & WRITE) != 0, ownerOnly)
+                && file.setExecutable((bits & EXECUTE) != 0, ownerOnly);
+    }
+
+    /**
+     * Grants or revokes permissions of a file, leaving the others unchanged.
+     *
+     * @param file      the file
+     * @param bits      the permissions to change
+     * @param grant     if {@code true}, grant the permissions, otherwise revoke them
+     * @param ownerOnly if {@code true}, only change the owner's permissions, otherwise change everyone's
+     * @return {@code true} if the permissions were changed
+     */
+    private static boolean change(File file, int bits, boolean grant, boolean ownerOnly)
+    {
+        boolean result = true;
+        if ((bits & READ) != 0)
+        {
+            result = file.setReadable(grant, ownerOnly);
+        }
+        if (result && (bits & WRITE) != 0)
+        {
+            result = file.setWritable(grant, ownerOnly);
+        }
+        if (result && (bits & EXECUTE) != 0)
+        {
+            result = file.setExecutable(grant, ownerOnly);
+        }
+        return result;
+    }
+}
@@ -46,6 +46,11 @@ public class FileSet extends DataType
     private boolean isCaseSensitive = true;
     private boolean followSymlinks = true;
 
+    /**
+     * The scanner from the last scan. Reused until this fileset changes.
+     */
+    private DirectoryScanner directoryScanner;
+
     /**
      * Construct a new <code>FileSet</code>.
      */
@@ -62,6 +67,7 @@ public class FileSet extends DataType
     public void setDir(File dir) throws Exception
     {
         this.dir = dir;
+        directoryScanner = null;
     }
 
     /**
@@ -83,6 +89,7 @@ public class FileSet extends DataType
      */
     public PatternSet.NameEntry createInclude()
     {
+        directoryScanner = null;
         return defaultPatterns.createInclude();
     }
 
@@ -93,6 +100,7 @@ public class FileSet extends DataType
      */
     public PatternSet.NameEntry createExclude()
     {
+        directoryScanner = null;
         return defaultPatterns.createExclude();
     }
 
@@ -122,6 +130,7 @@ public class FileSet extends DataType
     public void setIncludes(String includes)
     {
         defaultPatterns.setIncludes(includes);
+        directoryScanner = null;
     }
 
     /**
@@ -135,6 +144,7 @@ public class FileSet extends DataType
     public void setExcludes(String excludes)
     {
         defaultPatterns.setExcludes(excludes);
+        directoryScanner = null;
     }
 
     /**
@@ -145,6 +155,7 @@ public class FileSet extends DataType
     public void setDefaultexcludes(boolean useDefaultExcludes)
     {
         this.useDefaultExcludes = useDefaultExcludes;
+        directoryScanner = null;
     }
 
     /**
@@ -163,6 +174,7 @@ public class FileSet extends DataType
     public void setCaseSensitive(boolean isCaseSensitive)
     {
         this.isCaseSensitive = isCaseSensitive;
+        directoryScanner = null;
     }
 
     /**
@@ -173,6 +185,7 @@ public class FileSet extends DataType
     public void setFollowSymlinks(boolean followSymlinks)
     {
         this.followSymlinks = followSymlinks;
+        directoryScanner = null;
     }
 
     /**
@@ -189,11 +202,18 @@ public class FileSet extends DataType
 
     /**
      * Returns the directory scanner needed to access the files to process.
+     * <p/>
+     * The directory is only scanned on the first call. Subsequent calls return the same scanner until this
+     * fileset is changed.
      *
      * @return a <code>DirectoryScanner</code> instance.
      */
-    public DirectoryScanner getDirectoryScanner() throws Exception
+    public synchronized DirectoryScanner getDirectoryScanner() throws Exception
     {
+        if (directoryScanner != null)
+        {
+            return directoryScanner;
+        }
         if (dir == null)
         {
             throw new Exception("No directory specified for fileset");
@@ -211,6 +231,7 @@ public class FileSet extends DataType
         setupDirectoryScanner(ds);
         ds.setFollowSymlinks(followSymlinks);
         ds.scan();
+        directoryScanner = ds;
         return ds;
     }
 
@@ -329,6 +350,7 @@ public class FileSet extends DataType
     public void appendSelector(FileSelector selector)
     {
         selectors.addElement(selector);
+        directoryScanner = null;
     }
 
     /* Methods below all add specific selectors */
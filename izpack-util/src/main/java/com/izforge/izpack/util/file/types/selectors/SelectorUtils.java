@@ -103,9 +103,29 @@ public final class SelectorUtils
             return false;
         }
 
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
+        return matchPatternStart(tokenizePathAsArray(pattern), tokenizePathAsArray(str), isCaseSensitive);
+    }
 
+    /**
+     * Tests whether or not a given tokenized path matches the start of a
+     * given tokenized pattern up to the first "**".
+     * <p/>
+     * This doesn't check if the path and pattern both start with a
+     * File.separator; callers must do this.
+     *
+     * @param patDirs         The tokenized pattern to match against. Must not be
+     *                        <code>null</code>.
+     * @param strDirs         The tokenized path to match. Must not be
+     *                        <code>null</code>.
+     * @param isCaseSensitive Whether or not matching should be performed
+     *                        case sensitively.
+     * @return whether or not a given path matches the start of a given
+     *         pattern up to the first "**".
+     * @see #tokenizePathAsArray(String)
+     */
+    public static boolean matchPatternStart(String[] patDirs, String[] strDirs,
+                                            boolean isCaseSensitive)
+    {
         int patIdxStart = 0;
         int patIdxEnd = patDirs.length - 1;
         int strIdxStart = 0;
@@ -185,9 +205,29 @@ public final class SelectorUtils
             return false;
         }
 
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
+        return matchPath(tokenizePathAsArray(pattern), tokenizePathAsArray(str), isCaseSensitive);
+    }
 
+    /**
+     * Tests whether or not a given tokenized path matches a given tokenized
+     * pattern.
+     * <p/>
+     * This doesn't check if the path and pattern both start with a
+     * File.separator; callers must do this.
+     *
+     * @param patDirs         The tokenized pattern to match against. Must not be
+     *                        <code>null</code>.
+     * @param strDirs         The tokenized path to match. Must not be
+     *                        <code>null</code>.
+     * @param isCaseSensitive Whether or not matching should be performed
+     *                        case sensitively.
+     * @return <code>true</code> if the pattern matches against the path,
+     *         or <code>false</code> otherwise.
+     * @see #tokenizePathAsArray(String)
+     */
+    public static boolean matchPath(String[] patDirs, String[] strDirs,
+                                    boolean isCaseSensitive)
+    {
         int patIdxStart = 0;
         int patIdxEnd = patDirs.length - 1;
         int strIdxStart = 0;
@@ -203,8 +243,6 @@ public final class SelectorUtils
             }
             if (!match(patDir, strDirs[strIdxStart], isCaseSensitive))
             {
-                patDirs = null;
-                strDirs = null;
                 return false;
             }
             patIdxStart++;
@@ -217,8 +255,6 @@ public final class SelectorUtils
             {
                 if (!patDirs[i].equals("**"))
                 {
-                    patDirs = null;
-                    strDirs = null;
                     return false;
                 }
             }
@@ -229,8 +265,6 @@ public final class SelectorUtils
             if (patIdxStart > patIdxEnd)
             {
                 // String not exhausted, but pattern is. Failure.
-                patDirs = null;
-                strDirs = null;
                 return false;
             }
         }
@@ -245,8 +279,6 @@ public final class SelectorUtils
             }
             if (!match(patDir, strDirs[strIdxEnd], isCaseSensitive))
             {
-                patDirs = null;
-                strDirs = null;
                 return false;
             }
             patIdxEnd--;
@@ -259,8 +291,6 @@ public final class SelectorUtils
             {
                 if (!patDirs[i].equals("**"))
                 {
-                    patDirs = null;
-                    strDirs = null;
                     return false;
                 }
             }
@@ -308,8 +338,6 @@ public final class SelectorUtils
 
             if (foundIdx == -1)
             {
-                patDirs = null;
-                strDirs = null;
                 return false;
             }
 
@@ -321,8 +349,6 @@ public final class SelectorUtils
         {
             if (!patDirs[i].equals("**"))
             {
-                patDirs = null;
-                strDirs = null;
                 return false;
             }
         }
@@ -582,8 +608,11 @@ public final class SelectorUtils
 
     /**
      * Same as {@link #tokenizePath tokenizePath} but hopefully faster.
+     *
+     * @param path Path to tokenize. Must not be <code>null</code>.
+     * @return the path elements, separated by File.separator
      */
-    private static String[] tokenizePathAsArray(String path)
+    public static String[] tokenizePathAsArray(String path)
     {
         char sep = File.separatorChar;
         int start = 0;
@@ -0,0 +1,104 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file.types.selectors;
+
+import java.io.File;
+
+
+/**
+ * A path that has been split into its elements, so that it can be matched against several
+ * {@link TokenizedPattern}s without being tokenized each time.
+ */
+public final class TokenizedPath
+{
+
+    /**
+     * The path.
+     */
+    private final String path;
+
+    /**
+     * The path elements.
+     */
+    private final String[] tokens;
+
+
+    /**
+     * Constructs a <tt>TokenizedPath</tt>.
+     *
+     * @param path the path, using File.separator as the separator
+     */
+    public TokenizedPath(String path)
+    {
+        this.path = path;
+        this.tokens = SelectorUtils.tokenizePathAsArray(path);
+    }
+
+    /**
+     * Returns the path.
+     *
+     * @return the path
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Returns the path elements.
+     *
+     * @return the path elements
+     */
+    public String[] getTokens()
+    {
+        return tokens;
+    }
+
+    /**
+     * Returns the no. of path elements.
+     *
+     * @return the no. of path elements
+     */
+    public int depth()
+    {
+        return tokens.length;
+    }
+
+    /**
+     * Determines if the path starts with File.separator.
+     *
+     * @return <tt>true</tt> if the path starts with File.separator
+     */
+    public boolean isRooted()
+    {
+        return path.startsWith(File.separator);
+    }
+
+    /**
+     * Returns the path.
+     *
+     * @return the path
+     */
+    @Override
+    public String toString()
+    {
+        return path;
+    }
+}
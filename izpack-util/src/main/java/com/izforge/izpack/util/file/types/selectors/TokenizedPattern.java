@@ -0,0 +1,128 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file.types.selectors;
+
+import java.io.File;
+import java.util.Arrays;
+
+
+/**
+ * A path pattern that has been split into its elements once, so that it can be matched against many
+ * {@link TokenizedPath}s.
+ * <p/>
+ * Matching is the same as {@link SelectorUtils#matchPath(String, String, boolean)} and
+ * {@link SelectorUtils#matchPatternStart(String, String, boolean)}.
+ */
+public final class TokenizedPattern
+{
+
+    /**
+     * The pattern.
+     */
+    private final String pattern;
+
+    /**
+     * The pattern elements.
+     */
+    private final String[] tokens;
+
+    /**
+     * Determines if the pattern starts with File.separator.
+     */
+    private final boolean rooted;
+
+    /**
+     * Determines if the pattern contains "**", and so matches paths of any depth.
+     */
+    private final boolean unlimited;
+
+
+    /**
+     * Constructs a <tt>TokenizedPattern</tt>.
+     *
+     * @param pattern the pattern, using File.separator as the separator
+     */
+    public TokenizedPattern(String pattern)
+    {
+        this.pattern = pattern;
+        tokens = SelectorUtils.tokenizePathAsArray(pattern);
+        rooted = pattern.startsWith(File.separator);
+        unlimited = Arrays.asList(tokens).contains("**");
+    }
+
+    /**
+     * Returns the pattern.
+     *
+     * @return the pattern
+     */
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Tests whether or not a path matches this pattern.
+     *
+     * @param path            the path to match
+     * @param isCaseSensitive whether or not matching should be performed case sensitively
+     * @return <tt>true</tt> if the path matches the pattern
+     */
+    public boolean matchPath(TokenizedPath path, boolean isCaseSensitive)
+    {
+        return path.isRooted() == rooted && SelectorUtils.matchPath(tokens, path.getTokens(), isCaseSensitive);
+    }
+
+    /**
+     * Tests whether or not a path matches the start of this pattern up to the first "**".
+     * <p/>
+     * This can yield false positives. See {@link SelectorUtils#matchPatternStart(String, String, boolean)}.
+     *
+     * @param path            the path to match
+     * @param isCaseSensitive whether or not matching should be performed case sensitively
+     * @return <tt>true</tt> if the path matches the start of the pattern
+     */
+    public boolean matchStartOf(TokenizedPath path, boolean isCaseSensitive)
+    {
+        return path.isRooted() == rooted
+                && SelectorUtils.matchPatternStart(tokens, path.getTokens(), isCaseSensitive);
+    }
+
+    /**
+     * Determines if this pattern can match paths deeper than the specified path.
+     *
+     * @param path the path
+     * @return <tt>true</tt> if the pattern contains "**", or has more elements than the path
+     */
+    public boolean isDeeperThan(TokenizedPath path)
+    {
+        return unlimited || tokens.length > path.depth();
+    }
+
+    /**
+     * Returns the pattern.
+     *
+     * @return the pattern
+     */
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+}
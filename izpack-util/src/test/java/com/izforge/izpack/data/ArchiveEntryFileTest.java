@@ -0,0 +1,134 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.util.IoHelper;
+
+
+/**
+ * Tests the {@link ArchiveEntryFile} class.
+ */
+public class ArchiveEntryFileTest
+{
+
+    /**
+     * Temporary folder to create archives in.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that entry metadata is read from the archive, and entry content can be streamed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testList() throws Exception
+    {
+        File archive = temporaryFolder.newFile("archive.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        out.putNextEntry(new ZipEntry("lib/"));
+        ZipEntry entry = new ZipEntry("lib/a.txt");
+        entry.setTime(1262304000000L);
+        out.putNextEntry(entry);
+        out.write("content of a".getBytes("UTF-8"));
+        out.putNextEntry(new ZipEntry("b.txt"));
+        out.write("b".getBytes("UTF-8"));
+        out.close();
+
+        List<ArchiveEntryFile> entries = ArchiveEntryFile.list(archive);
+        assertEquals(3, entries.size());
+
+        ArchiveEntryFile dir = entries.get(0);
+        assertTrue(dir.exists());
+        assertTrue(dir.isDirectory());
+        assertFalse(dir.isFile());
+        assertEquals(0, dir.length());
+
+        ArchiveEntryFile a = entries.get(1);
+        assertEquals("lib/a.txt", a.getEntryName());
+        assertEquals("a.txt", a.getName());
+        assertEquals(new File(archive, "lib/a.txt"), a);
+        assertTrue(a.exists());
+        assertTrue(a.isFile());
+        assertEquals(12, a.length());
+        assertEquals(entry.getTime(), a.lastModified());
+        assertEquals("content of a", read(ArchiveEntryFile.open(a)));
+
+        // the archive is reopened on demand after it is closed
+        a.getArchive().close();
+        assertEquals("b", read(entries.get(2).openStream()));
+        a.getArchive().close();
+    }
+
+    /**
+     * Verifies that {@link ArchiveEntryFile#open(File)} reads regular files.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testOpenFile() throws Exception
+    {
+        File file = temporaryFolder.newFile("file.txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("file".getBytes("UTF-8"));
+        out.close();
+        assertEquals("file", read(ArchiveEntryFile.open(file)));
+    }
+
+    /**
+     * Reads a stream, closing it.
+     *
+     * @param in the stream to read
+     * @return the stream content
+     * @throws IOException for any I/O error
+     */
+    private String read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            IoHelper.copyStream(in, out);
+        }
+        finally
+        {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+}
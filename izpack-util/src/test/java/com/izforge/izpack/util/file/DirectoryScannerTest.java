@@ -0,0 +1,218 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.util.file.types.FileSet;
+
+
+/**
+ * Tests the {@link DirectoryScanner}.
+ */
+public class DirectoryScannerTest
+{
+
+    /**
+     * Temporary folder to scan.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The directory to scan.
+     */
+    private File dir;
+
+
+    /**
+     * Sets up the directory tree to scan.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = temporaryFolder.getRoot();
+        createFile("a.txt");
+        createFile("b.xml");
+        createFile("src/Foo.java");
+        createFile("src/impl/FooImpl.java");
+        createFile("src/impl/foo.properties");
+        createFile("build/classes/Foo.class");
+        createFile("build/classes/impl/FooImpl.class");
+    }
+
+    /**
+     * Verifies that files are included and excluded by wildcard and non-wildcard patterns.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testIncludesExcludes() throws Exception
+    {
+        DirectoryScanner scanner = createScanner(new String[]{"**/*.java", "a.txt"},
+                                                 new String[]{"**/impl/**"});
+        scanner.scan();
+        checkFiles(scanner.getIncludedFiles(), "a.txt", "src/Foo.java");
+        checkFiles(scanner.getExcludedFiles(), "src/impl/FooImpl.java");
+    }
+
+    /**
+     * Verifies that directories that cannot hold included files, or whose contents are excluded, aren't scanned.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPruning() throws Exception
+    {
+        DirectoryScanner scanner = createScanner(new String[]{"src/**"}, new String[]{"src/impl/**"});
+        scanner.scan();
+        checkFiles(scanner.getIncludedFiles(), "src/Foo.java");
+        assertTrue(scanner.getScannedDirs().contains(path("src/")));
+        assertFalse(scanner.getScannedDirs().contains(path("src/impl/")));
+        assertFalse(scanner.getScannedDirs().contains(path("build/")));
+    }
+
+    /**
+     * Verifies case insensitive matching.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCaseInsensitive() throws Exception
+    {
+        DirectoryScanner scanner = createScanner(new String[]{"**/FOO*.JAVA", "A.TXT"}, null);
+        scanner.setCaseSensitive(false);
+        scanner.scan();
+        checkFiles(scanner.getIncludedFiles(), "a.txt", "src/Foo.java", "src/impl/FooImpl.java");
+    }
+
+    /**
+     * Verifies that a slow scan reports files in directories that the fast scan pruned, without reporting
+     * any file twice.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSlowScan() throws Exception
+    {
+        DirectoryScanner scanner = createScanner(new String[]{"src/*.java"}, null);
+        scanner.scan();
+        checkFiles(scanner.getIncludedFiles(), "src/Foo.java");
+        assertFalse(scanner.getScannedDirs().contains(path("src/impl/")));
+        checkFiles(scanner.getNotIncludedFiles(), "src/impl/FooImpl.java", "src/impl/foo.properties");
+        checkFiles(scanner.getIncludedFiles(), "src/Foo.java");
+    }
+
+    /**
+     * Verifies that a {@link FileSet} only scans its directory once, until it is changed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testFileSetCachesScan() throws Exception
+    {
+        FileSet fileSet = new FileSet();
+        fileSet.setDir(dir);
+        fileSet.setIncludes("**/*.java");
+
+        DirectoryScanner scanner = fileSet.getDirectoryScanner();
+        assertSame(scanner, fileSet.getDirectoryScanner());
+        checkFiles(scanner.getIncludedFiles(), "src/Foo.java", "src/impl/FooImpl.java");
+
+        fileSet.setExcludes("**/impl/**");
+        DirectoryScanner changed = fileSet.getDirectoryScanner();
+        assertNotSame(scanner, changed);
+        checkFiles(changed.getIncludedFiles(), "src/Foo.java");
+    }
+
+    /**
+     * Creates a scanner for the test directory.
+     *
+     * @param includes the include patterns. May be {@code null}
+     * @param excludes the exclude patterns. May be {@code null}
+     * @return a new scanner
+     */
+    private DirectoryScanner createScanner(String[] includes, String[] excludes)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(dir);
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        return scanner;
+    }
+
+    /**
+     * Verifies that the expected files were returned, in any order.
+     *
+     * @param actual   the actual files
+     * @param expected the expected files, using '/' as the separator
+     */
+    private void checkFiles(String[] actual, String... expected)
+    {
+        String[] paths = new String[expected.length];
+        for (int i = 0; i < expected.length; ++i)
+        {
+            paths[i] = path(expected[i]);
+        }
+        Arrays.sort(paths);
+        String[] sorted = actual.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(paths, sorted);
+    }
+
+    /**
+     * Converts a path using '/' as the separator to one using the platform separator.
+     *
+     * @param path the path
+     * @return the converted path
+     */
+    private String path(String path)
+    {
+        return path.replace('/', File.separatorChar);
+    }
+
+    /**
+     * Creates a file in the test directory.
+     *
+     * @param path the file path, using '/' as the separator
+     * @throws IOException for any I/O error
+     */
+    private void createFile(String path) throws IOException
+    {
+        File file = new File(dir, path(path));
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.util.OsVersion;
+
+
+/**
+ * Tests the {@link FilePermissions} class.
+ */
+public class FilePermissionsTest
+{
+
+    /**
+     * Temporary folder to create files in.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The file to change.
+     */
+    private File file;
+
+
+    /**
+     * Creates the file to change.
+     *
+     * @throws Exception for any error
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+        file = temporaryFolder.newFile("script.sh");
+    }
+
+    /**
+     * Verifies that octal modes that can be set in-process are supported.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testOctal() throws Exception
+    {
+        assertTrue(FilePermissions.set(file, "755"));
+        assertEquals("-rwxr-xr-x", getMode());
+
+        assertTrue(FilePermissions.set(file, "600"));
+        assertEquals("-rw-------", getMode());
+
+        assertTrue(FilePermissions.set(file, "0644"));
+        assertEquals("-rw-r--r--", getMode());
+
+        // group and other permissions differ, so need chmod
+        assertFalse(FilePermissions.set(file, "750"));
+        assertFalse(FilePermissions.set(file, "4755"));
+        assertFalse(FilePermissions.set(file, "9"));
+    }
+
+    /**
+     * Verifies that symbolic modes that can be set in-process are supported.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSymbolic() throws Exception
+    {
+        assertTrue(FilePermissions.set(file, "600"));
+        assertTrue(FilePermissions.set(file, "a+x"));
+        assertEquals("-rwx--x--x", getMode());
+
+        assertTrue(FilePermissions.set(file, "ugo-x,u+x"));
+        assertEquals("-rwx------", getMode());
+
+        assertTrue(FilePermissions.set(file, "uga+rwx"));
+        assertEquals("-rwxrwxrwx", getMode());
+
+        assertTrue(FilePermissions.set(file, "-w"));
+        assertEquals("-r-xr-xr-x", getMode());
+
+        assertFalse(FilePermissions.set(file, "go+w"));
+        assertFalse(FilePermissions.set(file, "u=rwx"));
+        assertFalse(FilePermissions.set(file, "u+s"));
+        assertFalse(FilePermissions.set(file, "u+"));
+        assertFalse(FilePermissions.set(new File(temporaryFolder.getRoot(), "missing"), "a+x"));
+    }
+
+    /**
+     * Returns the mode of the file, as listed by <em>ls</em>.
+     *
+     * @return the file mode
+     * @throws Exception for any error
+     */
+    private String getMode() throws Exception
+    {
+        Process process = Runtime.getRuntime().exec(new String[]{"ls", "-l", file.getPath()});
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try
+        {
+            return reader.readLine().substring(0, 10);
+        }
+        finally
+        {
+            reader.close();
+            process.waitFor();
+        }
+    }
+}